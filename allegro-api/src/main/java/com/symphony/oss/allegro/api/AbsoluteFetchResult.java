@@ -0,0 +1,80 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import javax.annotation.Nullable;
+
+import com.symphony.oss.commons.hash.Hash;
+import com.symphony.oss.models.object.canon.IAbstractStoredApplicationObject;
+
+/**
+ * The result of fetching one object in a batch fetch by absolute hash.
+ * 
+ * Exactly one of the object and the error is non-null.
+ *
+ */
+public class AbsoluteFetchResult
+{
+  private final Hash                             absoluteHash_;
+  private final IAbstractStoredApplicationObject object_;
+  private final RuntimeException                 error_;
+
+  AbsoluteFetchResult(Hash absoluteHash, @Nullable IAbstractStoredApplicationObject object, @Nullable RuntimeException error)
+  {
+    absoluteHash_ = absoluteHash;
+    object_       = object;
+    error_        = error;
+  }
+
+  /**
+   * 
+   * @return The absolute hash which was requested.
+   */
+  public Hash getAbsoluteHash()
+  {
+    return absoluteHash_;
+  }
+
+  /**
+   * 
+   * @return The object, or null if the fetch failed.
+   */
+  public @Nullable IAbstractStoredApplicationObject getObject()
+  {
+    return object_;
+  }
+
+  /**
+   * 
+   * @return The reason the fetch failed, such as a NotFoundException or PermissionDeniedException, or null if it succeeded.
+   */
+  public @Nullable RuntimeException getError()
+  {
+    return error_;
+  }
+
+  /**
+   * 
+   * @return true if the object was fetched.
+   */
+  public boolean isSuccess()
+  {
+    return error_ == null;
+  }
+}
@@ -0,0 +1,306 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import com.symphony.oss.commons.hash.Hash;
+import com.symphony.oss.models.object.canon.IAbstractStoredApplicationObject;
+import com.symphony.oss.models.object.canon.facade.IApplicationObjectPayload;
+
+/**
+ * A read through cache of objects by absolute hash.
+ * 
+ * The object with a given absolute hash never changes, so entries do not expire, but they are removed
+ * when the object is deleted through the API, so that a deleted object is not returned. The cache is bounded
+ * by the number of entries and by the approximate size of the serialized objects, and the least recently
+ * used entries are evicted first. Failed fetches are not cached.
+ * 
+ * Optionally the decrypted payload of each cached object is also kept.
+ *
+ */
+class AbsoluteObjectCache
+{
+  private final int                    maxEntries_;
+  private final long                   maxBytes_;
+  private final boolean                cachePayloads_;
+  private final Map<Hash, Entry>       map_    = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong             hits_   = new AtomicLong();
+  private final AtomicLong             misses_ = new AtomicLong();
+
+  private long                         bytes_;
+
+  /**
+   * Constructor.
+   * 
+   * @param maxEntries    The maximum number of objects to hold, if zero nothing is cached.
+   * @param maxBytes      The maximum total size of the serialized objects (and payloads) to hold.
+   * @param cachePayloads If true then the decrypted payloads of cached objects are also held.
+   */
+  AbsoluteObjectCache(int maxEntries, long maxBytes, boolean cachePayloads)
+  {
+    maxEntries_    = maxEntries;
+    maxBytes_      = maxBytes;
+    cachePayloads_ = cachePayloads;
+  }
+  
+  private static class Entry
+  {
+    final IAbstractStoredApplicationObject object_;
+    final int                              size_;
+    IApplicationObjectPayload              payload_;
+    int                                    payloadSize_;
+    
+    Entry(IAbstractStoredApplicationObject object, int size)
+    {
+      object_ = object;
+      size_   = size;
+    }
+  }
+  
+  /**
+   * Return the object with the given absolute hash, calling the given loader to fetch it if it is not cached.
+   * 
+   * @param absoluteHash  The absolute hash of the required object.
+   * @param loader        A function to fetch the object from the server.
+   * 
+   * @return The required object.
+   */
+  IAbstractStoredApplicationObject get(Hash absoluteHash, Function<Hash, IAbstractStoredApplicationObject> loader)
+  {
+    Entry entry;
+    
+    synchronized(map_)
+    {
+      entry = map_.get(absoluteHash);
+    }
+    
+    if(entry != null)
+    {
+      hits_.incrementAndGet();
+      
+      return entry.object_;
+    }
+    
+    misses_.incrementAndGet();
+    
+    IAbstractStoredApplicationObject object = loader.apply(absoluteHash);
+    
+    put(absoluteHash, object);
+    
+    return object;
+  }
+  
+  /**
+   * Return the objects with the given absolute hashes, fetching those which are not cached with bounded parallelism.
+   * 
+   * There is no bulk fetch endpoint, so each distinct hash which is not cached is fetched separately. A failure
+   * to fetch one object, for example because it does not exist, is returned in its result rather than thrown.
+   * 
+   * @param absoluteHashes  The absolute hashes of the required objects.
+   * @param loader          A function to fetch one object from the server.
+   * @param fetcher         The fetcher to run the fetches.
+   * @param parallelism     The maximum number of objects to fetch at once.
+   * 
+   * @return One result for each of the given hashes, in the same order.
+   */
+  List<AbsoluteFetchResult> getAll(Collection<Hash> absoluteHashes, Function<Hash, IAbstractStoredApplicationObject> loader,
+      ConcurrentFetcher fetcher, int parallelism)
+  {
+    List<Hash>                     distinct = new ArrayList<>(new LinkedHashSet<>(absoluteHashes));
+    Map<Hash, AbsoluteFetchResult> results  = new ConcurrentHashMap<>();
+    
+    fetcher.fetch(distinct, parallelism, (hash) ->
+    {
+      try
+      {
+        results.put(hash, new AbsoluteFetchResult(hash, get(hash, loader), null));
+      }
+      catch(RuntimeException e)
+      {
+        results.put(hash, new AbsoluteFetchResult(hash, null, e));
+      }
+    }, (hash) -> "object " + hash);
+    
+    List<AbsoluteFetchResult> list = new ArrayList<>(absoluteHashes.size());
+    
+    for(Hash hash : absoluteHashes)
+      list.add(results.get(hash));
+    
+    return list;
+  }
+  
+  /**
+   * Add the given object, which has been obtained from the server by some other means.
+   * 
+   * @param absoluteHash  The absolute hash of the object.
+   * @param object        The object.
+   */
+  void put(Hash absoluteHash, IAbstractStoredApplicationObject object)
+  {
+    if(maxEntries_ <= 0 || object == null)
+      return;
+    
+    int size = object.serialize().length();
+    
+    if(size > maxBytes_)
+      return;
+    
+    synchronized(map_)
+    {
+      if(map_.containsKey(absoluteHash))
+        return;
+      
+      map_.put(absoluteHash, new Entry(object, size));
+      bytes_ += size;
+      
+      evict();
+    }
+  }
+  
+  /**
+   * 
+   * @param absoluteHash The absolute hash of an object.
+   * 
+   * @return The decrypted payload of the given object, if it is cached, otherwise null.
+   */
+  @Nullable IApplicationObjectPayload getPayload(Hash absoluteHash)
+  {
+    if(!cachePayloads_)
+      return null;
+    
+    synchronized(map_)
+    {
+      Entry entry = map_.get(absoluteHash);
+      
+      if(entry == null || entry.payload_ == null)
+        return null;
+      
+      return entry.payload_;
+    }
+  }
+  
+  /**
+   * Keep the decrypted payload of the given object, if the object is cached and payloads are being cached.
+   * 
+   * @param absoluteHash  The absolute hash of the object.
+   * @param payload       The decrypted payload of the object.
+   */
+  void putPayload(Hash absoluteHash, IApplicationObjectPayload payload)
+  {
+    if(!cachePayloads_ || payload == null)
+      return;
+    
+    synchronized(map_)
+    {
+      Entry entry = map_.get(absoluteHash);
+      
+      if(entry == null || entry.payload_ != null)
+        return;
+      
+      entry.payload_     = payload;
+      entry.payloadSize_ = payload.serialize().length();
+      bytes_            += entry.payloadSize_;
+      
+      evict();
+    }
+  }
+  
+  /**
+   * Remove the object with the given absolute hash, and its payload, if they are cached.
+   * 
+   * @param absoluteHash  The absolute hash of the object.
+   */
+  void invalidate(Hash absoluteHash)
+  {
+    synchronized(map_)
+    {
+      Entry entry = map_.remove(absoluteHash);
+      
+      if(entry != null)
+        bytes_ -= entry.size_ + entry.payloadSize_;
+    }
+  }
+  
+  private void evict()
+  {
+    Iterator<Entry> it = map_.values().iterator();
+    
+    while((map_.size() > maxEntries_ || bytes_ > maxBytes_) && it.hasNext())
+    {
+      Entry entry = it.next();
+      
+      bytes_ -= entry.size_ + entry.payloadSize_;
+      it.remove();
+    }
+  }
+  
+  /**
+   * 
+   * @return The number of lookups which were answered from the cache.
+   */
+  long getHitCount()
+  {
+    return hits_.get();
+  }
+  
+  /**
+   * 
+   * @return The number of lookups which required a fetch from the server.
+   */
+  long getMissCount()
+  {
+    return misses_.get();
+  }
+  
+  /**
+   * 
+   * @return The number of objects currently held.
+   */
+  int size()
+  {
+    synchronized(map_)
+    {
+      return map_.size();
+    }
+  }
+  
+  /**
+   * 
+   * @return The approximate size in bytes of the objects currently held.
+   */
+  long getBytes()
+  {
+    synchronized(map_)
+    {
+      return bytes_;
+    }
+  }
+}
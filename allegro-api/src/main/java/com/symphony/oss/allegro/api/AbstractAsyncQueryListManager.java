@@ -19,7 +19,10 @@
 package com.symphony.oss.allegro.api;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -37,6 +40,13 @@ import com.symphony.oss.fugue.trace.ITraceContextTransactionFactory;
 import com.symphony.oss.models.object.canon.ObjectHttpModelClient;
 
 /**
+ * Base class of managers which run a list of queries asynchronously.
+ * 
+ * Items from each page of results are passed to a handler thread pool. If the consumer manager has a
+ * handler queue capacity then the queue feeding that pool is bounded, and when it is full the subscriber
+ * thread either blocks or processes the item itself, so that no further pages are fetched until the
+ * handlers catch up, beyond those which the consumer manager allows to be read ahead.
+ * 
  * @author Bruce Skingle
  *
  */
@@ -50,11 +60,13 @@ public abstract class AbstractAsyncQueryListManager<T extends AbstractAsyncQuery
   private final int                             subscriberThreadPoolSize_;
   private final int                             handlerThreadPoolSize_;
   private final LinkedBlockingQueue<Runnable>   executorQueue_ = new LinkedBlockingQueue<Runnable>();
-  private final LinkedBlockingQueue<Runnable>   handlerQueue_  = new LinkedBlockingQueue<Runnable>();
+  private final LinkedBlockingQueue<Runnable>   handlerQueue_;
   private final ImmutableList<Q>                queryManagers_;
   
-  private ThreadPoolExecutor                    subscriberExecutor_;
-  private ThreadPoolExecutor                    handlerExecutor_;
+  private ExecutorService                       subscriberExecutor_;
+  private ExecutorService                       handlerExecutor_;
+  private AdaptiveHandlerExecutor               adaptiveHandlerExecutor_;
+  private VirtualThreadExecutor                 virtualHandlerExecutor_;
 
   private List<Q> remainingQueryManagers_;
 
@@ -66,22 +78,164 @@ public abstract class AbstractAsyncQueryListManager<T extends AbstractAsyncQuery
     subscriberThreadPoolSize_ = Fugue.isDebugSingleThread() ? 1 : consumerManager_.getSubscriberThreadPoolSize() == null ? builder.getQueryCount() : consumerManager_.getSubscriberThreadPoolSize();
     handlerThreadPoolSize_    = Fugue.isDebugSingleThread() ? 1 : consumerManager_.getHandlerThreadPoolSize() == null ? 9 * subscriberThreadPoolSize_ : consumerManager_.getHandlerThreadPoolSize();
    
+    if(consumerManager_.isVirtualThreads() && !VirtualThreadExecutor.isVirtualThreadSupported())
+      log_.warn("Virtual threads are not supported by this runtime, using thread pools.");
+    
+    handlerQueue_             = consumerManager_.getHandlerQueueCapacity() == null ? new LinkedBlockingQueue<Runnable>() :
+      new LinkedBlockingQueue<Runnable>(consumerManager_.getHandlerQueueCapacity());
+   
     log_.info("AbstractAsyncQueryListManager has " + subscriberThreadPoolSize_ +
-        " subscriber threads and " + handlerThreadPoolSize_ + " handler threads for a total of " +
-        builder.getQueryCount() + " queries...");
+        " subscriber threads and " + getHandlerPoolDescription() + " for a total of " +
+        builder.getQueryCount() + " queries, handler queue capacity " +
+        (consumerManager_.getHandlerQueueCapacity() == null ? "unbounded" : consumerManager_.getHandlerQueueCapacity() + " " + consumerManager_.getHandlerQueuePolicy()));
 
-    subscriberExecutor_ = new ThreadPoolExecutor(subscriberThreadPoolSize_, subscriberThreadPoolSize_,
-        10000L, TimeUnit.MILLISECONDS,
-        executorQueue_, new NamedThreadFactory("Query-subscriber"));
+    if(isVirtualThreads())
+    {
+      subscriberExecutor_ = new VirtualThreadExecutor("Query-subscriber", subscriberThreadPoolSize_, HandlerQueuePolicy.Block, true);
+    }
+    else
+    {
+      subscriberExecutor_ = new ThreadPoolExecutor(subscriberThreadPoolSize_, subscriberThreadPoolSize_,
+          10000L, TimeUnit.MILLISECONDS,
+          executorQueue_, new NamedThreadFactory("Query-subscriber"));
+    }
     
-    handlerExecutor_ = new ThreadPoolExecutor(handlerThreadPoolSize_, handlerThreadPoolSize_,
-        10000L, TimeUnit.MILLISECONDS,
-        handlerQueue_, new NamedThreadFactory("Query-handler", true));
+    if(isVirtualThreads())
+    {
+      virtualHandlerExecutor_ = new VirtualThreadExecutor("Query-handler", consumerManager_.getVirtualThreadMaxHandlers(),
+          consumerManager_.getHandlerQueuePolicy(), false);
+      
+      handlerExecutor_ = virtualHandlerExecutor_;
+    }
+    else if(isAdaptiveHandlerPool())
+    {
+      adaptiveHandlerExecutor_ = new AdaptiveHandlerExecutor("Query-handler",
+          consumerManager_.getAdaptiveHandlerMinSize(), consumerManager_.getAdaptiveHandlerMaxSize(),
+          consumerManager_.getHandlerQueueCapacity(), consumerManager_.getHandlerQueuePolicy());
+      
+      handlerExecutor_ = adaptiveHandlerExecutor_;
+    }
+    else
+    {
+      handlerExecutor_ = new ThreadPoolExecutor(handlerThreadPoolSize_, handlerThreadPoolSize_,
+          10000L, TimeUnit.MILLISECONDS,
+          handlerQueue_, new NamedThreadFactory("Query-handler", true),
+          consumerManager_.getHandlerQueuePolicy() == HandlerQueuePolicy.CallerRuns ? new CallerRunsPolicy() : new BlockingPolicy());
+    }
     
     remainingQueryManagers_ = builder.createQueryManagers(handlerExecutor_);
     queryManagers_ = ImmutableList.copyOf(remainingQueryManagers_);
   }
   
+  /**
+   * A RejectedExecutionHandler which runs the task in the submitting thread while the executor is live.
+   * 
+   * Unlike ThreadPoolExecutor.CallerRunsPolicy, which silently discards the task once the executor is shut
+   * down, this throws RejectedExecutionException so that the submitter can account for the task.
+   */
+  static class CallerRunsPolicy implements RejectedExecutionHandler
+  {
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+    {
+      if(executor.isShutdown())
+        throw new RejectedExecutionException("Handler executor is shut down");
+      
+      r.run();
+    }
+  }
+  
+  /**
+   * A RejectedExecutionHandler which blocks the submitting thread until there is space in the queue.
+   */
+  static class BlockingPolicy implements RejectedExecutionHandler
+  {
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+    {
+      try
+      {
+        while(!executor.getQueue().offer(r, 1, TimeUnit.SECONDS))
+        {
+          if(executor.isShutdown())
+            throw new RejectedExecutionException("Handler executor is shut down");
+        }
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new RejectedExecutionException("Interrupted waiting for space in the handler queue", e);
+      }
+    }
+  }
+  
+  private boolean isVirtualThreads()
+  {
+    return consumerManager_.isVirtualThreads() && !Fugue.isDebugSingleThread() && VirtualThreadExecutor.isVirtualThreadSupported();
+  }
+  
+  private boolean isAdaptiveHandlerPool()
+  {
+    return consumerManager_.isAdaptiveHandlerPool() && !Fugue.isDebugSingleThread();
+  }
+  
+  private String getHandlerPoolDescription()
+  {
+    if(isVirtualThreads())
+      return "a virtual thread per handler, up to " + consumerManager_.getVirtualThreadMaxHandlers() + " concurrently";
+    
+    if(isAdaptiveHandlerPool())
+      return "an adaptive pool of " + consumerManager_.getAdaptiveHandlerMinSize() + " to " +
+        consumerManager_.getAdaptiveHandlerMaxSize() + " handler threads";
+    
+    return handlerThreadPoolSize_ + " handler threads";
+  }
+  
+  /**
+   * 
+   * @return The number of items waiting in the handler queue.
+   */
+  public int getHandlerQueueDepth()
+  {
+    if(virtualHandlerExecutor_ != null)
+      return virtualHandlerExecutor_.getWaitingCount();
+    
+    if(adaptiveHandlerExecutor_ != null)
+      return adaptiveHandlerExecutor_.getQueueDepth();
+    
+    return handlerQueue_.size();
+  }
+  
+  /**
+   * 
+   * @return The number of handlers which may currently run concurrently, which varies over time
+   * if the handler pool is adaptive.
+   */
+  public int getHandlerConcurrencyLimit()
+  {
+    if(virtualHandlerExecutor_ != null)
+      return consumerManager_.getVirtualThreadMaxHandlers();
+    
+    if(adaptiveHandlerExecutor_ != null)
+      return adaptiveHandlerExecutor_.getParallelismLimit();
+    
+    return handlerThreadPoolSize_;
+  }
+  
+  /**
+   * 
+   * @return The number of items which have been passed to a handler but whose processing has not yet completed.
+   */
+  public int getInFlightCount()
+  {
+    int count = 0;
+    
+    for(Q queryManager : queryManagers_)
+      count += queryManager.getInFlightCount();
+    
+    return count;
+  }
+  
   @Override
   public boolean isIdle()
   {
@@ -107,7 +261,7 @@ public abstract class AbstractAsyncQueryListManager<T extends AbstractAsyncQuery
     setLifeCycleState(FugueLifecycleState.Starting);
     
     log_.info("Starting AbstractAsyncQueryListManager with " + subscriberThreadPoolSize_ +
-        " subscriber threads and " + handlerThreadPoolSize_ + " handler threads for a total of " +
+        " subscriber threads and " + getHandlerPoolDescription() + " for a total of " +
         queryManagers_.size() + " queries...");
      
     for(Q queryManager : queryManagers_)
@@ -167,7 +321,7 @@ public abstract class AbstractAsyncQueryListManager<T extends AbstractAsyncQuery
     consumerManager_.closeConsumers();
   }
 
-  private void stop(ThreadPoolExecutor executor, int delay)
+  private void stop(ExecutorService executor, int delay)
   {
     try {
       // Wait a while for existing tasks to terminate
@@ -300,7 +454,7 @@ public abstract class AbstractAsyncQueryListManager<T extends AbstractAsyncQuery
       faultAccumulator.checkNotNull(consumerManager_, "ConsumerManager");
     }
 
-    protected abstract List<Q> createQueryManagers(ThreadPoolExecutor handlerExecutor);
+    protected abstract List<Q> createQueryManagers(ExecutorService handlerExecutor);
     protected abstract int     getQueryCount();
   }
 }
@@ -19,7 +19,8 @@
 package com.symphony.oss.allegro.api;
 
 import java.util.List;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -40,15 +41,17 @@ public abstract class AbstractAsyncQueryManager implements Runnable
 {
   private final IAllegroDecryptor allegroApi_;
   private final AsyncConsumerManager consumerManager_;
-  private final ThreadPoolExecutor   handlerExecutor_;
+  private final ExecutorService      handlerExecutor_;
 
   private final AtomicInteger        remainingItems_;
   private final AtomicBoolean        runnable_     = new AtomicBoolean(true);
   private final AtomicBoolean        running_      = new AtomicBoolean(true);
   private final AtomicInteger        handlerCount_ = new AtomicInteger(0);
+  
+  private CursorCheckpointer         checkpointer_;
 
   protected AbstractAsyncQueryManager(IAllegroDecryptor allegroApi, int remainingItems, AsyncConsumerManager consumerManager,
-      ThreadPoolExecutor handlerExecutor)
+      ExecutorService handlerExecutor)
   {
     allegroApi_ = allegroApi;
     remainingItems_ = new AtomicInteger(remainingItems);
@@ -81,6 +84,30 @@ public abstract class AbstractAsyncQueryManager implements Runnable
     return remainingItems_.get();
   }
   
+  /**
+   * Create a reader for the pages of a scan which reads ahead as configured in the consumer manager.
+   * 
+   * @param <P>     The type of a page.
+   * @param source  The source of pages.
+   * @param after   The cursor of the first page, may be null.
+   * 
+   * @return A reader for the pages of the scan, which must be closed.
+   */
+  <P> PageReadAhead<P> readAhead(PageReadAhead.IPageSource<P> source, String after)
+  {
+    return new PageReadAhead<>(source, after, consumerManager_.getReadAheadPages(), consumerManager_.getReadAheadItems());
+  }
+  
+  /**
+   * Commit the progress of the scan to the given checkpointer as the objects of each page are consumed.
+   * 
+   * @param checkpointer The checkpointer for this scan.
+   */
+  void setCheckpointer(CursorCheckpointer checkpointer)
+  {
+    checkpointer_ = checkpointer;
+  }
+  
   protected void stop()
   {
     runnable_.set(false);
@@ -98,6 +125,19 @@ public abstract class AbstractAsyncQueryManager implements Runnable
 
   private String handle(List<? extends IAbstractStoredApplicationObject> data, IPagination pagination, ITraceContext trace)
   {
+    String after = null;
+
+    if (pagination != null)
+    {
+      ICursors cursors = pagination.getCursors();
+
+      if (cursors != null)
+        after = cursors.getAfter();
+    }
+    
+    CursorCheckpointer      checkpointer = checkpointer_;
+    CursorCheckpointer.Page page         = checkpointer == null ? null : checkpointer.pageStarted(after, data.size());
+    
     for(int i=0 ; i<data.size() ; i++)
     {
       IAbstractStoredApplicationObject item = data.get(i);
@@ -108,23 +148,33 @@ public abstract class AbstractAsyncQueryManager implements Runnable
         try
         {
           consumerManager_.consume(item, trace, allegroApi_);
-          
-          synchronized(handlerCount_)
-          {
-            handlerCount_.decrementAndGet();
-            handlerCount_.notifyAll();
-          }
         }
         catch(RuntimeException | RetryableConsumerException | FatalConsumerException e)
         {
           consumerManager_.getUnprocessableMessageConsumer().consume(item, trace,
               "Failed to process message", e);
         }
+        finally
+        {
+          if(page != null)
+            checkpointer.itemDone(page);
+          
+          handlerDone();
+        }
       };
       
       if(i < data.size() - 1)
       {
-        handlerExecutor_.submit(task);
+        // If the handler queue is bounded this blocks, or runs the task here, when the handlers fall behind.
+        try
+        {
+          handlerExecutor_.submit(task);
+        }
+        catch(RejectedExecutionException e)
+        {
+          handlerDone();
+          throw e;
+        }
       }
       else
       {
@@ -135,18 +185,26 @@ public abstract class AbstractAsyncQueryManager implements Runnable
 
       remainingItems_.decrementAndGet();
     }
+    
+    return after;
+  }
 
-    String after = null;
-
-    if (pagination != null)
+  private void handlerDone()
+  {
+    synchronized(handlerCount_)
     {
-      ICursors cursors = pagination.getCursors();
-
-      if (cursors != null)
-        after = cursors.getAfter();
+      handlerCount_.decrementAndGet();
+      handlerCount_.notifyAll();
     }
-    
-    return after;
+  }
+
+  /**
+   * 
+   * @return The number of items which have been passed to a handler but whose processing has not yet completed.
+   */
+  protected int getInFlightCount()
+  {
+    return handlerCount_.get();
   }
 
   protected void waitUntilIdle() throws InterruptedException
@@ -22,6 +22,10 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +48,7 @@ import com.symphony.oss.fugue.trace.ITraceContext;
 import com.symphony.oss.models.allegro.canon.facade.IAbstractReceivedChatMessage;
 import com.symphony.oss.models.allegro.canon.facade.IReceivedChatMessage;
 import com.symphony.oss.models.chat.canon.ILiveCurrentMessage;
+import com.symphony.oss.models.object.canon.facade.IApplicationObjectHeader;
 import com.symphony.oss.models.object.canon.facade.IApplicationObjectPayload;
 import com.symphony.oss.models.object.canon.facade.IStoredApplicationObject;
 
@@ -82,6 +87,12 @@ import com.symphony.oss.models.object.canon.facade.IStoredApplicationObject;
  * 
  * When reading chat messages, the object being consumed will always be an instance of ILiveCurrentMessage.
  * 
+ * A consumer of a payload type may be registered together with a header type, in which case it only receives
+ * payloads of stored objects whose (unencrypted) header is of that type. Decrypting the payload of a stored
+ * object is relatively expensive, so if every consumer of a payload type was registered together with a header
+ * type then the header of each stored object is used to decide whether any of those consumers could receive it,
+ * and the payload is only decrypted if so.
+ * 
  * @author Bruce Skingle
  */
 public abstract class AbstractConsumerManager
@@ -94,6 +105,13 @@ public abstract class AbstractConsumerManager
   private final boolean                                       hasChatTypes_;
   private final IRetryableConsumer<Object>                    defaultConsumer_;
   private final IErrorConsumer<Object>                        unprocessableMessageConsumer_;
+  private final ImmutableMap<Class<?>, Class<?>>              headerTypeMap_;
+  private final boolean                                       hasUnfilteredPayloadTypes_;
+  private final Map<Class<?>, Boolean>                        decryptionRequiredMap_ = new ConcurrentHashMap<>();
+  private final AtomicLong                                    decryptCount_          = new AtomicLong();
+  private final AtomicLong                                    decryptsAvoidedCount_  = new AtomicLong();
+  private final int                                           readAheadPages_;
+  private final int                                           readAheadItems_;
     
   AbstractConsumerManager(AbstractBuilder<?,?> builder)
   {
@@ -103,6 +121,24 @@ public abstract class AbstractConsumerManager
     hasChatTypes_         = builder.hasChatTypes_;
     defaultConsumer_      = builder.defaultConsumer_;
     unprocessableMessageConsumer_   = builder.unprocessableMessageConsumer_;
+    headerTypeMap_        = ImmutableMap.copyOf(builder.headerTypeMap_);
+    readAheadPages_       = builder.readAheadPages_;
+    readAheadItems_       = builder.readAheadItems_;
+    
+    boolean hasUnfilteredPayloadTypes = false;
+    
+    for(Class<?> type : consumerTypeList_)
+    {
+      if(isPayloadType(type) && !headerTypeMap_.containsKey(type))
+        hasUnfilteredPayloadTypes = true;
+    }
+    
+    hasUnfilteredPayloadTypes_ = hasUnfilteredPayloadTypes;
+  }
+  
+  private static boolean isPayloadType(Class<?> type)
+  {
+    return IAbstractReceivedChatMessage.class.isAssignableFrom(type) || IApplicationObjectPayload.class.isAssignableFrom(type);
   }
   
   /**
@@ -117,8 +153,11 @@ public abstract class AbstractConsumerManager
   {
     private Map<Class<?>, IRetryableConsumer<?>>             consumerMap_                  = new HashMap<>();
     private List<Class<?>>                                   consumerTypeList_             = new LinkedList<>();
+    private Map<Class<?>, Class<?>>                          headerTypeMap_                = new HashMap<>();
     private boolean                                          hasApplicationTypes_;
     private boolean                                          hasChatTypes_;
+    private int                                              readAheadPages_;
+    private int                                              readAheadItems_               = 10000;
     private IRetryableConsumer<Object>                       defaultConsumer_              = new IThreadSafeConsumer<Object>()
       {
         @Override
@@ -170,6 +209,26 @@ public abstract class AbstractConsumerManager
       return self();
     }
     
+    protected <H extends IApplicationObjectHeader, C> T withConsumer(Class<H> headerType, Class<C> type, IRetryableConsumer<C> consumer)
+    {
+      withConsumer(type, consumer);
+      
+      if(headerType != null)
+        headerTypeMap_.put(type, headerType);
+      
+      return self();
+    }
+    
+    protected <H extends IApplicationObjectHeader, C> T withConsumer(Class<H> headerType, Class<C> type, ISimpleRetryableConsumer<C> consumer)
+    {
+      withConsumer(type, consumer);
+      
+      if(headerType != null)
+        headerTypeMap_.put(type, headerType);
+      
+      return self();
+    }
+    
     
     @SuppressWarnings("unchecked")
     protected T withConsumerAdaptor(@SuppressWarnings("rawtypes") AbstractAdaptor adaptor)
@@ -258,12 +317,41 @@ public abstract class AbstractConsumerManager
       return self();
     }
     
+    /**
+     * Set the read ahead for partition and version scans.
+     * 
+     * While one page of a scan is being consumed, up to the given number of following pages are fetched
+     * in the background, so that the time spent waiting for the object store overlaps with the time spent
+     * consuming. Pages are only fetched ahead while they hold no more than the given number of objects
+     * in total, which bounds the memory used by a scan.
+     * 
+     * The default is no read ahead, each page is fetched only once the previous one has been consumed.
+     * 
+     * @param pages     The maximum number of pages to fetch ahead of the consumers, 0 disables read ahead.
+     * @param maxItems  The maximum number of objects to hold in pages which have been fetched ahead, default 10000.
+     * 
+     * @return This (fluent method).
+     */
+    public T withReadAhead(int pages, int maxItems)
+    {
+      readAheadPages_ = pages;
+      readAheadItems_ = maxItems;
+      
+      return self();
+    }
+    
     @Override
     protected void validate(FaultAccumulator faultAccumulator)
     {
       super.validate(faultAccumulator);
       
       faultAccumulator.checkNotNull(unprocessableMessageConsumer_, "UnprocessableMessageConsumer must not be set to null (there is a default, you don't have to set one)");
+      
+      if(readAheadPages_ < 0)
+        faultAccumulator.error("Read ahead pages must not be negative");
+      
+      if(readAheadItems_ < 1)
+        faultAccumulator.error("Read ahead maxItems must be at least 1");
     }
   }
 
@@ -276,6 +364,43 @@ public abstract class AbstractConsumerManager
     return consumerMap_.values();
   }
 
+  /**
+   * 
+   * @return The maximum number of pages of a scan which are fetched ahead of the consumers.
+   */
+  public int getReadAheadPages()
+  {
+    return readAheadPages_;
+  }
+
+  /**
+   * 
+   * @return The maximum number of objects held in pages of a scan which have been fetched ahead of the consumers.
+   */
+  public int getReadAheadItems()
+  {
+    return readAheadItems_;
+  }
+
+  /**
+   * 
+   * @return The number of stored object payloads which have been decrypted.
+   */
+  public long getDecryptCount()
+  {
+    return decryptCount_.get();
+  }
+
+  /**
+   * 
+   * @return The number of stored object payloads which were not decrypted because no consumer registered for
+   * their header type needs the payload.
+   */
+  public long getDecryptsAvoidedCount()
+  {
+    return decryptsAvoidedCount_.get();
+  }
+
   /**
    * Dispatch the given object to the most appropriate consumer.
    * 
@@ -288,7 +413,7 @@ public abstract class AbstractConsumerManager
    */
   public void consume(Object object, ITraceContext traceContext, IAllegroDecryptor opener) throws RetryableConsumerException, FatalConsumerException
   {
-    if(consumeChatTypes(object, traceContext, opener))
+    if(consumeChatTypes(object, traceContext, opener, null))
       return;
     
     IStoredApplicationObject storedApplicationObject = null;
@@ -300,20 +425,22 @@ public abstract class AbstractConsumerManager
     
     if(storedApplicationObject != null && storedApplicationObject.getEncryptedPayload() != null)
     {
-      if(hasChatTypes_ || hasApplicationTypes_)
+      if(isDecryptionRequired(storedApplicationObject))
       {
         try
         {
+          decryptCount_.incrementAndGet();
+          
           IApplicationObjectPayload applicationObjectPayload = opener.decryptObject(storedApplicationObject);
           
           if(applicationObjectPayload != null)
           {
-            if(consumeChatTypes(applicationObjectPayload, traceContext, opener))
+            if(consumeChatTypes(applicationObjectPayload, traceContext, opener, storedApplicationObject))
               return;
             
             if(hasApplicationTypes_)
             {
-              if(consume(applicationObjectPayload, traceContext))
+              if(consume(applicationObjectPayload, traceContext, storedApplicationObject))
                 return;
             }
           }
@@ -325,11 +452,40 @@ public abstract class AbstractConsumerManager
       }
     }
     
-    if(!consume(object, traceContext))
+    if(!consume(object, traceContext, null))
       defaultConsumer_.consume(object, traceContext);
   }
   
-  private boolean consumeChatTypes(Object object, ITraceContext traceContext, IAllegroDecryptor opener) throws RetryableConsumerException, FatalConsumerException
+  private boolean isDecryptionRequired(IStoredApplicationObject storedApplicationObject)
+  {
+    if(!(hasChatTypes_ || hasApplicationTypes_))
+      return false;
+    
+    if(hasUnfilteredPayloadTypes_)
+      return true;
+    
+    IApplicationObjectHeader header = storedApplicationObject.getHeader();
+    
+    // Only consumers registered with a header type need the payload and none of them can match a missing header.
+    boolean required = header != null && decryptionRequiredMap_.computeIfAbsent(header.getClass(), (headerType) ->
+    {
+      for(Class<?> t : headerTypeMap_.values())
+      {
+        if(t.isAssignableFrom(headerType))
+          return true;
+      }
+      
+      return false;
+    });
+    
+    if(!required)
+      decryptsAvoidedCount_.incrementAndGet();
+    
+    return required;
+  }
+  
+  private boolean consumeChatTypes(Object object, ITraceContext traceContext, IAllegroDecryptor opener,
+      @Nullable IStoredApplicationObject source) throws RetryableConsumerException, FatalConsumerException
   {
     if(hasChatTypes_ && object instanceof ILiveCurrentMessage)
     {
@@ -339,8 +495,8 @@ public abstract class AbstractConsumerManager
       {
         try
         {
-          consume(chatMessage, traceContext);
-          return true;
+          // A payload which no consumer accepts because of its header falls through to the other consumers.
+          return consume(chatMessage, traceContext, source) || source == null;
         }
         catch(IllegalArgumentException e)
         {
@@ -352,13 +508,19 @@ public abstract class AbstractConsumerManager
     return false;
   }
 
+  /**
+   * Pass the given object to the consumer of the most specific type which accepts it.
+   * 
+   * @param source  The stored object from whose payload the given object was decrypted, if any. A consumer
+   *                registered with a header type only accepts objects from a source with a header of that type.
+   */
   @SuppressWarnings({ "rawtypes", "unchecked" })
-  private boolean consume(Object object, ITraceContext traceContext) throws RetryableConsumerException, FatalConsumerException
+  private boolean consume(Object object, ITraceContext traceContext, @Nullable IStoredApplicationObject source) throws RetryableConsumerException, FatalConsumerException
   {
     Class<? extends Object> type = object.getClass();
     IRetryableConsumer consumer = consumerMap_.get(type);
     
-    if(consumer != null)
+    if(consumer != null && acceptsHeader(type, source))
     {
       consumer.consume(object, traceContext);
     }
@@ -367,7 +529,7 @@ public abstract class AbstractConsumerManager
     
     for(Class<?> t : consumerTypeList_)
     {
-      if(!t.isAssignableFrom(type))
+      if(!t.isAssignableFrom(type) || !acceptsHeader(t, source))
         continue;
       
       if(bestType == null || bestType.isAssignableFrom(t))
@@ -382,6 +544,21 @@ public abstract class AbstractConsumerManager
     return true;
   }
 
+  private boolean acceptsHeader(Class<?> consumerType, @Nullable IStoredApplicationObject source)
+  {
+    if(source == null)
+      return true;
+    
+    Class<?> headerType = headerTypeMap_.get(consumerType);
+    
+    if(headerType == null)
+      return true;
+    
+    IApplicationObjectHeader header = source.getHeader();
+    
+    return header != null && headerType.isAssignableFrom(header.getClass());
+  }
+
   /**
    * Close all consumers.
    * 
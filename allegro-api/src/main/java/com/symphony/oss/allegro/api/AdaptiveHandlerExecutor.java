@@ -0,0 +1,346 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A self tuning handler executor for async queries.
+ * 
+ * Tasks are run on a work stealing ForkJoinPool, but the number of tasks running at any one time is limited
+ * to a concurrency limit which varies between the given minimum and maximum according to the observed handler
+ * latency and the depth of the queue of waiting tasks.
+ * 
+ * The limit is raised while tasks are waiting and handler latency is not increasing, which is the case when
+ * handlers are blocked on I/O, and is lowered when handler latency rises with concurrency, which is the case
+ * when handlers are competing for CPU, or when the queue is empty and the available capacity is not being used.
+ * Idle pool threads are released by the ForkJoinPool.
+ *
+ */
+class AdaptiveHandlerExecutor extends AbstractExecutorService
+{
+  private static final long             ADJUST_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final int              MIN_WINDOW_COUNT      = 10;
+  private static final double           SMOOTHING             = 0.2;
+  private static final double           CONTENTION_GRADIENT   = 0.5;
+  private static final double           HEADROOM_GRADIENT     = 0.8;
+
+  private final int                     minParallelism_;
+  private final int                     maxParallelism_;
+  private final HandlerQueuePolicy      queuePolicy_;
+  private final BlockingQueue<Runnable> pending_;
+  private final ForkJoinPool            pool_;
+  private final Object                  lock_                 = new Object();
+
+  private volatile boolean              shutdown_;
+
+  // all guarded by lock_
+  private int                           limit_;
+  private int                           running_;
+  private long                          windowStart_          = System.nanoTime();
+  private long                          windowCount_;
+  private long                          windowLatencyNanos_;
+  private double                        latencyNanos_;
+  private double                        minLatencyNanos_      = Double.MAX_VALUE;
+
+  /**
+   * Constructor.
+   * 
+   * @param name            The name prefix for pool threads.
+   * @param minParallelism  The minimum concurrency limit.
+   * @param maxParallelism  The maximum concurrency limit, which is also the parallelism of the underlying pool.
+   * @param queueCapacity   The capacity of the queue of waiting tasks, or null for an unbounded queue.
+   * @param queuePolicy     The action to be taken when the queue of waiting tasks is full.
+   */
+  AdaptiveHandlerExecutor(String name, int minParallelism, int maxParallelism, Integer queueCapacity, HandlerQueuePolicy queuePolicy)
+  {
+    minParallelism_ = minParallelism;
+    maxParallelism_ = maxParallelism;
+    queuePolicy_    = queuePolicy;
+    pending_        = queueCapacity == null ? new LinkedBlockingQueue<>() : new LinkedBlockingQueue<>(queueCapacity);
+    limit_          = minParallelism;
+    
+    pool_ = new ForkJoinPool(maxParallelism, (pool) ->
+    {
+      ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      
+      thread.setName(name + "-" + thread.getPoolIndex());
+      thread.setDaemon(true);
+      
+      return thread;
+    }, null, true);
+  }
+
+  /**
+   * 
+   * @return The current concurrency limit.
+   */
+  int getParallelismLimit()
+  {
+    synchronized(lock_)
+    {
+      return limit_;
+    }
+  }
+
+  /**
+   * 
+   * @return The number of tasks currently running.
+   */
+  int getRunningCount()
+  {
+    synchronized(lock_)
+    {
+      return running_;
+    }
+  }
+
+  /**
+   * 
+   * @return The number of tasks waiting to run.
+   */
+  int getQueueDepth()
+  {
+    return pending_.size();
+  }
+
+  /**
+   * 
+   * @return The number of threads in the underlying pool.
+   */
+  int getPoolSize()
+  {
+    return pool_.getPoolSize();
+  }
+
+  @Override
+  public void execute(Runnable command)
+  {
+    boolean queued;
+    
+    synchronized(lock_)
+    {
+      // Checked with the lock held, so that no task can be accepted after shutdown() has decided to shut down the pool.
+      if(shutdown_)
+        throw new RejectedExecutionException("Handler executor is shut down");
+      
+      if(running_ < limit_ && pending_.isEmpty())
+      {
+        running_++;
+        dispatch(command);
+        return;
+      }
+      
+      queued = pending_.offer(command);
+    }
+    
+    if(!queued)
+    {
+      if(queuePolicy_ == HandlerQueuePolicy.CallerRuns)
+      {
+        command.run();
+        return;
+      }
+      
+      try
+      {
+        while(!pending_.offer(command, 1, TimeUnit.SECONDS))
+        {
+          if(shutdown_)
+            throw new RejectedExecutionException("Handler executor is shut down");
+        }
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new RejectedExecutionException("Interrupted waiting for space in the handler queue", e);
+      }
+      
+      synchronized(lock_)
+      {
+        // The pool may have been shut down while we were waiting, in which case nothing would run the task.
+        if(shutdown_ && pending_.remove(command))
+          throw new RejectedExecutionException("Handler executor is shut down");
+      }
+    }
+    
+    drain();
+  }
+
+  private void dispatch(Runnable command)
+  {
+    pool_.execute(() ->
+    {
+      long start = System.nanoTime();
+      
+      try
+      {
+        command.run();
+      }
+      finally
+      {
+        completed(System.nanoTime() - start);
+      }
+    });
+  }
+
+  private void drain()
+  {
+    while(true)
+    {
+      Runnable next;
+      
+      synchronized(lock_)
+      {
+        if(running_ >= limit_)
+          return;
+        
+        next = pending_.poll();
+        
+        if(next == null)
+          return;
+        
+        running_++;
+      }
+      
+      dispatch(next);
+    }
+  }
+
+  private void completed(long latencyNanos)
+  {
+    boolean terminate;
+    
+    synchronized(lock_)
+    {
+      running_--;
+      windowCount_++;
+      windowLatencyNanos_ += latencyNanos;
+      
+      adjust();
+    }
+    
+    drain();
+    
+    synchronized(lock_)
+    {
+      terminate = shutdown_ && running_ == 0 && pending_.isEmpty();
+    }
+    
+    if(terminate)
+      pool_.shutdown();
+  }
+
+  /*
+   * Called with lock_ held.
+   */
+  private void adjust()
+  {
+    long now = System.nanoTime();
+    
+    if(now - windowStart_ < ADJUST_INTERVAL_NANOS || (windowCount_ < MIN_WINDOW_COUNT && now - windowStart_ < 10 * ADJUST_INTERVAL_NANOS))
+      return;
+    
+    double windowLatency = (double)windowLatencyNanos_ / windowCount_;
+    
+    // Smooth the latency, a window may contain an unrepresentative mix of fast and slow handlers.
+    latencyNanos_ = latencyNanos_ == 0 ? windowLatency : latencyNanos_ + (windowLatency - latencyNanos_) * SMOOTHING;
+    
+    double latency = latencyNanos_;
+    
+    // The minimum drifts slowly upwards so that it tracks changes in the workload.
+    if(latency < minLatencyNanos_)
+      minLatencyNanos_ = latency;
+    else
+      minLatencyNanos_ += (latency - minLatencyNanos_) * 0.01;
+    
+    double gradient = minLatencyNanos_ / latency;
+    int    backlog  = pending_.size();
+    
+    if(gradient < CONTENTION_GRADIENT)
+    {
+      limit_ = Math.max(minParallelism_, (int)(limit_ * 0.9));
+    }
+    else if(backlog > 0 && gradient >= HEADROOM_GRADIENT)
+    {
+      limit_ = Math.min(maxParallelism_, limit_ + Math.max(1, Math.min(backlog, limit_)));
+    }
+    else if(backlog == 0 && running_ < limit_ / 2)
+    {
+      limit_ = Math.max(minParallelism_, limit_ - 1);
+    }
+    
+    windowStart_        = now;
+    windowCount_        = 0;
+    windowLatencyNanos_ = 0;
+  }
+
+  @Override
+  public void shutdown()
+  {
+    boolean terminate;
+    
+    synchronized(lock_)
+    {
+      shutdown_ = true;
+      terminate = running_ == 0 && pending_.isEmpty();
+    }
+    
+    if(terminate)
+      pool_.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow()
+  {
+    List<Runnable> result = new ArrayList<>();
+    
+    shutdown_ = true;
+    pending_.drainTo(result);
+    pool_.shutdownNow();
+    
+    return result;
+  }
+
+  @Override
+  public boolean isShutdown()
+  {
+    return shutdown_;
+  }
+
+  @Override
+  public boolean isTerminated()
+  {
+    return pool_.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+  {
+    return pool_.awaitTermination(timeout, unit);
+  }
+}
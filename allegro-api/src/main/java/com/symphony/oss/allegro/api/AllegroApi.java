@@ -755,6 +755,11 @@ public class AllegroApi extends AllegroBaseApi<IAllegro2Api> implements IAllegro
     if(storedApplicationObject.getEncryptedPayload() == null)
       return null;
     
+    IApplicationObjectPayload cached = absoluteObjectCache_.getPayload(storedApplicationObject.getAbsoluteHash());
+    
+    if(cached != null)
+      return cached;
+    
     ImmutableByteArray plainText = allegro2Api_.decrypt(storedApplicationObject.getThreadId(), storedApplicationObject.getRotationId(), 
         storedApplicationObject.getEncryptedPayload());
     
@@ -773,6 +778,8 @@ public class AllegroApi extends AllegroBaseApi<IAllegro2Api> implements IAllegro
       payload = new ApplicationObjectPayload(entity.getJsonObject(), objectModelRegistry);
     }
     
+    absoluteObjectCache_.putPayload(storedApplicationObject.getAbsoluteHash(), payload);
+    
     return payload;
   }
 
@@ -929,6 +936,12 @@ public class AllegroApi extends AllegroBaseApi<IAllegro2Api> implements IAllegro
     return allegro2Api_.decrypt(message);
   }
 
+  @Override
+  public IReceivedChatMessage decryptLazily(ILiveCurrentMessage message, Runnable decryptListener)
+  {
+    return allegro2Api_.decryptLazily(message, decryptListener);
+  }
+
   @Override
   @Deprecated
   public IReceivedChatMessage decryptChatMessage(ILiveCurrentMessage message)
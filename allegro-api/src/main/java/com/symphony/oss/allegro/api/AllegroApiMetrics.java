@@ -0,0 +1,141 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+/**
+ * Metrics of an Allegro API instance.
+ * 
+ * The values are live, each call returns the current value.
+ *
+ */
+public class AllegroApiMetrics
+{
+  private final AbsoluteObjectCache absoluteObjectCache_;
+  private final SingleFlight<?>     singleFlight_;
+  private final MetadataCache<?>    metadataCache_;
+
+  AllegroApiMetrics(AbsoluteObjectCache absoluteObjectCache, SingleFlight<?> singleFlight, MetadataCache<?> metadataCache)
+  {
+    absoluteObjectCache_ = absoluteObjectCache;
+    singleFlight_        = singleFlight;
+    metadataCache_       = metadataCache;
+  }
+  
+  /**
+   * 
+   * @return The number of calls to fetchAbsolute which were answered from the cache.
+   */
+  public long getAbsoluteCacheHits()
+  {
+    return absoluteObjectCache_.getHitCount();
+  }
+  
+  /**
+   * 
+   * @return The number of calls to fetchAbsolute which required a fetch from the server.
+   */
+  public long getAbsoluteCacheMisses()
+  {
+    return absoluteObjectCache_.getMissCount();
+  }
+  
+  /**
+   * 
+   * @return The proportion of calls to fetchAbsolute which were answered from the cache, between 0 and 1.
+   */
+  public double getAbsoluteCacheHitRate()
+  {
+    long hits  = getAbsoluteCacheHits();
+    long total = hits + getAbsoluteCacheMisses();
+    
+    return total == 0 ? 0.0 : (double)hits / total;
+  }
+  
+  /**
+   * 
+   * @return The number of objects held in the absolute object cache.
+   */
+  public int getAbsoluteCacheSize()
+  {
+    return absoluteObjectCache_.size();
+  }
+  
+  /**
+   * 
+   * @return The approximate size in bytes of the objects held in the absolute object cache.
+   */
+  public long getAbsoluteCacheBytes()
+  {
+    return absoluteObjectCache_.getBytes();
+  }
+  
+  /**
+   * 
+   * @return The number of reads (fetchCurrent, fetchObject, fetchPartition and fetchAbsolute cache misses) made.
+   */
+  public long getCoalescableCalls()
+  {
+    return singleFlight_.getCallCount();
+  }
+  
+  /**
+   * 
+   * @return The number of reads which shared the response to an identical read already in flight instead of making a request.
+   */
+  public long getCoalescedCalls()
+  {
+    return singleFlight_.getCoalescedCount();
+  }
+  
+  /**
+   * 
+   * @return The number of reads of partitions, partition users, entitlements and service info answered from the cache.
+   */
+  public long getMetadataCacheHits()
+  {
+    return metadataCache_.getHitCount();
+  }
+  
+  /**
+   * 
+   * @return The number of reads of partitions, partition users, entitlements and service info which waited for the server.
+   */
+  public long getMetadataCacheMisses()
+  {
+    return metadataCache_.getMissCount();
+  }
+  
+  /**
+   * 
+   * @return The number of cached metadata entries which have been reloaded in the background before they expired.
+   */
+  public long getMetadataCacheRefreshes()
+  {
+    return metadataCache_.getRefreshCount();
+  }
+  
+  @Override
+  public String toString()
+  {
+    return String.format("absoluteCache hits=%d misses=%d hitRate=%.3f size=%d bytes=%d coalesced=%d/%d metadataCache hits=%d misses=%d refreshes=%d",
+        getAbsoluteCacheHits(), getAbsoluteCacheMisses(), getAbsoluteCacheHitRate(),
+        getAbsoluteCacheSize(), getAbsoluteCacheBytes(), getCoalescedCalls(), getCoalescableCalls(),
+        getMetadataCacheHits(), getMetadataCacheMisses(), getMetadataCacheRefreshes());
+  }
+}
@@ -29,7 +29,9 @@ import java.net.URL;
 import java.security.PrivateKey;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -37,8 +39,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.annotation.Nullable;
 
@@ -46,6 +54,7 @@ import org.apache.http.client.CookieStore;
 import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,10 +75,10 @@ import com.symphony.oss.canon.runtime.IEntity;
 import com.symphony.oss.canon.runtime.IEntityFactory;
 import com.symphony.oss.canon.runtime.ModelRegistry;
 import com.symphony.oss.canon.runtime.exception.BadRequestException;
-import com.symphony.oss.canon.runtime.exception.NotFoundException;
 import com.symphony.oss.canon.runtime.exception.ServerErrorException;
 import com.symphony.oss.canon.runtime.http.client.IAuthenticationProvider;
 import com.symphony.oss.canon.runtime.jjwt.JwtBase;
+import com.symphony.oss.commons.concurrent.NamedThreadFactory;
 import com.symphony.oss.commons.fault.CodingFault;
 import com.symphony.oss.commons.fault.FaultAccumulator;
 import com.symphony.oss.commons.fluent.BaseAbstractBuilder;
@@ -104,6 +113,7 @@ import com.symphony.oss.models.object.canon.FeedRequest;
 import com.symphony.oss.models.object.canon.IAbstractStoredApplicationObject;
 import com.symphony.oss.models.object.canon.IFeed;
 import com.symphony.oss.models.object.canon.IFeedsEndpoint;
+import com.symphony.oss.models.object.canon.INamedUserIdObject;
 import com.symphony.oss.models.object.canon.IPageOfAbstractStoredApplicationObject;
 import com.symphony.oss.models.object.canon.IPageOfStoredApplicationObject;
 import com.symphony.oss.models.object.canon.IPageOfUserPermissions;
@@ -157,8 +167,13 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
   
   private static final Logger                   log_                       = LoggerFactory.getLogger(AllegroBaseApi.class);
   private static final long                     FAILED_CONSUMER_RETRY_TIME = TimeUnit.SECONDS.toSeconds(30);
+  private static final int                      MAX_FEEDS_CONTAINERS       = 1000;
+  private static final long                     FEEDS_IDLE_MILLIS          = AllegroSqsFeedsContainer.IDLE_MILLIS;
+  private static final int                      ABSOLUTE_FETCH_PARALLELISM = 10;
   
-  private static Map<String, AllegroSqsFeedsContainer> feedsMap_  = new ConcurrentHashMap<>();
+  private final FeedsContainerCache             feedsContainers_           = new FeedsContainerCache(MAX_FEEDS_CONTAINERS, FEEDS_IDLE_MILLIS);
+  private final ExecutorService                 fetchExecutor_             = Executors.newCachedThreadPool(new NamedThreadFactory("Allegro-fetch", true));
+  private final ConcurrentFetcher               concurrentFetcher_         = new ConcurrentFetcher(fetchExecutor_);
   
   static
   {
@@ -192,7 +207,10 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
 
   final CloseableHttpClient                  apiHttpClient_;
 
-  private final Map<ServiceId, IServiceInfo> serviceMap_   = new HashMap<>();
+  final AbsoluteObjectCache                  absoluteObjectCache_;
+  private final SingleFlight<List<Object>>   singleFlight_ = new SingleFlight<>();
+  private final MetadataCache<List<Object>>  metadataCache_;
+  private final AllegroApiMetrics            metrics_;
 
   
   AllegroBaseApi(R modelRegistryProvider, AbstractBuilder<? extends IAllegroBaseConfiguration, ?, ?, ?> builder)
@@ -200,6 +218,11 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
     modelRegistryProvider_  = modelRegistryProvider;
     config_                 = builder.config_;
     traceFactory_           = builder.traceFactory_;
+    absoluteObjectCache_    = new AbsoluteObjectCache(builder.absoluteCacheMaxEntries_, builder.absoluteCacheMaxBytes_,
+        builder.absoluteCachePayloads_);
+    metadataCache_          = new MetadataCache<>(builder.metadataCacheTtlMillis_, builder.metadataCacheRefreshAheadMillis_,
+        builder.metadataCacheMaxEntries_, fetchExecutor_, singleFlight_);
+    metrics_                = new AllegroApiMetrics(absoluteObjectCache_, singleFlight_, metadataCache_);
     
     getModelRegistry()
         .withFactories(ObjectModel.FACTORIES)
@@ -275,6 +298,12 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
         .withFactories(AuthcModel.FACTORIES);
     protected C                               config_;
     protected PrivateKey                      rsaCredential_;
+    protected int                             absoluteCacheMaxEntries_   = 1000;
+    protected long                            absoluteCacheMaxBytes_     = 32 * 1024 * 1024;
+    protected boolean                         absoluteCachePayloads_;
+    protected long                            metadataCacheTtlMillis_;
+    protected long                            metadataCacheRefreshAheadMillis_;
+    protected int                             metadataCacheMaxEntries_         = 1000;
     private C                                 setConfig_;
     private CloseableHttpClient               defaultHttpClient_;
     private CloseableHttpClient               apiHttpClient_;
@@ -398,6 +427,68 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
       
       return self();
     }
+    
+    /**
+     * Set the bounds of the cache of objects fetched by absolute hash.
+     * 
+     * The object with a given absolute hash never changes, so these objects are cached without expiry until
+     * they are evicted to keep within these bounds. The default is 1000 objects and 32MB.
+     * 
+     * @param maxEntries  The maximum number of objects to cache, zero disables the cache.
+     * @param maxBytes    The maximum approximate total size of the cached objects.
+     * 
+     * @return This (fluent method).
+     */
+    public T withAbsoluteObjectCache(int maxEntries, long maxBytes)
+    {
+      absoluteCacheMaxEntries_ = maxEntries;
+      absoluteCacheMaxBytes_   = maxBytes;
+      
+      return self();
+    }
+    
+    /**
+     * Also cache the decrypted payloads of objects in the absolute object cache.
+     * 
+     * This saves repeated decryption when the same object is fetched and decrypted many times, but means
+     * that plain text is held in memory. The default is false.
+     * 
+     * @param cachePayloads If true then decrypted payloads are cached.
+     * 
+     * @return This (fluent method).
+     */
+    public T withCachedPayloads(boolean cachePayloads)
+    {
+      absoluteCachePayloads_ = cachePayloads;
+      
+      return self();
+    }
+    
+    /**
+     * Set the parameters of the cache of partitions, partition users, entitlements and service info.
+     * 
+     * Entries are kept for the given TTL, and an entry which is read within the refresh ahead period before
+     * it expires is reloaded in the background. Entries are invalidated when they are changed through this
+     * API, but changes made elsewhere are only seen once the entry is reloaded.
+     * 
+     * The cache is disabled by default, so every fetch reads the current value from the server, although
+     * concurrent identical fetches still share one request. A TTL of 60 seconds with a refresh ahead period
+     * of 15 seconds suits applications which can tolerate metadata up to a minute old.
+     * 
+     * @param ttlMillis           The time for which an entry is valid, zero disables the cache.
+     * @param refreshAheadMillis  The period before expiry during which a read causes a background reload.
+     * @param maxEntries          The maximum number of entries.
+     * 
+     * @return This (fluent method).
+     */
+    public T withMetadataCache(long ttlMillis, long refreshAheadMillis, int maxEntries)
+    {
+      metadataCacheTtlMillis_          = ttlMillis;
+      metadataCacheRefreshAheadMillis_ = refreshAheadMillis;
+      metadataCacheMaxEntries_         = maxEntries;
+      
+      return self();
+    }
 
     @Deprecated
     public T withCipherSuite(String cipherSuiteId)
@@ -575,10 +666,19 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
   {
     return config_;
   }
+  
+  @Override
+  public AllegroApiMetrics getMetrics()
+  {
+    return metrics_;
+  }
 
   @Override
   public void close()
   {
+    feedsContainers_.close();
+    fetchExecutor_.shutdown();
+    
     try
     {
       apiHttpClient_.close();
@@ -603,6 +703,8 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
       .withCanonPayload(object)
       .build()
       .execute(apiHttpClient_);
+    
+    singleFlight_.invalidate();
   }
   
   @Override
@@ -612,6 +714,8 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
       .withCanonPayload(objects)
       .build()
       .execute(apiHttpClient_);
+    
+    singleFlight_.invalidate();
   }
   
   @Override
@@ -669,7 +773,12 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
         .withUnprocessableMessageConsumer(unprocessableConsumer)
         .withSubscription(new AllegroSqsSubscription(request, feeds.getFeedIds(), this))
         .withModelRegistry(getModelRegistry())
-        .withHttpClient(apiHttpClient_);
+        .withHttpClient(apiHttpClient_)
+        .withDuplicateFilterFactory(consumerManager::newDuplicateFilter)
+        .withConflator(consumerManager.newConflator())
+        .withFeedWeights(getFeedWeights(request))
+        .withHandlerQueueCapacity(consumerManager.getHandlerQueueCapacity())
+        .withHandlerQueuePolicy(consumerManager.getHandlerQueuePolicy());
     
     
     IConnectionSettings connSettings = getConfiguration().getApiConnectionSettings();
@@ -688,6 +797,19 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
 
   }
   
+  private Map<String, Integer> getFeedWeights(FetchFeedObjectsRequest request)
+  {
+    Map<String, Integer> weights = new HashMap<>();
+    
+    for(FeedQuery query : request.getQueryList())
+    {
+      if(query.getWeight() != null)
+        weights.put(query.getHash(getUserId()).toStringBase64(), query.getWeight());
+    }
+    
+    return weights;
+  }
+  
   private void fetchFeedObjects(FetchFeedObjectsRequest request, ConsumerManager consumerManager)
   {
 
@@ -717,124 +839,95 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
         {
           ITraceContext subParentTrace = parentTraceTransaction.open();
 
-          for (FeedQuery query : queries)
+          fetchFeeds(queries, consumerManager.getFeedParallelism(),
+              (query) -> fetchFeedDirect(feeds, query, consumerManager, subParentTrace));
+        }
+      }
+      else
+        fetchFeedObjectsFromServerSync(request, consumerManager);
+    }
+    
+    consumerManager.closeConsumers();
+  }
+  
+  private void fetchFeedDirect(AllegroSqsFeedsContainer feeds, FeedQuery query, ConsumerManager consumerManager, ITraceContext subParentTrace)
+  {
+    Hash feedHash = query.getHash(getUserId());
+    
+    try(ITraceContextTransaction traceTransaction = subParentTrace.createSubContext("FetchFeed", feedHash.toString()))
+    {
+      ITraceContext trace = traceTransaction.open();
+
+      List<SqsResponseMessage> messages = new AllegroSqsRequestBuilder(this, feeds.getEndpoint())
+          .withFeedHash(feedHash.toString())
+          .withAction(SqsAction.RECEIVE)
+          .withMaxNumberOfMessages(query.getMaxItems() != null ? query.getMaxItems() : 1)
+          .withWaitTimeSeconds(0)          
+        .execute(apiHttpClient_);
+       
+      // Acknowledgements are sent in batches, rather than one request per message.
+      try(SqsAckAccumulator ackAccumulator = new SqsAckAccumulator(feeds, apiHttpClient_, feedHash.toString(), null, 0))
+      {
+        for(SqsResponseMessage message : messages)
+        {
+          // Other feeds may be being fetched in parallel, but consumers are single threaded.
+          synchronized(consumerManager)
           {
-            Hash feedHash = query.getHash(getUserId());
-            
-            try(ITraceContextTransaction traceTransaction = subParentTrace.createSubContext("FetchFeed", feedHash.toString()))
+            try
             {
-              ITraceContext trace = traceTransaction.open();
-
-              List<SqsResponseMessage> messages = new AllegroSqsRequestBuilder(this, feeds.getEndpoint())
-                  .withFeedHash(feedHash.toString())
-                  .withAction(SqsAction.RECEIVE)
-                  .withMaxNumberOfMessages(query.getMaxItems() != null ? query.getMaxItems() : 1)
-                  .withWaitTimeSeconds(0)          
-                .execute(apiHttpClient_);
-               
-              int ackCnt = 0;
-              
-              ArrayList<SqsResponseMessage> recv_messages = new ArrayList<>();
-              
-              for(SqsResponseMessage message : messages)
+              IEntity entity = getModelRegistry().parseOne(new StringReader(message.getPayload()));
+
+              if (entity instanceof IAbstractStoredApplicationObject)
               {
-                try
-                {
-                  IEntity entity = getModelRegistry().parseOne(new StringReader(message.getPayload()));
-
-                  if (entity instanceof IAbstractStoredApplicationObject)
-                  {
-                    IAbstractStoredApplicationObject object = (IAbstractStoredApplicationObject) entity;
-                    consume(consumerManager, object, trace);
-                    
-                    recv_messages.addAll(new AllegroSqsRequestBuilder(this, feeds.getEndpoint())
-                        .withFeedHash(feedHash.toString())
-                        .withAction(SqsAction.DELETE)
-                        .withReceiptHandle(message.getReceiptHandle())
-                      .execute(apiHttpClient_));
-                    
-                    ackCnt++;
-
-                  }
-                  else
-                  {
-                    log_.error("Retrieved unexpected feed entity of type " + entity.getCanonType());
-                  }                 
-                }
-                catch(RetryableConsumerException e)
-                {
-                  long delay = e.getRetryTime() == null || e.getRetryTimeUnit() == null ? FAILED_CONSUMER_RETRY_TIME : e.getRetryTimeUnit().toSeconds(e.getRetryTime());
-                  
-                  log_.warn("Transient processing failure, will retry (forever)", e);
-
-                  recv_messages.addAll(new AllegroSqsRequestBuilder(this, feeds.getEndpoint())
-                      .withFeedHash(feedHash.toString())
-                      .withAction(SqsAction.EXTEND)
-                      .withReceiptHandle(message.getReceiptHandle())
-                      .withVisibilityTimeout((int)delay)
-                    .execute(apiHttpClient_));
-                  
-                  ackCnt++;
-                }
-                catch (RuntimeException  e)
-                {
-                  log_.warn("Unexpected processing failure, will retry (forever)", e);
-
-                  recv_messages.addAll(new AllegroSqsRequestBuilder(this, feeds.getEndpoint())
-                      .withFeedHash(feedHash.toString())
-                      .withAction(SqsAction.EXTEND)
-                      .withReceiptHandle(message.getReceiptHandle())
-                      .withVisibilityTimeout((int)FAILED_CONSUMER_RETRY_TIME)
-                    .execute(apiHttpClient_));
-                  
-                  ackCnt++;
-                }
-                catch (FatalConsumerException e)
-                {
-                  log_.error("Unprocessable message, aborted", e);
-        
-                  trace.trace("MESSAGE_IS_UNPROCESSABLE");
-                  
-                  recv_messages.addAll(new AllegroSqsRequestBuilder(this, feeds.getEndpoint())
-                      .withFeedHash(feedHash.toString())
-                      .withAction(SqsAction.DELETE)
-                      .withReceiptHandle(message.getReceiptHandle())
-                    .execute(apiHttpClient_));
-                  
-                  ackCnt++;
-                  
-                  consumerManager.getUnprocessableMessageConsumer().consume(message.getPayload(), trace, "Unprocessable message, aborted", e);
-                }
+                IAbstractStoredApplicationObject object = (IAbstractStoredApplicationObject) entity;
+                consume(consumerManager, object, trace);
+              
+                ackAccumulator.delete(message.getReceiptHandle());
+
               }
-//            System.out.println("DELETING TOOK "+(System.currentTimeMillis() - start));
-              if(ackCnt>0)
+              else
               {
-                // Delete (ACK) the consumed messages
-                messages = recv_messages;
-              }
+                log_.error("Retrieved unexpected feed entity of type " + entity.getCanonType());
+              }                 
+            }
+            catch(RetryableConsumerException e)
+            {
+              long delay = e.getRetryTime() == null || e.getRetryTimeUnit() == null ? FAILED_CONSUMER_RETRY_TIME : e.getRetryTimeUnit().toSeconds(e.getRetryTime());
+            
+              log_.warn("Transient processing failure, will retry (forever)", e);
+
+              ackAccumulator.extend(message.getReceiptHandle(), (int)delay);
+            }
+            catch (RuntimeException  e)
+            {
+              log_.warn("Unexpected processing failure, will retry (forever)", e);
+
+              ackAccumulator.extend(message.getReceiptHandle(), (int)FAILED_CONSUMER_RETRY_TIME);
+            }
+            catch (FatalConsumerException e)
+            {
+              log_.error("Unprocessable message, aborted", e);
+  
+              trace.trace("MESSAGE_IS_UNPROCESSABLE");
+            
+              ackAccumulator.delete(message.getReceiptHandle());
+            
+              consumerManager.getUnprocessableMessageConsumer().consume(message.getPayload(), trace, "Unprocessable message, aborted", e);
             }
           }
+        }
       }
     }
-    else
-      fetchFeedObjectsFromServerSync(request, consumerManager);
-    }
-    
-    consumerManager.closeConsumers();
+  }
+  
+  private void fetchFeeds(List<FeedQuery> queries, int parallelism, Consumer<FeedQuery> fetcher)
+  {
+    concurrentFetcher_.fetch(queries, parallelism, fetcher, (query) -> "feed " + query.getHash(getUserId()));
   }
   
   private AllegroSqsFeedsContainer refreshFeeds(List<FeedId> feedIds) 
   {     
-    StringBuilder sb = new StringBuilder();
-    
-    for(FeedId feed : feedIds) 
-      sb.append(feed.getHash(getUserId()));
-    
-    String key = sb.toString();
-
-    AllegroSqsFeedsContainer provider = feedsMap_.get(key);
-    if(provider == null)  
-       feedsMap_.put(key, provider = new AllegroSqsFeedsContainer(feedIds, getUserId(), this));
+    AllegroSqsFeedsContainer provider = feedsContainers_.get(feedIds, getUserId(), this);
     
     provider.refresh();
     
@@ -866,6 +959,8 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
       .withSubscription(new AllegroSubscription(request, this))
       .withSubscriberThreadPoolSize(consumerManager.getSubscriberThreadPoolSize())
       .withHandlerThreadPoolSize(consumerManager.getHandlerThreadPoolSize())
+      .withDuplicateFilterFactory(consumerManager::newDuplicateFilter)
+      .withConflator(consumerManager.newConflator())
     .build();
   
   return subscriberManager;
@@ -878,81 +973,88 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
     {
       ITraceContext parentTrace = parentTraceTransaction.open();
 
-      for (FeedQuery query : request.getQueryList())
+      fetchFeeds(request.getQueryList(), consumerManager.getFeedParallelism(),
+          (query) -> fetchFeedFromServer(query, consumerManager, parentTrace));
+    }
+    
+    consumerManager.closeConsumers();
+  }
+  
+  private void fetchFeedFromServer(FeedQuery query, ConsumerManager consumerManager, ITraceContext parentTrace)
+  {
+    Hash feedHash = query.getHash(getUserId());
+    
+    try(ITraceContextTransaction traceTransaction = parentTrace.createSubContext("FetchFeed", feedHash.toString()))
+    {
+      ITraceContext trace = traceTransaction.open();
+      
+      List<IFeedObject> messages  = objectApiClient_.newFeedsFeedHashObjectsPostHttpRequestBuilder()
+          .withFeedHash(feedHash)
+          .withCanonPayload(new FeedRequest.Builder()
+              .withMaxItems(query.getMaxItems() != null ? query.getMaxItems() : 1)
+              .build())
+          .build()
+          .execute(apiHttpClient_);
+      
+      FeedRequest.Builder builder = new FeedRequest.Builder()
+          .withMaxItems(0)
+          .withWaitTimeSeconds(0);
+      int ackCnt = 0;
+      
+      for(IFeedObject message : messages)
       {
-        Hash feedHash = query.getHash(getUserId());
-        
-        try(ITraceContextTransaction traceTransaction = parentTrace.createSubContext("FetchFeed", feedHash.toString()))
+        // Other feeds may be being fetched in parallel, but consumers are single threaded.
+        synchronized(consumerManager)
         {
-          ITraceContext trace = traceTransaction.open();
-          
-          List<IFeedObject> messages  = objectApiClient_.newFeedsFeedHashObjectsPostHttpRequestBuilder()
-              .withFeedHash(feedHash)
-              .withCanonPayload(new FeedRequest.Builder()
-                  .withMaxItems(query.getMaxItems() != null ? query.getMaxItems() : 1)
-                  .build())
-              .build()
-              .execute(apiHttpClient_);
-          
-          FeedRequest.Builder builder = new FeedRequest.Builder()
-              .withMaxItems(0)
-              .withWaitTimeSeconds(0);
-          int ackCnt = 0;
-          
-          for(IFeedObject message : messages)
+          try
           {
-            try
-            {
-              consume(consumerManager, message.getPayload(), trace);
-                
-              builder.withDelete(new FeedObjectDelete.Builder()
-                  .withReceiptHandle(message.getReceiptHandle())
-                  .build()
-                  );
-              ackCnt++;
-            }
-            catch(RetryableConsumerException e)
-            {
-              log_.warn("Transient processing failure, will retry (forever)", e);
-              builder.withExtend(createExtend(message.getReceiptHandle(), e.getRetryTime(), e.getRetryTimeUnit()));
-              ackCnt++;
-            }
-            catch (RuntimeException  e)
-            {
-              log_.warn("Unexpected processing failure, will retry (forever)", e);
-              builder.withExtend(createExtend(message.getReceiptHandle(), null, null));
-              ackCnt++;
-            }
-            catch (FatalConsumerException e)
-            {
-              log_.error("Unprocessable message, aborted", e);
-    
-              trace.trace("MESSAGE_IS_UNPROCESSABLE");
-              
-              builder.withDelete(new FeedObjectDelete.Builder()
-                  .withReceiptHandle(message.getReceiptHandle())
-                  .build()
-                  );
-              ackCnt++;
+            consume(consumerManager, message.getPayload(), trace);
               
-              consumerManager.getUnprocessableMessageConsumer().consume(message.getPayload(), trace, "Unprocessable message, aborted", e);
-            }
+            builder.withDelete(new FeedObjectDelete.Builder()
+                .withReceiptHandle(message.getReceiptHandle())
+                .build()
+                );
+            ackCnt++;
           }
-          
-          if(ackCnt>0)
+          catch(RetryableConsumerException e)
+          {
+            log_.warn("Transient processing failure, will retry (forever)", e);
+            builder.withExtend(createExtend(message.getReceiptHandle(), e.getRetryTime(), e.getRetryTimeUnit()));
+            ackCnt++;
+          }
+          catch (RuntimeException  e)
           {
-            // Delete (ACK) the consumed messages
-            messages = objectApiClient_.newFeedsFeedHashObjectsPostHttpRequestBuilder()
-                .withFeedHash(feedHash)
-                .withCanonPayload(builder.build())
+            log_.warn("Unexpected processing failure, will retry (forever)", e);
+            builder.withExtend(createExtend(message.getReceiptHandle(), null, null));
+            ackCnt++;
+          }
+          catch (FatalConsumerException e)
+          {
+            log_.error("Unprocessable message, aborted", e);
+  
+            trace.trace("MESSAGE_IS_UNPROCESSABLE");
+            
+            builder.withDelete(new FeedObjectDelete.Builder()
+                .withReceiptHandle(message.getReceiptHandle())
                 .build()
-                .execute(apiHttpClient_);
+                );
+            ackCnt++;
+            
+            consumerManager.getUnprocessableMessageConsumer().consume(message.getPayload(), trace, "Unprocessable message, aborted", e);
           }
         }
       }
+      
+      if(ackCnt>0)
+      {
+        // Delete (ACK) the consumed messages
+        objectApiClient_.newFeedsFeedHashObjectsPostHttpRequestBuilder()
+            .withFeedHash(feedHash)
+            .withCanonPayload(builder.build())
+            .build()
+            .execute(apiHttpClient_);
+      }
     }
-    
-    consumerManager.closeConsumers();
   }
 
   void consume(AbstractConsumerManager consumerManager, Object payload, ITraceContext trace) throws RetryableConsumerException, FatalConsumerException
@@ -1069,14 +1171,21 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
       }
     }
     
-    return objectApiClient_.newPartitionsUpsertPostHttpRequestBuilder()
+    INamedUserIdObject partitionId = request.getAndValidateId(getUserId());
+    IPartition         partition   = objectApiClient_.newPartitionsUpsertPostHttpRequestBuilder()
       .withCanonPayload(new com.symphony.oss.models.object.canon.UpsertPartitionRequest.Builder()
-        .withPartitionId(request.getAndValidateId(getUserId()))
+        .withPartitionId(partitionId)
         .withUserPermissions(userPermissions)
         .build())
       .build()
       .execute(apiHttpClient_)
       ;
+    
+    singleFlight_.invalidate();
+    metadataCache_.invalidate(Arrays.asList("partition", partitionId.getHash()));
+    metadataCache_.invalidate(Arrays.asList("partitionUsers", partitionId.getHash()));
+    
+    return partition;
   }
 
   @Override
@@ -1084,6 +1193,12 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
   {
     if(request.getConsumerManager() instanceof ConsumerManager)
     {
+      for(PartitionQuery query : request.getQueryList())
+      {
+        if(query.isTail())
+          throw new BadRequestException("Tail mode requires an AsyncConsumerManager");
+      }
+      
       fetchPartitionObjects(request, (ConsumerManager)request.getConsumerManager());
       
       return null;
@@ -1120,46 +1235,64 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
     {
       ITraceContext parentTrace = parentTraceTransaction.open();
 
-      for (PartitionQuery query : request.getQueryList())
+      if(request.isSegmented())
       {
-        Integer limit           = query.getMaxItems();
-        int     remainingItems  = limit == null ? 0 : limit;
-        int     pageLimit       = query.getPageLimit() == null || query.getPageLimit()<=0 ? 2000 : query.getPageLimit();
+        List<PartitionQuery>  segments    = createSegments(request);
+        PartitionScanProgress progress    = new PartitionScanProgress(segments, request.getProgressListener());
+        List<Integer>         indexes     = new ArrayList<>(segments.size());
+        int                   parallelism = request.getSegmentParallelism() == null ?
+            Math.max(1, Math.min(segments.size(), Runtime.getRuntime().availableProcessors())) : request.getSegmentParallelism();
+        
+        for(int i=0 ; i<segments.size() ; i++)
+          indexes.add(i);
+        
+        concurrentFetcher_.fetch(indexes, parallelism,
+            (segment) -> fetchPartitionObjects(segments.get(segment), consumerManager, parentTrace, progress, segment, null),
+            (segment) -> "segment " + segments.get(segment).getSortKeyMin() + " to " + segments.get(segment).getSortKeyMax());
         
-        if (limit != null && remainingItems <= 0)
+        return;
+      }
+      
+      for (PartitionQuery query : request.getQueryList())
+      {
+        if (query.getMaxItems() != null && query.getMaxItems() <= 0)
           break;
 
-        Hash    partitionHash = query.getHash(getUserId());
-        String  after         = query.getAfter();
+        fetchPartitionObjects(query, consumerManager, parentTrace, null, 0, createCheckpointer(request, query));
+      }
+    }
+  }
+  
+  private void fetchPartitionObjects(PartitionQuery query, ConsumerManager consumerManager, ITraceContext parentTrace,
+      @Nullable PartitionScanProgress progress, int segment, @Nullable CursorCheckpointer checkpointer)
+  {
+    Integer limit           = query.getMaxItems();
+    int     pageLimit       = query.getPageLimit() == null || query.getPageLimit()<=0 ? 2000 : query.getPageLimit();
+    Hash    partitionHash   = query.getHash(getUserId());
+    String  after           = checkpointer == null ? query.getAfter() : checkpointer.getResumeAfter(query.getAfter());
 
-        try (ITraceContextTransaction traceTransaction = parentTrace.createSubContext("fetchPartitionObjects",
-            partitionHash.toString()))
+    try (ITraceContextTransaction traceTransaction = parentTrace.createSubContext("fetchPartitionObjects",
+        partitionHash.toString()))
+    {
+      ITraceContext trace = traceTransaction.open();
+      trace.trace("Request started");
+      int itemsSize = 0;
+      
+      try (PageReadAhead<IPageOfStoredApplicationObject> pages = new PageReadAhead<>(
+          new PartitionPageSource(query, partitionHash, limit, pageLimit, trace), after,
+          consumerManager.getReadAheadPages(), consumerManager.getReadAheadItems()))
+      {
+        IPageOfStoredApplicationObject page;
+        
+        while((page = pages.next()) != null)
         {
-          ITraceContext trace = traceTransaction.open();
-          trace.trace("Request started");
-          int itemsSize = 0;
+          itemsSize += page.getData() != null ? page.getData().size() : 0;
           
-          do
-          {
-            PartitionsPartitionHashPageGetHttpRequestBuilder pageRequest = objectApiClient_
-                .newPartitionsPartitionHashPageGetHttpRequestBuilder()
-                  .withPartitionHash(partitionHash)
-                  .withAfter(after)
-                  .withSortKeyPrefix(query.getSortKeyPrefix())
-                  .withSortKeyMin(query.getSortKeyMin())
-                  .withSortKeyMax(query.getSortKeyMax())
-                  .withScanForwards(query.getScanForwards());
-
-            pageRequest.withLimit(limit==null? pageLimit : Math.min(remainingItems, pageLimit));
-            trace.trace("Excuting request");
-            IPageOfStoredApplicationObject page = pageRequest
-                .build()
-                .execute(apiHttpClient_);
-            
-           itemsSize += page.getData() != null ? page.getData().size() : 0;
-           
-           trace.trace("Fetched items: "+itemsSize);
+          trace.trace("Fetched items: "+itemsSize);
 
+          // Segments are fetched concurrently but consumers need not be thread safe.
+          synchronized(consumerManager)
+          {
             for (IAbstractStoredApplicationObject item : page.getData())
             {
               try
@@ -1171,28 +1304,391 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
                 consumerManager.getUnprocessableMessageConsumer().consume(item, trace,
                     "Failed to process message", e);
               }
-              remainingItems--;
             }
-            
-            trace.trace("Consumed all items "+page.getData().size());
+          }
+          
+          trace.trace("Consumed all items "+page.getData().size());
+          
+          if(checkpointer != null)
+            checkpointer.pageConsumed(getAfterCursor(page.getPagination()));
+          
+          if(progress != null)
+            progress.consumed(segment, page.getData().size());
+        }
+      }
+      
+      if(progress != null)
+        progress.completed(segment);
+      
+      trace.trace("Request terminated");
+    }
+    finally
+    {
+      if(checkpointer != null)
+        checkpointer.finish();
+    }
+  }
+  
+  /**
+   * 
+   * @return A checkpointer for the given query, or null if it does not have a checkpoint ID.
+   */
+  static @Nullable CursorCheckpointer createCheckpointer(FetchPartitionObjectsRequest request, PartitionQuery query)
+  {
+    if(query.getCheckpointId() == null || request.getCheckpointStore() == null)
+      return null;
+    
+    return new CursorCheckpointer(request.getCheckpointStore(), query.getCheckpointId(), request.getCheckpointIntervalMillis());
+  }
+  
+  /**
+   * Split each query of the given segmented request into its segments.
+   */
+  List<PartitionQuery> createSegments(FetchPartitionObjectsRequest request)
+  {
+    List<PartitionQuery> segments = new ArrayList<>();
+    
+    for(PartitionQuery query : request.getQueryList())
+    {
+      Hash         partitionHash = query.getHash(getUserId());
+      List<String> splitPoints   = request.getSegmentSplitPoints();
+      
+      if(splitPoints == null)
+      {
+        String low  = fetchBoundarySortKey(query, partitionHash, true);
+        String high = fetchBoundarySortKey(query, partitionHash, false);
+        
+        splitPoints = low == null || high == null ? Collections.emptyList() :
+          PartitionScanSegmenter.interpolate(low, high, request.getSegmentCount());
+      }
+      
+      segments.addAll(PartitionScanSegmenter.segment(query, partitionHash, splitPoints));
+    }
+    
+    return segments;
+  }
+  
+  @Nullable String fetchBoundarySortKey(PartitionQuery query, Hash partitionHash, boolean first)
+  {
+    IPageOfStoredApplicationObject page = objectApiClient_
+        .newPartitionsPartitionHashPageGetHttpRequestBuilder()
+          .withPartitionHash(partitionHash)
+          .withSortKeyMin(query.getSortKeyMin())
+          .withSortKeyMax(query.getSortKeyMax())
+          .withScanForwards(first)
+          .withLimit(1)
+        .build()
+        .execute(apiHttpClient_);
+    
+    if(page.getData() != null)
+    {
+      for(IAbstractStoredApplicationObject item : page.getData())
+      {
+        if(item instanceof IStoredApplicationObject)
+          return ((IStoredApplicationObject)item).getSortKey().asString();
+      }
+    }
+    
+    return null;
+  }
+
+  @Override
+  public Stream<IStoredApplicationObject> streamPartitionObjects(PartitionQuery query)
+  {
+    return StreamSupport.stream(new PartitionSpliterator(this, query), false);
+  }
+  
+  /**
+   * Create a reader which fetches each page of the given query only when it is required.
+   */
+  PageReadAhead<IPageOfStoredApplicationObject> newPartitionPageReader(PartitionQuery query, Hash partitionHash)
+  {
+    int pageLimit = query.getPageLimit() == null || query.getPageLimit()<=0 ? 2000 : query.getPageLimit();
+    
+    return new PageReadAhead<>(new PartitionPageSource(query, partitionHash, query.getMaxItems(), pageLimit, null),
+        query.getAfter(), 0, 1);
+  }
+  
+  @Override
+  public Stream<IAbstractStoredApplicationObject> streamObjectVersions(VersionQuery query)
+  {
+    return StreamSupport.stream(new PagedSpliterator<IPageOfAbstractStoredApplicationObject, IAbstractStoredApplicationObject>(
+        () -> new PageReadAhead<>(new VersionPageSource(query, query.getMaxItems(), null), query.getAfter(), 0, 1),
+        (page) -> page.getData()), false);
+  }
+  
+  @Override
+  public Publisher<IAbstractStoredApplicationObject> publishPartitionObjects(PartitionQuery query)
+  {
+    Hash partitionHash = query.getHash(getUserId());
+    int  pageLimit     = query.getPageLimit() == null || query.getPageLimit()<=0 ? 2000 : query.getPageLimit();
+    
+    return new DemandPublisher<IAbstractStoredApplicationObject>(() -> new PageBatchFetcher<IPageOfStoredApplicationObject, IAbstractStoredApplicationObject>(
+        (demand) -> new PartitionPageSource(query, partitionHash, query.getMaxItems(), Math.min(demand, pageLimit), null),
+        query.getAfter(), (page) -> page.getData()), fetchExecutor_);
+  }
+  
+  @Override
+  public Publisher<IAbstractStoredApplicationObject> publishObjectVersions(VersionQuery query)
+  {
+    return new DemandPublisher<IAbstractStoredApplicationObject>(() -> new PageBatchFetcher<IPageOfAbstractStoredApplicationObject, IAbstractStoredApplicationObject>(
+        (demand) -> new VersionPageSource(query, query.getMaxItems(), demand),
+        query.getAfter(), (page) -> page.getData()), fetchExecutor_);
+  }
+  
+  @Override
+  public Publisher<IAbstractStoredApplicationObject> publishFeedObjects(FeedQuery query)
+  {
+    Hash feedHash = query.getHash(getUserId());
+    
+    return new DemandPublisher<IAbstractStoredApplicationObject>(() -> new FeedBatchFetcher(feedHash, query.getMaxItems()), fetchExecutor_);
+  }
+  
+  /**
+   * Adapts a paginated scan to a DemandPublisher, so that each page is limited to the outstanding demand.
+   */
+  private static class PageBatchFetcher<P, T> implements DemandPublisher.IBatchFetcher<T>
+  {
+    private final IntFunction<PageReadAhead.IPageSource<P>> sourceFactory_;
+    private final Function<P, List<? extends T>>            data_;
+    
+    private String                                          after_;
+    private int                                             itemCount_;
+    private boolean                                         exhausted_;
+    
+    PageBatchFetcher(IntFunction<PageReadAhead.IPageSource<P>> sourceFactory, @Nullable String after, Function<P, List<? extends T>> data)
+    {
+      sourceFactory_ = sourceFactory;
+      after_         = after;
+      data_          = data;
+    }
 
-            after = null;
-            IPagination pagination = page.getPagination();
+    @Override
+    public List<T> fetch(int maxItems)
+    {
+      PageReadAhead.IPageSource<P> source = sourceFactory_.apply(maxItems);
+      P                            page   = source.fetchPage(after_, itemCount_);
+      
+      if(page == null)
+      {
+        exhausted_ = true;
+        return Collections.emptyList();
+      }
+      
+      itemCount_ += source.getItemCount(page);
+      after_      = source.getAfter(page);
+      exhausted_  = after_ == null;
+      
+      List<? extends T> data = data_.apply(page);
+      
+      return data == null ? Collections.emptyList() : new ArrayList<>(data);
+    }
 
-            if (pagination != null)
-            {
-              ICursors cursors = pagination.getCursors();
+    @Override
+    public boolean isExhausted()
+    {
+      return exhausted_;
+    }
+  }
+  
+  /**
+   * Receives messages from a feed for a DemandPublisher, acknowledging only those which were delivered
+   * to the subscriber. The publisher completes when a receive returns no messages, or when the given
+   * maximum number of messages has been received.
+   */
+  private class FeedBatchFetcher implements DemandPublisher.IBatchFetcher<IAbstractStoredApplicationObject>
+  {
+    private static final int  MAX_RECEIVE_COUNT = 10;
+    
+    private final Hash        feedHash_;
+    private final Integer     maxItems_;
+    private List<IFeedObject> messages_         = Collections.emptyList();
+    private int               itemCount_;
+    private boolean           exhausted_;
+    
+    FeedBatchFetcher(Hash feedHash, @Nullable Integer maxItems)
+    {
+      feedHash_ = feedHash;
+      maxItems_ = maxItems;
+    }
 
-              if (cursors != null)
-                after = cursors.getAfter();
-            }
-          } while (after != null && (limit == null || remainingItems > 0));
-          trace.trace("Request terminated");
-        }     
+    @Override
+    public List<IAbstractStoredApplicationObject> fetch(int maxItems)
+    {
+      int receiveCount = Math.min(maxItems, MAX_RECEIVE_COUNT);
+      
+      if(maxItems_ != null)
+        receiveCount = Math.min(receiveCount, maxItems_ - itemCount_);
+      
+      messages_ = objectApiClient_.newFeedsFeedHashObjectsPostHttpRequestBuilder()
+          .withFeedHash(feedHash_)
+          .withCanonPayload(new FeedRequest.Builder()
+              .withMaxItems(receiveCount)
+              .build())
+          .build()
+          .execute(apiHttpClient_);
+      
+      itemCount_ += messages_.size();
+      exhausted_ = messages_.isEmpty() || (maxItems_ != null && itemCount_ >= maxItems_);
+      
+      List<IAbstractStoredApplicationObject> payloads = new ArrayList<>(messages_.size());
+      
+      for(IFeedObject message : messages_)
+        payloads.add(message.getPayload());
+      
+      return payloads;
+    }
+
+    @Override
+    public boolean isExhausted()
+    {
+      return exhausted_;
+    }
+
+    @Override
+    public void batchDone(List<IAbstractStoredApplicationObject> batch, int deliveredCount)
+    {
+      // Messages which were not delivered are left unacknowledged, and will be redelivered when their visibility times out.
+      if(deliveredCount > 0)
+      {
+        FeedRequest.Builder builder = new FeedRequest.Builder()
+            .withMaxItems(0)
+            .withWaitTimeSeconds(0);
+        
+        for(int i=0 ; i<deliveredCount ; i++)
+        {
+          builder.withDelete(new FeedObjectDelete.Builder()
+              .withReceiptHandle(messages_.get(i).getReceiptHandle())
+              .build()
+              );
+        }
+        
+        objectApiClient_.newFeedsFeedHashObjectsPostHttpRequestBuilder()
+            .withFeedHash(feedHash_)
+            .withCanonPayload(builder.build())
+            .build()
+            .execute(apiHttpClient_);
       }
+      
+      messages_ = Collections.emptyList();
+    }
+  }
+  
+  private class PartitionPageSource implements PageReadAhead.IPageSource<IPageOfStoredApplicationObject>
+  {
+    private final PartitionQuery query_;
+    private final Hash           partitionHash_;
+    private final Integer        limit_;
+    private final int            pageLimit_;
+    private final ITraceContext  trace_;
+    
+    PartitionPageSource(PartitionQuery query, Hash partitionHash, Integer limit, int pageLimit, @Nullable ITraceContext trace)
+    {
+      query_         = query;
+      partitionHash_ = partitionHash;
+      limit_         = limit;
+      pageLimit_     = pageLimit;
+      trace_         = trace;
+    }
+
+    @Override
+    public IPageOfStoredApplicationObject fetchPage(String after, int itemCount)
+    {
+      if(limit_ != null && itemCount >= limit_)
+        return null;
+      
+      PartitionsPartitionHashPageGetHttpRequestBuilder pageRequest = objectApiClient_
+          .newPartitionsPartitionHashPageGetHttpRequestBuilder()
+            .withPartitionHash(partitionHash_)
+            .withAfter(after)
+            .withSortKeyPrefix(query_.getSortKeyPrefix())
+            .withSortKeyMin(query_.getSortKeyMin())
+            .withSortKeyMax(query_.getSortKeyMax())
+            .withScanForwards(query_.getScanForwards());
+
+      pageRequest.withLimit(limit_==null? pageLimit_ : Math.min(limit_ - itemCount, pageLimit_));
+      
+      if(trace_ != null)
+        trace_.trace("Excuting request");
+      
+      return pageRequest
+          .build()
+          .execute(apiHttpClient_);
+    }
+
+    @Override
+    public int getItemCount(IPageOfStoredApplicationObject page)
+    {
+      return page.getData() == null ? 0 : page.getData().size();
+    }
+
+    @Override
+    public String getAfter(IPageOfStoredApplicationObject page)
+    {
+      return getAfterCursor(page.getPagination());
     }
   }
   
+  private class VersionPageSource implements PageReadAhead.IPageSource<IPageOfAbstractStoredApplicationObject>
+  {
+    private final VersionQuery query_;
+    private final Integer      limit_;
+    private final Integer      pageLimit_;
+    
+    VersionPageSource(VersionQuery query, Integer limit, @Nullable Integer pageLimit)
+    {
+      query_     = query;
+      limit_     = limit;
+      pageLimit_ = pageLimit;
+    }
+
+    @Override
+    public IPageOfAbstractStoredApplicationObject fetchPage(String after, int itemCount)
+    {
+      if(limit_ != null && itemCount >= limit_)
+        return null;
+      
+      ObjectsObjectHashVersionsGetHttpRequestBuilder pageRequest = objectApiClient_.newObjectsObjectHashVersionsGetHttpRequestBuilder()
+          .withObjectHash(query_.getBaseHash())
+          .withAfter(after)
+          .withScanForwards(query_.getScanForwards())
+          ;
+
+      if (limit_ != null)
+        pageRequest.withLimit(pageLimit_ == null ? limit_ - itemCount : Math.min(limit_ - itemCount, pageLimit_));
+      else if (pageLimit_ != null)
+        pageRequest.withLimit(pageLimit_);
+
+      return pageRequest
+          .build()
+          .execute(apiHttpClient_);
+    }
+
+    @Override
+    public int getItemCount(IPageOfAbstractStoredApplicationObject page)
+    {
+      return page.getData() == null ? 0 : page.getData().size();
+    }
+
+    @Override
+    public String getAfter(IPageOfAbstractStoredApplicationObject page)
+    {
+      return getAfterCursor(page.getPagination());
+    }
+  }
+  
+  static @Nullable String getAfterCursor(@Nullable IPagination pagination)
+  {
+    if (pagination != null)
+    {
+      ICursors cursors = pagination.getCursors();
+
+      if (cursors != null)
+        return cursors.getAfter();
+    }
+    
+    return null;
+  }
 
   @Override
   public PartitionObjectPage fetchPartitionObjectPage(PartitionQuery query)
@@ -1224,11 +1720,11 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
   {
     Hash          partitionHash   = query.getHash(getUserId());
 
-    return objectApiClient_
+    return metadataCache_.get(Arrays.asList("partition", partitionHash), false, () -> objectApiClient_
         .newPartitionsPartitionHashGetHttpRequestBuilder()
           .withPartitionHash(partitionHash)
           .build()
-        .execute(apiHttpClient_);
+        .execute(apiHttpClient_));
   }
   
   @Override
@@ -1236,12 +1732,11 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
   {
     Hash          partitionHash   = query.getHash(getUserId());
 
-    return objectApiClient_
+    return metadataCache_.get(Arrays.asList("partitionUsers", partitionHash), false, () -> objectApiClient_
         .newPartitionsPartitionHashUsersGetHttpRequestBuilder()
          .withPartitionHash(partitionHash)
          .build()
-        .execute(apiHttpClient_);
-
+        .execute(apiHttpClient_));
   }
 
   @Override
@@ -1267,19 +1762,25 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
   @Override
   public IEntitlement fetchEntitlement(FetchEntitlementRequest request)
   {
-    return authzApiClient_.newEntitlementsEntitlementHashGetHttpRequestBuilder()
-      .withEntitlementHash(request.getHash(getUserId()))
-      .build()
-      .execute(apiHttpClient_);
+    Hash entitlementHash = request.getHash(getUserId());
+    
+    return metadataCache_.get(Arrays.asList("entitlement", entitlementHash), false, () -> authzApiClient_
+      .newEntitlementsEntitlementHashGetHttpRequestBuilder()
+        .withEntitlementHash(entitlementHash)
+        .build()
+      .execute(apiHttpClient_));
   }
   
   @Override
   public IEntitlement fetchEntitlement(IServiceEntitlementSpecOrIdProvider entitlementSpec)
   {
-    return authzApiClient_.newEntitlementsEntitlementHashGetHttpRequestBuilder()
-        .withEntitlementHash(entitlementSpecAdaptor_.getEntitlementId(entitlementSpec).getHash())
+    Hash entitlementHash = entitlementSpecAdaptor_.getEntitlementId(entitlementSpec).getHash();
+    
+    return metadataCache_.get(Arrays.asList("entitlement", entitlementHash), false, () -> authzApiClient_
+      .newEntitlementsEntitlementHashGetHttpRequestBuilder()
+        .withEntitlementHash(entitlementHash)
         .build()
-        .execute(apiHttpClient_);
+      .execute(apiHttpClient_));
   }
   
   @Override
@@ -1301,6 +1802,8 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
         .build()
         .execute(apiHttpClient_);
     
+    metadataCache_.invalidate(Arrays.asList("entitlement", entitlementId.getHash()));
+    
     return payload;
   }
   
@@ -1323,6 +1826,8 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
         .build()
         .execute(apiHttpClient_);
     
+    metadataCache_.invalidate(Arrays.asList("entitlement", entitlementId.getHash()));
+    
     return payload;
   }
   
@@ -1349,36 +1854,24 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
   {
     ServiceId serviceId = ServiceId.newBuilder().build(service.getName());
   
-    if(!serviceMap_.containsKey(serviceId))
-    {
-      try
-      {
-        IServiceInfo serviceInfo = authcApiClient_.newServicesServiceIdGetHttpRequestBuilder()
-            .withServiceId(serviceId)
-            .build()
-            .execute(apiHttpClient_);
-        
-        serviceMap_.put(serviceId, serviceInfo);
-      }
-      catch(NotFoundException e)
-      {
-        serviceMap_.put(serviceId, null);
-        
-        throw e;
-      }
-    }
-    IServiceInfo serviceInfo = serviceMap_.get(serviceId);
-    
-    if(serviceInfo == null)
-      throw new NotFoundException("No such service \"" + serviceId + "\"");
-    
-    return serviceInfo;
+    // Unknown services are cached too, as they always have been.
+    return metadataCache_.get(Arrays.asList("service", serviceId), true, () -> authcApiClient_
+        .newServicesServiceIdGetHttpRequestBuilder()
+          .withServiceId(serviceId)
+          .build()
+        .execute(apiHttpClient_));
   }
 
   @Override
   public IAbstractStoredApplicationObject fetchAbsolute(Hash absoluteHash)
   {
-    return fetch(absoluteHash, false);
+    return absoluteObjectCache_.get(absoluteHash, (hash) -> fetch(hash, false));
+  }
+  
+  @Override
+  public List<AbsoluteFetchResult> fetchAbsolute(Collection<Hash> absoluteHashes)
+  {
+    return absoluteObjectCache_.getAll(absoluteHashes, (hash) -> fetch(hash, false), concurrentFetcher_, ABSOLUTE_FETCH_PARALLELISM);
   }
   
   @Override
@@ -1386,6 +1879,9 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
   {
     IAbstractStoredApplicationObject result = fetch(absoluteHash, true);
     
+    // The current version may change but the version we have been given is immutable.
+    absoluteObjectCache_.put(result.getAbsoluteHash(), result);
+    
     if(result instanceof IStoredApplicationObject)
       return (IStoredApplicationObject)result;
     
@@ -1394,11 +1890,12 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
   
   private IAbstractStoredApplicationObject fetch(Hash objectHash, boolean currentVersion)
   {
-    return objectApiClient_.newObjectsObjectHashGetHttpRequestBuilder()
-        .withObjectHash(objectHash)
-        .withCurrentVersion(currentVersion)
-        .build()
-        .execute(apiHttpClient_);
+    return singleFlight_.execute(Arrays.asList("object", objectHash, currentVersion), () -> objectApiClient_
+        .newObjectsObjectHashGetHttpRequestBuilder()
+          .withObjectHash(objectHash)
+          .withCurrentVersion(currentVersion)
+          .build()
+        .execute(apiHttpClient_));
   }
   
   @Override
@@ -1410,11 +1907,12 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
   @Override
   public IStoredApplicationObject fetchObject(Hash partitionHash, SortKey sortKey)
   {
-    return objectApiClient_.newPartitionsPartitionHashSortKeyGetHttpRequestBuilder()
-      .withPartitionHash(partitionHash)
-      .withSortKey(sortKey)
-      .build()
-      .execute(apiHttpClient_);
+    return singleFlight_.execute(Arrays.asList("sortKey", partitionHash, sortKey.asString()), () -> objectApiClient_
+        .newPartitionsPartitionHashSortKeyGetHttpRequestBuilder()
+          .withPartitionHash(partitionHash)
+          .withSortKey(sortKey)
+          .build()
+        .execute(apiHttpClient_));
   }
 
   @Override
@@ -1426,6 +1924,7 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
       ;
     
     store(deletedObject);
+    absoluteObjectCache_.invalidate(existingObject.getAbsoluteHash());
   }
   
   @Override
@@ -1491,9 +1990,8 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
       for (VersionQuery query : request.getQueryList())
       {
         Integer limit           = query.getMaxItems();
-        int     remainingItems  = limit == null ? 0 : limit;
         
-        if (limit != null && remainingItems <= 0)
+        if (limit != null && limit <= 0)
           break;
 
         Hash    baseHash      = query.getBaseHash();
@@ -1504,46 +2002,28 @@ public abstract class AllegroBaseApi<R extends IAllegroModelRegistryProvider> im
         {
           ITraceContext trace = traceTransaction.open();
 
-          do
+          try (PageReadAhead<IPageOfAbstractStoredApplicationObject> pages = new PageReadAhead<>(
+              new VersionPageSource(query, limit, null), after,
+              consumerManager.getReadAheadPages(), consumerManager.getReadAheadItems()))
           {
-            ObjectsObjectHashVersionsGetHttpRequestBuilder pageRequest = objectApiClient_.newObjectsObjectHashVersionsGetHttpRequestBuilder()
-                .withObjectHash(baseHash)
-                .withAfter(after)
-                .withScanForwards(query.getScanForwards())
-                ;
-
-            if (limit != null)
-              pageRequest.withLimit(remainingItems);
-
-            IPageOfAbstractStoredApplicationObject page = pageRequest
-                .build()
-                .execute(apiHttpClient_);
-
-            for (IAbstractStoredApplicationObject item : page.getData())
+            IPageOfAbstractStoredApplicationObject page;
+            
+            while((page = pages.next()) != null)
             {
-              try
-              {
-                consumerManager.consume(item, trace, this);
-              }
-              catch (RetryableConsumerException | FatalConsumerException e)
+              for (IAbstractStoredApplicationObject item : page.getData())
               {
-                consumerManager.getUnprocessableMessageConsumer().consume(item, trace,
-                    "Failed to process message", e);
+                try
+                {
+                  consumerManager.consume(item, trace, this);
+                }
+                catch (RetryableConsumerException | FatalConsumerException e)
+                {
+                  consumerManager.getUnprocessableMessageConsumer().consume(item, trace,
+                      "Failed to process message", e);
+                }
               }
-              remainingItems--;
             }
-
-            after = null;
-            IPagination pagination = page.getPagination();
-
-            if (pagination != null)
-            {
-              ICursors cursors = pagination.getCursors();
-
-              if (cursors != null)
-                after = cursors.getAfter();
-            }
-          } while (after != null && (limit == null || remainingItems > 0));
+          }
         }
       }
     }
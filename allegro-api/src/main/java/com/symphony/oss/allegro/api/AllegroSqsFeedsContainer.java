@@ -21,8 +21,18 @@ package com.symphony.oss.allegro.api;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.symphony.oss.allegro.api.request.FeedId;
+import com.symphony.oss.commons.concurrent.NamedThreadFactory;
 import com.symphony.oss.models.core.canon.facade.PodAndUserId;
 import com.symphony.oss.models.object.canon.IFeedsEndpoint;
 
@@ -30,17 +40,59 @@ import com.symphony.oss.models.object.canon.IFeedsEndpoint;
  * @author Geremia Longobardo
  * 
  * Class used to refresh Feed Read Records and check if direct fetch is enabled
+ * 
+ * The endpoint is published as an immutable snapshot which is replaced by a background refresh
+ * shortly before it expires, so callers of <code>refresh()</code> and <code>getEndpoint()</code> do not
+ * block while the Feed Read Records are being refreshed. Only if the endpoint has actually expired
+ * (because the background refresh has been failing) does <code>refresh()</code> wait for a new one.
+ * 
+ * Background refresh stops once the container has not been used for IDLE_MILLIS, and restarts on the
+ * next call to <code>refresh()</code>, so that containers which are no longer used do not keep calling the server.
  */
 public class AllegroSqsFeedsContainer
 {
-    private String            endpoint_;
-    private boolean           directFetch_;
-    private List<FeedId>      feedIds_;
-    private List<String>      stringIds_;
-    private Instant           expiryDate_ = Instant.now().minusMillis(1000 * 60 * 30);
-    private AllegroBaseApi  allegro_;
-
-    private static final long      threshold = 40000;
+    private static final Logger                   log_                = LoggerFactory.getLogger(AllegroSqsFeedsContainer.class);
+
+    private static final long                     threshold           = 40000;
+    private static final long                     REFRESH_LEAD_MILLIS = 20000;
+    static final long                             RETRY_DELAY_MILLIS  = 5000;
+    static final long                             MIN_DELAY_MILLIS    = 5000;
+    static final long                             IDLE_MILLIS         = TimeUnit.MINUTES.toMillis(30);
+
+    private static final ScheduledExecutorService refreshScheduler_   = Executors.newSingleThreadScheduledExecutor(
+        new NamedThreadFactory("Sqs-feeds-refresh", true));
+
+    private final List<String>                    stringIds_;
+    private final AllegroBaseApi                  allegro_;
+    private final Supplier<IFeedsEndpoint>        fetcher_;
+    private final ScheduledExecutorService        scheduler_;
+    private final long                            idleMillis_;
+    private final AtomicBoolean                   refreshScheduled_   = new AtomicBoolean();
+
+    private volatile long                         lastUsed_           = System.currentTimeMillis();
+    private volatile boolean                      closed_;
+    private ScheduledFuture<?>                    scheduledRefresh_;
+
+    private volatile Snapshot                     snapshot_           = new Snapshot(null, false, Instant.now().minusMillis(1000 * 60 * 30));
+
+    private static class Snapshot
+    {
+      final String  endpoint_;
+      final boolean directFetch_;
+      final Instant expiryDate_;
+
+      Snapshot(String endpoint, boolean directFetch, Instant expiryDate)
+      {
+        endpoint_    = endpoint;
+        directFetch_ = directFetch;
+        expiryDate_  = expiryDate;
+      }
+
+      long getRemainingMillis()
+      {
+        return expiryDate_.toEpochMilli() - Instant.now().toEpochMilli();
+      }
+    }
     
     /**
      * @param feedIds The ids of the feeds
@@ -49,16 +101,36 @@ public class AllegroSqsFeedsContainer
      */
     public AllegroSqsFeedsContainer(List<FeedId> feedIds, PodAndUserId owner, AllegroBaseApi allegro) 
     {
-      feedIds_ = feedIds;
-      allegro_ = allegro;
-      
+      this(toStringIds(feedIds, owner), allegro, () -> allegro.refreshFeeds(feedIds), refreshScheduler_, IDLE_MILLIS);
+    }
+    
+    /**
+     * @param stringIds   The Base64 hashes of the feeds.
+     * @param allegro     The Allegro API object.
+     * @param fetcher     Fetches the Feed Read Records from the server.
+     * @param scheduler   The scheduler on which background refreshes run.
+     * @param idleMillis  The time after which an unused container stops refreshing in the background.
+     */
+    AllegroSqsFeedsContainer(List<String> stringIds, AllegroBaseApi allegro, Supplier<IFeedsEndpoint> fetcher,
+        ScheduledExecutorService scheduler, long idleMillis) 
+    {
+      stringIds_  = stringIds;
+      allegro_    = allegro;
+      fetcher_    = fetcher;
+      scheduler_  = scheduler;
+      idleMillis_ = idleMillis;
       
-      stringIds_ = new ArrayList<>();
+      refresh();
+    }
+    
+    private static List<String> toStringIds(List<FeedId> feedIds, PodAndUserId owner)
+    {
+      List<String> stringIds = new ArrayList<>();
       
-      for(FeedId feedId : feedIds_) 
-        stringIds_.add(feedId.getHash(owner).toStringBase64());
+      for(FeedId feedId : feedIds) 
+        stringIds.add(feedId.getHash(owner).toStringBase64());
       
-      refresh();
+      return stringIds;
     }
 
     /**
@@ -70,28 +142,138 @@ public class AllegroSqsFeedsContainer
     }
     
     /**
-     *  Refreshes the Feed Read Records each 15 minutes
+     * Ensure that the Feed Read Records are current.
+     * 
+     * This is called on every request and normally returns immediately, the records are refreshed in the
+     * background before they expire. It blocks only if the current records have already expired.
      */
     public void refresh()
     {
+      lastUsed_ = System.currentTimeMillis();
+      
+      Snapshot snapshot = snapshot_;
+      
+      if(snapshot.getRemainingMillis() >= threshold)
+      {
+        // Restart background refresh if it stopped while the container was idle.
+        if(!refreshScheduled_.get())
+          scheduleRefresh(getRefreshDelay(snapshot));
+        
+        return;
+      }
+      
+      if(snapshot.getRemainingMillis() > 0)
+      {
+        // Still usable, make sure a refresh is on its way and carry on.
+        scheduleRefresh(MIN_DELAY_MILLIS);
+        return;
+      }
+      
       synchronized(this) 
       {
-        if(isExpired()) 
+        if(snapshot_.getRemainingMillis() <= 0)
+          doRefresh();
+      }
+    }
+    
+    private void doRefresh()
+    {
+      scheduleRefresh(getRefreshDelay(load()));
+    }
+    
+    private Snapshot load()
+    {
+      IFeedsEndpoint  tc    =       fetcher_.get();
+      Snapshot snapshot     =       new Snapshot(tc.getEndPoint(), tc.getDirectFetch(), tc.getExpirationDate());
+      
+      snapshot_ = snapshot;
+      
+      return snapshot;
+    }
+    
+    private long getRefreshDelay(Snapshot snapshot)
+    {
+      // Records which live for less than threshold + REFRESH_LEAD_MILLIS must not be refreshed in a tight loop.
+      return Math.max(MIN_DELAY_MILLIS, snapshot.getRemainingMillis() - threshold - REFRESH_LEAD_MILLIS);
+    }
+    
+    private boolean isIdle()
+    {
+      return System.currentTimeMillis() - lastUsed_ > idleMillis_;
+    }
+    
+    private void scheduleRefresh(long delayMillis)
+    {
+      if(!closed_ && !isIdle() && refreshScheduled_.compareAndSet(false, true))
+      {
+        synchronized(refreshScheduled_)
         {
-          IFeedsEndpoint  tc    =       allegro_.refreshFeeds(feedIds_);
-          directFetch_                  = tc.getDirectFetch();
-          endpoint_                     = tc.getEndPoint();
-          expiryDate_                   = tc.getExpirationDate();
+          scheduledRefresh_ = scheduler_.schedule(this::backgroundRefresh, delayMillis, TimeUnit.MILLISECONDS);
         }
       }
     }
     
+    private void backgroundRefresh()
+    {
+      if(closed_ || isIdle())
+      {
+        // A later call to refresh() restarts background refresh.
+        refreshScheduled_.set(false);
+        return;
+      }
+      
+      long delayMillis;
+      
+      try
+      {
+        synchronized(this)
+        {
+          delayMillis = getRefreshDelay(load());
+        }
+      }
+      catch(RuntimeException e)
+      {
+        log_.warn("Failed to refresh feeds, will retry", e);
+        
+        delayMillis = RETRY_DELAY_MILLIS;
+      }
+      
+      // Until now any other attempt to schedule a refresh was redundant with this one.
+      refreshScheduled_.set(false);
+      scheduleRefresh(delayMillis);
+    }
+    
+    /**
+     * Stop refreshing the Feed Read Records in the background.
+     * 
+     * The container remains usable, but after this call <code>refresh()</code> only renews the
+     * records once they have expired, in the calling thread.
+     */
+    void close()
+    {
+      closed_ = true;
+      
+      synchronized(refreshScheduled_)
+      {
+        if(scheduledRefresh_ != null)
+          scheduledRefresh_.cancel(false);
+      }
+    }
+    
+    /**
+     * @return The time in milliseconds since the epoch at which refresh() was last called.
+     */
+    long getLastUsedMillis()
+    {
+      return lastUsed_;
+    }
+    
     /**
      * @return true if the Feed Read Records need to be refreshed
      */
     public boolean isExpired()
     {
-      return expiryDate_.toEpochMilli() - Instant.now().toEpochMilli() < threshold;
+      return snapshot_.getRemainingMillis() < threshold;
     }
 
     /**
@@ -99,7 +281,7 @@ public class AllegroSqsFeedsContainer
      */
     public String getEndpoint()
     {
-      return endpoint_;
+      return snapshot_.endpoint_;
     }
 
     /**
@@ -115,6 +297,6 @@ public class AllegroSqsFeedsContainer
      */
     public boolean isDirect() 
     {
-      return directFetch_;
+      return snapshot_.directFetch_;
     }
 }
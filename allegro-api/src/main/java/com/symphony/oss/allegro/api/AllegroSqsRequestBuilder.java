@@ -18,11 +18,12 @@
 
 package com.symphony.oss.allegro.api;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
@@ -43,10 +44,17 @@ import com.symphony.oss.fugue.aws.sqs.SqsResponseMessage;
  */
 public class AllegroSqsRequestBuilder
 {
-  private static final Logger log_   = LoggerFactory.getLogger(AllegroSqsRequestBuilder.class);
+  private static final Logger  log_                 = LoggerFactory.getLogger(AllegroSqsRequestBuilder.class);
+  private static final Pattern ERROR_ENTRY_PATTERN  = Pattern.compile("<BatchResultErrorEntry>(.*?)</BatchResultErrorEntry>", Pattern.DOTALL);
+  private static final Pattern ID_PATTERN           = Pattern.compile("<Id>(.*?)</Id>", Pattern.DOTALL);
+  private static final Pattern CODE_PATTERN         = Pattern.compile("<Code>(.*?)</Code>", Pattern.DOTALL);
+  private static final Pattern SENDER_FAULT_PATTERN = Pattern.compile("<SenderFault>\\s*true\\s*</SenderFault>");
   
   private RequestBuilder req;
   private URIBuilder uri = new URIBuilder();
+  private String batchEntryPrefix_;
+  private int batchEntryCount_;
+  private final List<String> batchEntryReceiptHandles_ = new ArrayList<>();
   
   /**
    * @param allegro AllegroApi is needed for configuration.
@@ -101,6 +109,63 @@ public class AllegroSqsRequestBuilder
     return self();
   }
 
+  /**
+   * Set a batch action, entries for the batch are added with <code>withBatchEntry</code>.
+   * 
+   * @param action The SQS Action to perform in batch, DELETE or EXTEND
+   * @return self
+   */
+  public AllegroSqsRequestBuilder withBatchAction(SqsAction action)
+  {
+    String s;
+    switch(action) {
+      case DELETE:  s = "DeleteMessageBatch"; break;
+      case EXTEND:  s = "ChangeMessageVisibilityBatch"; break;
+      default: throw new IllegalStateException("SQS Batch Action not allowed:" + action);
+    }
+    uri.addParameter("Action", s);
+    batchEntryPrefix_ = s + "RequestEntry.";
+
+    return self();
+  }
+  
+  /**
+   * Add an entry to a DeleteMessageBatch request.
+   * 
+   * @param ReceiptHandle A String used as reference to the original message
+   * @return self
+   */
+  public AllegroSqsRequestBuilder withBatchEntry(String ReceiptHandle)
+  {
+    return withBatchEntry(ReceiptHandle, null);
+  }
+  
+  /**
+   * Add an entry to a batch request.
+   * 
+   * At most 10 entries may be added to a single request.
+   * 
+   * @param ReceiptHandle A String used as reference to the original message
+   * @param VisibilityTimeout The number of seconds to extend visibility of the message, for a ChangeMessageVisibilityBatch request.
+   * @return self
+   */
+  public AllegroSqsRequestBuilder withBatchEntry(String ReceiptHandle, Integer VisibilityTimeout)
+  {
+    if(batchEntryPrefix_ == null)
+      throw new IllegalStateException("withBatchAction() must be called before withBatchEntry()");
+    
+    String prefix = batchEntryPrefix_ + (++batchEntryCount_) + ".";
+    
+    uri.addParameter(prefix + "Id", String.valueOf(batchEntryCount_));
+    uri.addParameter(prefix + "ReceiptHandle", ReceiptHandle);
+    batchEntryReceiptHandles_.add(ReceiptHandle);
+    
+    if(VisibilityTimeout != null)
+      uri.addParameter(prefix + "VisibilityTimeout", VisibilityTimeout.toString());
+
+    return self();
+  }
+
   /**
    * @param WaitTimeSeconds The maximum number of seconds to wait
    * @return self
@@ -139,6 +204,33 @@ public class AllegroSqsRequestBuilder
    * @return The SQS messages
    */
   public List<SqsResponseMessage> execute(CloseableHttpClient httpClient)
+  {
+    String body = send(httpClient);
+    
+    if(batchEntryPrefix_ != null && body.contains("BatchResultErrorEntry"))
+    {
+      // The messages concerned will be redelivered when their visibility timeout expires.
+      log_.warn("Some entries of batch request failed\n" + body);
+    }
+    
+   return SqsMessageParser.parse(body);
+  }
+
+  /**
+   * Execute a batch request, returning the entries which failed rather than only logging them.
+   * 
+   * @param httpClient The client used to execute the request
+   * @return The entries of the batch which failed, empty if they all succeeded.
+   */
+  public List<BatchEntryFailure> executeBatch(CloseableHttpClient httpClient)
+  {
+    if(batchEntryPrefix_ == null)
+      throw new IllegalStateException("withBatchAction() must be called before executeBatch()");
+    
+    return parseBatchFailures(send(httpClient), batchEntryReceiptHandles_);
+  }
+  
+  private String send(CloseableHttpClient httpClient)
   {
     HttpUriRequest request = null;
     try
@@ -150,44 +242,108 @@ public class AllegroSqsRequestBuilder
       throw new IllegalStateException(e1);
     }
 
-    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-    try
+    // Closing the response releases the connection back to the pool even if the body is not fully read.
+    try(CloseableHttpResponse response = httpClient.execute(request))
     {
-      CloseableHttpResponse response = httpClient.execute(request);
-        
+      String body = ResponseBodyReader.read(response.getEntity());
 
-      InputStream in = response.getEntity().getContent();
+      if(response.getStatusLine().getStatusCode() != 200)
+      {
+        log_.error("response " + response.getStatusLine().getStatusCode() + " " + response.getStatusLine().getReasonPhrase() + "\n" + body);
+        throw new IllegalStateException("SQS response " + response.getStatusLine().getStatusCode() + " " + response.getStatusLine().getReasonPhrase());
+      }
+      
+      return body;
+    }
+    catch (IOException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+  
+  /**
+   * Parse the error entries of a batch response.
+   * 
+   * @param body            The body of the response.
+   * @param receiptHandles  The receipt handles of the entries of the request, the Id of each entry is its index plus one.
+   * 
+   * @return The entries which failed.
+   */
+  static List<BatchEntryFailure> parseBatchFailures(String body, List<String> receiptHandles)
+  {
+    List<BatchEntryFailure> failures = new ArrayList<>();
+    Matcher                 entry    = ERROR_ENTRY_PATTERN.matcher(body);
+    
+    while(entry.find())
+    {
+      Matcher id   = ID_PATTERN.matcher(entry.group(1));
+      Matcher code = CODE_PATTERN.matcher(entry.group(1));
+      int     index;
       
- 
-      byte[] buf = new byte[1024];
-      int read = 0;
       try
       {
-        while ((read = in.read(buf)) != -1)
-        {
-          buffer.write(buf, 0, read);
-        }
+        index = id.find() ? Integer.parseInt(id.group(1).trim()) - 1 : -1;
       }
-      finally
+      catch(NumberFormatException e)
       {
-        in.close();
+        index = -1;
       }
-      buffer.flush();
       
-
-      if(response.getStatusLine().getStatusCode() != 200)
+      if(index < 0 || index >= receiptHandles.size())
       {
-        log_.error("response " + response.getStatusLine().getStatusCode() + " " + response.getStatusLine().getReasonPhrase() + "\n" + buffer.toString());
-        throw new IllegalStateException("SQS response " + response.getStatusLine().getStatusCode() + " " + response.getStatusLine().getReasonPhrase());
+        log_.warn("Unrecognised entry in batch response\n" + entry.group());
+        continue;
       }
+      
+      failures.add(new BatchEntryFailure(receiptHandles.get(index), code.find() ? code.group(1).trim() : null,
+          SENDER_FAULT_PATTERN.matcher(entry.group(1)).find()));
+    }
+    
+    return failures;
+  }
 
+  /**
+   * An entry of a batch request which failed.
+   */
+  public static class BatchEntryFailure
+  {
+    private final String  receiptHandle_;
+    private final String  code_;
+    private final boolean senderFault_;
+    
+    BatchEntryFailure(String receiptHandle, String code, boolean senderFault)
+    {
+      receiptHandle_ = receiptHandle;
+      code_          = code;
+      senderFault_   = senderFault;
     }
-    catch (IOException e)
+
+    /**
+     * 
+     * @return The receipt handle of the entry.
+     */
+    public String getReceiptHandle()
     {
-      throw new IllegalStateException(e);
+      return receiptHandle_;
+    }
+
+    /**
+     * 
+     * @return The SQS error code, such as ReceiptHandleIsInvalid, or null if none was given.
+     */
+    public String getCode()
+    {
+      return code_;
+    }
+
+    /**
+     * 
+     * @return true if the failure was caused by the request, in which case retrying the entry will not help.
+     */
+    public boolean isSenderFault()
+    {
+      return senderFault_;
     }
-    
-   return SqsMessageParser.parse(buffer.toString());
   }
 
   private AllegroSqsRequestBuilder self()
@@ -24,20 +24,22 @@
 package com.symphony.oss.allegro.api;
 
 import java.io.StringReader;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
-import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
 import com.symphony.oss.canon.runtime.IEntity;
 import com.symphony.oss.canon.runtime.ModelRegistry;
-import com.symphony.oss.fugue.Fugue;
 import com.symphony.oss.fugue.aws.sqs.SqsAction;
 import com.symphony.oss.fugue.aws.sqs.SqsResponseMessage;
 import com.symphony.oss.fugue.counter.IBusyCounter;
@@ -60,7 +62,8 @@ import com.symphony.oss.models.object.canon.IAbstractStoredApplicationObject;
 class AllegroSqsSubscriber extends AbstractPullSubscriber
 {
   private static final int                                                     EXTENSION_TIMEOUT_SECONDS  = 30;
-  private static final int                                                     EXTENSION_FREQUENCY_MILLIS = 15000;
+  static final int                                                             EXTENSION_FREQUENCY_MILLIS = 15000;
+  private static final int                                                     LONG_POLL_WAIT_SECONDS     = 20;
 
   private static final Logger                                                  log_                       = LoggerFactory
       .getLogger(AllegroSqsSubscriber.class);
@@ -71,26 +74,23 @@ class AllegroSqsSubscriber extends AbstractPullSubscriber
   private final ITraceContextTransactionFactory                                traceFactory_;
   private final IThreadSafeRetryableConsumer<IAbstractStoredApplicationObject> consumer_;
   private final NonIdleSubscriber                                              nonIdleSubscriber_;
-  private int                                                                  messageBatchSize_          = 10;
-  private ReceiveMessageRequest                                                blockingPullRequest_;
-  private ReceiveMessageRequest                                                nonBlockingPullRequest_;
   private AllegroSqsFeedsContainer                                             feeds_;
   private CloseableHttpClient                                                  apiHttpClient_;
   private IAllegroMultiTenantApi                                               allegro_;
+  private final SqsAckAccumulator                                              ackAccumulator_;
+  private final SqsPollController                                              pollController_;
+  private final DuplicateFilter                                                duplicateFilter_;
 
   AllegroSqsSubscriber(AllegroSqsSubscriberManager manager,
       CloseableHttpClient apiHttpClient, String feedHash,
       ITraceContextTransactionFactory traceFactory,
       IThreadSafeRetryableConsumer<IAbstractStoredApplicationObject> consumer, 
       ICounter counter, IBusyCounter busyCounter,
-      AllegroSqsFeedsContainer feeds, ModelRegistry modelRegistry )
+      AllegroSqsFeedsContainer feeds, ModelRegistry modelRegistry, SqsAckAccumulator ackAccumulator,
+      SqsPollController pollController, DuplicateFilter duplicateFilter)
   {
     super(manager, feedHash, counter, busyCounter, EXTENSION_FREQUENCY_MILLIS, consumer);
     
-    if(Fugue.isDebugSingleThread())
-    {
-      messageBatchSize_ = 1;
-    }
     apiHttpClient_     = apiHttpClient;
     manager_           = manager;
     feedHash_          =  feedHash;
@@ -99,15 +99,10 @@ class AllegroSqsSubscriber extends AbstractPullSubscriber
     nonIdleSubscriber_ = new NonIdleSubscriber();
     feeds_             = feeds;
     allegro_           = feeds.getAllegro();
-    
-    blockingPullRequest_ = new ReceiveMessageRequest(feedHash)
-        .withMaxNumberOfMessages(messageBatchSize_ )
-        .withWaitTimeSeconds(20);
-    
-    nonBlockingPullRequest_ = new ReceiveMessageRequest(feedHash)
-        .withMaxNumberOfMessages(messageBatchSize_ );
-    
-    modelRegistry_  = modelRegistry;
+    modelRegistry_     = modelRegistry;
+    ackAccumulator_    = ackAccumulator;
+    pollController_    = pollController;
+    duplicateFilter_   = duplicateFilter;
   }
 
   class NonIdleSubscriber implements Runnable
@@ -140,16 +135,22 @@ class AllegroSqsSubscriber extends AbstractPullSubscriber
     @Override
     public Collection<IPullSubscriberMessage> nonBlockingPull()
     {
-      return pull(nonBlockingPullRequest_);
+      return pull(pollController_.getPollerCount(), 0);
     }
 
+    /**
+     * A blocking pull is made when the queue appears to be idle, so it is always a single long poll, which
+     * returns by the time the next message held by the conflator is due for release.
+     */
     @Override
     public Collection<IPullSubscriberMessage> blockingPull()
     {
-      return pull(blockingPullRequest_);
+      Conflator conflator = manager_.getConflator();
+      
+      return pull(1, conflator == null ? LONG_POLL_WAIT_SECONDS : conflator.getWaitTimeSeconds(LONG_POLL_WAIT_SECONDS));
     }
 
-    private Collection<IPullSubscriberMessage> pull(ReceiveMessageRequest pullRequest)
+    private Collection<IPullSubscriberMessage> pull(int pollers, int waitTimeSeconds)
     {
       
       try(ITraceContextTransaction traceTransaction = traceFactory_.createTransaction("PubSubPull:SQS", UUID.randomUUID().toString(), null))
@@ -157,34 +158,92 @@ class AllegroSqsSubscriber extends AbstractPullSubscriber
         ITraceContext trace = traceTransaction.open();
         
         List<IPullSubscriberMessage> result = new LinkedList<>();
-        try 
-        { 
-          feeds_.refresh();
-          
-          List<SqsResponseMessage> messages = new AllegroSqsRequestBuilder(allegro_, feeds_.getEndpoint())
-              .withFeedHash(feedHash_)
-              .withAction(SqsAction.RECEIVE)
-              .withMaxNumberOfMessages(pullRequest.getMaxNumberOfMessages())
-              .withWaitTimeSeconds(pullRequest.getWaitTimeSeconds())          
-            .execute(apiHttpClient_);
-
-          trace.trace("RECEIVED_SQS");
-
-          for(SqsResponseMessage receivedMessage : messages)
+        
+        feeds_.refresh();
+        
+        int                                    batchSize = pollController_.getBatchSize(pollers, manager_.getHandlerCapacity());
+        List<Future<List<SqsResponseMessage>>> futures   = new ArrayList<>(pollers - 1);
+        RuntimeException                       failure   = null;
+        
+        for(int i=1 ; i<pollers ; i++)
+          futures.add(manager_.getPollExecutor().submit(() -> receive(batchSize, waitTimeSeconds)));
+        
+        try
+        {
+          addMessages(result, receive(batchSize, waitTimeSeconds), trace);
+        }
+        catch(RuntimeException e)
+        {
+          failure = e;
+        }
+        
+        // Collect every concurrent receive, even after a failure, so that no received message is dropped.
+        for(Future<List<SqsResponseMessage>> future : futures)
+        {
+          try
+          {
+            addMessages(result, future.get(), trace);
+          }
+          catch(ExecutionException e)
           {
-            result.add(new AllegroPullSubscriberMessage(receivedMessage, trace));
+            if(failure == null)
+              failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
           }
+          catch(InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+            
+            if(failure == null)
+              failure = new IllegalStateException("Interrupted waiting for receive", e);
+          }
+        }
         
-        } catch(QueueDoesNotExistException e)
+        manager_.messagesReceived(result.size());
+        pollController_.update(pollers, batchSize, result.size(), manager_.getHandlerCapacity());
+        
+        if(failure instanceof QueueDoesNotExistException)
         {
           trace.trace("Stopping Subscriber, Feed deleted: "+feedHash_);
           running_ = false;
         }
+        else if(failure != null)
+        {
+          if(result.isEmpty())
+            throw failure;
+          
+          log_.warn("Receive from " + feedHash_ + " failed", failure);
+        }
+        
+        // Messages released by the conflator go through the handler path like those just received.
+        Conflator conflator = manager_.getConflator();
+        
+        if(conflator != null)
+          result.addAll(0, conflator.release());
         
         return result;
       }
 
     }
+    
+    private List<SqsResponseMessage> receive(int batchSize, int waitTimeSeconds)
+    {
+      return new AllegroSqsRequestBuilder(allegro_, feeds_.getEndpoint())
+          .withFeedHash(feedHash_)
+          .withAction(SqsAction.RECEIVE)
+          .withMaxNumberOfMessages(batchSize)
+          .withWaitTimeSeconds(waitTimeSeconds)
+        .execute(apiHttpClient_);
+    }
+    
+    private void addMessages(List<IPullSubscriberMessage> result, List<SqsResponseMessage> messages, ITraceContext trace)
+    {
+      trace.trace("RECEIVED_SQS");
+
+      for(SqsResponseMessage receivedMessage : messages)
+      {
+        result.add(new AllegroPullSubscriberMessage(receivedMessage, trace));
+      }
+    }
 
     @Override
     public void close()
@@ -215,6 +274,18 @@ class AllegroSqsSubscriber extends AbstractPullSubscriber
     @Override
     public void run()
     {
+      WeightedFairScheduler handlerScheduler = manager_.getHandlerScheduler();
+      
+      if(handlerScheduler == null)
+        process();
+      else
+        handlerScheduler.submit(feedHash_, new ScheduledMessage(this::process));
+    }
+    
+    private void process()
+    {
+      boolean conflating = false;
+      
       try(ITraceContextTransaction traceTransaction = trace_.createSubContext("PubSubHandle:SQS", message_.getMessageId(), ""))
       {
         ITraceContext trace = traceTransaction.open();
@@ -223,44 +294,21 @@ class AllegroSqsSubscriber extends AbstractPullSubscriber
         if(entity instanceof IAbstractStoredApplicationObject)
         {
 
-          IAbstractStoredApplicationObject object = (IAbstractStoredApplicationObject) entity;
-          long retryTime = manager_.handleMessage(consumer_, object, trace, message_.getMessageId());
-          
-          feeds_.refresh();
+          IAbstractStoredApplicationObject object    = (IAbstractStoredApplicationObject) entity;
+          Conflator                        conflator = manager_.getConflator();
           
-          synchronized(this)
+          if(conflator != null && object.getBaseHash() != null)
           {
-            // There is no point trying to extend the ack deadline now
-            running_ = false;
-  
+            trace.trace("CONFLATING");
+            
+            conflator.offer(object.getBaseHash(), new ConflatedMessage(object));
+            conflating = true;
             
-            if(retryTime < 0)
-            {
-              trace.trace("ABOUT_TO_ACK");
-              
-              new AllegroSqsRequestBuilder(allegro_, feeds_.getEndpoint())
-                .withFeedHash(feedHash_)
-                .withAction(SqsAction.DELETE)
-                .withReceiptHandle(message_.getReceiptHandle())
-              .execute(apiHttpClient_);
-              
-              traceTransaction.finished();
-            }
-            else
-            {
-              trace.trace("ABOUT_TO_NACK");
-              
-              int visibilityTimout = (int) (retryTime / 1000);
-              
-              new AllegroSqsRequestBuilder(allegro_, feeds_.getEndpoint())
-                .withFeedHash(feedHash_)
-                .withAction(SqsAction.EXTEND)
-                .withReceiptHandle(message_.getReceiptHandle())
-                .withVisibilityTimeout(visibilityTimout)
-              .execute(apiHttpClient_);
-                
-              traceTransaction.aborted();
-            }
+            traceTransaction.finished();
+          }
+          else
+          {
+            handle(object, trace, traceTransaction);
           }
         } else
         {
@@ -272,6 +320,160 @@ class AllegroSqsSubscriber extends AbstractPullSubscriber
       {
         log_.error("Failed to process message " + getMessageId(), e);
       }
+      finally
+      {
+        if(!conflating)
+          manager_.messageHandled();
+      }
+    }
+    
+    private void handle(IAbstractStoredApplicationObject object, ITraceContext trace, ITraceContextTransaction traceTransaction)
+    {
+      long retryTime;
+      
+      if(duplicateFilter_ != null && duplicateFilter_.isDuplicate(object.getAbsoluteHash()))
+      {
+        // Redelivery of an object we have already processed, just ack it.
+        trace.trace("DUPLICATE");
+        retryTime = -1;
+      }
+      else
+      {
+        retryTime = manager_.handleMessage(consumer_, object, trace, message_.getMessageId());
+      }
+      
+      synchronized(this)
+      {
+        // There is no point trying to extend the ack deadline now
+        running_ = false;
+
+        
+        if(retryTime < 0)
+        {
+          trace.trace("ABOUT_TO_ACK");
+          
+          ackAccumulator_.delete(message_.getReceiptHandle());
+          
+          if(duplicateFilter_ != null)
+            duplicateFilter_.processed(object.getAbsoluteHash());
+          
+          traceTransaction.finished();
+        }
+        else
+        {
+          trace.trace("ABOUT_TO_NACK");
+          
+          int visibilityTimout = (int) (retryTime / 1000);
+          
+          ackAccumulator_.extend(message_.getReceiptHandle(), visibilityTimout);
+            
+          traceTransaction.aborted();
+        }
+      }
+    }
+    
+    private class ScheduledMessage implements WeightedFairScheduler.IScheduledTask
+    {
+      private final Runnable task_;
+      
+      private ScheduledMessage(Runnable task)
+      {
+        task_ = task;
+      }
+
+      @Override
+      public void run()
+      {
+        task_.run();
+      }
+
+      @Override
+      public void extend()
+      {
+        AllegroPullSubscriberMessage.this.extend();
+      }
+    }
+    
+    private class ConflatedMessage implements Conflator.IConflatable
+    {
+      private final IAbstractStoredApplicationObject object_;
+
+      private ConflatedMessage(IAbstractStoredApplicationObject object)
+      {
+        object_ = object;
+      }
+
+      @Override
+      public Instant getCreatedDate()
+      {
+        return object_.getCreatedDate();
+      }
+
+      @Override
+      public String getMessageId()
+      {
+        return message_.getMessageId();
+      }
+
+      @Override
+      public void run()
+      {
+        WeightedFairScheduler handlerScheduler = manager_.getHandlerScheduler();
+        
+        if(handlerScheduler == null)
+          handleReleased();
+        else
+          handlerScheduler.submit(feedHash_, new ScheduledMessage(this::handleReleased));
+      }
+      
+      private void handleReleased()
+      {
+        try
+        {
+          dispatch();
+        }
+        catch(RuntimeException e)
+        {
+          log_.error("Failed to process message " + getMessageId(), e);
+        }
+      }
+
+      @Override
+      public void extend()
+      {
+        AllegroPullSubscriberMessage.this.extend();
+      }
+
+      @Override
+      public void dispatch()
+      {
+        try(ITraceContextTransaction traceTransaction = trace_.createSubContext("PubSubConflated:SQS", message_.getMessageId(), ""))
+        {
+          handle(object_, traceTransaction.open(), traceTransaction);
+        }
+        finally
+        {
+          manager_.messageHandled();
+        }
+      }
+
+      @Override
+      public void supersede()
+      {
+        try
+        {
+          synchronized(AllegroPullSubscriberMessage.this)
+          {
+            AllegroPullSubscriberMessage.this.running_ = false;
+            
+            ackAccumulator_.delete(message_.getReceiptHandle());
+          }
+        }
+        finally
+        {
+          manager_.messageHandled();
+        }
+      }
     }
 
     @Override
@@ -281,15 +483,7 @@ class AllegroSqsSubscriber extends AbstractPullSubscriber
       {
         try
         {
-          feeds_.refresh();
-          
-          new AllegroSqsRequestBuilder(allegro_, feeds_.getEndpoint())
-            .withFeedHash(feedHash_)
-            .withAction(SqsAction.EXTEND)
-            .withReceiptHandle(message_.getReceiptHandle())
-            .withVisibilityTimeout(EXTENSION_TIMEOUT_SECONDS)
-          .execute(apiHttpClient_);
-          
+          ackAccumulator_.extend(message_.getReceiptHandle(), EXTENSION_TIMEOUT_SECONDS);
         }
         catch(RuntimeException e)
         {
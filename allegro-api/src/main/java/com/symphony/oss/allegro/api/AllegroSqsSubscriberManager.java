@@ -25,8 +25,16 @@ package com.symphony.oss.allegro.api;
 
 import java.net.URL;
 import java.util.HashMap;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.slf4j.Logger;
@@ -35,7 +43,9 @@ import org.slf4j.LoggerFactory;
 import com.amazonaws.ClientConfiguration;
 import com.symphony.oss.canon.runtime.ModelRegistry;
 import com.symphony.oss.canon.runtime.exception.NotImplementedException;
+import com.symphony.oss.commons.concurrent.NamedThreadFactory;
 import com.symphony.oss.commons.fault.FaultAccumulator;
+import com.symphony.oss.fugue.Fugue;
 import com.symphony.oss.fugue.config.Configuration;
 import com.symphony.oss.fugue.naming.Name;
 import com.symphony.oss.fugue.pubsub.AbstractPullSubscriberManager;
@@ -51,20 +61,56 @@ import com.symphony.oss.models.object.canon.IAbstractStoredApplicationObject;
 public class AllegroSqsSubscriberManager extends AbstractPullSubscriberManager<IAbstractStoredApplicationObject, AllegroSqsSubscriberManager>
 implements IAllegroQueryManager
 {
-  private static final Logger        log_         = LoggerFactory.getLogger(AllegroSqsSubscriberManager.class);
+  private static final Logger                  log_                         = LoggerFactory.getLogger(AllegroSqsSubscriberManager.class);
+  private static final long                    HANDLER_DRAIN_TIMEOUT_MILLIS = 60000;
 
-  private List<AllegroSqsSubscriber> subscribers_ = new LinkedList<>();
-  private AllegroSqsFeedsContainer   feeds_;
-  private ModelRegistry              modelRegistry_;
-  private CloseableHttpClient        apiHttpClient_;
+  private List<AllegroSqsSubscriber>           subscribers_     = new LinkedList<>();
+  private AllegroSqsFeedsContainer             feeds_;
+  private ModelRegistry                        modelRegistry_;
+  private CloseableHttpClient                  apiHttpClient_;
+  private final long                           ackBatchDelayMillis_;
+  private final ScheduledExecutorService       ackScheduler_    = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Sqs-ack", true));
+  private final Map<String, SqsAckAccumulator> ackAccumulators_ = new ConcurrentHashMap<>();
+  private final int                            handlerThreadPoolSize_;
+  private final int                            minPollersPerQueue_;
+  private final int                            maxPollersPerQueue_;
+  private final int                            maxBatchSize_;
+  private final ExecutorService                pollExecutor_    = Executors.newCachedThreadPool(new NamedThreadFactory("Sqs-poll", true));
+  private final AtomicInteger                  inFlight_        = new AtomicInteger();
+  private final Supplier<DuplicateFilter>      duplicateFilterFactory_;
+  private final Conflator                      conflator_;
+  private final WeightedFairScheduler          handlerScheduler_;
 
   private AllegroSqsSubscriberManager(Builder builder)
   {
     super(builder);
     
-    feeds_         = builder.feeds_;
-    modelRegistry_ = builder.modelRegistry_;
-    apiHttpClient_ = builder.apiHttpClient_;
+    feeds_                  = builder.feeds_;
+    modelRegistry_          = builder.modelRegistry_;
+    apiHttpClient_          = builder.apiHttpClient_;
+    ackBatchDelayMillis_    = builder.ackBatchDelayMillis_;
+    duplicateFilterFactory_ = builder.duplicateFilterFactory_;
+    conflator_              = builder.conflator_;
+    
+    if(Fugue.isDebugSingleThread())
+    {
+      handlerThreadPoolSize_ = 1;
+      minPollersPerQueue_    = 1;
+      maxPollersPerQueue_    = 1;
+      maxBatchSize_          = 1;
+    }
+    else
+    {
+      handlerThreadPoolSize_ = builder.handlerThreadPoolSize_;
+      minPollersPerQueue_    = builder.minPollersPerQueue_;
+      maxPollersPerQueue_    = builder.maxPollersPerQueue_;
+      maxBatchSize_          = SqsAckAccumulator.MAX_BATCH_SIZE;
+    }
+    
+    handlerScheduler_ = builder.feedWeights_.isEmpty() || Fugue.isDebugSingleThread() ? null :
+      new WeightedFairScheduler(builder.feedWeights_, handlerThreadPoolSize_, ackScheduler_, AllegroSqsSubscriber.EXTENSION_FREQUENCY_MILLIS,
+          builder.handlerQueueCapacity_ == null ? handlerThreadPoolSize_ * maxBatchSize_ : builder.handlerQueueCapacity_,
+          builder.handlerQueuePolicy_);
 
     ClientConfiguration configuration = new ClientConfiguration()
     .withMaxConnections(200);
@@ -102,6 +148,14 @@ implements IAllegroQueryManager
     private String                   proxyPassword_;
 
     private CloseableHttpClient      apiHttpClient_;
+    private long                     ackBatchDelayMillis_      = 100;
+    private int                      minPollersPerQueue_       = 1;
+    private int                      maxPollersPerQueue_       = 4;
+    private Supplier<DuplicateFilter> duplicateFilterFactory_;
+    private Conflator                conflator_;
+    private Map<String, Integer>     feedWeights_              = Collections.emptyMap();
+    private Integer                  handlerQueueCapacity_;
+    private HandlerQueuePolicy       handlerQueuePolicy_       = HandlerQueuePolicy.Block;
 
     /**
      * Constructor.
@@ -232,6 +286,121 @@ implements IAllegroQueryManager
       return self();
     }
 
+    /**
+     * Set the maximum time for which a message acknowledgement or visibility extension is held
+     * so that it can be sent in a batch with others for the same feed.
+     * 
+     * A batch is sent as soon as it is full (10 entries), so this only delays acknowledgements when
+     * the message rate is low.
+     * 
+     * @param ackBatchDelayMillis The maximum delay in milliseconds, default 100.
+     *  
+     * @return this (fluent method)
+     */
+    public Builder withAckBatchDelayMillis(long ackBatchDelayMillis)
+    {
+      ackBatchDelayMillis_ = ackBatchDelayMillis;
+      
+      return self();
+    }
+
+    /**
+     * Set the bounds on the number of concurrent receive requests made against each queue.
+     * 
+     * While receives come back full and the handlers have capacity for more messages the number of
+     * concurrent receives is increased up to the maximum, when the queue is idle it drops back to the
+     * minimum. A single receive at a time is a long poll, so a minimum of 1 means that an idle queue
+     * costs one outstanding request.
+     * 
+     * @param minPollersPerQueue The minimum number of concurrent receive requests per queue, default 1.
+     * @param maxPollersPerQueue The maximum number of concurrent receive requests per queue, default 4.
+     *  
+     * @return this (fluent method)
+     */
+    public Builder withPollersPerQueue(int minPollersPerQueue, int maxPollersPerQueue)
+    {
+      minPollersPerQueue_ = minPollersPerQueue;
+      maxPollersPerQueue_ = maxPollersPerQueue;
+      
+      return self();
+    }
+
+    /**
+     * Set the factory for the filters used to suppress duplicate messages, each subscription has its own filter.
+     * 
+     * @param duplicateFilterFactory The factory, which may return null for no duplicate suppression.
+     * 
+     * @return this (fluent method)
+     */
+    Builder withDuplicateFilterFactory(Supplier<DuplicateFilter> duplicateFilterFactory)
+    {
+      duplicateFilterFactory_ = duplicateFilterFactory;
+      
+      return self();
+    }
+
+    /**
+     * Set the conflating stage for messages.
+     * 
+     * @param conflator The conflator, or null for no conflation.
+     * 
+     * @return this (fluent method)
+     */
+    Builder withConflator(Conflator conflator)
+    {
+      conflator_ = conflator;
+      
+      return self();
+    }
+
+    /**
+     * Set the weights of feeds in the handler stage.
+     * 
+     * If any weights are set then messages are passed to the handlers by a weighted fair scheduler, so that
+     * each busy feed receives a share of the handler threads in proportion to its weight, rather than
+     * in order of arrival. Feeds without a weight have a weight of 1.
+     * 
+     * @param feedWeights A map of feed hash (as used to name the subscription) to weight.
+     * 
+     * @return this (fluent method)
+     */
+    public Builder withFeedWeights(Map<String, Integer> feedWeights)
+    {
+      feedWeights_ = feedWeights;
+      
+      return self();
+    }
+
+    /**
+     * Set the capacity of the queue of messages waiting for a handler thread when feed weights are set.
+     * 
+     * If not set the capacity is one receive batch per handler thread.
+     * 
+     * @param handlerQueueCapacity The capacity of the queue of messages waiting for a handler thread.
+     * 
+     * @return this (fluent method)
+     */
+    public Builder withHandlerQueueCapacity(Integer handlerQueueCapacity)
+    {
+      handlerQueueCapacity_ = handlerQueueCapacity;
+      
+      return self();
+    }
+
+    /**
+     * Set the action to be taken when the handler queue is full.
+     * 
+     * @param handlerQueuePolicy The action to be taken when the handler queue is full.
+     * 
+     * @return this (fluent method)
+     */
+    public Builder withHandlerQueuePolicy(HandlerQueuePolicy handlerQueuePolicy)
+    {
+      handlerQueuePolicy_ = handlerQueuePolicy;
+      
+      return self();
+    }
+
     @Override
     public void validate(FaultAccumulator faultAccumulator)
     {
@@ -240,6 +409,21 @@ implements IAllegroQueryManager
       faultAccumulator.checkNotNull(feeds_, "credentials");
       faultAccumulator.checkNotNull(modelRegistry_, "modelRegistry");
       faultAccumulator.checkNotNull(apiHttpClient_, "apiHttpClient");
+      
+      if(ackBatchDelayMillis_ < 0)
+        faultAccumulator.error("ackBatchDelayMillis must not be negative");
+      
+      if(minPollersPerQueue_ < 1)
+        faultAccumulator.error("minPollersPerQueue must be at least 1");
+      
+      if(maxPollersPerQueue_ < minPollersPerQueue_)
+        faultAccumulator.error("maxPollersPerQueue must not be less than minPollersPerQueue");
+      
+      faultAccumulator.checkNotNull(feedWeights_, "feedWeights");
+      faultAccumulator.checkNotNull(handlerQueuePolicy_, "handlerQueuePolicy");
+      
+      if(handlerQueueCapacity_ != null && handlerQueueCapacity_ < 1)
+        faultAccumulator.error("handlerQueueCapacity must be at least 1 or not set");
     }
     
     class LocalConfiguration extends Configuration
@@ -273,8 +457,13 @@ implements IAllegroQueryManager
     {
       log_.info("Subscribing to " + subscriptionName + "..."); 
       
+      SqsAckAccumulator ackAccumulator = ackAccumulators_.computeIfAbsent(subscriptionName.toString(),
+          (feedHash) -> new SqsAckAccumulator(feeds_, apiHttpClient_, feedHash, ackScheduler_, ackBatchDelayMillis_));
+      
       AllegroSqsSubscriber subscriber = new AllegroSqsSubscriber(this, apiHttpClient_,subscriptionName.toString(), getTraceFactory(), subscription.getConsumer(),
-          getCounter(), createBusyCounter(subscriptionName), feeds_, modelRegistry_);
+          getCounter(), createBusyCounter(subscriptionName), feeds_, modelRegistry_, ackAccumulator,
+          new SqsPollController(minPollersPerQueue_, maxPollersPerQueue_, maxBatchSize_),
+          duplicateFilterFactory_ == null ? null : duplicateFilterFactory_.get());
 
       subscribers_.add(subscriber); 
     }
@@ -298,10 +487,113 @@ implements IAllegroQueryManager
       
      super.stopSubscriptions();
      
+     if(handlerScheduler_ != null)
+       handlerScheduler_.stop(HANDLER_DRAIN_TIMEOUT_MILLIS);
+
+     if(conflator_ != null)
+       conflator_.close();
+     
+     pollExecutor_.shutdown();
+     
+     for(SqsAckAccumulator ackAccumulator : ackAccumulators_.values())
+     {
+       try
+       {
+         ackAccumulator.flush();
+       }
+       catch(RuntimeException e)
+       {
+         log_.error("Failed to flush acknowledgements", e);
+       }
+     }
+     
+     ackScheduler_.shutdown();
+     
      for(AllegroSqsSubscriber subscriber : subscribers_)
        subscriber.close();
   }
 
+  /**
+   * 
+   * @return The conflating stage for messages, or null.
+   */
+  Conflator getConflator()
+  {
+    return conflator_;
+  }
+
+  /**
+   * 
+   * @return The weighted fair scheduler for the handler stage, or null if messages are handled in order of arrival.
+   */
+  WeightedFairScheduler getHandlerScheduler()
+  {
+    return handlerScheduler_;
+  }
+  
+  /**
+   * 
+   * @return The number of messages waiting for a handler in the weighted fair scheduler.
+   */
+  public int getHandlerQueueDepth()
+  {
+    return handlerScheduler_ == null ? 0 : handlerScheduler_.getQueueDepth();
+  }
+
+  ExecutorService getPollExecutor()
+  {
+    return pollExecutor_;
+  }
+  
+  /**
+   * The handlers are considered to have capacity for a full batch, or two messages per handler thread
+   * if that is more, beyond which messages are left on the queue.
+   * 
+   * @return The number of additional messages the handlers can accept.
+   */
+  int getHandlerCapacity()
+  {
+    return Math.max(0, Math.max(SqsAckAccumulator.MAX_BATCH_SIZE, 2 * handlerThreadPoolSize_) - inFlight_.get());
+  }
+  
+  void messagesReceived(int count)
+  {
+    inFlight_.addAndGet(count);
+  }
+  
+  void messageHandled()
+  {
+    inFlight_.decrementAndGet();
+  }
+
+  /**
+   * 
+   * @return The number of acknowledgements and visibility extensions sent.
+   */
+  public long getAckCount()
+  {
+    long count = 0;
+    
+    for(SqsAckAccumulator ackAccumulator : ackAccumulators_.values())
+      count += ackAccumulator.getEntryCount();
+    
+    return count;
+  }
+
+  /**
+   * 
+   * @return The number of batch requests made to send acknowledgements and visibility extensions.
+   */
+  public long getAckRequestCount()
+  {
+    long count = 0;
+    
+    for(SqsAckAccumulator ackAccumulator : ackAccumulators_.values())
+      count += ackAccumulator.getRequestCount();
+    
+    return count;
+  }
+
   @Override
   public boolean isIdle()
   {
@@ -23,6 +23,7 @@
 
 package com.symphony.oss.allegro.api;
 
+import java.time.Instant;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
@@ -31,7 +32,7 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.symphony.oss.canon.runtime.exception.NotFoundException;
+import com.symphony.oss.allegro.api.FeedAckBuffer.PendingExtension;
 import com.symphony.oss.commons.hash.Hash;
 import com.symphony.oss.fugue.Fugue;
 import com.symphony.oss.fugue.counter.IBusyCounter;
@@ -53,6 +54,10 @@ import com.symphony.oss.models.object.canon.facade.IFeedObject;
 /**
  * An SWS SNS subscriber.
  * 
+ * Acknowledgements and ack deadline extensions are not sent individually, they are held and sent with
+ * the next pull request, or in a request of their own if they have been held for longer than the
+ * ack flush delay.
+ * 
  * @author Bruce Skingle
  *
  */
@@ -72,6 +77,9 @@ class AllegroSubscriber extends AbstractPullSubscriber
   private final IThreadSafeRetryableConsumer<IAbstractStoredApplicationObject> consumer_;
   private final NonIdleSubscriber                                              nonIdleSubscriber_;
   private int                                                                  messageBatchSize_          = 10;
+  private final long                                                           ackFlushDelayMillis_;
+  private final FeedAckBuffer                                                  ackBuffer_;
+  private final DuplicateFilter                                                duplicateFilter_;
 
 
   AllegroSubscriber(AllegroSubscriberManager manager,
@@ -80,7 +88,9 @@ class AllegroSubscriber extends AbstractPullSubscriber
       String feedHash,
       ITraceContextTransactionFactory traceFactory,
       IThreadSafeRetryableConsumer<IAbstractStoredApplicationObject> consumer, 
-      ICounter counter, IBusyCounter busyCounter
+      ICounter counter, IBusyCounter busyCounter,
+      long ackFlushDelayMillis,
+      DuplicateFilter duplicateFilter
       )
   {
     super(manager, feedHash, counter, busyCounter, EXTENSION_FREQUENCY_MILLIS, consumer);
@@ -97,6 +107,50 @@ class AllegroSubscriber extends AbstractPullSubscriber
     traceFactory_ = traceFactory;
     consumer_ = consumer;
     nonIdleSubscriber_ = new NonIdleSubscriber();
+    ackFlushDelayMillis_ = ackFlushDelayMillis;
+    ackBuffer_ = new FeedAckBuffer(feedHash);
+    duplicateFilter_ = duplicateFilter;
+  }
+  
+  /**
+   * Send any pending acks and extensions in a request of their own.
+   * 
+   * @param force If false then nothing is sent unless the oldest pending ack has been held for longer than the ack flush delay.
+   */
+  void flushAcks(boolean force)
+  {
+    if(!ackBuffer_.isFlushDue(force, ackFlushDelayMillis_))
+      return;
+    
+    ackBuffer_.flush((deletes, extensions) -> fetch(0, 0, deletes, extensions));
+  }
+  
+  private List<IFeedObject> fetch(int waitTimeSeconds, int maxItems, List<String> deletes, List<PendingExtension> extensions)
+  {
+    FeedRequest.Builder feedRequest = new FeedRequest.Builder()
+        .withWaitTimeSeconds(waitTimeSeconds)
+        .withMaxItems(maxItems);
+    
+    for(String receiptHandle : deletes)
+    {
+      feedRequest.withDelete(new FeedObjectDelete.Builder()
+          .withReceiptHandle(receiptHandle)
+          .build());
+    }
+    
+    for(PendingExtension extension : extensions)
+    {
+      feedRequest.withExtend(new FeedObjectExtend.Builder()
+          .withReceiptHandle(extension.receiptHandle_)
+          .withVisibilityTimeout(extension.visibilityTimeout_)
+          .build());
+    }
+    
+    return objectApiClient_.newFeedsFeedHashObjectsPostHttpRequestBuilder()
+      .withFeedHash(feedHash_)
+      .withCanonPayload(feedRequest.build())
+      .build()
+      .execute(httpClient_);
   }
   
   class NonIdleSubscriber implements Runnable
@@ -128,10 +182,15 @@ class AllegroSubscriber extends AbstractPullSubscriber
       return pull(0, messageBatchSize_);
     }
 
+    /**
+     * The long poll returns by the time the next message held by the conflator is due for release.
+     */
     @Override
     public Collection<IPullSubscriberMessage> blockingPull()
     {
-      return pull(20, messageBatchSize_);
+      Conflator conflator = manager_.getConflator();
+      
+      return pull(conflator == null ? 20 : conflator.getWaitTimeSeconds(20), messageBatchSize_);
     }
 
     private Collection<IPullSubscriberMessage> pull(int waitTimeSeconds, int maxItems)
@@ -144,14 +203,9 @@ class AllegroSubscriber extends AbstractPullSubscriber
         
         log_.info("Pull....");
         trace.trace("PULL_MSG");
-        List<IFeedObject> messages  = objectApiClient_.newFeedsFeedHashObjectsPostHttpRequestBuilder()
-            .withFeedHash(feedHash_)
-            .withCanonPayload(new FeedRequest.Builder()
-                .withWaitTimeSeconds(waitTimeSeconds)
-                .withMaxItems(maxItems)
-                .build())
-            .build()
-            .execute(httpClient_);
+        
+        // Acks and extensions which are pending are sent with the pull request.
+        List<IFeedObject> messages = ackBuffer_.send((deletes, extensions) -> fetch(waitTimeSeconds, maxItems, deletes, extensions));
         
         trace.trace("RECEIVED_MSG");
         log_.info("Received " + messages.size() + " messages.");
@@ -161,6 +215,12 @@ class AllegroSubscriber extends AbstractPullSubscriber
         }
       }
       
+      // Messages released by the conflator go through the handler path like those just received.
+      Conflator conflator = manager_.getConflator();
+      
+      if(conflator != null)
+        result.addAll(0, conflator.release());
+      
       return result;
     }
 
@@ -199,68 +259,21 @@ class AllegroSubscriber extends AbstractPullSubscriber
     {
       try(ITraceContextTransaction traceTransaction = trace_.createSubContext("PubSub:SQS", getMessageId()))
       {
-        ITraceContext trace = traceTransaction.open();
-        
-        long retryTime = manager_.handleMessage(consumer_, message_.getPayload(), trace, getMessageId());
+        ITraceContext                    trace     = traceTransaction.open();
+        IAbstractStoredApplicationObject object    = message_.getPayload();
+        Conflator                        conflator = manager_.getConflator();
         
-        synchronized(this)
+        if(conflator != null && object.getBaseHash() != null)
         {
-          // There is no point trying to extend the ack deadline now
-          running_ = false;
-
-          if(retryTime < 0)
-          {
-            try
-            {
-              trace.trace("ABOUT_TO_ACK");
-              
-              objectApiClient_.newFeedsFeedHashObjectsPostHttpRequestBuilder()
-                .withFeedHash(feedHash_)
-                .withCanonPayload(new FeedRequest.Builder()
-                    .withWaitTimeSeconds(0)
-                    .withMaxItems(0)
-                    .withDelete(new FeedObjectDelete.Builder()
-                        .withReceiptHandle(message_.getReceiptHandle())
-                        .build())
-                    .build())
-                .build()
-                .execute(httpClient_);
-            }
-            catch(NotFoundException e)
-            {
-              // expected
-            }
-            
-            traceTransaction.finished();
-          }
-          else
-          {
-            try
-            {
-              trace.trace("ABOUT_TO_NACK");
-            
-              int visibilityTimout = (int) (retryTime / 1000);
-              
-              objectApiClient_.newFeedsFeedHashObjectsPostHttpRequestBuilder()
-              .withFeedHash(feedHash_)
-              .withCanonPayload(new FeedRequest.Builder()
-                  .withWaitTimeSeconds(0)
-                  .withMaxItems(0)
-                  .withExtend(new FeedObjectExtend.Builder()
-                      .withReceiptHandle(message_.getReceiptHandle())
-                      .withVisibilityTimeout(visibilityTimout)
-                      .build())
-                  .build())
-              .build()
-              .execute(httpClient_);
-            }
-            catch(NotFoundException e)
-            {
-              // expected
-            }
-            
-            traceTransaction.aborted();
-          }
+          trace.trace("CONFLATING");
+          
+          conflator.offer(object.getBaseHash(), new ConflatedMessage());
+          
+          traceTransaction.finished();
+        }
+        else
+        {
+          handle(trace, traceTransaction);
         }
       }
       catch(RuntimeException e)
@@ -268,37 +281,113 @@ class AllegroSubscriber extends AbstractPullSubscriber
         log_.error("Failed to process message " + getMessageId(), e);
       }
     }
+    
+    private void handle(ITraceContext trace, ITraceContextTransaction traceTransaction)
+    {
+      long retryTime;
+      
+      if(duplicateFilter_ != null && duplicateFilter_.isDuplicate(message_.getPayload().getAbsoluteHash()))
+      {
+        // Redelivery of an object we have already processed, just ack it.
+        trace.trace("DUPLICATE");
+        retryTime = -1;
+      }
+      else
+      {
+        retryTime = manager_.handleMessage(consumer_, message_.getPayload(), trace, getMessageId());
+      }
+      
+      synchronized(this)
+      {
+        // There is no point trying to extend the ack deadline now
+        running_ = false;
 
-    @Override
-    public synchronized void extend()
+        if(retryTime < 0)
+        {
+          trace.trace("ABOUT_TO_ACK");
+          
+          ackBuffer_.addDelete(message_.getReceiptHandle());
+          
+          if(duplicateFilter_ != null)
+            duplicateFilter_.processed(message_.getPayload().getAbsoluteHash());
+          
+          traceTransaction.finished();
+        }
+        else
+        {
+          trace.trace("ABOUT_TO_NACK");
+          
+          int visibilityTimout = (int) (retryTime / 1000);
+          
+          ackBuffer_.addExtension(message_.getReceiptHandle(), visibilityTimout);
+          
+          traceTransaction.aborted();
+        }
+      }
+    }
+    
+    private class ConflatedMessage implements Conflator.IConflatable
     {
-      if(running_)
+      @Override
+      public Instant getCreatedDate()
+      {
+        return message_.getPayload().getCreatedDate();
+      }
+
+      @Override
+      public String getMessageId()
+      {
+        return message_.getMessageId();
+      }
+
+      @Override
+      public void run()
       {
         try
         {
-          objectApiClient_.newFeedsFeedHashObjectsPostHttpRequestBuilder()
-          .withFeedHash(feedHash_)
-          .withCanonPayload(new FeedRequest.Builder()
-              .withWaitTimeSeconds(0)
-              .withMaxItems(0)
-              .withExtend(new FeedObjectExtend.Builder()
-                  .withReceiptHandle(message_.getReceiptHandle())
-                  .withVisibilityTimeout(EXTENSION_TIMEOUT_SECONDS)
-                  .build())
-              .build())
-          .build()
-          .execute(httpClient_);
-          log_.info("Extended message " + getMessageId());
+          dispatch();
         }
-        catch(NotFoundException e)
+        catch(RuntimeException e)
         {
-          log_.info("Extended message " + getMessageId());
+          log_.error("Failed to process message " + getMessageId(), e);
         }
-        catch(RuntimeException e)
+      }
+
+      @Override
+      public void extend()
+      {
+        AllegroPullSubscriberMessage.this.extend();
+      }
+
+      @Override
+      public void dispatch()
+      {
+        try(ITraceContextTransaction traceTransaction = trace_.createSubContext("PubSubConflated:SQS", getMessageId()))
+        {
+          handle(traceTransaction.open(), traceTransaction);
+        }
+      }
+
+      @Override
+      public void supersede()
+      {
+        synchronized(AllegroPullSubscriberMessage.this)
         {
-          log_.error("Failed to extend message " + getMessageId(), e);
+          AllegroPullSubscriberMessage.this.running_ = false;
+          
+          ackBuffer_.addDelete(message_.getReceiptHandle());
         }
       }
     }
+
+    @Override
+    public synchronized void extend()
+    {
+      if(running_)
+      {
+        ackBuffer_.addExtension(message_.getReceiptHandle(), EXTENSION_TIMEOUT_SECONDS);
+        log_.info("Extending message " + getMessageId());
+      }
+    }
   }
 }
@@ -25,6 +25,10 @@ package com.symphony.oss.allegro.api;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.slf4j.Logger;
@@ -32,6 +36,7 @@ import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.symphony.oss.canon.runtime.exception.NotImplementedException;
+import com.symphony.oss.commons.concurrent.NamedThreadFactory;
 import com.symphony.oss.commons.fault.FaultAccumulator;
 import com.symphony.oss.fugue.config.Configuration;
 import com.symphony.oss.fugue.naming.Name;
@@ -54,6 +59,10 @@ implements IAllegroQueryManager
   private List<AllegroSubscriber>     subscribers_ = new LinkedList<>();
   private final ObjectHttpModelClient objectApiClient_;
   private final CloseableHttpClient   httpClient_;
+  private final long                  ackFlushDelayMillis_;
+  private final Supplier<DuplicateFilter> duplicateFilterFactory_;
+  private final Conflator             conflator_;
+  private final ScheduledExecutorService ackScheduler_ = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Feed-ack", true));
 
   private AllegroSubscriberManager(Builder builder)
   {
@@ -61,6 +70,9 @@ implements IAllegroQueryManager
     
     objectApiClient_ = builder.objectApiClient_;
     httpClient_ = builder.httpClient_;
+    ackFlushDelayMillis_ = builder.ackFlushDelayMillis_;
+    duplicateFilterFactory_ = builder.duplicateFilterFactory_;
+    conflator_ = builder.conflator_;
   }
   
   /**
@@ -75,6 +87,9 @@ implements IAllegroQueryManager
     private CloseableHttpClient   httpClient_;
     private int                   subscriberThreadPoolSize_ = 1; // TODO: default to number of subscriptions
     private int                   handlerThreadPoolSize_    = 1; // TODO: default to 9*subscriberThreadPoolSize_
+    private long                  ackFlushDelayMillis_      = 1000;
+    private Supplier<DuplicateFilter> duplicateFilterFactory_;
+    private Conflator             conflator_;
 
     /**
      * Constructor.
@@ -118,10 +133,56 @@ implements IAllegroQueryManager
       return self();
     }
 
+    /**
+     * Set the maximum time for which message acks and ack deadline extensions are held waiting for
+     * the next pull request to carry them, after which they are sent in a request of their own.
+     * 
+     * @param ackFlushDelayMillis The maximum delay in milliseconds, default 1000.
+     * 
+     * @return this (fluent method)
+     */
+    public Builder withAckFlushDelayMillis(long ackFlushDelayMillis)
+    {
+      ackFlushDelayMillis_ = ackFlushDelayMillis;
+      
+      return self();
+    }
+
+    /**
+     * Set the factory for the filters used to suppress duplicate messages, each subscription has its own filter.
+     * 
+     * @param duplicateFilterFactory The factory, which may return null for no duplicate suppression.
+     * 
+     * @return this (fluent method)
+     */
+    Builder withDuplicateFilterFactory(Supplier<DuplicateFilter> duplicateFilterFactory)
+    {
+      duplicateFilterFactory_ = duplicateFilterFactory;
+      
+      return self();
+    }
+
+    /**
+     * Set the conflating stage for messages.
+     * 
+     * @param conflator The conflator, or null for no conflation.
+     * 
+     * @return this (fluent method)
+     */
+    Builder withConflator(Conflator conflator)
+    {
+      conflator_ = conflator;
+      
+      return self();
+    }
+
     @Override
     public void validate(FaultAccumulator faultAccumulator)
     {
       faultAccumulator.checkNotNull(objectApiClient_, "systemApiClient");
+      
+      if(ackFlushDelayMillis_ < 1)
+        faultAccumulator.error("ackFlushDelayMillis must be at least 1");
       faultAccumulator.checkNotNull(httpClient_, "httpClient");
       
       withConfig(new LocalConfiguration());
@@ -152,7 +213,8 @@ implements IAllegroQueryManager
       log_.info("Subscribing to " + subscriptionName + "..."); 
       
       AllegroSubscriber subscriber = new AllegroSubscriber(this, objectApiClient_, httpClient_, subscriptionName.toString(), getTraceFactory(), subscription.getConsumer(),
-          getCounter(), createBusyCounter(subscriptionName));
+          getCounter(), createBusyCounter(subscriptionName), ackFlushDelayMillis_,
+          duplicateFilterFactory_ == null ? null : duplicateFilterFactory_.get());
 
       subscribers_.add(subscriber); 
     }
@@ -166,6 +228,23 @@ implements IAllegroQueryManager
       log_.info("Starting subscription to " + subscriber.getFeedHash() + "...");
       submit(subscriber, true);
     }
+    
+    long period = Math.max(1, ackFlushDelayMillis_ / 2);
+    
+    ackScheduler_.scheduleWithFixedDelay(() ->
+    {
+      for(AllegroSubscriber subscriber : subscribers_)
+      {
+        try
+        {
+          subscriber.flushAcks(false);
+        }
+        catch(RuntimeException e)
+        {
+          log_.error("Failed to flush acks", e);
+        }
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
   }
 
   @Override
@@ -175,11 +254,28 @@ implements IAllegroQueryManager
         subscriber.stop();
       
      super.stopSubscriptions();
+
+     if(conflator_ != null)
+       conflator_.close();
+     
+     ackScheduler_.shutdown();
+     
+     for(AllegroSubscriber subscriber : subscribers_)
+       subscriber.flushAcks(true);
      
      for(AllegroSubscriber subscriber : subscribers_)
        subscriber.close();
   }
 
+  /**
+   * 
+   * @return The conflating stage for messages, or null.
+   */
+  Conflator getConflator()
+  {
+    return conflator_;
+  }
+
   @Override
   public boolean isIdle()
   {
@@ -18,12 +18,15 @@
 
 package com.symphony.oss.allegro.api;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.symphony.oss.commons.fault.FaultAccumulator;
 import com.symphony.oss.fugue.pipeline.ISimpleThreadSafeRetryableConsumer;
 import com.symphony.oss.fugue.pipeline.IThreadSafeErrorConsumer;
 import com.symphony.oss.fugue.pipeline.IThreadSafeRetryableConsumer;
 import com.symphony.oss.fugue.pipeline.IThreadSafeSimpleErrorConsumer;
 import com.symphony.oss.fugue.trace.ITraceContext;
+import com.symphony.oss.models.object.canon.facade.IApplicationObjectHeader;
 
 /**
  * Manager of Thread Safe Consumers.
@@ -66,8 +69,22 @@ public class AsyncConsumerManager extends AbstractConsumerManager
 {
   //private static final Logger log_ = LoggerFactory.getLogger(AsyncConsumerManager.class);
   
+  /** The maximum conflation window, a third of the 30 second feed visibility timeout. */
+  public static final long                 MAX_CONFLATION_WINDOW_MILLIS = 10000;
+  
   private final Integer                    subscriberThreadPoolSize_;
   private final Integer                    handlerThreadPoolSize_;
+  private final Integer                    handlerQueueCapacity_;
+  private final HandlerQueuePolicy         handlerQueuePolicy_;
+  private final Integer                    adaptiveHandlerMinSize_;
+  private final Integer                    adaptiveHandlerMaxSize_;
+  private final Integer                    virtualThreadMaxHandlers_;
+  private final Integer                    duplicateMaxEntries_;
+  private final Long                       duplicateWindowMillis_;
+  private final AtomicLong                 duplicateCheckCount_ = new AtomicLong();
+  private final AtomicLong                 duplicateCount_ = new AtomicLong();
+  private final Long                       conflationWindowMillis_;
+  private final AtomicLong                 conflatedCount_ = new AtomicLong();
   
   protected AsyncConsumerManager(AbstractBuilder<?,?> builder)
   {
@@ -75,6 +92,14 @@ public class AsyncConsumerManager extends AbstractConsumerManager
     
     subscriberThreadPoolSize_       = builder.subscriberThreadPoolSize_;
     handlerThreadPoolSize_          = builder.handlerThreadPoolSize_;
+    handlerQueueCapacity_           = builder.handlerQueueCapacity_;
+    handlerQueuePolicy_             = builder.handlerQueuePolicy_;
+    adaptiveHandlerMinSize_         = builder.adaptiveHandlerMinSize_;
+    adaptiveHandlerMaxSize_         = builder.adaptiveHandlerMaxSize_;
+    virtualThreadMaxHandlers_       = builder.virtualThreadMaxHandlers_;
+    duplicateMaxEntries_            = builder.duplicateMaxEntries_;
+    duplicateWindowMillis_          = builder.duplicateWindowMillis_;
+    conflationWindowMillis_         = builder.conflationWindowMillis_;
   }
 
   /**
@@ -94,6 +119,130 @@ public class AsyncConsumerManager extends AbstractConsumerManager
   {
     return handlerThreadPoolSize_;
   }
+
+  /**
+   * 
+   * @return The capacity of the handler queue, or null if the queue is unbounded.
+   */
+  public Integer getHandlerQueueCapacity()
+  {
+    return handlerQueueCapacity_;
+  }
+
+  /**
+   * 
+   * @return The action taken when the handler queue is full.
+   */
+  public HandlerQueuePolicy getHandlerQueuePolicy()
+  {
+    return handlerQueuePolicy_;
+  }
+
+  /**
+   * 
+   * @return true iff async queries should use an adaptive handler pool.
+   */
+  public boolean isAdaptiveHandlerPool()
+  {
+    return adaptiveHandlerMaxSize_ != null;
+  }
+
+  /**
+   * 
+   * @return The minimum concurrency of the adaptive handler pool, or null if the handler pool is not adaptive.
+   */
+  public Integer getAdaptiveHandlerMinSize()
+  {
+    return adaptiveHandlerMinSize_;
+  }
+
+  /**
+   * 
+   * @return The maximum concurrency of the adaptive handler pool, or null if the handler pool is not adaptive.
+   */
+  public Integer getAdaptiveHandlerMaxSize()
+  {
+    return adaptiveHandlerMaxSize_;
+  }
+
+  /**
+   * 
+   * @return true iff async queries should run each item on its own virtual thread.
+   */
+  public boolean isVirtualThreads()
+  {
+    return virtualThreadMaxHandlers_ != null;
+  }
+
+  /**
+   * 
+   * @return The maximum number of concurrent handlers in virtual thread mode, or null if virtual thread mode is not set.
+   */
+  public Integer getVirtualThreadMaxHandlers()
+  {
+    return virtualThreadMaxHandlers_;
+  }
+
+  /**
+   * Create a filter to suppress duplicate messages from a single feed subscription.
+   * 
+   * @return A new filter, or null if duplicate suppression is not enabled.
+   */
+  DuplicateFilter newDuplicateFilter()
+  {
+    return duplicateMaxEntries_ == null ? null :
+      new DuplicateFilter(duplicateMaxEntries_, duplicateWindowMillis_, duplicateCheckCount_, duplicateCount_);
+  }
+
+  /**
+   * 
+   * @return The number of feed messages which were acknowledged without being processed because they were duplicates.
+   */
+  public long getDuplicateCount()
+  {
+    return duplicateCount_.get();
+  }
+
+  /**
+   * 
+   * @return The proportion of feed messages received which were duplicates, or 0 if none have been received.
+   */
+  public double getDuplicateRate()
+  {
+    long checked = duplicateCheckCount_.get();
+    
+    return checked == 0 ? 0 : (double)duplicateCount_.get() / checked;
+  }
+  
+  /**
+   * 
+   * @return The conflation window in milliseconds, or null if conflation is not enabled.
+   */
+  public Long getConflationWindowMillis()
+  {
+    return conflationWindowMillis_;
+  }
+
+  /**
+   * Create a conflating stage for feed messages, the caller must close it when the subscription ends.
+   * 
+   * @return A new conflating stage for feed messages, or null if conflation is not enabled.
+   */
+  Conflator newConflator()
+  {
+    return conflationWindowMillis_ == null ? null :
+      new Conflator(conflationWindowMillis_, conflatedCount_);
+  }
+
+  /**
+   * 
+   * @return The number of feed messages which were acknowledged without being processed because a later
+   * version of the same object arrived within the conflation window.
+   */
+  public long getConflatedCount()
+  {
+    return conflatedCount_.get();
+  }
   
   /**
    * AbstractBuilder.
@@ -107,6 +256,14 @@ public class AsyncConsumerManager extends AbstractConsumerManager
   {
     protected Integer                              subscriberThreadPoolSize_;
     protected Integer                              handlerThreadPoolSize_;
+    protected Integer                              handlerQueueCapacity_;
+    protected HandlerQueuePolicy                   handlerQueuePolicy_ = HandlerQueuePolicy.Block;
+    protected Integer                              adaptiveHandlerMinSize_;
+    protected Integer                              adaptiveHandlerMaxSize_;
+    protected Integer                              virtualThreadMaxHandlers_;
+    protected Integer                              duplicateMaxEntries_;
+    protected Long                                 duplicateWindowMillis_;
+    protected Long                                 conflationWindowMillis_;
 
     AbstractBuilder(Class<T> type)
     {
@@ -182,6 +339,133 @@ public class AsyncConsumerManager extends AbstractConsumerManager
       
       return self();
     }
+
+    /**
+     * Set the capacity of the queue of items waiting for a handler thread.
+     * 
+     * @param handlerQueueCapacity The capacity of the queue of items waiting for a handler thread.
+     * 
+     * By default the queue is unbounded, which means that if consumers are slower than the object store
+     * then a large query will buffer objects on the heap until they can be processed. When a capacity is
+     * set, the fetching of further pages pauses when the queue is full, as determined by the
+     * handler queue policy.
+     * 
+     * This also bounds the queue of the weighted fair scheduler used for SQS feeds with weights, which
+     * holds one receive batch per handler thread if no capacity is set.
+     * 
+     * @return This (fluent method)
+     */
+    public T withHandlerQueueCapacity(Integer handlerQueueCapacity)
+    {
+      handlerQueueCapacity_ = handlerQueueCapacity;
+      
+      return self();
+    }
+
+    /**
+     * Set the action to be taken when the handler queue is full.
+     * 
+     * @param handlerQueuePolicy The action to be taken when the handler queue is full.
+     * 
+     * This has no effect unless a handler queue capacity is set. The default is to block.
+     * 
+     * @return This (fluent method)
+     */
+    public T withHandlerQueuePolicy(HandlerQueuePolicy handlerQueuePolicy)
+    {
+      handlerQueuePolicy_ = handlerQueuePolicy;
+      
+      return self();
+    }
+
+    /**
+     * Use an adaptive, work stealing, handler pool whose concurrency varies within the given bounds.
+     * 
+     * @param minSize The minimum number of handlers which may run concurrently.
+     * @param maxSize The maximum number of handlers which may run concurrently.
+     * 
+     * The number of concurrent handlers is raised while items are waiting and handler latency is stable,
+     * as is the case when handlers are blocked on I/O, and lowered when handler latency rises with concurrency,
+     * as is the case when handlers compete for CPU. This replaces the fixed handler pool, so the handler thread
+     * pool size is ignored when this is set. The handler queue capacity and policy still apply.
+     * 
+     * @return This (fluent method)
+     */
+    public T withAdaptiveHandlerThreadPool(Integer minSize, Integer maxSize)
+    {
+      adaptiveHandlerMinSize_ = minSize;
+      adaptiveHandlerMaxSize_ = maxSize;
+      
+      return self();
+    }
+
+    /**
+     * Run each query, and each item received by a query, on its own virtual thread.
+     * 
+     * @param maxHandlers The maximum number of items which may be processed concurrently.
+     * 
+     * This suits handlers which mostly block on I/O, which would otherwise need a large handler thread pool.
+     * The number of concurrent queries is limited by the subscriber thread pool size, and the number of
+     * concurrent handlers by maxHandlers. Items are not queued, when maxHandlers items are being processed
+     * the query waits, or processes the item itself if the handler queue policy is CallerRuns.
+     * 
+     * Virtual threads require Java 21 or later. On earlier runtimes a warning is logged and the
+     * thread pools are used as if this had not been set.
+     * 
+     * @return This (fluent method)
+     */
+    public T withVirtualThreads(Integer maxHandlers)
+    {
+      virtualThreadMaxHandlers_ = maxHandlers;
+      
+      return self();
+    }
+    
+    /**
+     * Suppress duplicate deliveries of feed messages.
+     * 
+     * Feeds deliver messages at least once, so a message may be redelivered when its visibility timeout
+     * expires or an extension races with an acknowledgement. When this is set the absolute hash of each
+     * object processed from a feed is remembered, and a message for an object which was processed from the
+     * same feed within the window is acknowledged without being passed to a consumer. Each feed subscription
+     * has its own filter, so the limits apply to each feed separately.
+     * 
+     * @param maxEntries    The maximum number of recently processed objects to remember for each feed.
+     * @param windowMillis  The time in milliseconds for which a processed object is remembered.
+     * 
+     * @return This (fluent method)
+     */
+    public T withDuplicateSuppression(Integer maxEntries, Long windowMillis)
+    {
+      duplicateMaxEntries_   = maxEntries;
+      duplicateWindowMillis_ = windowMillis;
+      
+      return self();
+    }
+    
+    /**
+     * Conflate feed messages for the same object.
+     * 
+     * When this is set, a message received from a feed is held for the conflation window, keyed by the base hash
+     * of the object it carries. If a later version of the same object arrives in that time it replaces the held
+     * message, which is acknowledged without being passed to a consumer, so that during a storm of updates to an
+     * object only the latest version in each window is processed. This suits consumers which only need the latest
+     * state of each object, and delays every message by up to the window. When the window expires the held message
+     * is returned with the next pull from the feed and handled in the same way as any other message.
+     * 
+     * The ack deadlines of held messages are not extended, so the window may not exceed MAX_CONFLATION_WINDOW_MILLIS,
+     * a third of the feed visibility timeout.
+     * 
+     * @param windowMillis  The time in milliseconds for which a message is held waiting for later versions of the same object.
+     * 
+     * @return This (fluent method)
+     */
+    public T withConflation(Long windowMillis)
+    {
+      conflationWindowMillis_ = windowMillis;
+      
+      return self();
+    }
     
     @Override
     protected void validate(FaultAccumulator faultAccumulator)
@@ -193,6 +477,41 @@ public class AsyncConsumerManager extends AbstractConsumerManager
       
       if(handlerThreadPoolSize_!=null && handlerThreadPoolSize_ < 1)
         faultAccumulator.error("HandlerThreadPoolSize must be at least 1 or not set.");
+      
+      if(handlerQueueCapacity_!=null && handlerQueueCapacity_ < 1)
+        faultAccumulator.error("HandlerQueueCapacity must be at least 1 or not set.");
+      
+      faultAccumulator.checkNotNull(handlerQueuePolicy_, "HandlerQueuePolicy");
+      
+      if(adaptiveHandlerMaxSize_ != null || adaptiveHandlerMinSize_ != null)
+      {
+        if(adaptiveHandlerMinSize_ == null || adaptiveHandlerMinSize_ < 1)
+          faultAccumulator.error("AdaptiveHandlerThreadPool minSize must be at least 1.");
+        
+        if(adaptiveHandlerMaxSize_ == null || (adaptiveHandlerMinSize_ != null && adaptiveHandlerMaxSize_ < adaptiveHandlerMinSize_))
+          faultAccumulator.error("AdaptiveHandlerThreadPool maxSize must be at least minSize.");
+      }
+      
+      if(virtualThreadMaxHandlers_ != null)
+      {
+        if(virtualThreadMaxHandlers_ < 1)
+          faultAccumulator.error("VirtualThreads maxHandlers must be at least 1 or not set.");
+        
+        if(adaptiveHandlerMaxSize_ != null)
+          faultAccumulator.error("VirtualThreads and AdaptiveHandlerThreadPool cannot both be set.");
+      }
+      
+      if(duplicateMaxEntries_ != null || duplicateWindowMillis_ != null)
+      {
+        if(duplicateMaxEntries_ == null || duplicateMaxEntries_ < 1)
+          faultAccumulator.error("DuplicateSuppression maxEntries must be at least 1.");
+        
+        if(duplicateWindowMillis_ == null || duplicateWindowMillis_ < 1)
+          faultAccumulator.error("DuplicateSuppression windowMillis must be at least 1.");
+      }
+      
+      if(conflationWindowMillis_ != null && (conflationWindowMillis_ < 1 || conflationWindowMillis_ > MAX_CONFLATION_WINDOW_MILLIS))
+        faultAccumulator.error("Conflation windowMillis must be between 1 and " + MAX_CONFLATION_WINDOW_MILLIS + " or not set.");
     }
   }
   
@@ -234,6 +553,51 @@ public class AsyncConsumerManager extends AbstractConsumerManager
       return super.withConsumer(type, consumer);
     }
 
+    /**
+     * Add the given consumer of the given payload type, which only needs to see objects with the given header type.
+     * 
+     * @param <H>         The type of the header of objects this consumer accepts.
+     * @param <C>         The type of the payload this consumer accepts.
+     * @param headerType  The type of the header of objects this consumer accepts.
+     * @param type        The type of the payload this consumer accepts.
+     * @param consumer    A consumer of the given type.
+     * 
+     * Payloads of stored objects whose header is not of the given type are not passed to this consumer.
+     * If all consumers of payload types are registered with a header type then stored objects are only
+     * decrypted when their header matches one of those header types.
+     * 
+     * The <code>close()</code> method of all consumers will be called when the request completes.
+     * 
+     * @return This (fluent method).
+     */
+    public <H extends IApplicationObjectHeader, C> Builder withConsumer(Class<H> headerType, Class<C> type, IThreadSafeRetryableConsumer<C> consumer)
+    {
+      return super.withConsumer(headerType, type, consumer);
+    }
+
+    /**
+     * Add the given consumer of the given payload type, which only needs to see objects with the given header type.
+     * 
+     * @param <H>         The type of the header of objects this consumer accepts.
+     * @param <C>         The type of the payload this consumer accepts.
+     * @param headerType  The type of the header of objects this consumer accepts.
+     * @param type        The type of the payload this consumer accepts.
+     * @param consumer    A consumer of the given type.
+     * 
+     * Payloads of stored objects whose header is not of the given type are not passed to this consumer.
+     * If all consumers of payload types are registered with a header type then stored objects are only
+     * decrypted when their header matches one of those header types.
+     * 
+     * This method accepts a simple consumer, which is a functional interface and is convenient
+     * to use in cases where a close notification is not required.
+     * 
+     * @return This (fluent method).
+     */
+    public <H extends IApplicationObjectHeader, C> Builder withConsumer(Class<H> headerType, Class<C> type, ISimpleThreadSafeRetryableConsumer<C> consumer)
+    {
+      return super.withConsumer(headerType, type, consumer);
+    }
+
     /**
      * Add the given adaptor as a consumer.
      * 
@@ -20,7 +20,7 @@ package com.symphony.oss.allegro.api;
 
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutorService;
 
 import com.symphony.oss.allegro.api.request.FetchPartitionObjectsRequest;
 import com.symphony.oss.allegro.api.request.PartitionQuery;
@@ -65,6 +65,9 @@ public class AsyncPartitionQueryListManager extends AbstractAsyncQueryListManage
   protected static abstract class AbstractBuilder<T extends AbstractBuilder<T,B>, B extends AbstractAsyncQueryListManager<B, AsyncPartitionQueryManager>> extends AbstractAsyncQueryListManager.AbstractBuilder<T, AsyncPartitionQueryManager, B>
   {
     protected FetchPartitionObjectsRequest  request_;
+    
+    private List<PartitionQuery>            queries_;
+    private PartitionScanProgress           progress_;
 
     protected AbstractBuilder(Class<T> type)
     {
@@ -94,14 +97,15 @@ public class AsyncPartitionQueryListManager extends AbstractAsyncQueryListManage
     
 
     @Override
-    protected List<AsyncPartitionQueryManager> createQueryManagers( ThreadPoolExecutor handlerExecutor)
+    protected List<AsyncPartitionQueryManager> createQueryManagers( ExecutorService handlerExecutor)
     {
       List<AsyncPartitionQueryManager> queryManagers = new LinkedList<>();
+      List<PartitionQuery>             queries       = getQueries();
       
-      for(PartitionQuery query : request_.getQueryList())
+      for(int i=0 ; i<queries.size() ; i++)
       {
-        queryManagers.add(new AsyncPartitionQueryManager(allegroApi_, query, consumerManager_, traceFactory_, objectApiClient_,
-            httpClient_, handlerExecutor));
+        queryManagers.add(new AsyncPartitionQueryManager(allegroApi_, queries.get(i), consumerManager_, traceFactory_, objectApiClient_,
+            httpClient_, handlerExecutor, progress_, i, AllegroBaseApi.createCheckpointer(request_, queries.get(i))));
       }
       
       return queryManagers;
@@ -110,7 +114,28 @@ public class AsyncPartitionQueryListManager extends AbstractAsyncQueryListManage
     @Override
     protected int getQueryCount()
     {
-      return request_.getQueryList().size();
+      return getQueries().size();
+    }
+    
+    /**
+     * A segmented request is replaced by one query for each segment, each of which is run concurrently.
+     */
+    private List<PartitionQuery> getQueries()
+    {
+      if(queries_ == null)
+      {
+        if(request_.isSegmented())
+        {
+          queries_  = allegroApi_.createSegments(request_);
+          progress_ = new PartitionScanProgress(queries_, request_.getProgressListener());
+        }
+        else
+        {
+          queries_ = request_.getQueryList();
+        }
+      }
+      
+      return queries_;
     }
   }
 }
@@ -18,7 +18,7 @@
 
 package com.symphony.oss.allegro.api;
 
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.http.impl.client.CloseableHttpClient;
 
@@ -27,13 +27,18 @@ import com.symphony.oss.commons.hash.Hash;
 import com.symphony.oss.fugue.trace.ITraceContext;
 import com.symphony.oss.fugue.trace.ITraceContextTransaction;
 import com.symphony.oss.fugue.trace.ITraceContextTransactionFactory;
+import com.symphony.oss.models.object.canon.IAbstractStoredApplicationObject;
 import com.symphony.oss.models.object.canon.IPageOfStoredApplicationObject;
 import com.symphony.oss.models.object.canon.ObjectHttpModelClient;
 import com.symphony.oss.models.object.canon.PartitionsPartitionHashPageGetHttpRequestBuilder;
+import com.symphony.oss.models.object.canon.facade.IStoredApplicationObject;
 
 /**
  * 
  * Class used to fetch asyncronously IPageOfStoredApplicationObject
+ * 
+ * If the query is a tail query then once the end of the partition is reached it is polled for objects
+ * with greater sort keys than the last one read, until the manager is stopped.
  *  
  * @author Bruce Skingle
  *
@@ -45,9 +50,20 @@ public class AsyncPartitionQueryManager extends AbstractAsyncQueryManager
   private final ObjectHttpModelClient           objectApiClient_;
   private final CloseableHttpClient             httpClient_;
   private final Hash                            partitionHash_;
+  private final PartitionScanProgress           progress_;
+  private final int                             segment_;
+  private final CursorCheckpointer              checkpointer_;
+  private final PartitionTailer                 tailer_;
 
   public AsyncPartitionQueryManager(AllegroBaseApi allegroApi, PartitionQuery query, AsyncConsumerManager consumerManager, ITraceContextTransactionFactory traceFactory,
-      ObjectHttpModelClient objectApiClient, CloseableHttpClient httpClient, ThreadPoolExecutor handlerExecutor)
+      ObjectHttpModelClient objectApiClient, CloseableHttpClient httpClient, ExecutorService handlerExecutor)
+  {
+    this(allegroApi, query, consumerManager, traceFactory, objectApiClient, httpClient, handlerExecutor, null, 0, null);
+  }
+
+  AsyncPartitionQueryManager(AllegroBaseApi allegroApi, PartitionQuery query, AsyncConsumerManager consumerManager, ITraceContextTransactionFactory traceFactory,
+      ObjectHttpModelClient objectApiClient, CloseableHttpClient httpClient, ExecutorService handlerExecutor,
+      PartitionScanProgress progress, int segment, CursorCheckpointer checkpointer)
   {
     super(allegroApi, query.getMaxItems() == null ? 0 : query.getMaxItems(), consumerManager, handlerExecutor);
     
@@ -56,6 +72,13 @@ public class AsyncPartitionQueryManager extends AbstractAsyncQueryManager
     objectApiClient_ = objectApiClient;
     httpClient_ = httpClient;
     partitionHash_ = query_.getHash(allegroApi.getUserId());
+    progress_ = progress;
+    segment_ = segment;
+    checkpointer_ = checkpointer;
+    tailer_ = new PartitionTailer(query.getTailMinPollMillis(), query.getTailMaxPollMillis());
+    
+    if(checkpointer != null)
+      setCheckpointer(checkpointer);
   }
 
   @Override
@@ -63,32 +86,136 @@ public class AsyncPartitionQueryManager extends AbstractAsyncQueryManager
   {
     if(query_.getMaxItems() != null && getRemainingItems() <= 0)
       return;
-    
-    String  after         = query_.getAfter();
 
     try (ITraceContextTransaction traceTransaction = traceFactory_.createTransaction("fetchPartitionObjects",
         partitionHash_.toString()))
     {
-      ITraceContext trace = traceTransaction.open();
-
-      do
+      ITraceContext trace       = traceTransaction.open();
+      String        after       = checkpointer_ == null ? query_.getAfter() : checkpointer_.getResumeAfter(query_.getAfter());
+      String        lastSortKey = scan(new PageSource(query_.getSortKeyMin(), query_.getMaxItems()), after, trace);
+      
+      if(query_.isTail())
+        tailer_.tail(query_.getSortKeyMin(), lastSortKey,
+            (sortKeyMin) -> scan(new PageSource(sortKeyMin, query_.getMaxItems() == null ? null : getRemainingItems()), null, trace),
+            () -> isRunnable() && (query_.getMaxItems() == null || getRemainingItems() > 0));
+      
+      if(progress_ != null && isRunnable())
+        progress_.completed(segment_);
+    }
+    finally
+    {
+      if(checkpointer_ != null)
+        checkpointer_.finish();
+    }
+  }
+  
+  /**
+   * Read all of the pages from the given source.
+   * 
+   * @return The sort key of the last object read, or null if there were none.
+   */
+  private String scan(PageSource source, String after, ITraceContext trace)
+  {
+    String lastSortKey = null;
+    
+    try (PageReadAhead<IPageOfStoredApplicationObject> pages = readAhead(source, after))
+    {
+      IPageOfStoredApplicationObject page;
+      
+      while(isRunnable() && (page = pages.next()) != null)
+      {
+        handle(page, trace);
+        
+        if(progress_ != null)
+          progress_.consumed(segment_, page.getData().size());
+        
+        for(IAbstractStoredApplicationObject item : page.getData())
+        {
+          if(item instanceof IStoredApplicationObject)
+            lastSortKey = ((IStoredApplicationObject)item).getSortKey().asString();
+        }
+      }
+    }
+    
+    return lastSortKey;
+  }
+  
+  @Override
+  protected void stop()
+  {
+    super.stop();
+    
+    tailer_.stop();
+  }
+  
+  /**
+   * 
+   * @return The number of times the partition has been polled for new objects in tail mode.
+   */
+  public long getTailPollCount()
+  {
+    return tailer_.getPollCount();
+  }
+  
+  private class PageSource implements PageReadAhead.IPageSource<IPageOfStoredApplicationObject>
+  {
+    private final String  sortKeyPrefix_;
+    private final String  sortKeyMin_;
+    private final String  sortKeyMax_;
+    private final Integer maxItems_;
+    
+    PageSource(String sortKeyMin, Integer maxItems)
+    {
+      maxItems_ = maxItems;
+      
+      if(query_.getSortKeyPrefix() != null && sortKeyMin != null)
       {
-        PartitionsPartitionHashPageGetHttpRequestBuilder pageRequest = objectApiClient_
-            .newPartitionsPartitionHashPageGetHttpRequestBuilder()
-              .withPartitionHash(partitionHash_)
-              .withAfter(after)
-              .withSortKeyPrefix(query_.getSortKeyPrefix())
-              .withScanForwards(query_.getScanForwards());
+        // A prefix cannot be combined with a range, so express the prefix as a range.
+        sortKeyPrefix_ = null;
+        sortKeyMin_    = sortKeyMin;
+        sortKeyMax_    = query_.getSortKeyPrefix() + Character.MAX_VALUE;
+      }
+      else
+      {
+        sortKeyPrefix_ = query_.getSortKeyPrefix();
+        sortKeyMin_    = sortKeyMin;
+        sortKeyMax_    = query_.getSortKeyMax();
+      }
+    }
+    
+    @Override
+    public IPageOfStoredApplicationObject fetchPage(String after, int itemCount)
+    {
+      if(maxItems_ != null && itemCount >= maxItems_)
+        return null;
+      
+      PartitionsPartitionHashPageGetHttpRequestBuilder pageRequest = objectApiClient_
+          .newPartitionsPartitionHashPageGetHttpRequestBuilder()
+            .withPartitionHash(partitionHash_)
+            .withAfter(after)
+            .withSortKeyPrefix(sortKeyPrefix_)
+            .withSortKeyMin(sortKeyMin_)
+            .withSortKeyMax(sortKeyMax_)
+            .withScanForwards(query_.getScanForwards());
 
-        if (query_.getMaxItems() != null)
-          pageRequest.withLimit(getRemainingItems());
+      if (maxItems_ != null)
+        pageRequest.withLimit(maxItems_ - itemCount);
 
-        IPageOfStoredApplicationObject page = pageRequest
-            .build()
-            .execute(httpClient_);
+      return pageRequest
+          .build()
+          .execute(httpClient_);
+    }
 
-        after = handle(page, trace);
-      } while(isRunnable() && after != null && (query_.getMaxItems() == null || getRemainingItems() > 0));
+    @Override
+    public int getItemCount(IPageOfStoredApplicationObject page)
+    {
+      return page.getData() == null ? 0 : page.getData().size();
+    }
+
+    @Override
+    public String getAfter(IPageOfStoredApplicationObject page)
+    {
+      return AllegroBaseApi.getAfterCursor(page.getPagination());
     }
   }
 }
@@ -20,7 +20,7 @@ package com.symphony.oss.allegro.api;
 
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutorService;
 
 import com.symphony.oss.allegro.api.request.FetchObjectVersionsRequest;
 import com.symphony.oss.allegro.api.request.VersionQuery;
@@ -94,7 +94,7 @@ public class AsyncVersionQueryListManager extends AbstractAsyncQueryListManager<
     
 
     @Override
-    protected List<AsyncVersionQueryManager> createQueryManagers( ThreadPoolExecutor handlerExecutor)
+    protected List<AsyncVersionQueryManager> createQueryManagers( ExecutorService handlerExecutor)
     {
       List<AsyncVersionQueryManager> queryManagers = new LinkedList<>();
       
@@ -18,7 +18,7 @@
 
 package com.symphony.oss.allegro.api;
 
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.http.impl.client.CloseableHttpClient;
 
@@ -46,7 +46,7 @@ public class AsyncVersionQueryManager extends AbstractAsyncQueryManager
 
 
   public AsyncVersionQueryManager(IAllegroDecryptor allegroApi, VersionQuery query, AsyncConsumerManager consumerManager, ITraceContextTransactionFactory traceFactory,
-      ObjectHttpModelClient objectApiClient, CloseableHttpClient httpClient, ThreadPoolExecutor handlerExecutor)
+      ObjectHttpModelClient objectApiClient, CloseableHttpClient httpClient, ExecutorService handlerExecutor)
   {
     super(allegroApi, query.getMaxItems() == null ? 0 : query.getMaxItems(), consumerManager, handlerExecutor);
     
@@ -63,30 +63,54 @@ public class AsyncVersionQueryManager extends AbstractAsyncQueryManager
       return;
     
     Hash    baseHash      = query_.getBaseHash();
-    String  after         = query_.getAfter();
 
     try (ITraceContextTransaction traceTransaction = traceFactory_.createTransaction        ("fetchObjectVersions",
         baseHash.toString()))
     {
       ITraceContext trace = traceTransaction.open();
 
-      do
+      try (PageReadAhead<IPageOfAbstractStoredApplicationObject> pages = readAhead(new PageSource(), query_.getAfter()))
       {
-        ObjectsObjectHashVersionsGetHttpRequestBuilder pageRequest = objectApiClient_.newObjectsObjectHashVersionsGetHttpRequestBuilder()
-            .withObjectHash(baseHash)
-            .withAfter(after)
-            .withScanForwards(query_.getScanForwards())
-            ;
+        IPageOfAbstractStoredApplicationObject page;
+        
+        while(isRunnable() && (page = pages.next()) != null)
+          handle(page, trace);
+      }
+    }
+  }
+  
+  private class PageSource implements PageReadAhead.IPageSource<IPageOfAbstractStoredApplicationObject>
+  {
+    @Override
+    public IPageOfAbstractStoredApplicationObject fetchPage(String after, int itemCount)
+    {
+      if(query_.getMaxItems() != null && itemCount >= query_.getMaxItems())
+        return null;
+      
+      ObjectsObjectHashVersionsGetHttpRequestBuilder pageRequest = objectApiClient_.newObjectsObjectHashVersionsGetHttpRequestBuilder()
+          .withObjectHash(query_.getBaseHash())
+          .withAfter(after)
+          .withScanForwards(query_.getScanForwards())
+          ;
 
-        if (query_.getMaxItems() != null)
-          pageRequest.withLimit(getRemainingItems());
+      if (query_.getMaxItems() != null)
+        pageRequest.withLimit(query_.getMaxItems() - itemCount);
 
-        IPageOfAbstractStoredApplicationObject page = pageRequest
-            .build()
-            .execute(httpClient_);
+      return pageRequest
+          .build()
+          .execute(httpClient_);
+    }
 
-        after = handle(page, trace);
-      } while(isRunnable() && after != null && (query_.getMaxItems() == null || getRemainingItems() > 0));
+    @Override
+    public int getItemCount(IPageOfAbstractStoredApplicationObject page)
+    {
+      return page.getData() == null ? 0 : page.getData().size();
+    }
+
+    @Override
+    public String getAfter(IPageOfAbstractStoredApplicationObject page)
+    {
+      return AllegroBaseApi.getAfterCursor(page.getPagination());
     }
   }
 }
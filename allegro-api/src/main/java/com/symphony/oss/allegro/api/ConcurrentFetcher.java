@@ -0,0 +1,127 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a fetch for each of a list of queries, up to a given number of them concurrently.
+ * 
+ * The calling thread takes part in the work, so a parallelism of 1 fetches each query in turn on the
+ * calling thread. Queries are started in the order given, but with a parallelism greater than 1 they
+ * may complete in any order.
+ *
+ */
+class ConcurrentFetcher
+{
+  private static final Logger log_ = LoggerFactory.getLogger(ConcurrentFetcher.class);
+  
+  private final ExecutorService executor_;
+
+  /**
+   * Constructor.
+   * 
+   * @param executor The executor on which the additional workers run.
+   */
+  ConcurrentFetcher(ExecutorService executor)
+  {
+    executor_ = executor;
+  }
+
+  /**
+   * Call the given fetcher for each of the given queries, up to the given number of them concurrently.
+   * 
+   * A failure to fetch one query does not prevent the others from being fetched, if any fail then the
+   * first failure is thrown once all have been attempted, with any others attached as suppressed exceptions.
+   * 
+   * @param <Q>         The type of the queries.
+   * @param queries     The queries to be fetched.
+   * @param parallelism The maximum number of queries to fetch at once.
+   * @param fetcher     The fetcher.
+   * @param describer   A function to describe a query in a log message if it fails.
+   */
+  <Q> void fetch(List<Q> queries, int parallelism, Consumer<Q> fetcher, Function<Q, String> describer)
+  {
+    Queue<Q>               pending = new ConcurrentLinkedQueue<>(queries);
+    List<RuntimeException> errors  = Collections.synchronizedList(new ArrayList<>());
+    Runnable               worker  = () ->
+    {
+      Q query;
+      
+      while((query = pending.poll()) != null)
+      {
+        try
+        {
+          fetcher.accept(query);
+        }
+        catch(RuntimeException e)
+        {
+          log_.error("Failed to fetch " + describer.apply(query), e);
+          errors.add(e);
+        }
+      }
+    };
+    
+    List<Future<?>> futures = new ArrayList<>();
+    
+    for(int i=1 ; i<Math.min(parallelism, queries.size()) ; i++)
+      futures.add(executor_.submit(worker));
+    
+    worker.run();
+    
+    for(Future<?> future : futures)
+    {
+      try
+      {
+        future.get();
+      }
+      catch(ExecutionException e)
+      {
+        errors.add(new IllegalStateException("Fetch failed", e.getCause()));
+      }
+      catch(InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        errors.add(new IllegalStateException("Interrupted waiting for fetch", e));
+      }
+    }
+    
+    if(!errors.isEmpty())
+    {
+      RuntimeException failure = errors.get(0);
+      
+      for(int i=1 ; i<errors.size() ; i++)
+        failure.addSuppressed(errors.get(i));
+      
+      throw failure;
+    }
+  }
+}
@@ -0,0 +1,305 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.symphony.oss.commons.hash.Hash;
+import com.symphony.oss.fugue.pubsub.IPullSubscriberMessage;
+
+/**
+ * Conflating stage for feed messages.
+ * 
+ * Messages are held, keyed by the base hash of the object they carry, for the conflation window
+ * after the first message for that object arrives. When a message arrives for the same object while
+ * one is held, the one carrying the newer version of the object is held and the other is superseded
+ * (acknowledged without being dispatched), whichever order they arrived in.
+ * 
+ * The conflator has no threads of its own. When the window expires the message then held is released,
+ * and subscribers return released messages from their next pull so that they are processed through the
+ * normal handler path, subject to the same handler pool, queue policy and scheduling as any other message.
+ * 
+ * The ack deadlines of held messages are not extended, so the window must be well below the visibility
+ * timeout of the feed.
+ *
+ */
+class Conflator
+{
+  private static final Logger           log_             = LoggerFactory.getLogger(Conflator.class);
+
+  private final long                    windowMillis_;
+  private final Map<Hash, Held>         pending_         = new LinkedHashMap<>();
+  private final AtomicLong              offeredCount_    = new AtomicLong();
+  private final AtomicLong              supersededCount_;
+  private boolean                       closed_;
+
+  /**
+   * A message held by the conflator.
+   */
+  interface IConflatable extends IPullSubscriberMessage
+  {
+    /**
+     * 
+     * @return The created date of the object version carried by the message, or null if not known.
+     */
+    Instant getCreatedDate();
+
+    /**
+     * Process the message in the calling thread, bypassing the handler path.
+     * 
+     * This is only called when the conflator is closed, released messages are processed by calling run().
+     */
+    void dispatch();
+
+    /**
+     * Acknowledge the message without processing it, a message for a newer version of the same object is held.
+     */
+    void supersede();
+  }
+  
+  /*
+   * Held messages are kept in the order of their first arrival, which is also the order in which
+   * their windows expire.
+   */
+  private static class Held
+  {
+    private final long   releaseNanos_;
+    private IConflatable message_;
+    
+    private Held(long releaseNanos, IConflatable message)
+    {
+      releaseNanos_ = releaseNanos;
+      message_      = message;
+    }
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param windowMillis  The time in milliseconds for which messages are held.
+   */
+  Conflator(long windowMillis)
+  {
+    this(windowMillis, new AtomicLong());
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param windowMillis    The time in milliseconds for which messages are held.
+   * @param supersededCount The counter of superseded messages, which may be shared with other conflators.
+   */
+  Conflator(long windowMillis, AtomicLong supersededCount)
+  {
+    windowMillis_    = windowMillis;
+    supersededCount_ = supersededCount;
+  }
+
+  /**
+   * Hold the given message, unless a message for a newer version of the same object is held.
+   * 
+   * If the conflator has been closed the message is dispatched immediately, in the calling thread.
+   * 
+   * @param baseHash  The base hash of the object carried by the message.
+   * @param message   The message.
+   */
+  void offer(Hash baseHash, IConflatable message)
+  {
+    IConflatable superseded = null;
+    boolean      closed;
+    
+    offeredCount_.incrementAndGet();
+    
+    synchronized(pending_)
+    {
+      closed = closed_;
+      
+      if(!closed)
+      {
+        Held held = pending_.get(baseHash);
+        
+        if(held == null)
+        {
+          pending_.put(baseHash, new Held(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis_), message));
+        }
+        else if(isOlder(message, held.message_))
+        {
+          superseded = message;
+        }
+        else
+        {
+          superseded = held.message_;
+          held.message_ = message;
+        }
+      }
+    }
+    
+    if(closed)
+    {
+      dispatch(message);
+    }
+    else if(superseded != null)
+    {
+      supersededCount_.incrementAndGet();
+      superseded.supersede();
+    }
+  }
+
+  /*
+   * Messages whose versions cannot be compared are taken in arrival order.
+   */
+  private static boolean isOlder(IConflatable message, IConflatable held)
+  {
+    Instant created     = message.getCreatedDate();
+    Instant heldCreated = held.getCreatedDate();
+    
+    return created != null && heldCreated != null && created.isBefore(heldCreated);
+  }
+
+  /**
+   * Remove the messages whose conflation window has expired.
+   * 
+   * @return The released messages, in the order in which their windows expired.
+   */
+  List<IConflatable> release()
+  {
+    List<IConflatable> released = new ArrayList<>();
+    long               now      = System.nanoTime();
+    
+    synchronized(pending_)
+    {
+      Iterator<Held> it = pending_.values().iterator();
+      
+      while(it.hasNext())
+      {
+        Held held = it.next();
+        
+        if(held.releaseNanos_ - now > 0)
+          break;
+        
+        released.add(held.message_);
+        it.remove();
+      }
+    }
+    
+    return released;
+  }
+
+  /**
+   * Limit the wait time of a long poll so that it returns by the time the next held message is due for release.
+   * 
+   * @param waitTimeSeconds The requested wait time.
+   * 
+   * @return The requested wait time, or the number of seconds until the next held message is due for release
+   * if that is less.
+   */
+  int getWaitTimeSeconds(int waitTimeSeconds)
+  {
+    long releaseNanos;
+    
+    synchronized(pending_)
+    {
+      if(pending_.isEmpty())
+        return waitTimeSeconds;
+      
+      releaseNanos = pending_.values().iterator().next().releaseNanos_;
+    }
+    
+    long remainingMillis = TimeUnit.NANOSECONDS.toMillis(releaseNanos - System.nanoTime());
+    
+    if(remainingMillis <= 0)
+      return 0;
+    
+    return (int)Math.min(waitTimeSeconds, (remainingMillis + 999) / 1000);
+  }
+
+  private void dispatch(IConflatable message)
+  {
+    try
+    {
+      message.dispatch();
+    }
+    catch(RuntimeException e)
+    {
+      log_.error("Failed to dispatch conflated message", e);
+    }
+  }
+
+  /**
+   * Dispatch all held messages immediately, in the calling thread.
+   */
+  void flush()
+  {
+    List<IConflatable> messages = new ArrayList<>();
+    
+    synchronized(pending_)
+    {
+      for(Held held : pending_.values())
+        messages.add(held.message_);
+      
+      pending_.clear();
+    }
+    
+    for(IConflatable message : messages)
+      dispatch(message);
+  }
+
+  /**
+   * Dispatch all held messages immediately, in the calling thread.
+   * 
+   * Messages offered after this call are dispatched immediately.
+   */
+  void close()
+  {
+    synchronized(pending_)
+    {
+      closed_ = true;
+    }
+    
+    flush();
+  }
+
+  /**
+   * 
+   * @return The number of messages offered.
+   */
+  long getOfferedCount()
+  {
+    return offeredCount_.get();
+  }
+
+  /**
+   * 
+   * @return The number of messages superseded by a later message for the same object.
+   */
+  long getSupersededCount()
+  {
+    return supersededCount_.get();
+  }
+}
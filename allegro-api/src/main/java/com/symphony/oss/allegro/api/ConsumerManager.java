@@ -18,10 +18,12 @@
 
 package com.symphony.oss.allegro.api;
 
+import com.symphony.oss.commons.fault.FaultAccumulator;
 import com.symphony.oss.fugue.pipeline.IErrorConsumer;
 import com.symphony.oss.fugue.pipeline.IRetryableConsumer;
 import com.symphony.oss.fugue.pipeline.ISimpleErrorConsumer;
 import com.symphony.oss.fugue.pipeline.ISimpleRetryableConsumer;
+import com.symphony.oss.models.object.canon.facade.IApplicationObjectHeader;
 
 /**
  * Single Threaded Manager of Consumers.
@@ -58,13 +60,28 @@ import com.symphony.oss.fugue.pipeline.ISimpleRetryableConsumer;
  * 
  * When reading chat messages, the object being consumed will always be an instance of ILiveCurrentMessage.
  * 
+ * Consumers are never called concurrently, even when several feeds are fetched in parallel.
+ * 
  * @author Bruce Skingle
  */
 public class ConsumerManager extends AbstractConsumerManager
 {
+  private final int feedParallelism_;
+  
   ConsumerManager(AbstractBuilder<?,?> builder)
   {
     super(builder);
+    
+    feedParallelism_ = builder.feedParallelism_;
+  }
+  
+  /**
+   * 
+   * @return The maximum number of feeds which will be fetched concurrently.
+   */
+  public int getFeedParallelism()
+  {
+    return feedParallelism_;
   }
   
   /**
@@ -77,10 +94,39 @@ public class ConsumerManager extends AbstractConsumerManager
    */
   public static abstract class AbstractBuilder<T extends AbstractBuilder<T,B>, B extends AbstractConsumerManager> extends AbstractConsumerManager.AbstractBuilder<T,B>
   {
+    private int feedParallelism_ = 1;
+    
     AbstractBuilder(Class<T> type)
     {
       super(type);
     }
+    
+    /**
+     * Set the maximum number of feeds to be fetched concurrently when a request reads from several feeds.
+     * 
+     * The receive and acknowledgement of each feed are made in parallel, but calls to consumers are
+     * serialized so they need not be thread safe. Consumers may however be called on threads other than
+     * the one which made the request.
+     * 
+     * @param feedParallelism The maximum number of feeds to fetch concurrently, default 1.
+     * 
+     * @return This (fluent method).
+     */
+    public T withFeedParallelism(int feedParallelism)
+    {
+      feedParallelism_ = feedParallelism;
+      
+      return self();
+    }
+    
+    @Override
+    protected void validate(FaultAccumulator faultAccumulator)
+    {
+      super.validate(faultAccumulator);
+      
+      if(feedParallelism_ < 1)
+        faultAccumulator.error("feedParallelism must be at least 1");
+    }
   }
   
   /**
@@ -122,6 +168,53 @@ public class ConsumerManager extends AbstractConsumerManager
       return super.withConsumer(type, consumer);
     }
 
+    /**
+     * Add the given consumer of the given payload type, which only needs to see objects with the given header type.
+     * 
+     * @param <H>         The type of the header of objects this consumer accepts.
+     * @param <C>         The type of the payload this consumer accepts.
+     * @param headerType  The type of the header of objects this consumer accepts.
+     * @param type        The type of the payload this consumer accepts.
+     * @param consumer    A consumer of the given type.
+     * 
+     * Payloads of stored objects whose header is not of the given type are not passed to this consumer.
+     * If all consumers of payload types are registered with a header type then stored objects are only
+     * decrypted when their header matches one of those header types.
+     * 
+     * The <code>close()</code> method of all consumers will be called when the request completes.
+     * 
+     * @return This (fluent method).
+     */
+    @Override
+    public <H extends IApplicationObjectHeader, C> Builder withConsumer(Class<H> headerType, Class<C> type, IRetryableConsumer<C> consumer)
+    {
+      return super.withConsumer(headerType, type, consumer);
+    }
+
+    /**
+     * Add the given consumer of the given payload type, which only needs to see objects with the given header type.
+     * 
+     * @param <H>         The type of the header of objects this consumer accepts.
+     * @param <C>         The type of the payload this consumer accepts.
+     * @param headerType  The type of the header of objects this consumer accepts.
+     * @param type        The type of the payload this consumer accepts.
+     * @param consumer    A consumer of the given type.
+     * 
+     * Payloads of stored objects whose header is not of the given type are not passed to this consumer.
+     * If all consumers of payload types are registered with a header type then stored objects are only
+     * decrypted when their header matches one of those header types.
+     * 
+     * This method accepts a simple consumer, which is a functional interface and is convenient
+     * to use in cases where a close notification is not required.
+     * 
+     * @return This (fluent method).
+     */
+    @Override
+    public <H extends IApplicationObjectHeader, C> Builder withConsumer(Class<H> headerType, Class<C> type, ISimpleRetryableConsumer<C> consumer)
+    {
+      return super.withConsumer(headerType, type, consumer);
+    }
+
     /**
      * Add the given adaptor as a consumer.
      * 
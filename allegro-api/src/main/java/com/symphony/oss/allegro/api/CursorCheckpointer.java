@@ -0,0 +1,204 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the progress of a partition scan in an ICursorCheckpointStore.
+ * 
+ * A page is committed only when all of its objects, and those of all earlier pages, have been
+ * consumed, so when objects are handled asynchronously a restarted scan will never skip an object
+ * which was not processed. Objects may be passed to the consumers more than once after a restart.
+ * 
+ * The committed cursor is saved at most once per interval and when the scan finishes. When the final
+ * page of the scan is committed the checkpoint is cleared.
+ *
+ */
+class CursorCheckpointer
+{
+  private static final Logger          log_     = LoggerFactory.getLogger(CursorCheckpointer.class);
+
+  private final ICursorCheckpointStore store_;
+  private final String                 checkpointId_;
+  private final long                   intervalMillis_;
+  private final Deque<Page>            pending_ = new ArrayDeque<>();
+
+  private String                       committed_;
+  private boolean                      dirty_;
+  private boolean                      finished_;
+  private long                         lastSave_;
+
+  CursorCheckpointer(ICursorCheckpointStore store, String checkpointId, long intervalMillis)
+  {
+    store_          = store;
+    checkpointId_   = checkpointId;
+    intervalMillis_ = intervalMillis;
+    lastSave_       = System.currentTimeMillis();
+  }
+  
+  /**
+   * 
+   * @param after The after cursor of the query.
+   * 
+   * @return The saved cursor if there is one, otherwise the given cursor.
+   */
+  @Nullable String getResumeAfter(@Nullable String after)
+  {
+    String saved = store_.load(checkpointId_);
+    
+    if(saved == null)
+      return after;
+    
+    log_.info("Resuming scan " + checkpointId_ + " from checkpoint");
+    
+    return saved;
+  }
+  
+  /**
+   * Called before the objects of a page are passed to the consumers.
+   * 
+   * @param after     The after cursor of the page, which is null for the last page of the scan.
+   * @param itemCount The number of objects in the page.
+   * 
+   * @return A token to be passed to itemDone as each object is consumed.
+   */
+  synchronized Page pageStarted(@Nullable String after, int itemCount)
+  {
+    Page page = new Page(after, itemCount);
+    
+    pending_.add(page);
+    
+    if(itemCount == 0)
+      commit();
+    
+    return page;
+  }
+  
+  /**
+   * Called when all of the objects of a page have been consumed, for scans which consume objects synchronously.
+   * 
+   * @param after The after cursor of the page, which is null for the last page of the scan.
+   */
+  void pageConsumed(@Nullable String after)
+  {
+    pageStarted(after, 0);
+  }
+  
+  /**
+   * Called when an object of the given page has been consumed, or passed to the unprocessable message consumer.
+   * 
+   * @param page The token returned by pageStarted.
+   */
+  synchronized void itemDone(Page page)
+  {
+    page.remaining_--;
+    
+    commit();
+  }
+  
+  /**
+   * Called when the scan stops, for whatever reason. Any committed cursor is saved and subsequent
+   * commits, by handlers which are still running, are saved immediately.
+   */
+  synchronized void finish()
+  {
+    finished_ = true;
+    
+    save();
+  }
+  
+  private void commit()
+  {
+    boolean committed = false;
+    
+    while(!pending_.isEmpty() && pending_.peek().remaining_ <= 0)
+    {
+      Page page = pending_.remove();
+      
+      if(page.after_ == null)
+      {
+        // The final page of the scan.
+        try
+        {
+          store_.clear(checkpointId_);
+        }
+        catch(RuntimeException e)
+        {
+          log_.error("Failed to clear checkpoint " + checkpointId_, e);
+        }
+        
+        dirty_ = false;
+        pending_.clear();
+        return;
+      }
+      
+      committed_ = page.after_;
+      committed  = true;
+    }
+    
+    if(committed)
+    {
+      dirty_ = true;
+      
+      if(finished_ || System.currentTimeMillis() - lastSave_ >= intervalMillis_)
+        save();
+    }
+  }
+  
+  private void save()
+  {
+    if(!dirty_)
+      return;
+    
+    try
+    {
+      store_.save(checkpointId_, committed_);
+      dirty_ = false;
+    }
+    catch(RuntimeException e)
+    {
+      // The scan continues, the next commit will try again.
+      log_.error("Failed to save checkpoint " + checkpointId_, e);
+    }
+    
+    lastSave_ = System.currentTimeMillis();
+  }
+  
+  /**
+   * A page whose objects are being consumed.
+   */
+  static class Page
+  {
+    private final String after_;
+    private int          remaining_;
+    
+    private Page(String after, int itemCount)
+    {
+      after_     = after;
+      remaining_ = itemCount;
+    }
+  }
+}
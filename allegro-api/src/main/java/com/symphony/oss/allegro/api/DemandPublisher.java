@@ -0,0 +1,332 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Reactive Streams Publisher of the items of a paginated scan, in which each fetch is sized by the
+ * outstanding demand of the subscriber.
+ * 
+ * Nothing is fetched until the subscriber requests items, and each fetch asks for no more items than
+ * have been requested and not yet delivered, so a subscriber which requests one item at a time causes
+ * pages of one item to be fetched. Once the subscription is cancelled no further fetches are made.
+ * 
+ * The publisher is cold, each subscriber gets its own scan from a new fetcher. Fetching and signalling
+ * happen on the given executor, never on the thread which calls <code>request()</code>, and signals to
+ * a subscriber are serialized.
+ *
+ * @param <T> The type of the published items.
+ */
+class DemandPublisher<T> implements Publisher<T>
+{
+  private static final Logger log_ = LoggerFactory.getLogger(DemandPublisher.class);
+  
+  private final Supplier<IBatchFetcher<T>> fetcherFactory_;
+  private final Executor                   executor_;
+
+  /**
+   * A source of batches of items.
+   *
+   * @param <T> The type of an item.
+   */
+  interface IBatchFetcher<T>
+  {
+    /**
+     * Fetch the next batch of items.
+     * 
+     * @param maxItems The maximum number of items to fetch, which is at least 1.
+     * 
+     * @return The next batch of items, which may be empty.
+     */
+    List<T> fetch(int maxItems);
+    
+    /**
+     * 
+     * @return true if there are no more items to fetch.
+     */
+    boolean isExhausted();
+    
+    /**
+     * Called when the subscriber has finished with a batch, because all of its items have been delivered
+     * or because the subscription has ended.
+     * 
+     * @param batch           The batch returned by the last call to fetch.
+     * @param deliveredCount  The number of items from the start of the batch which were delivered to the subscriber.
+     */
+    default void batchDone(List<T> batch, int deliveredCount)
+    {
+    }
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param fetcherFactory  A supplier of a new fetcher for each subscriber.
+   * @param executor        The executor on which items are fetched and delivered.
+   */
+  DemandPublisher(Supplier<IBatchFetcher<T>> fetcherFactory, Executor executor)
+  {
+    fetcherFactory_ = fetcherFactory;
+    executor_       = executor;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super T> subscriber)
+  {
+    Objects.requireNonNull(subscriber, "subscriber");
+    
+    IBatchFetcher<T> fetcher;
+    
+    try
+    {
+      fetcher = fetcherFactory_.get();
+    }
+    catch(RuntimeException e)
+    {
+      // The subscriber must be given a subscription before it is told of the failure (Reactive Streams rule 1.9).
+      subscriber.onSubscribe(new Subscription()
+      {
+        @Override
+        public void request(long n)
+        {
+        }
+
+        @Override
+        public void cancel()
+        {
+        }
+      });
+      subscriber.onError(e);
+      return;
+    }
+    
+    DemandSubscription subscription = new DemandSubscription(subscriber, fetcher);
+    
+    subscriber.onSubscribe(subscription);
+    subscription.start();
+  }
+  
+  private class DemandSubscription implements Subscription, Runnable
+  {
+    private final Subscriber<? super T> subscriber_;
+    private final IBatchFetcher<T>      fetcher_;
+    private final AtomicLong            demand_    = new AtomicLong();
+    // Starts at 1 so that nothing is signalled until onSubscribe has returned (Reactive Streams rule 1.3).
+    private final AtomicInteger         pending_   = new AtomicInteger(1);
+    
+    private volatile boolean            cancelled_;
+    private volatile Long               invalidRequest_;
+    
+    // Only accessed by the drain loop, which runs on one thread at a time.
+    private boolean                     done_;
+    private List<T>                     batch_     = Collections.emptyList();
+    private int                         delivered_;
+
+    DemandSubscription(Subscriber<? super T> subscriber, IBatchFetcher<T> fetcher)
+    {
+      subscriber_ = subscriber;
+      fetcher_    = fetcher;
+    }
+
+    @Override
+    public void request(long n)
+    {
+      if(n <= 0)
+      {
+        invalidRequest_ = n;
+      }
+      else
+      {
+        long current;
+        
+        do
+        {
+          current = demand_.get();
+          
+          if(current == Long.MAX_VALUE)
+            break;
+        } while(!demand_.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+      }
+      
+      schedule();
+    }
+
+    @Override
+    public void cancel()
+    {
+      cancelled_ = true;
+      schedule();
+    }
+    
+    /**
+     * Called once onSubscribe has returned, to process any requests made during it.
+     */
+    void start()
+    {
+      if(pending_.decrementAndGet() != 0)
+        executor_.execute(this);
+    }
+    
+    private void schedule()
+    {
+      if(pending_.getAndIncrement() == 0)
+        executor_.execute(this);
+    }
+
+    @Override
+    public void run()
+    {
+      int missed = 1;
+      
+      do
+      {
+        drain();
+        missed = pending_.addAndGet(-missed);
+      } while(missed != 0);
+    }
+
+    private void drain()
+    {
+      while(!done_)
+      {
+        if(cancelled_)
+        {
+          RuntimeException failure = finish();
+          
+          if(failure != null)
+            log_.error("Failed to complete the last batch of a cancelled subscription", failure);
+          
+          return;
+        }
+        
+        if(invalidRequest_ != null)
+        {
+          IllegalArgumentException error   = new IllegalArgumentException("Request for " + invalidRequest_ + " items, which must be positive (Reactive Streams rule 3.9)");
+          RuntimeException         failure = finish();
+          
+          if(failure != null)
+            error.addSuppressed(failure);
+          
+          subscriber_.onError(error);
+          return;
+        }
+        
+        if(delivered_ < batch_.size())
+        {
+          if(demand_.get() == 0)
+            return;
+          
+          if(demand_.get() != Long.MAX_VALUE)
+            demand_.decrementAndGet();
+          
+          T item = batch_.get(delivered_++);
+          
+          try
+          {
+            subscriber_.onNext(item);
+          }
+          catch(RuntimeException e)
+          {
+            log_.error("Subscriber threw from onNext, cancelling (Reactive Streams rule 2.13)", e);
+            cancelled_ = true;
+          }
+          continue;
+        }
+        
+        try
+        {
+          if(!batch_.isEmpty())
+          {
+            List<T> batch     = batch_;
+            int     delivered = delivered_;
+            
+            batch_     = Collections.emptyList();
+            delivered_ = 0;
+            fetcher_.batchDone(batch, delivered);
+          }
+          
+          if(!fetcher_.isExhausted())
+          {
+            long demand = demand_.get();
+            
+            if(demand == 0)
+              return;
+            
+            List<T> batch = fetcher_.fetch((int)Math.min(demand, Integer.MAX_VALUE));
+            
+            batch_ = batch == null ? Collections.emptyList() : batch;
+            continue;
+          }
+        }
+        catch(RuntimeException e)
+        {
+          // A publisher which fails must signal onError (Reactive Streams rule 1.4).
+          done_ = true;
+          subscriber_.onError(e);
+          return;
+        }
+        
+        done_ = true;
+        subscriber_.onComplete();
+        return;
+      }
+    }
+    
+    /**
+     * End the subscription, telling the fetcher that the current batch is done.
+     * 
+     * @return The exception thrown by the fetcher, or null.
+     */
+    private RuntimeException finish()
+    {
+      done_ = true;
+      
+      if(!batch_.isEmpty())
+      {
+        List<T> batch = batch_;
+        
+        batch_ = Collections.emptyList();
+        
+        try
+        {
+          fetcher_.batchDone(batch, delivered_);
+        }
+        catch(RuntimeException e)
+        {
+          return e;
+        }
+      }
+      
+      return null;
+    }
+  }
+}
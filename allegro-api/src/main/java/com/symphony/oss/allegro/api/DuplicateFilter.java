@@ -0,0 +1,238 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.symphony.oss.commons.hash.Hash;
+
+/**
+ * A time windowed, memory bounded, set of the absolute hashes of recently processed objects, used to
+ * suppress duplicate deliveries from at least once feeds.
+ * 
+ * Hashes are held exactly in an insertion ordered map of at most maxEntries entries, each of which expires
+ * after the window. In front of this is a Bloom filter, made of two generations which are rotated
+ * each window (or sooner if a generation fills), so that the great majority of checks, which are for
+ * objects not seen before, are answered without taking a lock. A hash reported as possibly present by the
+ * Bloom filter is confirmed against the exact map, so a false positive never causes a message to be dropped.
+ * 
+ * Once a hash has been evicted from the exact map a redelivery of the object is processed again, as it
+ * would be without the filter.
+ * 
+ * Each subscription has its own filter, since the same object may legitimately be delivered on more than one feed.
+ *
+ */
+class DuplicateFilter
+{
+  private static final int         HASH_FUNCTIONS  = 7;
+  private static final int         BITS_PER_ENTRY  = 10;
+
+  private final int                maxEntries_;
+  private final long               windowMillis_;
+  private final int                bits_;
+  private final Map<Hash, Long>    recent_         = new LinkedHashMap<>();
+  private final AtomicLong         checkCount_;
+  private final AtomicLong         duplicateCount_;
+
+  private volatile AtomicLongArray current_;
+  private volatile AtomicLongArray previous_;
+  private long                     generationStart_;
+  private int                      generationCount_;
+
+  /**
+   * Constructor.
+   * 
+   * @param maxEntries    The maximum number of hashes to remember.
+   * @param windowMillis  The time for which a hash is remembered.
+   */
+  DuplicateFilter(int maxEntries, long windowMillis)
+  {
+    this(maxEntries, windowMillis, new AtomicLong(), new AtomicLong());
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param maxEntries      The maximum number of hashes to remember.
+   * @param windowMillis    The time for which a hash is remembered.
+   * @param checkCount      The counter of checked objects, which may be shared with other filters.
+   * @param duplicateCount  The counter of duplicate objects, which may be shared with other filters.
+   */
+  DuplicateFilter(int maxEntries, long windowMillis, AtomicLong checkCount, AtomicLong duplicateCount)
+  {
+    maxEntries_      = maxEntries;
+    checkCount_      = checkCount;
+    duplicateCount_  = duplicateCount;
+    windowMillis_    = windowMillis;
+    bits_            = Math.max(64, (int)Math.min(Integer.MAX_VALUE - 63, (long)maxEntries * BITS_PER_ENTRY));
+    current_         = newGeneration();
+    previous_        = newGeneration();
+    generationStart_ = System.currentTimeMillis();
+  }
+
+  private AtomicLongArray newGeneration()
+  {
+    return new AtomicLongArray((bits_ + 63) / 64);
+  }
+
+  /**
+   * Check whether an object with the given absolute hash has been processed within the window.
+   * 
+   * @param absoluteHash The absolute hash of a received object.
+   * 
+   * @return true if the object has already been processed.
+   */
+  boolean isDuplicate(Hash absoluteHash)
+  {
+    checkCount_.incrementAndGet();
+    
+    if(!mightContain(absoluteHash))
+      return false;
+    
+    synchronized(this)
+    {
+      Long processed = recent_.get(absoluteHash);
+      
+      if(processed == null || System.currentTimeMillis() - processed > windowMillis_)
+        return false;
+    }
+    
+    duplicateCount_.incrementAndGet();
+    
+    return true;
+  }
+
+  /**
+   * Record that the object with the given absolute hash has been processed.
+   * 
+   * @param absoluteHash The absolute hash of a processed object.
+   */
+  synchronized void processed(Hash absoluteHash)
+  {
+    long now = System.currentTimeMillis();
+    
+    if(now - generationStart_ >= windowMillis_ || generationCount_ >= maxEntries_)
+    {
+      previous_        = current_;
+      current_         = newGeneration();
+      generationStart_ = now;
+      generationCount_ = 0;
+    }
+    
+    long            mixed      = mix(absoluteHash.hashCode());
+    AtomicLongArray generation = current_;
+    int             h1         = (int) mixed;
+    int             h2         = (int) (mixed >>> 32);
+    
+    for(int i=0 ; i<HASH_FUNCTIONS ; i++)
+    {
+      int bit = index(h1 + i * h2);
+      
+      generation.getAndAccumulate(bit >>> 6, 1L << bit, (a, b) -> a | b);
+    }
+    
+    generationCount_++;
+    
+    // Re-insert so that the entry moves to the end of the eviction order.
+    recent_.remove(absoluteHash);
+    recent_.put(absoluteHash, now);
+    
+    Iterator<Long> it = recent_.values().iterator();
+    
+    while(it.hasNext())
+    {
+      long processed = it.next();
+      
+      if(recent_.size() > maxEntries_ || now - processed > windowMillis_)
+        it.remove();
+      else
+        break;
+    }
+  }
+
+  /**
+   * Check the Bloom filter, without taking a lock.
+   * 
+   * @param absoluteHash The absolute hash of a received object.
+   * 
+   * @return false if the object has not been processed since the start of the previous generation.
+   */
+  boolean mightContain(Hash absoluteHash)
+  {
+    long mixed = mix(absoluteHash.hashCode());
+    
+    return mightContain(current_, mixed) || mightContain(previous_, mixed);
+  }
+
+  private boolean mightContain(AtomicLongArray generation, long mixed)
+  {
+    int h1 = (int) mixed;
+    int h2 = (int) (mixed >>> 32);
+    
+    for(int i=0 ; i<HASH_FUNCTIONS ; i++)
+    {
+      int bit = index(h1 + i * h2);
+      
+      if((generation.get(bit >>> 6) & (1L << bit)) == 0)
+        return false;
+    }
+    
+    return true;
+  }
+
+  private int index(int hash)
+  {
+    return (hash & Integer.MAX_VALUE) % bits_;
+  }
+
+  private static long mix(int hashCode)
+  {
+    long h = hashCode * 0x9E3779B97F4A7C15L;
+    
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    
+    return h;
+  }
+
+  /**
+   * 
+   * @return The number of received objects checked.
+   */
+  long getCheckCount()
+  {
+    return checkCount_.get();
+  }
+
+  /**
+   * 
+   * @return The number of received objects found to be duplicates.
+   */
+  long getDuplicateCount()
+  {
+    return duplicateCount_.get();
+  }
+}
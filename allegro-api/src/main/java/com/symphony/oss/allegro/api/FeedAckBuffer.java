@@ -0,0 +1,259 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.symphony.oss.canon.runtime.exception.NotFoundException;
+
+/**
+ * Acknowledgements (deletes) and ack deadline extensions for a feed, held until they can be sent with
+ * the next feed request.
+ * 
+ * If a request fails then the acks it carried are put back to be sent with the next request, up to
+ * a maximum number of attempts, after which they are dropped. If a request fails with NotFoundException
+ * then the acks it carried are dropped, since retrying them would fail every subsequent request in the
+ * same way.
+ *
+ */
+class FeedAckBuffer
+{
+  /** The maximum number of requests with which an ack is sent before it is dropped. */
+  static final int MAX_ATTEMPTS = 5;
+
+  private static final Logger log_ = LoggerFactory.getLogger(FeedAckBuffer.class);
+  
+  /**
+   * Sender of a feed request carrying acks.
+   * 
+   * @param <T> The type of the response.
+   */
+  @FunctionalInterface
+  interface IFeedAckSender<T>
+  {
+    /**
+     * Send a request.
+     * 
+     * @param deletes     The receipt handles of messages to be deleted.
+     * @param extensions  Ack deadline extensions.
+     * 
+     * @return The response.
+     */
+    T send(List<String> deletes, List<PendingExtension> extensions);
+  }
+
+  static class PendingAck
+  {
+    final String receiptHandle_;
+    int          attempts_;
+    
+    PendingAck(String receiptHandle)
+    {
+      receiptHandle_ = receiptHandle;
+    }
+  }
+  
+  static class PendingExtension extends PendingAck
+  {
+    final int visibilityTimeout_;
+    
+    PendingExtension(String receiptHandle, int visibilityTimeout)
+    {
+      super(receiptHandle);
+      
+      visibilityTimeout_ = visibilityTimeout;
+    }
+  }
+  
+  private final String                 feedHash_;
+  private final List<PendingAck>       pendingDeletes_    = new ArrayList<>();
+  private final List<PendingExtension> pendingExtensions_ = new ArrayList<>();
+  private long                         oldestPendingAckMillis_;
+  
+  /**
+   * Constructor.
+   * 
+   * @param feedHash The hash of the feed, for logging.
+   */
+  FeedAckBuffer(String feedHash)
+  {
+    feedHash_ = feedHash;
+  }
+
+  synchronized void addDelete(String receiptHandle)
+  {
+    // There is no point in extending a message which is about to be deleted.
+    pendingExtensions_.removeIf((extension) -> extension.receiptHandle_.equals(receiptHandle));
+    pendingDeletes_.add(new PendingAck(receiptHandle));
+    
+    if(oldestPendingAckMillis_ == 0)
+      oldestPendingAckMillis_ = System.currentTimeMillis();
+  }
+  
+  synchronized void addExtension(String receiptHandle, int visibilityTimeout)
+  {
+    pendingExtensions_.add(new PendingExtension(receiptHandle, visibilityTimeout));
+    
+    if(oldestPendingAckMillis_ == 0)
+      oldestPendingAckMillis_ = System.currentTimeMillis();
+  }
+  
+  /**
+   * 
+   * @param force             If true then any pending ack is due.
+   * @param flushDelayMillis  The time for which acks may be held.
+   * 
+   * @return true if there are pending acks, the oldest of which has been held for longer than the given delay.
+   */
+  synchronized boolean isFlushDue(boolean force, long flushDelayMillis)
+  {
+    return oldestPendingAckMillis_ != 0 && (force || System.currentTimeMillis() - oldestPendingAckMillis_ >= flushDelayMillis);
+  }
+  
+  /**
+   * Send a request carrying all pending acks.
+   * 
+   * If the request fails with NotFoundException then the acks are dropped and the request is sent again
+   * without them.
+   * 
+   * @param <T>     The type of the response.
+   * @param sender  The request sender.
+   * 
+   * @return The response.
+   */
+  <T> T send(IFeedAckSender<T> sender)
+  {
+    List<PendingAck>       deletes    = new ArrayList<>();
+    List<PendingExtension> extensions = new ArrayList<>();
+    
+    take(deletes, extensions);
+    
+    try
+    {
+      return sender.send(getReceiptHandles(deletes), extensions);
+    }
+    catch(NotFoundException e)
+    {
+      if(deletes.isEmpty() && extensions.isEmpty())
+        throw e;
+      
+      log_.warn("Dropped " + deletes.size() + " acks and " + extensions.size() + " extensions for feed " + feedHash_ + " which were not found", e);
+      
+      return sender.send(Collections.emptyList(), Collections.emptyList());
+    }
+    catch(RuntimeException e)
+    {
+      restore(deletes, extensions);
+      throw e;
+    }
+  }
+  
+  /**
+   * Send a request carrying all pending acks, if there are any.
+   * 
+   * If the request fails with NotFoundException then the acks are dropped, if it fails with any other
+   * RuntimeException then they are retried with the next request.
+   * 
+   * @param sender  The request sender.
+   */
+  void flush(IFeedAckSender<?> sender)
+  {
+    List<PendingAck>       deletes    = new ArrayList<>();
+    List<PendingExtension> extensions = new ArrayList<>();
+    
+    take(deletes, extensions);
+    
+    if(deletes.isEmpty() && extensions.isEmpty())
+      return;
+    
+    try
+    {
+      sender.send(getReceiptHandles(deletes), extensions);
+    }
+    catch(NotFoundException e)
+    {
+      // expected
+    }
+    catch(RuntimeException e)
+    {
+      log_.error("Failed to send acks for feed " + feedHash_ + ", will retry", e);
+      
+      restore(deletes, extensions);
+    }
+  }
+  
+  private static List<String> getReceiptHandles(List<PendingAck> acks)
+  {
+    List<String> receiptHandles = new ArrayList<>(acks.size());
+    
+    for(PendingAck ack : acks)
+      receiptHandles.add(ack.receiptHandle_);
+    
+    return receiptHandles;
+  }
+  
+  private synchronized void take(List<PendingAck> deletes, List<PendingExtension> extensions)
+  {
+    deletes.addAll(pendingDeletes_);
+    extensions.addAll(pendingExtensions_);
+    pendingDeletes_.clear();
+    pendingExtensions_.clear();
+    oldestPendingAckMillis_ = 0;
+  }
+  
+  /*
+   * Put back acks and extensions whose request failed, so that they are retried, unless they have been tried too often.
+   */
+  private synchronized void restore(List<PendingAck> deletes, List<PendingExtension> extensions)
+  {
+    int dropped = retain(deletes) + retain(extensions);
+    
+    if(dropped > 0)
+      log_.warn("Dropped " + dropped + " acks and extensions for feed " + feedHash_ + " after " + MAX_ATTEMPTS + " attempts");
+    
+    pendingDeletes_.addAll(deletes);
+    pendingExtensions_.addAll(extensions);
+    
+    if(oldestPendingAckMillis_ == 0 && !(pendingDeletes_.isEmpty() && pendingExtensions_.isEmpty()))
+      oldestPendingAckMillis_ = System.currentTimeMillis();
+  }
+
+  private static int retain(List<? extends PendingAck> acks)
+  {
+    int                            dropped = 0;
+    Iterator<? extends PendingAck> it      = acks.iterator();
+    
+    while(it.hasNext())
+    {
+      if(++it.next().attempts_ >= MAX_ATTEMPTS)
+      {
+        it.remove();
+        dropped++;
+      }
+    }
+    
+    return dropped;
+  }
+}
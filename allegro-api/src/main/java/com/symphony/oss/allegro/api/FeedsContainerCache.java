@@ -0,0 +1,183 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import com.symphony.oss.allegro.api.request.FeedId;
+import com.symphony.oss.models.core.canon.facade.PodAndUserId;
+
+/**
+ * A bounded cache of AllegroSqsFeedsContainers for a single API instance.
+ * 
+ * Containers are keyed by the set of feed hashes they serve, so the same feeds requested in a different
+ * order share a container. The cache holds at most a fixed number of containers, evicting the least
+ * recently used, and containers which have not been refreshed for the idle time are evicted when the
+ * cache is next accessed. Evicted containers are closed, which stops their background refresh.
+ *
+ */
+class FeedsContainerCache implements AutoCloseable
+{
+  private final int                                                 maxSize_;
+  private final long                                                idleMillis_;
+  private final LinkedHashMap<Set<String>, AllegroSqsFeedsContainer> map_ = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * Constructor.
+   * 
+   * @param maxSize    The maximum number of containers held.
+   * @param idleMillis The time after which an unused container is evicted.
+   */
+  FeedsContainerCache(int maxSize, long idleMillis)
+  {
+    maxSize_    = maxSize;
+    idleMillis_ = idleMillis;
+  }
+
+  /**
+   * Return the container for the given feeds, creating it if necessary.
+   * 
+   * @param feedIds The ids of the feeds.
+   * @param owner   The feeds owner.
+   * @param allegro The Allegro API object.
+   * 
+   * @return The container for the given feeds.
+   */
+  AllegroSqsFeedsContainer get(List<FeedId> feedIds, PodAndUserId owner, AllegroBaseApi<?> allegro)
+  {
+    Set<String> key = new HashSet<>(feedIds.size() * 2);
+    
+    for(FeedId feedId : feedIds)
+      key.add(feedId.getHash(owner).toStringBase64());
+    
+    return get(key, () -> new AllegroSqsFeedsContainer(feedIds, owner, allegro));
+  }
+  
+  /**
+   * Return the container for the given key, creating it if necessary.
+   * 
+   * @param key     The Base64 hashes of the feeds.
+   * @param factory A factory for the container, called without holding any lock.
+   * 
+   * @return The container for the given key.
+   */
+  AllegroSqsFeedsContainer get(Set<String> key, Supplier<AllegroSqsFeedsContainer> factory)
+  {
+    List<AllegroSqsFeedsContainer> evicted = new ArrayList<>();
+    AllegroSqsFeedsContainer       container;
+    
+    synchronized(map_)
+    {
+      long                                                        idleLimit = System.currentTimeMillis() - idleMillis_;
+      Iterator<Map.Entry<Set<String>, AllegroSqsFeedsContainer>>  it        = map_.entrySet().iterator();
+      
+      while(it.hasNext())
+      {
+        AllegroSqsFeedsContainer candidate = it.next().getValue();
+        
+        if(candidate.getLastUsedMillis() < idleLimit)
+        {
+          evicted.add(candidate);
+          it.remove();
+        }
+      }
+      
+      container = map_.get(key);
+    }
+    
+    close(evicted);
+    
+    if(container == null)
+    {
+      // Created outside the lock because the constructor makes a network call.
+      AllegroSqsFeedsContainer created = factory.get();
+      
+      synchronized(map_)
+      {
+        container = map_.putIfAbsent(Collections.unmodifiableSet(key), created);
+        
+        if(container == null)
+        {
+          container = created;
+          
+          Iterator<AllegroSqsFeedsContainer> it = map_.values().iterator();
+          
+          while(map_.size() > maxSize_)
+          {
+            evicted.add(it.next());
+            it.remove();
+          }
+        }
+        else
+        {
+          evicted.add(created);
+        }
+      }
+      
+      close(evicted);
+    }
+    
+    return container;
+  }
+
+  private void close(List<AllegroSqsFeedsContainer> containers)
+  {
+    for(AllegroSqsFeedsContainer container : containers)
+      container.close();
+    
+    containers.clear();
+  }
+
+  /**
+   * 
+   * @return The number of containers currently held.
+   */
+  int size()
+  {
+    synchronized(map_)
+    {
+      return map_.size();
+    }
+  }
+
+  /**
+   * Close and remove all containers.
+   */
+  @Override
+  public void close()
+  {
+    List<AllegroSqsFeedsContainer> containers;
+    
+    synchronized(map_)
+    {
+      containers = new ArrayList<>(map_.values());
+      map_.clear();
+    }
+    
+    close(containers);
+  }
+}
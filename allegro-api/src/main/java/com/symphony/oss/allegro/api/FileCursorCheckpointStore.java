@@ -0,0 +1,120 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import javax.annotation.Nullable;
+
+/**
+ * An ICursorCheckpointStore which keeps each checkpoint in a file in a local directory.
+ * 
+ * Checkpoints are written to a temporary file which is then renamed, so a process which is killed
+ * while saving leaves the previous checkpoint intact.
+ *
+ */
+public class FileCursorCheckpointStore implements ICursorCheckpointStore
+{
+  private static final String SUFFIX = ".cursor";
+  
+  private final File          directory_;
+
+  /**
+   * Constructor.
+   * 
+   * @param directory The directory in which checkpoints are stored, which is created if necessary.
+   */
+  public FileCursorCheckpointStore(File directory)
+  {
+    if(!directory.isDirectory() && !directory.mkdirs())
+      throw new IllegalArgumentException("Unable to create checkpoint directory " + directory.getAbsolutePath());
+    
+    directory_ = directory;
+  }
+
+  @Override
+  public @Nullable String load(String checkpointId)
+  {
+    File file = getFile(checkpointId);
+    
+    if(!file.exists())
+      return null;
+    
+    try
+    {
+      String after = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+      
+      return after.isEmpty() ? null : after;
+    }
+    catch (IOException e)
+    {
+      throw new IllegalStateException("Unable to read checkpoint " + file.getAbsolutePath(), e);
+    }
+  }
+
+  @Override
+  public synchronized void save(String checkpointId, String after)
+  {
+    File file = getFile(checkpointId);
+    File temp = new File(directory_, file.getName() + ".tmp");
+    
+    try
+    {
+      Files.write(temp.toPath(), after.getBytes(StandardCharsets.UTF_8));
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException e)
+    {
+      throw new IllegalStateException("Unable to write checkpoint " + file.getAbsolutePath(), e);
+    }
+  }
+
+  @Override
+  public synchronized void clear(String checkpointId)
+  {
+    File file = getFile(checkpointId);
+    
+    try
+    {
+      Files.deleteIfExists(file.toPath());
+    }
+    catch (IOException e)
+    {
+      throw new IllegalStateException("Unable to delete checkpoint " + file.getAbsolutePath(), e);
+    }
+  }
+  
+  private File getFile(String checkpointId)
+  {
+    try
+    {
+      return new File(directory_, URLEncoder.encode(checkpointId, StandardCharsets.UTF_8.name()) + SUFFIX);
+    }
+    catch (UnsupportedEncodingException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+/**
+ * The action taken when an item is to be passed to the handler thread pool of an async query
+ * and the bounded handler queue is full.
+ *
+ */
+public enum HandlerQueuePolicy
+{
+  /** The subscriber thread waits until there is space in the queue, pausing the fetching of further pages. */
+  Block, 
+  /** The subscriber thread processes the item itself, pausing the fetching of further pages. */
+  CallerRuns;
+}
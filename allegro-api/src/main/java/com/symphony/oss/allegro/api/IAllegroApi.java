@@ -16,9 +16,12 @@
 
 package com.symphony.oss.allegro.api;
 
+import java.util.stream.Stream;
+
 import com.symphony.oss.allegro.api.AllegroApi.ApplicationObjectBuilder;
 import com.symphony.oss.allegro.api.AllegroApi.ApplicationObjectUpdater;
 import com.symphony.oss.allegro.api.AllegroApi.EncryptedApplicationPayloadAndHeaderBuilder;
+import com.symphony.oss.allegro.api.request.PartitionQuery;
 import com.symphony.oss.allegro2.api.IAllegro2Api;
 import com.symphony.oss.canon.runtime.exception.NotFoundException;
 import com.symphony.oss.models.allegro.canon.facade.IReceivedChatMessage;
@@ -171,6 +174,42 @@ public interface IAllegroApi extends IAllegroMultiTenantApi, IAllegro2Api
   
   @Override
   IApplicationObjectPayload decryptObject(IStoredApplicationObject encryptedApplicationPayload);
+  
+  /**
+   * Stream the decrypted payloads of objects from a partition.
+   * 
+   * Pages are fetched as the stream is consumed, and each payload is decrypted as it is pulled, so
+   * short circuiting operations stop both the scan and the decryption.
+   * 
+   * @param query The query parameters for the objects required.
+   * 
+   * @return A lazily fetched and decrypted stream of the payloads of the objects in the partition.
+   * 
+   * @see IAllegroMultiTenantApi#streamPartitionObjects(PartitionQuery)
+   */
+  default Stream<IApplicationObjectPayload> streamPartitionPayloads(PartitionQuery query)
+  {
+    return streamPartitionObjects(query).map(this::decryptObject);
+  }
+  
+  /**
+   * Stream the decrypted payloads of objects from a partition.
+   * 
+   * @param <T> Type of the required object payloads.
+   * 
+   * @param query The query parameters for the objects required.
+   * @param type  Type of the required object payloads.
+   * 
+   * @return A lazily fetched and decrypted stream of the payloads of the objects in the partition.
+   * 
+   * @throws IllegalStateException If a decrypted payload is not an instance of the required type.
+   * 
+   * @see IAllegroMultiTenantApi#streamPartitionObjects(PartitionQuery)
+   */
+  default <T extends IApplicationObjectPayload> Stream<T> streamPartitionPayloads(PartitionQuery query, Class<T> type)
+  {
+    return streamPartitionObjects(query).map((object) -> decryptObject(object, type));
+  }
   /**
    * Parse SocialMessage text. For MessageMLV2 messages, returns the PresentationML content. For legacy messages, parses
    * the Markdown content and JSON entities and returns their PresentationML representation.
@@ -18,12 +18,16 @@ package com.symphony.oss.allegro.api;
 
 import java.io.Closeable;
 import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
 
 import javax.annotation.Nullable;
 
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.reactivestreams.Publisher;
 
 import com.symphony.oss.allegro.api.request.FeedId;
+import com.symphony.oss.allegro.api.request.FeedQuery;
 import com.symphony.oss.allegro.api.request.FetchEntitlementRequest;
 import com.symphony.oss.allegro.api.request.FetchFeedObjectsRequest;
 import com.symphony.oss.allegro.api.request.FetchObjectVersionsRequest;
@@ -148,6 +152,35 @@ public interface IAllegroMultiTenantApi  extends IAllegroDecryptor, IMultiTenant
    */
   IObjectPage fetchPartitionObjectPage(PartitionQuery query);
   
+  /**
+   * Stream objects from a partition.
+   * <p>
+   * Pages are fetched from the server as the stream is consumed, so short circuiting operations such as
+   * limit() or findFirst() stop the scan. The objects are returned in the order given by the query.
+   * <p>
+   * A parallel stream splits the scan into sort key ranges which are fetched concurrently. This needs two
+   * additional server calls to find the bounds of the partition, and is not possible for a query with a
+   * sort key prefix, an after cursor or a maximum number of items, in which case the stream is sequential.
+   * <p>
+   * @param query The query parameters for the objects required.
+   * <p>
+   * @return A lazily fetched stream of the objects in the partition.
+   */
+  Stream<IStoredApplicationObject> streamPartitionObjects(PartitionQuery query);
+  
+  /**
+   * Publish objects from a partition as a Reactive Streams Publisher.
+   * <p>
+   * Nothing is fetched until the subscriber requests objects, and each page is limited to the number of
+   * objects which have been requested but not yet delivered. Cancelling the subscription stops the scan.
+   * Each subscriber receives its own scan of the partition.
+   * <p>
+   * @param query The query parameters for the objects required.
+   * <p>
+   * @return A Publisher of the objects in the partition.
+   */
+  Publisher<IAbstractStoredApplicationObject> publishPartitionObjects(PartitionQuery query);
+  
   /**
    * Create a new EncryptedApplicationObjectBuilder.
    * <p>
@@ -185,6 +218,9 @@ public interface IAllegroMultiTenantApi  extends IAllegroDecryptor, IMultiTenant
   /**
    * Fetch an object by its absolute hash.
    * <p>
+   * Objects are immutable so they are cached, and repeated calls for the same hash may not make a
+   * call to the server.
+   * <p>
    * @param absoluteHash The hash of the required object.
    * <p>
    * @return The raw object.
@@ -193,6 +229,19 @@ public interface IAllegroMultiTenantApi  extends IAllegroDecryptor, IMultiTenant
    */
   IAbstractStoredApplicationObject fetchAbsolute(Hash absoluteHash);
 
+  /**
+   * Fetch a number of objects by their absolute hashes.
+   * <p>
+   * Each distinct hash is fetched once, several at a time, so this is much faster than calling
+   * fetchAbsolute(Hash) for each one, for example to resolve the IApplicationObjectNotifications
+   * read from a feed. A failure to fetch one object does not affect the others.
+   * <p>
+   * @param absoluteHashes The hashes of the required objects.
+   * <p>
+   * @return The result for each of the given hashes, in the same order.
+   */
+  List<AbsoluteFetchResult> fetchAbsolute(Collection<Hash> absoluteHashes);
+
   /**
    * Fetch the current version of an object by its base hash.
    * <p>
@@ -348,6 +397,23 @@ public interface IAllegroMultiTenantApi  extends IAllegroDecryptor, IMultiTenant
    * <p>
    */
   @Nullable IAllegroQueryManager fetchFeedObjects(FetchFeedObjectsRequest request);
+  
+  /**
+   * Publish objects from a feed as a Reactive Streams Publisher.
+   * <p>
+   * Nothing is received until the subscriber requests objects, and each receive asks for no more messages
+   * than have been requested but not yet delivered (and at most 10). Each message is acknowledged once
+   * it has been delivered to the subscriber. If the subscription is cancelled, messages which have been received
+   * but not delivered are left unacknowledged and are redelivered after their visibility timeout.
+   * <p>
+   * The Publisher completes when a receive returns no messages, or when the maximum number of items in the
+   * query has been received.
+   * <p>
+   * @param query The feed to read.
+   * <p>
+   * @return A Publisher of the objects in the feed.
+   */
+  Publisher<IAbstractStoredApplicationObject> publishFeedObjects(FeedQuery query);
 
   /**
    * Fetch versions of the given logical object, by its baseHash.
@@ -377,6 +443,31 @@ public interface IAllegroMultiTenantApi  extends IAllegroDecryptor, IMultiTenant
    * @return  A page of objects.
    */
   IObjectVersionPage fetchObjectVersionsPage(VersionQuery query);
+  
+  /**
+   * Stream versions of the given logical object.
+   * <p>
+   * Pages are fetched from the server as the stream is consumed, so short circuiting operations such as
+   * limit() or findFirst() stop the scan. A version scan cannot be split, so a parallel stream only
+   * parallelises the processing of the versions.
+   * <p>
+   * @param query The query parameters for the versions required.
+   * <p>
+   * @return A lazily fetched stream of the versions of the object.
+   */
+  Stream<IAbstractStoredApplicationObject> streamObjectVersions(VersionQuery query);
+  
+  /**
+   * Publish versions of the given logical object as a Reactive Streams Publisher.
+   * <p>
+   * Nothing is fetched until the subscriber requests objects, and each page is limited to the number of
+   * objects which have been requested but not yet delivered. Cancelling the subscription stops the scan.
+   * <p>
+   * @param query The query parameters for the versions required.
+   * <p>
+   * @return A Publisher of the versions of the object.
+   */
+  Publisher<IAbstractStoredApplicationObject> publishObjectVersions(VersionQuery query);
 
   /**
    * Fetch an entitlement.
@@ -524,4 +615,11 @@ public interface IAllegroMultiTenantApi  extends IAllegroDecryptor, IMultiTenant
    */
   IAllegroBaseConfiguration getConfiguration();
 
+  /**
+   * Return the metrics of this API instance, such as the hit rate of the absolute object cache.
+   * 
+   * @return The metrics of this API instance.
+   */
+  AllegroApiMetrics getMetrics();
+
 }
@@ -0,0 +1,54 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import javax.annotation.Nullable;
+
+/**
+ * A store of the cursors from which interrupted partition scans may be resumed.
+ * 
+ * Implementations must be thread safe.
+ *
+ */
+public interface ICursorCheckpointStore
+{
+  /**
+   * Load a checkpoint.
+   * 
+   * @param checkpointId The ID of the checkpoint.
+   * 
+   * @return The after cursor from which the scan should resume, or null if there is no checkpoint.
+   */
+  @Nullable String load(String checkpointId);
+  
+  /**
+   * Save a checkpoint, replacing any previous value.
+   * 
+   * @param checkpointId  The ID of the checkpoint.
+   * @param after         The after cursor of the last page all of whose objects have been consumed.
+   */
+  void save(String checkpointId, String after);
+  
+  /**
+   * Remove a checkpoint, called when the scan has completed.
+   * 
+   * @param checkpointId The ID of the checkpoint.
+   */
+  void clear(String checkpointId);
+}
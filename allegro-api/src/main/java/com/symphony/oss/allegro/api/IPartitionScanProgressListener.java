@@ -0,0 +1,37 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+/**
+ * A listener for the progress of a segmented partition scan.
+ *
+ */
+@FunctionalInterface
+public interface IPartitionScanProgressListener
+{
+  /**
+   * Called each time a page of a segment has been passed to the consumers, and when a segment completes.
+   * 
+   * May be called concurrently for different segments.
+   * 
+   * @param progress  The progress of the whole scan.
+   * @param segment   The index of the segment which has progressed.
+   */
+  void progress(PartitionScanProgress progress, int segment);
+}
@@ -0,0 +1,265 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.symphony.oss.canon.runtime.exception.NotFoundException;
+
+/**
+ * A thread safe, TTL bounded cache of metadata such as partitions, entitlements and service info.
+ * 
+ * Entries expire ttl after they were loaded. An entry which is read during the refresh ahead period
+ * before it expires is reloaded in the background, while the current value continues to be returned,
+ * so frequently used entries never expire in the calling thread. Concurrent loads of the same key are
+ * coalesced, even when caching is disabled.
+ * 
+ * Optionally, a NotFoundException is also cached for the TTL.
+ *
+ * @param <K> The type of the key.
+ */
+class MetadataCache<K>
+{
+  private static final Logger               log_         = LoggerFactory.getLogger(MetadataCache.class);
+
+  private final long                        ttlMillis_;
+  private final long                        refreshAheadMillis_;
+  private final int                         maxEntries_;
+  private final Executor                    executor_;
+  private final Map<K, Entry>               map_         = new ConcurrentHashMap<>();
+  private final SingleFlight<K>             loads_;
+  private final AtomicLong                  hits_        = new AtomicLong();
+  private final AtomicLong                  misses_      = new AtomicLong();
+  private final AtomicLong                  refreshes_   = new AtomicLong();
+  private final Map<K, Object>              loading_     = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   * 
+   * @param ttlMillis           The time for which an entry is valid, if zero nothing is cached.
+   * @param refreshAheadMillis  The period before expiry during which a read causes a background reload.
+   * @param maxEntries          The maximum number of entries.
+   * @param executor            The executor for background reloads.
+   * @param loads               The SingleFlight through which loads are coalesced.
+   */
+  MetadataCache(long ttlMillis, long refreshAheadMillis, int maxEntries, Executor executor, SingleFlight<K> loads)
+  {
+    ttlMillis_          = ttlMillis;
+    refreshAheadMillis_ = Math.min(refreshAheadMillis, ttlMillis);
+    maxEntries_         = maxEntries;
+    executor_           = executor;
+    loads_              = loads;
+  }
+  
+  private class Entry
+  {
+    final Object        value_;
+    final long          expiry_;
+    final AtomicBoolean refreshing_ = new AtomicBoolean();
+    
+    Entry(Object value)
+    {
+      value_  = value;
+      expiry_ = System.currentTimeMillis() + ttlMillis_;
+    }
+  }
+  
+  /**
+   * Return the value for the given key, loading it if necessary.
+   * 
+   * @param <V>           The type of the value.
+   * @param key           The key.
+   * @param cacheNotFound If true then a NotFoundException thrown by the loader is cached.
+   * @param loader        A function to fetch the value.
+   * 
+   * @return The value.
+   */
+  @SuppressWarnings("unchecked")
+  <V> V get(K key, boolean cacheNotFound, Supplier<V> loader)
+  {
+    if(ttlMillis_ <= 0 || maxEntries_ <= 0)
+      return loads_.execute(key, loader);
+    
+    Entry entry = map_.get(key);
+    long  now   = System.currentTimeMillis();
+    
+    if(entry != null && now < entry.expiry_)
+    {
+      hits_.incrementAndGet();
+      
+      if(now >= entry.expiry_ - refreshAheadMillis_ && entry.refreshing_.compareAndSet(false, true))
+        refresh(key, cacheNotFound, loader);
+      
+      return (V)unwrap(entry.value_);
+    }
+    
+    misses_.incrementAndGet();
+    
+    return (V)unwrap(loads_.execute(key, () -> load(key, cacheNotFound, loader)));
+  }
+  
+  private Object load(K key, boolean cacheNotFound, Supplier<?> loader)
+  {
+    // Invalidation of this key removes the token, so what we load is only stored if the key was not invalidated meanwhile.
+    Object token = new Object();
+    Object value;
+    
+    loading_.put(key, token);
+    
+    try
+    {
+      value = loader.get();
+    }
+    catch(NotFoundException e)
+    {
+      if(!cacheNotFound)
+      {
+        loading_.remove(key, token);
+        throw e;
+      }
+      
+      value = e;
+    }
+    catch(RuntimeException | Error e)
+    {
+      loading_.remove(key, token);
+      throw e;
+    }
+    
+    if(loading_.remove(key, token))
+    {
+      map_.put(key, new Entry(value));
+      
+      if(map_.size() > maxEntries_)
+        evict();
+    }
+    
+    return value;
+  }
+  
+  private void refresh(K key, boolean cacheNotFound, Supplier<?> loader)
+  {
+    refreshes_.incrementAndGet();
+    
+    try
+    {
+      executor_.execute(() ->
+      {
+        try
+        {
+          loads_.execute(key, () -> load(key, cacheNotFound, loader));
+        }
+        catch(RuntimeException e)
+        {
+          // The current entry remains until it expires, when the caller will see the failure.
+          log_.warn("Failed to refresh " + key, e);
+        }
+      });
+    }
+    catch(RejectedExecutionException e)
+    {
+      log_.warn("Unable to schedule refresh of " + key, e);
+    }
+  }
+  
+  private Object unwrap(Object value)
+  {
+    if(value instanceof NotFoundException)
+      throw (NotFoundException)value;
+    
+    return value;
+  }
+  
+  /**
+   * Remove expired entries, and if that is not enough then arbitrary entries, to keep within the maximum size.
+   */
+  private void evict()
+  {
+    long now = System.currentTimeMillis();
+    
+    map_.values().removeIf((entry) -> now >= entry.expiry_);
+    
+    Iterator<K> it = map_.keySet().iterator();
+    
+    while(map_.size() > maxEntries_ && it.hasNext())
+    {
+      it.next();
+      it.remove();
+    }
+  }
+  
+  /**
+   * Remove the entry for the given key, so the next read fetches it from the server.
+   * 
+   * @param key The key.
+   */
+  void invalidate(K key)
+  {
+    loading_.remove(key);
+    map_.remove(key);
+    loads_.invalidate(key);
+  }
+  
+  /**
+   * Remove all entries.
+   */
+  void invalidateAll()
+  {
+    loading_.clear();
+    map_.clear();
+    loads_.invalidate();
+  }
+  
+  /**
+   * 
+   * @return The number of reads answered from the cache.
+   */
+  long getHitCount()
+  {
+    return hits_.get();
+  }
+  
+  /**
+   * 
+   * @return The number of reads which waited for a load from the server.
+   */
+  long getMissCount()
+  {
+    return misses_.get();
+  }
+  
+  /**
+   * 
+   * @return The number of background reloads started.
+   */
+  long getRefreshCount()
+  {
+    return refreshes_.get();
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
+
+import com.symphony.oss.commons.concurrent.NamedThreadFactory;
+
+/**
+ * Reads the pages of a paginated scan, fetching later pages while earlier ones are being consumed.
+ * 
+ * The cursor for page N+1 is only known once page N has arrived, so a single background task fetches
+ * pages one after another as soon as each cursor is available and buffers them for the reader. The
+ * next page is only requested when nothing is buffered, or when fewer than the read ahead depth of
+ * pages and fewer than the read ahead item budget of items are buffered. The size of a page is not
+ * known until it has arrived, so the item budget may be exceeded by one page. The page being consumed
+ * is not counted against either limit.
+ * 
+ * With a depth of zero no background task is used and each page is fetched by the calling thread when
+ * it is requested, which is exactly the behaviour of a simple fetch, consume, fetch loop.
+ * 
+ * Pages are returned in order and a failure to fetch a page is thrown to the reader after all of
+ * the preceding pages have been returned.
+ *
+ * @param <P> The type of a page.
+ */
+class PageReadAhead<P> implements AutoCloseable
+{
+  private static final ExecutorService fetchExecutor_ = Executors.newCachedThreadPool(
+      new NamedThreadFactory("Allegro-read-ahead", true));
+
+  private final IPageSource<P> source_;
+  private final int            depth_;
+  private final int            itemBudget_;
+  private final Deque<P>       pages_ = new ArrayDeque<>();
+
+  private String               after_;
+  private int                  itemCount_;
+  private boolean              exhausted_;
+  private int                  bufferedItems_;
+  private boolean              complete_;
+  private boolean              closed_;
+  private Throwable            failure_;
+  private Future<?>            fetchTask_;
+
+  /**
+   * A source of pages.
+   *
+   * @param <P> The type of a page.
+   */
+  interface IPageSource<P>
+  {
+    /**
+     * Fetch a page.
+     * 
+     * @param after     The cursor of the required page, null for the first page.
+     * @param itemCount The number of items in all of the pages fetched so far.
+     * 
+     * @return The page, or null if no more pages are required.
+     */
+    @Nullable P fetchPage(@Nullable String after, int itemCount);
+    
+    /**
+     * 
+     * @param page A page.
+     * 
+     * @return The number of items in the given page.
+     */
+    int getItemCount(P page);
+    
+    /**
+     * 
+     * @param page A page.
+     * 
+     * @return The cursor of the page which follows the given page, or null if this is the last page.
+     */
+    @Nullable String getAfter(P page);
+  }
+  
+  /**
+   * Constructor.
+   * 
+   * @param source      The source of pages.
+   * @param after       The cursor of the first page, may be null.
+   * @param depth       The maximum number of pages to fetch ahead of the reader, 0 disables read ahead.
+   * @param itemBudget  The maximum number of items to hold in pages fetched ahead of the reader.
+   */
+  PageReadAhead(IPageSource<P> source, @Nullable String after, int depth, int itemBudget)
+  {
+    source_     = source;
+    after_      = after;
+    depth_      = depth;
+    itemBudget_ = itemBudget;
+    
+    if(depth_ > 0)
+      fetchTask_ = fetchExecutor_.submit(() -> fetchAhead());
+  }
+
+  /**
+   * Return the next page, waiting for it to be fetched if necessary.
+   * 
+   * @return The next page, or null if there are no more pages.
+   * 
+   * @throws RuntimeException If the page could not be fetched.
+   */
+  @Nullable P next()
+  {
+    if(depth_ <= 0)
+      return fetchNext();
+    
+    synchronized(pages_)
+    {
+      try
+      {
+        while(pages_.isEmpty() && !complete_ && failure_ == null)
+          pages_.wait();
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted waiting for a page", e);
+      }
+      
+      P page = pages_.pollFirst();
+      
+      if(page != null)
+      {
+        bufferedItems_ -= source_.getItemCount(page);
+        pages_.notifyAll();
+        
+        return page;
+      }
+      
+      if(failure_ instanceof Error)
+        throw (Error)failure_;
+      
+      if(failure_ instanceof RuntimeException)
+        throw (RuntimeException)failure_;
+      
+      if(failure_ != null)
+        throw new IllegalStateException("Failed to fetch page", failure_);
+      
+      return null;
+    }
+  }
+
+  private P fetchNext()
+  {
+    if(exhausted_)
+      return null;
+    
+    P page = source_.fetchPage(after_, itemCount_);
+    
+    if(page == null)
+    {
+      exhausted_ = true;
+      return null;
+    }
+    
+    itemCount_ += source_.getItemCount(page);
+    after_ = source_.getAfter(page);
+    
+    if(after_ == null)
+      exhausted_ = true;
+    
+    return page;
+  }
+  
+  private void fetchAhead()
+  {
+    try
+    {
+      while(awaitSpace())
+      {
+        P page = fetchNext();
+        
+        synchronized(pages_)
+        {
+          if(page == null || closed_)
+            break;
+          
+          pages_.addLast(page);
+          bufferedItems_ += source_.getItemCount(page);
+          pages_.notifyAll();
+          
+          if(exhausted_)
+            break;
+        }
+      }
+    }
+    catch(InterruptedException e)
+    {
+      // closed
+    }
+    catch(Throwable e)
+    {
+      synchronized(pages_)
+      {
+        failure_ = e;
+      }
+    }
+    finally
+    {
+      synchronized(pages_)
+      {
+        complete_ = true;
+        pages_.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Wait until there is space in the buffer for another page, which there always is when the buffer is empty.
+   * 
+   * @return false if the reader has been closed.
+   * 
+   * @throws InterruptedException If the fetch task is cancelled.
+   */
+  private boolean awaitSpace() throws InterruptedException
+  {
+    synchronized(pages_)
+    {
+      while(!closed_ && !pages_.isEmpty() && (pages_.size() >= depth_ || bufferedItems_ >= itemBudget_))
+        pages_.wait();
+      
+      return !closed_;
+    }
+  }
+
+  /**
+   * Stop fetching pages and discard any which have not been read.
+   */
+  @Override
+  public void close()
+  {
+    synchronized(pages_)
+    {
+      closed_ = true;
+      pages_.clear();
+      bufferedItems_ = 0;
+      pages_.notifyAll();
+    }
+    
+    if(fetchTask_ != null)
+      fetchTask_.cancel(true);
+  }
+}
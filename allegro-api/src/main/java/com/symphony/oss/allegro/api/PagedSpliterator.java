@@ -0,0 +1,139 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A Spliterator over the items of a paginated scan, which fetches each page only when the previous one
+ * has been exhausted.
+ * 
+ * Because nothing is fetched ahead of the reader, a short circuiting operation on a stream over this
+ * Spliterator stops the scan. The base class cannot be split.
+ *
+ * @param <P> The type of a page.
+ * @param <T> The type of an item.
+ */
+class PagedSpliterator<P, T> implements Spliterator<T>
+{
+  private final Function<P, List<? extends T>> data_;
+
+  private Supplier<PageReadAhead<P>>           opener_;
+  private PageReadAhead<P>                     pages_;
+  private Iterator<? extends T>                items_    = Collections.emptyIterator();
+  private boolean                              exhausted_;
+  private long                                 estimate_ = Long.MAX_VALUE;
+  
+  /**
+   * Constructor.
+   * 
+   * @param opener  A supplier of the reader for the pages of the scan, called when the first item is required.
+   * @param data    A function which returns the items in a page.
+   */
+  PagedSpliterator(Supplier<PageReadAhead<P>> opener, Function<P, List<? extends T>> data)
+  {
+    opener_ = opener;
+    data_   = data;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super T> action)
+  {
+    while(!items_.hasNext())
+    {
+      if(exhausted_)
+        return false;
+      
+      if(pages_ == null)
+        pages_ = opener_.get();
+      
+      P page = pages_.next();
+      
+      if(page == null)
+      {
+        exhausted_ = true;
+        return false;
+      }
+      
+      List<? extends T> data = data_.apply(page);
+      
+      items_ = data == null ? Collections.emptyIterator() : data.iterator();
+    }
+    
+    action.accept(items_.next());
+    
+    return true;
+  }
+
+  @Override
+  public Spliterator<T> trySplit()
+  {
+    return null;
+  }
+
+  /**
+   * 
+   * @return true if the scan has begun, after which the Spliterator cannot be split.
+   */
+  protected boolean isStarted()
+  {
+    return pages_ != null;
+  }
+  
+  /**
+   * Replace the scan which this Spliterator will read, which is only possible before it has started.
+   * 
+   * @param opener A supplier of the reader for the pages of the scan.
+   */
+  protected void setOpener(Supplier<PageReadAhead<P>> opener)
+  {
+    if(isStarted())
+      throw new IllegalStateException("The scan has already started");
+    
+    opener_ = opener;
+  }
+  
+  /**
+   * Set the estimated size of this Spliterator, when it has been split.
+   * 
+   * @param estimate The estimated number of items.
+   */
+  protected void setEstimate(long estimate)
+  {
+    estimate_ = estimate;
+  }
+
+  @Override
+  public long estimateSize()
+  {
+    return exhausted_ ? 0 : estimate_;
+  }
+
+  @Override
+  public int characteristics()
+  {
+    return ORDERED | NONNULL;
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.collect.ImmutableList;
+import com.symphony.oss.allegro.api.request.PartitionQuery;
+
+/**
+ * The progress of a segmented partition scan.
+ * 
+ * Each segment is scanned in sort key order by a single cursor chain, so the objects of one segment are
+ * passed to the consumers in order, but the objects of different segments are interleaved.
+ *
+ */
+public class PartitionScanProgress
+{
+  private final ImmutableList<PartitionQuery>  segments_;
+  private final IPartitionScanProgressListener listener_;
+  private final AtomicLongArray                segmentItemCounts_;
+  private final AtomicIntegerArray             segmentComplete_;
+  private final AtomicLong                     itemCount_         = new AtomicLong();
+  private final AtomicInteger                  completedSegments_ = new AtomicInteger();
+  
+  PartitionScanProgress(List<PartitionQuery> segments, IPartitionScanProgressListener listener)
+  {
+    segments_          = ImmutableList.copyOf(segments);
+    listener_          = listener;
+    segmentItemCounts_ = new AtomicLongArray(segments_.size());
+    segmentComplete_   = new AtomicIntegerArray(segments_.size());
+  }
+  
+  void consumed(int segment, int itemCount)
+  {
+    segmentItemCounts_.addAndGet(segment, itemCount);
+    itemCount_.addAndGet(itemCount);
+    
+    if(listener_ != null)
+      listener_.progress(this, segment);
+  }
+  
+  void completed(int segment)
+  {
+    if(segmentComplete_.compareAndSet(segment, 0, 1))
+    {
+      completedSegments_.incrementAndGet();
+      
+      if(listener_ != null)
+        listener_.progress(this, segment);
+    }
+  }
+
+  /**
+   * 
+   * @return The number of segments.
+   */
+  public int getSegmentCount()
+  {
+    return segments_.size();
+  }
+
+  /**
+   * 
+   * @param segment The index of a segment.
+   * 
+   * @return The query which scans the given segment, which gives its sort key range.
+   */
+  public PartitionQuery getSegmentQuery(int segment)
+  {
+    return segments_.get(segment);
+  }
+
+  /**
+   * 
+   * @param segment The index of a segment.
+   * 
+   * @return The number of objects from the given segment which have been passed to the consumers.
+   */
+  public long getSegmentItemCount(int segment)
+  {
+    return segmentItemCounts_.get(segment);
+  }
+
+  /**
+   * 
+   * @param segment The index of a segment.
+   * 
+   * @return true if the scan of the given segment has finished.
+   */
+  public boolean isSegmentComplete(int segment)
+  {
+    return segmentComplete_.get(segment) != 0;
+  }
+
+  /**
+   * 
+   * @return The number of objects from all segments which have been passed to the consumers.
+   */
+  public long getItemCount()
+  {
+    return itemCount_.get();
+  }
+
+  /**
+   * 
+   * @return The number of segments whose scan has finished.
+   */
+  public int getCompletedSegmentCount()
+  {
+    return completedSegments_.get();
+  }
+
+  /**
+   * 
+   * @return true if the scan of every segment has finished.
+   */
+  public boolean isComplete()
+  {
+    return completedSegments_.get() == segments_.size();
+  }
+  
+  @Override
+  public String toString()
+  {
+    return "PartitionScanProgress " + getCompletedSegmentCount() + "/" + getSegmentCount() + " segments complete, " +
+        getItemCount() + " objects";
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.symphony.oss.allegro.api.request.PartitionQuery;
+import com.symphony.oss.commons.hash.Hash;
+
+/**
+ * Splits a partition query into segments which cover consecutive ranges of sort keys.
+ * 
+ * Each split point is the greatest sort key of its segment, so for split points s1 and s2 the segments
+ * are <code>[min, s1]</code>, <code>(s1, s2]</code> and <code>(s2, max]</code>. Because the sort key range
+ * of a query is inclusive at both ends, the exclusive lower bound of a segment is expressed as the smallest
+ * string which is greater than the previous split point, which is that split point followed by a NUL.
+ * 
+ * When no split points are given they are interpolated between the first and last sort keys of the
+ * partition, which assumes that sort keys are evenly distributed between those bounds.
+ *
+ */
+class PartitionScanSegmenter
+{
+  private static final int MAX_INTERPOLATED_DIGITS = 8;
+  
+  private PartitionScanSegmenter()
+  {
+  }
+  
+  /**
+   * Create a query for each segment of the given query.
+   * 
+   * @param query         A query.
+   * @param partitionHash The hash of the partition which the query reads.
+   * @param splitPoints   The greatest sort key of each segment except the last, in ascending order.
+   * 
+   * @return A query for each segment, in ascending order of sort key.
+   */
+  static List<PartitionQuery> segment(PartitionQuery query, Hash partitionHash, List<String> splitPoints)
+  {
+    List<PartitionQuery> segments = new ArrayList<>(splitPoints.size() + 1);
+    String               min      = query.getSortKeyMin();
+    
+    for(String splitPoint : splitPoints)
+    {
+      if(query.getSortKeyMin() != null && splitPoint.compareTo(query.getSortKeyMin()) < 0)
+        continue;
+      
+      if(query.getSortKeyMax() != null && splitPoint.compareTo(query.getSortKeyMax()) >= 0)
+        break;
+      
+      segments.add(createSegment(query, partitionHash, min, splitPoint));
+      min = successor(splitPoint);
+    }
+    
+    segments.add(createSegment(query, partitionHash, min, query.getSortKeyMax()));
+    
+    return segments;
+  }
+
+  private static PartitionQuery createSegment(PartitionQuery query, Hash partitionHash, String min, String max)
+  {
+    return new PartitionQuery.Builder()
+        .withHash(partitionHash)
+        .withScanForwards(query.getScanForwards())
+        .withSortKeyMinimum(min)
+        .withSortKeyMaximum(max)
+        .withPageLimit(query.getPageLimit())
+        .build();
+  }
+  
+  /**
+   * 
+   * @param sortKey A sort key.
+   * 
+   * @return The smallest string which is greater than the given sort key.
+   */
+  static String successor(String sortKey)
+  {
+    return sortKey + '\u0000';
+  }
+  
+  /**
+   * Interpolate split points which divide the sort keys between the given bounds into the given number
+   * of segments.
+   * 
+   * The characters which follow the common prefix of the two bounds are treated as the digits of a mixed
+   * radix number. The range of each digit is that of the class (decimal digit, lower case or upper case letter)
+   * of the characters which appear at that position in either bound, or just those characters if they are
+   * of no class. Keys such as timestamps or sequence numbers are therefore divided evenly, separators stay
+   * fixed, and the split points contain only characters which might appear in a key. Fewer split points
+   * are returned if the bounds are too close together to be divided into the required number of segments.
+   * 
+   * @param low       The lowest sort key.
+   * @param high      The highest sort key.
+   * @param segments  The required number of segments.
+   * 
+   * @return Split points in ascending order, each of which is greater than or equal to low and less than high.
+   */
+  static List<String> interpolate(String low, String high, int segments)
+  {
+    List<String> splitPoints = new ArrayList<>();
+    
+    if(segments < 2 || low.compareTo(high) >= 0)
+      return splitPoints;
+    
+    int prefixLength = 0;
+    
+    while(prefixLength < low.length() && prefixLength < high.length() && low.charAt(prefixLength) == high.charAt(prefixLength))
+      prefixLength++;
+    
+    String prefix   = low.substring(0, prefixLength);
+    String lowTail  = low.substring(prefixLength);
+    String highTail = high.substring(prefixLength);
+    int    length   = Math.min(MAX_INTERPOLATED_DIGITS, Math.max(lowTail.length(), highTail.length()));
+    char[] minChars = new char[length];
+    long[] bases    = new long[length];
+    long   range    = 1;
+    int    digits   = 0;
+    
+    while(digits < length)
+    {
+      char minChar = Character.MAX_VALUE;
+      char maxChar = Character.MIN_VALUE;
+      
+      for(String tail : new String[] { lowTail, highTail })
+      {
+        if(digits < tail.length())
+        {
+          char c = tail.charAt(digits);
+          
+          minChar = (char)Math.min(minChar, classMin(c));
+          maxChar = (char)Math.max(maxChar, classMax(c));
+        }
+      }
+      
+      // Digit 0 represents the end of the string, so that a shorter key sorts before its extensions.
+      long base = maxChar - minChar + 2;
+      
+      if(range > Long.MAX_VALUE / 4 / base)
+        break;
+      
+      minChars[digits] = minChar;
+      bases[digits]    = base;
+      range           *= base;
+      digits++;
+    }
+    
+    long   from = toNumber(lowTail, minChars, bases, digits);
+    long   to   = toNumber(highTail, minChars, bases, digits);
+    String last = null;
+    
+    for(int i=1 ; i<segments ; i++)
+    {
+      String splitPoint = prefix + toString(from + (to - from) * i / segments, minChars, bases, digits);
+      
+      if(splitPoint.compareTo(low) >= 0 && splitPoint.compareTo(high) < 0 && (last == null || splitPoint.compareTo(last) > 0))
+      {
+        splitPoints.add(splitPoint);
+        last = splitPoint;
+      }
+    }
+    
+    return splitPoints;
+  }
+
+  private static char classMin(char c)
+  {
+    if(c >= '0' && c <= '9')
+      return '0';
+    
+    if(c >= 'a' && c <= 'z')
+      return 'a';
+    
+    if(c >= 'A' && c <= 'Z')
+      return 'A';
+    
+    return c;
+  }
+
+  private static char classMax(char c)
+  {
+    if(c >= '0' && c <= '9')
+      return '9';
+    
+    if(c >= 'a' && c <= 'z')
+      return 'z';
+    
+    if(c >= 'A' && c <= 'Z')
+      return 'Z';
+    
+    return c;
+  }
+
+  private static long toNumber(String s, char[] minChars, long[] bases, int digits)
+  {
+    long value = 0;
+    
+    for(int i=0 ; i<digits ; i++)
+      value = value * bases[i] + (i < s.length() ? s.charAt(i) - minChars[i] + 1 : 0);
+    
+    return value;
+  }
+
+  private static String toString(long value, char[] minChars, long[] bases, int digits)
+  {
+    char[] chars  = new char[digits];
+    int    length = digits;
+    
+    for(int i=digits - 1 ; i>=0 ; i--)
+    {
+      int digit = (int)(value % bases[i]);
+      
+      // A zero digit within the string cannot be represented, the smallest character is the nearest value above it.
+      chars[i] = (char)(minChars[i] + Math.max(digit, 1) - 1);
+      value /= bases[i];
+      
+      if(digit == 0 && length == i + 1)
+        length = i;
+    }
+    
+    return new String(chars, 0, length);
+  }
+}
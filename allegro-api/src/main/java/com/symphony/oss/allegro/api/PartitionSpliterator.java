@@ -0,0 +1,162 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+
+import javax.annotation.Nullable;
+
+import com.symphony.oss.allegro.api.request.PartitionQuery;
+import com.symphony.oss.commons.hash.Hash;
+import com.symphony.oss.models.object.canon.IPageOfStoredApplicationObject;
+import com.symphony.oss.models.object.canon.facade.IStoredApplicationObject;
+
+/**
+ * A Spliterator over the objects in a partition which can be split into sort key ranges.
+ * 
+ * On the first split the first and last sort keys in the range of the query are fetched, after which
+ * each split divides the range of sort keys between those bounds in two, so that the halves can be
+ * scanned concurrently by a parallel stream. Each half is still fetched lazily, page by page.
+ * 
+ * Queries with a sort key prefix, an after cursor or a maximum number of items cannot be split, nor can
+ * a Spliterator whose scan has started.
+ *
+ */
+class PartitionSpliterator extends PagedSpliterator<IPageOfStoredApplicationObject, IStoredApplicationObject>
+{
+  private final IPartitionScanner scanner_;
+  private final Hash              partitionHash_;
+
+  private PartitionQuery          query_;
+  private boolean                 boundsFetched_;
+  private String                  low_;
+  private String                  high_;
+  
+  /**
+   * The operations used to scan a partition.
+   */
+  interface IPartitionScanner
+  {
+    /**
+     * 
+     * @param query         A query.
+     * @param partitionHash The hash of the partition.
+     * 
+     * @return A reader which fetches each page of the given query only when it is required.
+     */
+    PageReadAhead<IPageOfStoredApplicationObject> newPartitionPageReader(PartitionQuery query, Hash partitionHash);
+    
+    /**
+     * 
+     * @param query         A query.
+     * @param partitionHash The hash of the partition.
+     * @param first         true for the first sort key in the range of the query, false for the last.
+     * 
+     * @return The first or last sort key in the range of the query, or null if there are no objects in the range.
+     */
+    @Nullable String fetchBoundarySortKey(PartitionQuery query, Hash partitionHash, boolean first);
+  }
+  
+  PartitionSpliterator(AllegroBaseApi<?> allegroApi, PartitionQuery query)
+  {
+    this(new IPartitionScanner()
+    {
+      @Override
+      public PageReadAhead<IPageOfStoredApplicationObject> newPartitionPageReader(PartitionQuery query, Hash partitionHash)
+      {
+        return allegroApi.newPartitionPageReader(query, partitionHash);
+      }
+
+      @Override
+      public String fetchBoundarySortKey(PartitionQuery query, Hash partitionHash, boolean first)
+      {
+        return allegroApi.fetchBoundarySortKey(query, partitionHash, first);
+      }
+    }, query, query.getHash(allegroApi.getUserId()));
+  }
+  
+  PartitionSpliterator(IPartitionScanner scanner, PartitionQuery query, Hash partitionHash)
+  {
+    super(() -> scanner.newPartitionPageReader(query, partitionHash), (page) -> page.getData());
+    
+    scanner_       = scanner;
+    partitionHash_ = partitionHash;
+    query_         = query;
+  }
+
+  @Override
+  public Spliterator<IStoredApplicationObject> trySplit()
+  {
+    if(isStarted() || query_.getSortKeyPrefix() != null || query_.getAfter() != null || query_.getMaxItems() != null)
+      return null;
+    
+    if(!boundsFetched_)
+    {
+      low_           = scanner_.fetchBoundarySortKey(query_, partitionHash_, true);
+      high_          = scanner_.fetchBoundarySortKey(query_, partitionHash_, false);
+      boundsFetched_ = true;
+    }
+    
+    if(low_ == null || high_ == null)
+      return null;
+    
+    List<String> splitPoints = PartitionScanSegmenter.interpolate(low_, high_, 2);
+    
+    if(splitPoints.isEmpty())
+      return null;
+    
+    String               splitPoint = splitPoints.get(0);
+    List<PartitionQuery> segments   = PartitionScanSegmenter.segment(query_, partitionHash_, Collections.singletonList(splitPoint));
+    
+    if(segments.size() != 2)
+      return null;
+    
+    PartitionSpliterator lower = new PartitionSpliterator(scanner_, segments.get(0), partitionHash_);
+    PartitionSpliterator upper = new PartitionSpliterator(scanner_, segments.get(1), partitionHash_);
+    
+    lower.setBounds(low_, splitPoint);
+    upper.setBounds(PartitionScanSegmenter.successor(splitPoint), high_);
+    
+    // The prefix of an ordered Spliterator must be returned, which is the upper range for a reverse scan.
+    PartitionSpliterator prefix = Boolean.FALSE.equals(query_.getScanForwards()) ? upper : lower;
+    PartitionSpliterator suffix = prefix == lower ? upper : lower;
+    
+    query_         = suffix.query_;
+    low_           = suffix.low_;
+    high_          = suffix.high_;
+    setOpener(() -> scanner_.newPartitionPageReader(suffix.query_, partitionHash_));
+    
+    // The size is unknown, halving the estimate on each split bounds the number of splits made by a parallel stream.
+    long estimate = Math.max(1, estimateSize() / 2);
+    
+    setEstimate(estimate);
+    prefix.setEstimate(estimate);
+    
+    return prefix;
+  }
+  
+  private void setBounds(String low, String high)
+  {
+    low_           = low;
+    high_          = high;
+    boundsFetched_ = true;
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import javax.annotation.Nullable;
+
+/**
+ * Polls the end of a partition for objects with sort keys greater than the last one read, until stopped.
+ * 
+ * The poll interval starts at the minimum and doubles after each poll which finds nothing, up to the
+ * maximum, so an idle partition is polled less often. It drops back to the minimum as soon as a poll
+ * finds new objects.
+ *
+ */
+class PartitionTailer
+{
+  /**
+   * Reads the objects in a partition from a given sort key.
+   */
+  interface IPoller
+  {
+    /**
+     * Read the objects with sort keys greater than or equal to the given one.
+     * 
+     * @param sortKeyMin The minimum sort key, may be null.
+     * 
+     * @return The sort key of the last object read, or null if there were none.
+     */
+    @Nullable String poll(@Nullable String sortKeyMin);
+  }
+  
+  private final long       minPollMillis_;
+  private final long       maxPollMillis_;
+  private final Object     lock_      = new Object();
+  private final AtomicLong pollCount_ = new AtomicLong();
+  
+  private volatile boolean stopped_;
+
+  /**
+   * Constructor.
+   * 
+   * @param minPollMillis The interval between polls while objects are being added.
+   * @param maxPollMillis The longest interval between polls while the partition is idle.
+   */
+  PartitionTailer(long minPollMillis, long maxPollMillis)
+  {
+    minPollMillis_ = minPollMillis;
+    maxPollMillis_ = maxPollMillis;
+  }
+
+  /**
+   * Poll for objects after the given sort key until stopped or until there is no more demand.
+   * 
+   * @param sortKeyMin  The minimum sort key of the query, used until an object has been read.
+   * @param lastSortKey The sort key of the last object read by the initial scan, or null if there were none.
+   * @param poller      The poller.
+   * @param demand      Returns false once no more objects are required.
+   */
+  void tail(@Nullable String sortKeyMin, @Nullable String lastSortKey, IPoller poller, BooleanSupplier demand)
+  {
+    long interval = minPollMillis_;
+    
+    while(pause(interval) && demand.getAsBoolean())
+    {
+      String sortKey = poller.poll(lastSortKey == null ? sortKeyMin : PartitionScanSegmenter.successor(lastSortKey));
+      
+      pollCount_.incrementAndGet();
+      
+      if(sortKey == null)
+      {
+        interval = Math.min(interval * 2, maxPollMillis_);
+      }
+      else
+      {
+        lastSortKey = sortKey;
+        interval    = minPollMillis_;
+      }
+    }
+  }
+  
+  /**
+   * Wait for the given interval, or until stopped.
+   * 
+   * @param millis The interval.
+   * 
+   * @return true if polling should continue.
+   */
+  boolean pause(long millis)
+  {
+    long end = System.currentTimeMillis() + millis;
+    
+    synchronized(lock_)
+    {
+      try
+      {
+        long remaining;
+        
+        while(!stopped_ && (remaining = end - System.currentTimeMillis()) > 0)
+          lock_.wait(remaining);
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    
+    return !stopped_;
+  }
+  
+  /**
+   * Stop polling, waking the tailing thread if it is waiting for the next poll.
+   */
+  void stop()
+  {
+    stopped_ = true;
+    
+    synchronized(lock_)
+    {
+      lock_.notifyAll();
+    }
+  }
+  
+  /**
+   * 
+   * @return The number of times the partition has been polled.
+   */
+  long getPollCount()
+  {
+    return pollCount_.get();
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Reads the body of an HTTP response.
+ * 
+ * When the content length is known the body is read directly into an array of exactly that size, so the
+ * only other allocation is the decoded String. Otherwise the body is read through a growable buffer which
+ * is decoded in place.
+ *
+ */
+class ResponseBodyReader
+{
+  private static final int BUFFER_SIZE = 8192;
+
+  private ResponseBodyReader()
+  {
+  }
+
+  /**
+   * Read the given entity as a String, the content stream is closed on return.
+   * 
+   * @param entity An HTTP entity, may be null.
+   * 
+   * @return The entity content as a String, or an empty String if there is no entity.
+   * 
+   * @throws IOException If the content cannot be read.
+   */
+  static String read(HttpEntity entity) throws IOException
+  {
+    if(entity == null)
+      return "";
+    
+    Charset charset = null;
+    
+    try
+    {
+      ContentType contentType = ContentType.get(entity);
+      
+      if(contentType != null)
+        charset = contentType.getCharset();
+    }
+    catch(RuntimeException e)
+    {
+      // Unparseable content type, use the default.
+    }
+    
+    if(charset == null)
+      charset = StandardCharsets.UTF_8;
+    
+    long length = entity.getContentLength();
+    
+    try(InputStream in = entity.getContent())
+    {
+      if(in == null)
+        return "";
+      
+      if(length >= 0 && length < Integer.MAX_VALUE)
+      {
+        byte[] bytes = new byte[(int) length];
+        int    offset = 0;
+        int    read;
+        
+        while(offset < bytes.length && (read = in.read(bytes, offset, bytes.length - offset)) != -1)
+          offset += read;
+        
+        return new String(bytes, 0, offset, charset);
+      }
+      
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+      byte[]                buf    = new byte[BUFFER_SIZE];
+      int                   read;
+      
+      while((read = in.read(buf)) != -1)
+        buffer.write(buf, 0, read);
+      
+      return buffer.toString(charset.name());
+    }
+  }
+}
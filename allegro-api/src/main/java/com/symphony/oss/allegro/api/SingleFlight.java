@@ -0,0 +1,164 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical reads so that they share one request and one response.
+ * 
+ * The first caller for a key makes the request, any callers with an equal key which arrive
+ * while it is in flight wait for, and receive, the same result or exception. Nothing is
+ * retained once the request completes, so this is not a cache.
+ *
+ * @param <K> The type of the key which identifies identical requests.
+ */
+class SingleFlight<K>
+{
+  private final Map<K, CompletableFuture<Object>> inFlight_  = new ConcurrentHashMap<>();
+  private final AtomicLong                        calls_     = new AtomicLong();
+  private final AtomicLong                        coalesced_ = new AtomicLong();
+
+  /**
+   * Return the result of the given request, sharing the result of an identical request if one is in flight.
+   * 
+   * @param <V>     The type of the result.
+   * @param key     The key which identifies the request, which must include all of its parameters.
+   * @param request The request.
+   * 
+   * @return The result of the request.
+   */
+  @SuppressWarnings("unchecked")
+  <V> V execute(K key, Supplier<V> request)
+  {
+    calls_.incrementAndGet();
+    
+    CompletableFuture<Object> future   = new CompletableFuture<>();
+    CompletableFuture<Object> existing = inFlight_.putIfAbsent(key, future);
+    
+    if(existing != null)
+    {
+      coalesced_.incrementAndGet();
+      
+      return (V)await(existing);
+    }
+    
+    try
+    {
+      V result = request.get();
+      
+      future.complete(result);
+      
+      return result;
+    }
+    catch(RuntimeException | Error e)
+    {
+      future.completeExceptionally(e);
+      
+      throw e;
+    }
+    finally
+    {
+      inFlight_.remove(key, future);
+    }
+  }
+  
+  private Object await(CompletableFuture<Object> future)
+  {
+    boolean interrupted = false;
+    
+    try
+    {
+      while(true)
+      {
+        try
+        {
+          return future.get();
+        }
+        catch(InterruptedException e)
+        {
+          // The request is being made by another thread, which will complete it.
+          interrupted = true;
+        }
+        catch(ExecutionException e)
+        {
+          if(e.getCause() instanceof RuntimeException)
+            throw (RuntimeException)e.getCause();
+          
+          if(e.getCause() instanceof Error)
+            throw (Error)e.getCause();
+          
+          throw new IllegalStateException(e.getCause());
+        }
+      }
+    }
+    finally
+    {
+      if(interrupted)
+        Thread.currentThread().interrupt();
+    }
+  }
+  
+  /**
+   * Ensure that subsequent calls make new requests rather than joining those in flight.
+   * 
+   * Called after a write, so that a read which follows it cannot receive the response to a request
+   * made before it. Callers already waiting still receive the result of the request they joined.
+   */
+  void invalidate()
+  {
+    inFlight_.clear();
+  }
+  
+  /**
+   * Ensure that subsequent calls with the given key make a new request rather than joining one in flight.
+   * 
+   * Called after a write which only affects the given key. Callers already waiting still receive
+   * the result of the request they joined.
+   * 
+   * @param key The key which identifies the request.
+   */
+  void invalidate(K key)
+  {
+    inFlight_.remove(key);
+  }
+  
+  /**
+   * 
+   * @return The total number of calls to execute.
+   */
+  long getCallCount()
+  {
+    return calls_.get();
+  }
+  
+  /**
+   * 
+   * @return The number of calls to execute which shared the result of a request already in flight.
+   */
+  long getCoalescedCount()
+  {
+    return coalesced_.get();
+  }
+}
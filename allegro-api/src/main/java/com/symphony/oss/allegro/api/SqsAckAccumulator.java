@@ -0,0 +1,356 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.symphony.oss.allegro.api.AllegroSqsRequestBuilder.BatchEntryFailure;
+import com.symphony.oss.fugue.aws.sqs.SqsAction;
+
+/**
+ * Accumulator of acknowledgements (deletes) and visibility extensions for a single SQS queue.
+ * 
+ * Entries are sent as DeleteMessageBatch and ChangeMessageVisibilityBatch requests, a batch is flushed
+ * as soon as it holds the maximum number of entries SQS allows, or when the oldest entry has waited for the
+ * maximum delay, or when <code>flush()</code> is called. If no scheduler is provided then only the first and
+ * last of these apply.
+ * 
+ * Entries which fail with a transient error are resent, up to MAX_ATTEMPTS times in all. Entries which fail
+ * because of the request, such as an expired receipt handle, are logged and dropped.
+ *
+ */
+class SqsAckAccumulator implements AutoCloseable
+{
+  /** The maximum number of entries in an SQS batch request. */
+  static final int                       MAX_BATCH_SIZE = 10;
+  /** The number of times an entry which fails with a transient error is sent before giving up. */
+  static final int                       MAX_ATTEMPTS   = 3;
+
+  private static final Logger            log_           = LoggerFactory.getLogger(SqsAckAccumulator.class);
+
+  private final AllegroSqsFeedsContainer feeds_;
+  private final CloseableHttpClient      httpClient_;
+  private final String                   feedHash_;
+  private final ScheduledExecutorService scheduler_;
+  private final long                     maxDelayMillis_;
+  private final List<String>             deletes_       = new ArrayList<>();
+  private final List<Extension>          extensions_    = new ArrayList<>();
+  private final AtomicLong               entryCount_    = new AtomicLong();
+  private final AtomicLong               requestCount_  = new AtomicLong();
+  private final AtomicLong               failedCount_   = new AtomicLong();
+
+  private ScheduledFuture<?>             scheduledFlush_;
+
+  static class Extension
+  {
+    final String receiptHandle_;
+    final int    visibilityTimeout_;
+
+    Extension(String receiptHandle, int visibilityTimeout)
+    {
+      receiptHandle_     = receiptHandle;
+      visibilityTimeout_ = visibilityTimeout;
+    }
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param feeds           The feeds container, which provides the endpoint.
+   * @param httpClient      The client used to execute requests.
+   * @param feedHash        The hash of the feed (queue).
+   * @param scheduler       A scheduler used to flush partial batches, or null.
+   * @param maxDelayMillis  The maximum time an entry waits before a partial batch is flushed.
+   */
+  SqsAckAccumulator(AllegroSqsFeedsContainer feeds, CloseableHttpClient httpClient, String feedHash,
+      ScheduledExecutorService scheduler, long maxDelayMillis)
+  {
+    feeds_          = feeds;
+    httpClient_     = httpClient;
+    feedHash_       = feedHash;
+    scheduler_      = scheduler;
+    maxDelayMillis_ = maxDelayMillis;
+  }
+
+  /**
+   * Delete (acknowledge) the given message.
+   * 
+   * @param receiptHandle The receipt handle of the message.
+   */
+  void delete(String receiptHandle)
+  {
+    List<String> batch = null;
+    
+    synchronized(this)
+    {
+      // There is no point in extending a message which is about to be deleted.
+      Iterator<Extension> it = extensions_.iterator();
+      
+      while(it.hasNext())
+      {
+        if(it.next().receiptHandle_.equals(receiptHandle))
+          it.remove();
+      }
+      
+      deletes_.add(receiptHandle);
+      
+      if(deletes_.size() >= MAX_BATCH_SIZE)
+      {
+        batch = new ArrayList<>(deletes_);
+        deletes_.clear();
+      }
+      else
+      {
+        scheduleFlush();
+      }
+    }
+    
+    if(batch != null)
+      send(batch, null);
+  }
+
+  /**
+   * Change the visibility timeout of the given message.
+   * 
+   * @param receiptHandle     The receipt handle of the message.
+   * @param visibilityTimeout The new visibility timeout in seconds.
+   */
+  void extend(String receiptHandle, int visibilityTimeout)
+  {
+    List<Extension> batch = null;
+    
+    synchronized(this)
+    {
+      extensions_.add(new Extension(receiptHandle, visibilityTimeout));
+      
+      if(extensions_.size() >= MAX_BATCH_SIZE)
+      {
+        batch = new ArrayList<>(extensions_);
+        extensions_.clear();
+      }
+      else
+      {
+        scheduleFlush();
+      }
+    }
+    
+    if(batch != null)
+      send(null, batch);
+  }
+
+  /*
+   * Called with the monitor held.
+   */
+  private void scheduleFlush()
+  {
+    if(scheduler_ != null && scheduledFlush_ == null)
+    {
+      scheduledFlush_ = scheduler_.schedule(() -> 
+      {
+        try
+        {
+          flush();
+        }
+        catch(RuntimeException e)
+        {
+          log_.error("Failed to flush acknowledgements for " + feedHash_, e);
+        }
+      }, maxDelayMillis_, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Send all pending entries.
+   */
+  void flush()
+  {
+    List<String>    deletes;
+    List<Extension> extensions;
+    
+    synchronized(this)
+    {
+      if(scheduledFlush_ != null)
+      {
+        scheduledFlush_.cancel(false);
+        scheduledFlush_ = null;
+      }
+      
+      deletes    = new ArrayList<>(deletes_);
+      extensions = new ArrayList<>(extensions_);
+      
+      deletes_.clear();
+      extensions_.clear();
+    }
+    
+    send(deletes, extensions);
+  }
+
+  @Override
+  public void close()
+  {
+    flush();
+  }
+
+  /**
+   * 
+   * @return The number of entries sent.
+   */
+  long getEntryCount()
+  {
+    return entryCount_.get();
+  }
+
+  /**
+   * 
+   * @return The number of batch requests sent.
+   */
+  long getRequestCount()
+  {
+    return requestCount_.get();
+  }
+
+  /**
+   * 
+   * @return The number of entries which could not be sent, the messages concerned will be redelivered.
+   */
+  long getFailedCount()
+  {
+    return failedCount_.get();
+  }
+
+  private void send(List<String> deletes, List<Extension> extensions)
+  {
+    if(deletes != null)
+      sendWithRetry(deletes, this::sendDeletes, "delete");
+    
+    if(extensions != null)
+      sendWithRetry(extensions, this::sendExtensions, "extend");
+  }
+  
+  /**
+   * Send the given entries, resending any which fail with a transient error up to MAX_ATTEMPTS times in all.
+   */
+  private <T> void sendWithRetry(List<T> entries, Function<List<T>, List<T>> sender, String action)
+  {
+    for(int attempt=1 ; !entries.isEmpty() ; attempt++)
+    {
+      List<T> failed = sender.apply(entries);
+      
+      requestCount_.incrementAndGet();
+      entryCount_.addAndGet(entries.size());
+      
+      if(!failed.isEmpty() && attempt >= MAX_ATTEMPTS)
+      {
+        // The messages concerned will be redelivered when their visibility timeout expires.
+        log_.warn("Failed to " + action + " " + failed.size() + " messages on " + feedHash_ + " after " + attempt + " attempts");
+        failedCount_.addAndGet(failed.size());
+        return;
+      }
+      
+      entries = failed;
+    }
+  }
+  
+  /*
+   * Returns the receipt handles of the failures which may succeed if retried, and logs the others.
+   */
+  private List<String> retryable(List<BatchEntryFailure> failures, String action)
+  {
+    List<String> retry = new ArrayList<>();
+    
+    for(BatchEntryFailure failure : failures)
+    {
+      if(failure.isSenderFault())
+      {
+        log_.warn("Failed to " + action + " message on " + feedHash_ + ": " + failure.getCode());
+        failedCount_.incrementAndGet();
+      }
+      else
+      {
+        retry.add(failure.getReceiptHandle());
+      }
+    }
+    
+    return retry;
+  }
+
+  /**
+   * Send a DeleteMessageBatch request.
+   * 
+   * @param receiptHandles The receipt handles of the messages to delete, at most MAX_BATCH_SIZE.
+   * 
+   * @return The receipt handles of the entries which failed with a transient error and should be retried.
+   */
+  List<String> sendDeletes(List<String> receiptHandles)
+  {
+    feeds_.refresh();
+    
+    AllegroSqsRequestBuilder builder = new AllegroSqsRequestBuilder(feeds_.getAllegro(), feeds_.getEndpoint())
+        .withFeedHash(feedHash_)
+        .withBatchAction(SqsAction.DELETE);
+    
+    for(String receiptHandle : receiptHandles)
+      builder.withBatchEntry(receiptHandle);
+    
+    return retryable(builder.executeBatch(httpClient_), "delete");
+  }
+
+  /**
+   * Send a ChangeMessageVisibilityBatch request.
+   * 
+   * @param extensions The visibility changes, at most MAX_BATCH_SIZE.
+   * 
+   * @return The entries which failed with a transient error and should be retried.
+   */
+  List<Extension> sendExtensions(List<Extension> extensions)
+  {
+    feeds_.refresh();
+    
+    AllegroSqsRequestBuilder builder = new AllegroSqsRequestBuilder(feeds_.getAllegro(), feeds_.getEndpoint())
+        .withFeedHash(feedHash_)
+        .withBatchAction(SqsAction.EXTEND);
+    
+    for(Extension extension : extensions)
+      builder.withBatchEntry(extension.receiptHandle_, extension.visibilityTimeout_);
+    
+    Set<String>     retry  = new HashSet<>(retryable(builder.executeBatch(httpClient_), "extend"));
+    List<Extension> result = new ArrayList<>();
+    
+    for(Extension extension : extensions)
+    {
+      if(retry.contains(extension.receiptHandle_))
+        result.add(extension);
+    }
+    
+    return result;
+  }
+}
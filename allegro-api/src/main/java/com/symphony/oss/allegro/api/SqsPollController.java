@@ -0,0 +1,101 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+/**
+ * Adaptive pull strategy for a single SQS queue.
+ * 
+ * Decides how many receive requests should be made concurrently against the queue and how many
+ * messages each should ask for. The number of pollers grows by one each time every receive in a round
+ * came back full and the handlers have capacity for another full batch, it halves when a round comes
+ * back partly empty, and drops to the minimum (normally a single long-poller) when a round returns
+ * nothing at all.
+ * 
+ * The batch size is limited to the available handler capacity so that messages are not taken off the
+ * queue (and made invisible to other consumers) while there is nothing to process them.
+ *
+ */
+class SqsPollController
+{
+  private final int minPollers_;
+  private final int maxPollers_;
+  private final int maxBatchSize_;
+
+  private int       pollers_;
+
+  /**
+   * Constructor.
+   * 
+   * @param minPollers    The minimum number of concurrent receive requests.
+   * @param maxPollers    The maximum number of concurrent receive requests.
+   * @param maxBatchSize  The maximum number of messages to request in a single receive.
+   */
+  SqsPollController(int minPollers, int maxPollers, int maxBatchSize)
+  {
+    minPollers_   = minPollers;
+    maxPollers_   = Math.max(minPollers, maxPollers);
+    maxBatchSize_ = maxBatchSize;
+    pollers_      = minPollers;
+  }
+
+  /**
+   * 
+   * @return The number of receive requests to make concurrently in the next round.
+   */
+  synchronized int getPollerCount()
+  {
+    return pollers_;
+  }
+
+  /**
+   * 
+   * @param pollers         The number of receives which will be made in the next round.
+   * @param handlerCapacity The number of additional messages the handlers can accept now.
+   * 
+   * @return The number of messages each receive in the next round should request.
+   */
+  int getBatchSize(int pollers, int handlerCapacity)
+  {
+    return Math.max(1, Math.min(maxBatchSize_, handlerCapacity / pollers));
+  }
+
+  /**
+   * Record the outcome of a round of receives.
+   * 
+   * @param pollers         The number of receives made in the round.
+   * @param batchSize       The number of messages each receive requested.
+   * @param received        The total number of messages received.
+   * @param handlerCapacity The number of additional messages the handlers can accept after the round.
+   */
+  synchronized void update(int pollers, int batchSize, int received, int handlerCapacity)
+  {
+    if(received == 0)
+    {
+      pollers_ = minPollers_;
+    }
+    else if(received < pollers * batchSize)
+    {
+      pollers_ = Math.max(minPollers_, pollers_ / 2);
+    }
+    else if(batchSize == maxBatchSize_ && handlerCapacity >= (pollers_ + 1) * maxBatchSize_)
+    {
+      pollers_ = Math.min(maxPollers_, pollers_ + 1);
+    }
+  }
+}
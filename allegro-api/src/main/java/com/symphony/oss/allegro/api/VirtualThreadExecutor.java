@@ -0,0 +1,313 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An executor which runs each task on its own virtual thread, with the number of concurrent tasks
+ * capped by a semaphore rather than by a pool size.
+ * 
+ * If tasks are not queued then when the cap is reached the submitting thread waits for a permit, or
+ * runs the task itself if the policy is CallerRuns. If tasks are queued then each task is started
+ * immediately on a virtual thread which waits for a permit, parked virtual threads being cheap.
+ * 
+ * Virtual threads are created by reflection so that this class can be compiled for, and loaded on,
+ * Java 8. This is instead of a multi-release jar with a Java 21 variant of this class, which the build
+ * is not set up to produce. On a runtime without virtual threads each task runs on a new platform thread
+ * instead, callers should check <code>isVirtualThreadSupported()</code> before choosing this executor.
+ *
+ */
+class VirtualThreadExecutor extends AbstractExecutorService
+{
+  private static final Logger        log_                 = LoggerFactory.getLogger(VirtualThreadExecutor.class);
+  private static final Method        OF_VIRTUAL;
+  private static final Method        NAME;
+  private static final Method        FACTORY;
+
+  static
+  {
+    Method ofVirtual = null;
+    Method name      = null;
+    Method factory   = null;
+    
+    try
+    {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      name      = builderClass.getMethod("name", String.class, long.class);
+      factory   = builderClass.getMethod("factory");
+      
+      // On Java 19 and 20 this throws unless preview features are enabled.
+      ofVirtual.invoke(null);
+    }
+    catch (ReflectiveOperationException | RuntimeException e)
+    {
+      log_.debug("Virtual threads are not supported by this runtime", e);
+      
+      ofVirtual = null;
+    }
+    
+    OF_VIRTUAL = ofVirtual;
+    NAME       = name;
+    FACTORY    = factory;
+  }
+
+  private final ThreadFactory      threadFactory_;
+  private final Semaphore          permits_;
+  private final HandlerQueuePolicy policy_;
+  private final boolean            queueTasks_;
+  private final Set<Thread>        threads_             = ConcurrentHashMap.newKeySet();
+  private final AtomicLong         platformThreadCount_ = new AtomicLong();
+  private final Object             terminationLock_     = new Object();
+
+  private volatile boolean         shutdown_;
+
+  /**
+   * Constructor.
+   * 
+   * @param name            The name prefix for threads.
+   * @param maxConcurrency  The maximum number of tasks which may run concurrently.
+   * @param policy          The action to be taken when maxConcurrency tasks are running, if tasks are not queued.
+   * @param queueTasks      If true then submitted tasks wait for a permit on their own thread, rather than the submitting thread.
+   */
+  VirtualThreadExecutor(String name, int maxConcurrency, HandlerQueuePolicy policy, boolean queueTasks)
+  {
+    permits_       = new Semaphore(maxConcurrency);
+    policy_        = policy;
+    queueTasks_    = queueTasks;
+    threadFactory_ = createThreadFactory(name);
+  }
+
+  /**
+   * 
+   * @return true iff the runtime supports virtual threads.
+   */
+  static boolean isVirtualThreadSupported()
+  {
+    return OF_VIRTUAL != null;
+  }
+
+  private ThreadFactory createThreadFactory(String name)
+  {
+    if(OF_VIRTUAL != null)
+    {
+      try
+      {
+        return (ThreadFactory) FACTORY.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 0L));
+      }
+      catch (ReflectiveOperationException e)
+      {
+        log_.warn("Failed to create virtual thread factory, using platform threads", e);
+      }
+    }
+    
+    return (runnable) ->
+    {
+      Thread thread = new Thread(runnable, name + "-" + platformThreadCount_.incrementAndGet());
+      
+      thread.setDaemon(true);
+      
+      return thread;
+    };
+  }
+
+  /**
+   * 
+   * @return The number of tasks currently running.
+   */
+  int getRunningCount()
+  {
+    return threads_.size();
+  }
+
+  /**
+   * 
+   * @return The number of threads (submitting threads or queued tasks) waiting for a permit to start a task.
+   */
+  int getWaitingCount()
+  {
+    return permits_.getQueueLength();
+  }
+
+  @Override
+  public void execute(Runnable command)
+  {
+    if(shutdown_)
+      throw new RejectedExecutionException("Executor is shut down");
+    
+    if(queueTasks_)
+    {
+      start(() ->
+      {
+        try
+        {
+          permits_.acquire();
+        }
+        catch (InterruptedException e)
+        {
+          log_.warn("Interrupted waiting for a permit, task abandoned");
+          return false;
+        }
+        
+        return true;
+      }, command);
+      
+      return;
+    }
+    
+    if(!permits_.tryAcquire())
+    {
+      if(policy_ == HandlerQueuePolicy.CallerRuns)
+      {
+        command.run();
+        return;
+      }
+      
+      try
+      {
+        while(!permits_.tryAcquire(1, TimeUnit.SECONDS))
+        {
+          if(shutdown_)
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new RejectedExecutionException("Interrupted waiting for a permit", e);
+      }
+    }
+    
+    try
+    {
+      start(() -> true, command);
+    }
+    catch(RuntimeException | Error e)
+    {
+      permits_.release();
+      throw e;
+    }
+  }
+
+  private void start(BooleanSupplier acquire, Runnable command)
+  {
+    Thread thread = threadFactory_.newThread(() ->
+    {
+      boolean acquired = false;
+      
+      try
+      {
+        acquired = acquire.getAsBoolean();
+        
+        if(acquired)
+          command.run();
+      }
+      finally
+      {
+        threads_.remove(Thread.currentThread());
+        
+        if(acquired)
+          permits_.release();
+        
+        synchronized(terminationLock_)
+        {
+          terminationLock_.notifyAll();
+        }
+      }
+    });
+    
+    threads_.add(thread);
+    
+    try
+    {
+      thread.start();
+    }
+    catch(RuntimeException | Error e)
+    {
+      threads_.remove(thread);
+      throw e;
+    }
+  }
+
+  @Override
+  public void shutdown()
+  {
+    shutdown_ = true;
+  }
+
+  @Override
+  public List<Runnable> shutdownNow()
+  {
+    shutdown_ = true;
+    
+    for(Thread thread : threads_)
+      thread.interrupt();
+    
+    return Collections.emptyList();
+  }
+
+  @Override
+  public boolean isShutdown()
+  {
+    return shutdown_;
+  }
+
+  @Override
+  public boolean isTerminated()
+  {
+    return shutdown_ && threads_.isEmpty();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+  {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    
+    synchronized(terminationLock_)
+    {
+      while(!isTerminated())
+      {
+        long remaining = deadline - System.nanoTime();
+        
+        if(remaining <= 0)
+          return false;
+        
+        TimeUnit.NANOSECONDS.timedWait(terminationLock_, remaining);
+      }
+    }
+    
+    return true;
+  }
+}
@@ -0,0 +1,360 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.symphony.oss.commons.concurrent.NamedThreadFactory;
+
+/**
+ * Weighted fair scheduler for the handler stage.
+ * 
+ * Each lane (a feed) has a weight, and tasks are run in start time fair queuing order: a task
+ * submitted to a lane is tagged with a virtual start time which is the later of the current virtual
+ * time and the finish tag of the previous task in the same lane, and a finish tag 1/weight after that.
+ * Tasks are run in order of start tag. Busy lanes therefore share the handler threads in proportion
+ * to their weights, the delay seen by a task depends on the backlog of its own lane and its weight
+ * rather than on the backlog of other lanes, and any capacity not used by a lane is available to the others.
+ * 
+ * Tasks waiting to run, and running, are extended periodically, since they have already been handed over
+ * by the pull subscriber.
+ * 
+ * The number of tasks waiting to run is bounded. When the queue is full the submitting thread either waits
+ * for space or runs the task itself, according to the queue policy, so that the pull subscriber stops
+ * receiving further messages until the handlers catch up.
+ *
+ */
+class WeightedFairScheduler
+{
+  private static final Logger          log_        = LoggerFactory.getLogger(WeightedFairScheduler.class);
+
+  private final Map<String, Lane>      lanes_      = new HashMap<>();
+  private final Set<IScheduledTask>    tracked_    = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final List<Thread>           workers_    = new ArrayList<>();
+  private final ScheduledFuture<?>     extender_;
+  private final int                    capacity_;
+  private final HandlerQueuePolicy     policy_;
+
+  private double                       virtualTime_;
+  private int                          queued_;
+  private boolean                      stopping_;
+
+  /**
+   * A task run by the scheduler.
+   */
+  interface IScheduledTask extends Runnable
+  {
+    /**
+     * Extend the ack deadline of the message processed by this task.
+     */
+    void extend();
+  }
+
+  private static class Lane
+  {
+    final double                       cost_;
+    final ArrayDeque<Tagged>           tasks_ = new ArrayDeque<>();
+    double                             lastFinish_;
+
+    Lane(int weight)
+    {
+      cost_ = 1.0 / weight;
+    }
+  }
+
+  private static class Tagged
+  {
+    final IScheduledTask               task_;
+    final double                       start_;
+
+    Tagged(IScheduledTask task, double start)
+    {
+      task_  = task;
+      start_ = start;
+    }
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param weights               The weight of each lane, lanes not in this map have a weight of 1.
+   * @param threads               The number of threads on which tasks are run.
+   * @param scheduler             The scheduler used to extend tasks.
+   * @param extensionFrequencyMillis  The period with which tasks are extended.
+   * @param capacity              The maximum number of tasks waiting to run.
+   * @param policy                The action taken when a task is submitted and the queue is full.
+   */
+  WeightedFairScheduler(Map<String, Integer> weights, int threads, ScheduledExecutorService scheduler, long extensionFrequencyMillis,
+      int capacity, HandlerQueuePolicy policy)
+  {
+    capacity_ = capacity;
+    policy_   = policy;
+    
+    for(Map.Entry<String, Integer> entry : weights.entrySet())
+      lanes_.put(entry.getKey(), new Lane(entry.getValue()));
+    
+    NamedThreadFactory threadFactory = new NamedThreadFactory("Sqs-handler", true);
+    
+    for(int i=0 ; i<threads ; i++)
+    {
+      Thread worker = threadFactory.newThread(this::work);
+      
+      workers_.add(worker);
+      worker.start();
+    }
+    
+    extender_ = scheduler.scheduleWithFixedDelay(this::extend, extensionFrequencyMillis, extensionFrequencyMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Queue the given task to be run.
+   * 
+   * If the queue is full then this method blocks until there is space, or runs the task on the calling
+   * thread, according to the queue policy. Once the scheduler is stopping tasks are run on the calling thread.
+   * 
+   * @param lane  The lane (feed) to which the task belongs.
+   * @param task  The task.
+   */
+  void submit(String lane, IScheduledTask task)
+  {
+    if(!enqueue(lane, task))
+    {
+      try
+      {
+        task.run();
+      }
+      finally
+      {
+        synchronized(this)
+        {
+          tracked_.remove(task);
+        }
+      }
+    }
+  }
+  
+  private synchronized boolean enqueue(String lane, IScheduledTask task)
+  {
+    tracked_.add(task);
+    
+    while(queued_ >= capacity_ && !stopping_)
+    {
+      if(policy_ == HandlerQueuePolicy.CallerRuns)
+        return false;
+      
+      try
+      {
+        wait();
+      }
+      catch(InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        
+        return false;
+      }
+    }
+    
+    if(stopping_)
+      return false;
+    
+    Lane   l     = lanes_.computeIfAbsent(lane, (key) -> new Lane(1));
+    double start = Math.max(virtualTime_, l.lastFinish_);
+    
+    l.lastFinish_ = start + l.cost_;
+    l.tasks_.add(new Tagged(task, start));
+    queued_++;
+    
+    notifyAll();
+    
+    return true;
+  }
+
+  private synchronized IScheduledTask take() throws InterruptedException
+  {
+    while(queued_ == 0)
+    {
+      if(stopping_)
+        return null;
+      
+      wait();
+    }
+    
+    Tagged tagged = poll();
+    
+    virtualTime_ = Math.max(virtualTime_, tagged.start_);
+    
+    notifyAll();
+    
+    return tagged.task_;
+  }
+
+  /*
+   * Remove the queued task with the earliest start tag, the caller must hold the lock and there must be a queued task.
+   */
+  private Tagged poll()
+  {
+    Lane next = null;
+    
+    for(Lane lane : lanes_.values())
+    {
+      Tagged head = lane.tasks_.peek();
+      
+      if(head != null && (next == null || head.start_ < next.tasks_.peek().start_))
+        next = lane;
+    }
+    
+    queued_--;
+    
+    return next.tasks_.poll();
+  }
+
+  private void work()
+  {
+    try
+    {
+      IScheduledTask task;
+      
+      while((task = take()) != null)
+      {
+        try
+        {
+          task.run();
+        }
+        catch(Throwable e)
+        {
+          // Keep the worker alive, otherwise the handler pool shrinks with every failure.
+          log_.error("Handler task failed", e);
+        }
+        finally
+        {
+          synchronized(this)
+          {
+            tracked_.remove(task);
+          }
+        }
+      }
+    }
+    catch(InterruptedException e)
+    {
+      log_.warn("Handler thread interrupted", e);
+    }
+  }
+
+  private void extend()
+  {
+    List<IScheduledTask> tasks;
+    
+    synchronized(this)
+    {
+      tasks = new ArrayList<>(tracked_);
+    }
+    
+    for(IScheduledTask task : tasks)
+    {
+      try
+      {
+        task.extend();
+      }
+      catch(Throwable e)
+      {
+        // An exception escaping from here would cancel all further extensions.
+        log_.error("Failed to extend task", e);
+      }
+    }
+  }
+
+  /**
+   * 
+   * @return The number of tasks waiting to run.
+   */
+  synchronized int getQueueDepth()
+  {
+    return queued_;
+  }
+
+  /**
+   * Run all queued tasks and stop the worker threads.
+   * 
+   * Tasks which are still queued when the timeout expires are dropped without being run, and are no
+   * longer extended, so their messages will be redelivered once their ack deadlines pass.
+   * 
+   * @param timeoutMillis The maximum time to wait for the queue to drain.
+   * 
+   * @return The tasks which were dropped, in the order in which they would have been run.
+   */
+  List<IScheduledTask> stop(long timeoutMillis)
+  {
+    synchronized(this)
+    {
+      stopping_ = true;
+      notifyAll();
+    }
+    
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    
+    try
+    {
+      for(Thread worker : workers_)
+        worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+    }
+    catch(InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    
+    extender_.cancel(false);
+    
+    List<IScheduledTask> dropped = drop();
+    
+    if(!dropped.isEmpty())
+      log_.warn("Dropped " + dropped.size() + " handler tasks which did not run within " + timeoutMillis + "ms of stopping");
+    
+    return dropped;
+  }
+
+  private synchronized List<IScheduledTask> drop()
+  {
+    List<IScheduledTask> dropped = new ArrayList<>(queued_);
+    
+    while(queued_ > 0)
+    {
+      IScheduledTask task = poll().task_;
+      
+      tracked_.remove(task);
+      dropped.add(task);
+    }
+    
+    notifyAll();
+    
+    return dropped;
+  }
+}
@@ -27,6 +27,7 @@ import com.symphony.oss.commons.fault.FaultAccumulator;
 public class FeedQuery extends NamedUserIdObjectOrHashRequest
 {
   private final Integer         maxItems_;
+  private final Integer         weight_;
   
   /**
    * Constructor.
@@ -36,6 +37,7 @@ public class FeedQuery extends NamedUserIdObjectOrHashRequest
     super(builder);
 
     maxItems_         = builder.maxItems_;
+    weight_           = builder.weight_;
   }
   
   /**
@@ -46,6 +48,15 @@ public class FeedQuery extends NamedUserIdObjectOrHashRequest
   {
     return maxItems_;
   }
+  
+  /**
+   * 
+   * @return The weight of this feed in the handler stage, or null if no weight was set.
+   */
+  public Integer getWeight()
+  {
+    return weight_;
+  }
 
   /**
    * Builder.
@@ -81,6 +92,7 @@ public class FeedQuery extends NamedUserIdObjectOrHashRequest
   public static abstract class AbstractBuilder<T extends AbstractBuilder<T,B>, B extends FeedQuery> extends NamedUserIdObjectOrHashRequest.AbstractBuilder<T,B>
   {
     protected Integer         maxItems_;
+    protected Integer         weight_;
     
     AbstractBuilder(Class<T> type)
     {
@@ -101,6 +113,26 @@ public class FeedQuery extends NamedUserIdObjectOrHashRequest
       return self();
     }
     
+    /**
+     * Set the weight of this feed in the handler stage.
+     * 
+     * When several feeds are read through one asynchronous request, messages from feeds with a weight are
+     * passed to the handlers by a weighted fair scheduler rather than in order of arrival. Each busy feed
+     * receives a share of the handler threads in proportion to its weight, so a latency sensitive feed with
+     * a high weight is served promptly even while other feeds have a large backlog. Feeds without a weight
+     * have a weight of 1.
+     * 
+     * @param weight The weight of this feed.
+     * 
+     * @return This (fluent method)
+     */
+    public T withWeight(Integer weight)
+    {
+      weight_ = weight;
+      
+      return self();
+    }
+    
     @Override
     protected void validate(FaultAccumulator faultAccumulator)
     {
@@ -108,6 +140,9 @@ public class FeedQuery extends NamedUserIdObjectOrHashRequest
       
       if(maxItems_ != null && maxItems_ < 1)
         faultAccumulator.error("maxItems must be at least 1, or not set.");
+      
+      if(weight_ != null && weight_ < 1)
+        faultAccumulator.error("weight must be at least 1, or not set.");
     }
   }
 }
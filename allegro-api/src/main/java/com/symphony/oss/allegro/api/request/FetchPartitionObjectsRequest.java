@@ -21,6 +21,8 @@ import java.util.List;
 
 import com.google.common.collect.ImmutableList;
 import com.symphony.oss.allegro.api.AbstractConsumerManager;
+import com.symphony.oss.allegro.api.ICursorCheckpointStore;
+import com.symphony.oss.allegro.api.IPartitionScanProgressListener;
 import com.symphony.oss.commons.fault.FaultAccumulator;
 import com.symphony.oss.commons.fluent.BaseAbstractBuilder;
 
@@ -32,16 +34,28 @@ import com.symphony.oss.commons.fluent.BaseAbstractBuilder;
  */
 public class FetchPartitionObjectsRequest
 {
-  private final ImmutableList<PartitionQuery> queryList_;
-  private final AbstractConsumerManager consumerManager_;
+  private final ImmutableList<PartitionQuery>   queryList_;
+  private final AbstractConsumerManager         consumerManager_;
+  private final ImmutableList<String>           segmentSplitPoints_;
+  private final Integer                         segmentCount_;
+  private final Integer                         segmentParallelism_;
+  private final IPartitionScanProgressListener  progressListener_;
+  private final ICursorCheckpointStore          checkpointStore_;
+  private final long                            checkpointIntervalMillis_;
   
   /**
    * Constructor.
    */
   FetchPartitionObjectsRequest(AbstractBuilder<?,?> builder)
   {
-    queryList_        = ImmutableList.copyOf(builder.queryList_);
-    consumerManager_  = builder.consumerManager_;
+    queryList_          = ImmutableList.copyOf(builder.queryList_);
+    consumerManager_    = builder.consumerManager_;
+    segmentSplitPoints_ = builder.segmentSplitPoints_ == null ? null : ImmutableList.copyOf(builder.segmentSplitPoints_);
+    segmentCount_       = builder.segmentCount_;
+    segmentParallelism_ = builder.segmentParallelism_;
+    progressListener_   = builder.progressListener_;
+    checkpointStore_    = builder.checkpointStore_;
+    checkpointIntervalMillis_ = builder.checkpointIntervalMillis_;
   }
 
   /**
@@ -62,6 +76,69 @@ public class FetchPartitionObjectsRequest
     return consumerManager_;
   }
 
+  /**
+   * 
+   * @return true if each query is to be split into segments which are scanned concurrently.
+   */
+  public boolean isSegmented()
+  {
+    return segmentSplitPoints_ != null || segmentCount_ != null;
+  }
+
+  /**
+   * 
+   * @return The greatest sort key of each segment except the last, or null if split points are not specified.
+   */
+  public ImmutableList<String> getSegmentSplitPoints()
+  {
+    return segmentSplitPoints_;
+  }
+
+  /**
+   * 
+   * @return The number of segments into which each query is to be split at sampled split points, or null.
+   */
+  public Integer getSegmentCount()
+  {
+    return segmentCount_;
+  }
+
+  /**
+   * 
+   * @return The maximum number of segments to be scanned concurrently, or null for the default.
+   */
+  public Integer getSegmentParallelism()
+  {
+    return segmentParallelism_;
+  }
+
+  /**
+   * 
+   * @return The listener for the progress of a segmented scan, may be null.
+   */
+  public IPartitionScanProgressListener getProgressListener()
+  {
+    return progressListener_;
+  }
+
+  /**
+   * 
+   * @return The store for the checkpoints of queries which have a checkpoint ID, may be null.
+   */
+  public ICursorCheckpointStore getCheckpointStore()
+  {
+    return checkpointStore_;
+  }
+
+  /**
+   * 
+   * @return The minimum interval between saves of the checkpoint of each query.
+   */
+  public long getCheckpointIntervalMillis()
+  {
+    return checkpointIntervalMillis_;
+  }
+
   /**
    * Builder.
    * 
@@ -95,8 +172,14 @@ public class FetchPartitionObjectsRequest
    */
   public static abstract class AbstractBuilder<T extends AbstractBuilder<T,B>, B extends FetchPartitionObjectsRequest> extends BaseAbstractBuilder<T,B>
   {
-    protected List<PartitionQuery>    queryList_ = new LinkedList<>();
-    protected AbstractConsumerManager consumerManager_;
+    protected List<PartitionQuery>          queryList_ = new LinkedList<>();
+    protected AbstractConsumerManager       consumerManager_;
+    protected List<String>                  segmentSplitPoints_;
+    protected Integer                       segmentCount_;
+    protected Integer                       segmentParallelism_;
+    protected IPartitionScanProgressListener progressListener_;
+    protected ICursorCheckpointStore        checkpointStore_;
+    protected long                          checkpointIntervalMillis_ = 10000;
     
     AbstractBuilder(Class<T> type)
     {
@@ -131,6 +214,106 @@ public class FetchPartitionObjectsRequest
       return self();
     }
     
+    /**
+     * Split each query into segments at the given sort keys and scan the segments concurrently.
+     * 
+     * Each split point is the greatest sort key of its segment, so n split points give n+1 segments.
+     * Objects from each segment are passed to the consumers in order, but objects from different
+     * segments are interleaved. Split points outside the sort key range of a query are ignored.
+     * 
+     * Segmented queries may not have a sort key prefix, an after cursor, a maximum number of items or a checkpoint ID, or be tail queries.
+     * 
+     * @param splitPoints The greatest sort key of each segment except the last, in ascending order.
+     * 
+     * @return This (fluent method)
+     */
+    public T withSegmentSplitPoints(List<String> splitPoints)
+    {
+      segmentSplitPoints_ = splitPoints;
+      
+      return self();
+    }
+    
+    /**
+     * Split each query into the given number of segments and scan the segments concurrently.
+     * 
+     * The split points are interpolated between the first and last sort keys of the partition, so the
+     * segments will only be of similar sizes if the sort keys are evenly distributed. If that is not the
+     * case then use withSegmentSplitPoints instead.
+     * 
+     * Segmented queries may not have a sort key prefix, an after cursor, a maximum number of items or a checkpoint ID, or be tail queries.
+     * 
+     * @param segmentCount The number of segments into which each query is to be split.
+     * 
+     * @return This (fluent method)
+     */
+    public T withSegmentCount(int segmentCount)
+    {
+      segmentCount_ = segmentCount;
+      
+      return self();
+    }
+    
+    /**
+     * Set the maximum number of segments to be scanned concurrently.
+     * 
+     * If not set then synchronous scans use one thread per segment, up to the number of available processors.
+     * 
+     * @param segmentParallelism The maximum number of segments to be scanned concurrently.
+     * 
+     * @return This (fluent method)
+     */
+    public T withSegmentParallelism(int segmentParallelism)
+    {
+      segmentParallelism_ = segmentParallelism;
+      
+      return self();
+    }
+    
+    /**
+     * Set a listener for the progress of a segmented scan.
+     * 
+     * @param progressListener A listener which is called as each segment progresses.
+     * 
+     * @return This (fluent method)
+     */
+    public T withProgressListener(IPartitionScanProgressListener progressListener)
+    {
+      progressListener_ = progressListener;
+      
+      return self();
+    }
+    
+    /**
+     * Set the store for the checkpoints of queries which have a checkpoint ID.
+     * 
+     * @param checkpointStore The store for the checkpoints of queries.
+     * 
+     * @return This (fluent method)
+     */
+    public T withCheckpointStore(ICursorCheckpointStore checkpointStore)
+    {
+      checkpointStore_ = checkpointStore;
+      
+      return self();
+    }
+    
+    /**
+     * Set the minimum interval between saves of the checkpoint of each query, the default is 10 seconds.
+     * 
+     * A shorter interval means less work is repeated after a restart at the cost of more writes to the store.
+     * 
+     * @param checkpointIntervalMillis The minimum interval between saves of the checkpoint of each query.
+     * 
+     * @return This (fluent method)
+     */
+    public T withCheckpointInterval(long checkpointIntervalMillis)
+    {
+      checkpointIntervalMillis_ = checkpointIntervalMillis;
+      
+      return self();
+    }
+    
     @Override
     protected void validate(FaultAccumulator faultAccumulator)
     {
@@ -138,6 +321,52 @@ public class FetchPartitionObjectsRequest
       
       if(queryList_.isEmpty())
         faultAccumulator.error("At least 1 query must be provided.");
+      
+      if(segmentSplitPoints_ != null && segmentCount_ != null)
+        faultAccumulator.error("Please specify only one of segment split points or a segment count.");
+      
+      if(segmentCount_ != null && segmentCount_ < 1)
+        faultAccumulator.error("segmentCount must be at least 1.");
+      
+      if(segmentParallelism_ != null && segmentParallelism_ < 1)
+        faultAccumulator.error("segmentParallelism must be at least 1.");
+      
+      if(segmentSplitPoints_ != null)
+      {
+        for(int i=1 ; i<segmentSplitPoints_.size() ; i++)
+        {
+          if(segmentSplitPoints_.get(i).compareTo(segmentSplitPoints_.get(i - 1)) <= 0)
+          {
+            faultAccumulator.error("Segment split points must be in ascending order without duplicates.");
+            break;
+          }
+        }
+      }
+      
+      if(checkpointIntervalMillis_ < 0)
+        faultAccumulator.error("checkpointInterval must not be negative.");
+      
+      for(PartitionQuery query : queryList_)
+      {
+        if(query.getCheckpointId() != null && checkpointStore_ == null)
+        {
+          faultAccumulator.error("A checkpoint store is required for queries with a checkpoint ID.");
+          break;
+        }
+      }
+      
+      if(segmentSplitPoints_ != null || segmentCount_ != null)
+      {
+        for(PartitionQuery query : queryList_)
+        {
+          if(query.getSortKeyPrefix() != null || query.getAfter() != null || query.getMaxItems() != null || query.isTail()
+              || query.getCheckpointId() != null)
+          {
+            faultAccumulator.error("Segmented queries may not have a sortKeyPrefix, after, maxItems or checkpointId, or be tail queries.");
+            break;
+          }
+        }
+      }
     }
   }
 }
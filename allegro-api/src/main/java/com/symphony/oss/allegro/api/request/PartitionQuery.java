@@ -33,6 +33,10 @@ public class PartitionQuery extends NamedUserIdObjectOrHashRequest
   private final String          sortKeyMax_;
   private final Integer         maxItems_;
   private final Integer         pageLimit_;
+  private final boolean         tail_;
+  private final long            tailMinPollMillis_;
+  private final long            tailMaxPollMillis_;
+  private final String          checkpointId_;
   
   /**
    * Constructor.
@@ -48,6 +52,10 @@ public class PartitionQuery extends NamedUserIdObjectOrHashRequest
     sortKeyMax_    = builder.sortKeyMax_;
     maxItems_      = builder.maxItems_;
     pageLimit_     = builder.pageLimit_;
+    tail_          = builder.tail_;
+    tailMinPollMillis_ = builder.tailMinPollMillis_;
+    tailMaxPollMillis_ = builder.tailMaxPollMillis_;
+    checkpointId_  = builder.checkpointId_;
   }
 
   /**
@@ -112,6 +120,42 @@ public class PartitionQuery extends NamedUserIdObjectOrHashRequest
   {
     return pageLimit_;
   }
+  
+  /**
+   * 
+   * @return true if the query continues to poll for new objects after reaching the end of the partition.
+   */
+  public boolean isTail()
+  {
+    return tail_;
+  }
+  
+  /**
+   * 
+   * @return The interval between polls for new objects in tail mode while objects are arriving.
+   */
+  public long getTailMinPollMillis()
+  {
+    return tailMinPollMillis_;
+  }
+  
+  /**
+   * 
+   * @return The longest interval between polls for new objects in tail mode when the partition is idle.
+   */
+  public long getTailMaxPollMillis()
+  {
+    return tailMaxPollMillis_;
+  }
+  
+  /**
+   * 
+   * @return The ID under which the progress of this query is checkpointed, or null.
+   */
+  public String getCheckpointId()
+  {
+    return checkpointId_;
+  }
 
   /**
    * Builder.
@@ -153,6 +197,10 @@ public class PartitionQuery extends NamedUserIdObjectOrHashRequest
     protected String          sortKeyMax_;
     protected Integer         maxItems_;
     protected Integer         pageLimit_;
+    protected boolean         tail_;
+    protected long            tailMinPollMillis_ = 1000;
+    protected long            tailMaxPollMillis_ = 30000;
+    protected String          checkpointId_;
     
     AbstractBuilder(Class<T> type)
     {
@@ -258,11 +306,80 @@ public class PartitionQuery extends NamedUserIdObjectOrHashRequest
       return self();
     }
     
+    /**
+     * Continue to poll for new objects after reaching the end of the partition.
+     * 
+     * Once the existing objects have been read the partition is polled for objects whose sort key is greater
+     * than the last one seen, so only objects with ascending sort keys (such as timestamps or sequence numbers)
+     * will be delivered. Polls are made at the default minimum interval of 1 second while objects are arriving,
+     * and the interval doubles after each empty poll up to the default maximum of 30 seconds.
+     * 
+     * A tail query never ends by itself, so it can only be run with an AsyncConsumerManager, and it continues
+     * until the query manager is stopped or maxItems objects have been read.
+     * 
+     * @param tail If true then continue to poll for new objects.
+     * 
+     * @return This (fluent method)
+     */
+    public T withTail(boolean tail)
+    {
+      tail_ = tail;
+      
+      return self();
+    }
+    
+    /**
+     * Set the range of intervals between polls for new objects in tail mode.
+     * 
+     * @param minPollMillis The interval between polls while objects are arriving.
+     * @param maxPollMillis The longest interval between polls when the partition is idle.
+     * 
+     * @return This (fluent method)
+     */
+    public T withTailPollInterval(long minPollMillis, long maxPollMillis)
+    {
+      tailMinPollMillis_ = minPollMillis;
+      tailMaxPollMillis_ = maxPollMillis;
+      
+      return self();
+    }
+    
+    /**
+     * Checkpoint the progress of this query so that it can be resumed if the process restarts.
+     * 
+     * The after cursor of the last page whose objects have all been consumed is saved under the given ID
+     * in the ICursorCheckpointStore of the request, and if a checkpoint exists when the query starts then
+     * the scan resumes from it instead of from the after cursor of the query. Objects consumed after the
+     * last checkpoint was saved will be consumed again when the scan resumes. The checkpoint is removed
+     * when the scan completes.
+     * 
+     * The ID must be unique among the queries which share a checkpoint store.
+     * 
+     * @param checkpointId The ID under which the progress of this query is checkpointed.
+     * 
+     * @return This (fluent method)
+     */
+    public T withCheckpointId(String checkpointId)
+    {
+      checkpointId_ = checkpointId;
+      
+      return self();
+    }
+    
     @Override
     protected void validate(FaultAccumulator faultAccumulator)
     {
       super.validate(faultAccumulator);
       
+      if(tail_ && !scanForwards_)
+        faultAccumulator.error("A tail query must scan forwards.");
+      
+      if(tailMinPollMillis_ < 1 || tailMaxPollMillis_ < tailMinPollMillis_)
+        faultAccumulator.error("Tail poll intervals must be positive, and the maximum must be at least the minimum.");
+      
+      if(tail_ && checkpointId_ != null)
+        faultAccumulator.error("A tail query cannot be checkpointed.");
+      
       if(maxItems_ != null && maxItems_ < 1)
         faultAccumulator.error("maxItems must be at least 1, or not set.");
       
@@ -0,0 +1,108 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of the fixed handler pool and the adaptive handler pool for a mix of
+ * fast CPU bound consumers and slow I/O bound ones.
+ * 
+ * This is not a unit test, run it from the command line or an IDE.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class HandlerPoolBenchmark
+{
+  private static final int  TASK_COUNT     = 20000;
+  private static final int  IO_PERCENT     = 20;
+  private static final long IO_MILLIS      = 20;
+  private static final int  CPU_ITERATIONS = 20000;
+
+  private static volatile long sink_;
+
+  public static void main(String[] args) throws InterruptedException
+  {
+    int cores = Runtime.getRuntime().availableProcessors();
+    
+    System.out.println(TASK_COUNT + " tasks, " + IO_PERCENT + "% sleep " + IO_MILLIS + "ms, the rest CPU bound, " + cores + " cores");
+    
+    for(int round = 0 ; round < 2 ; round++)
+    {
+      run("fixed 9", new ThreadPoolExecutor(9, 9, 10000L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()));
+      run("fixed 72", new ThreadPoolExecutor(72, 72, 10000L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()));
+      run("adaptive 1-256", new AdaptiveHandlerExecutor("Benchmark", 1, 256, null, HandlerQueuePolicy.Block));
+    }
+  }
+
+  private static void run(String name, ExecutorService executor) throws InterruptedException
+  {
+    CountDownLatch latch = new CountDownLatch(TASK_COUNT);
+    long           start = System.nanoTime();
+    
+    for(int i=0 ; i<TASK_COUNT ; i++)
+    {
+      boolean io = i % 100 < IO_PERCENT;
+      
+      executor.execute(() ->
+      {
+        try
+        {
+          if(io)
+            Thread.sleep(IO_MILLIS);
+          else
+            cpu();
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+        finally
+        {
+          latch.countDown();
+        }
+      });
+    }
+    
+    latch.await();
+    
+    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    
+    String detail = executor instanceof AdaptiveHandlerExecutor ? " final limit " + ((AdaptiveHandlerExecutor)executor).getParallelismLimit() : "";
+    
+    System.out.format("%-16s %6d ms %8.0f tasks/s%s%n", name, millis, TASK_COUNT * 1000.0 / millis, detail);
+    
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  private static void cpu()
+  {
+    long x = 17;
+    
+    for(int i=0 ; i<CPU_ITERATIONS ; i++)
+      x = x * 31 + (x >>> 7);
+    
+    sink_ += x;
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Measures the throughput of a partition scan with and without read ahead, against a stub object store
+ * which serves pages of 100 objects of 1KB each after a simulated latency of 20ms, with a consumer which
+ * spends 0.2ms on each object, so that fetching and consuming a page take about the same time.
+ * 
+ * This is not a unit test, run it from the command line or an IDE.
+ *
+ */
+@SuppressWarnings({"javadoc", "restriction"})
+public class ReadAheadScanBenchmark
+{
+  private static final int  PAGE_COUNT     = 50;
+  private static final int  PAGE_SIZE      = 100;
+  private static final int  OBJECT_SIZE    = 1024;
+  private static final long LATENCY_MILLIS = 20;
+  private static final long CONSUME_NANOS  = 200000;
+
+  public static void main(String[] args) throws IOException
+  {
+    HttpServer      server         = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    
+    server.createContext("/", (exchange) ->
+    {
+      String query = exchange.getRequestURI().getQuery();
+      int    page  = query == null ? 0 : Integer.parseInt(query.substring("after=".length()));
+      
+      try
+      {
+        Thread.sleep(LATENCY_MILLIS);
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+      
+      byte[] response = createPage(page);
+      
+      exchange.sendResponseHeaders(200, response.length);
+      
+      try(OutputStream out = exchange.getResponseBody())
+      {
+        out.write(response);
+      }
+    });
+    server.setExecutor(serverExecutor);
+    server.start();
+    
+    String url = "http://localhost:" + server.getAddress().getPort() + "/";
+    
+    try
+    {
+      System.out.println(PAGE_COUNT + " pages of " + PAGE_SIZE + " objects, " + LATENCY_MILLIS + "ms latency, " +
+          (CONSUME_NANOS / 1000) + "us to consume each object");
+      
+      for(int round = 0 ; round < 2 ; round++)
+      {
+        run(url, 0, 10000);
+        run(url, 1, 10000);
+        run(url, 2, 10000);
+        run(url, 4, 10000);
+        run(url, 4, PAGE_SIZE);
+      }
+    }
+    finally
+    {
+      server.stop(0);
+      serverExecutor.shutdown();
+    }
+  }
+
+  private static void run(String url, int depth, int itemBudget)
+  {
+    long start = System.nanoTime();
+    int  count = 0;
+    
+    try(PageReadAhead<Page> pages = new PageReadAhead<>(new PageSource(url), null, depth, itemBudget))
+    {
+      Page page;
+      
+      while((page = pages.next()) != null)
+      {
+        for(int i=0 ; i<page.items_.size() ; i++)
+        {
+          long end = System.nanoTime() + CONSUME_NANOS;
+          
+          while(System.nanoTime() < end)
+            ;
+          
+          count++;
+        }
+      }
+    }
+    
+    long millis = (System.nanoTime() - start) / 1000000;
+    
+    System.out.format("depth %d budget %5d items %6d ms %8d objects/s%n", depth, itemBudget, millis, count * 1000L / millis);
+    
+    if(count != PAGE_COUNT * PAGE_SIZE)
+      throw new IllegalStateException("Unexpected count " + count);
+  }
+  
+  private static class Page
+  {
+    final List<String> items_ = new ArrayList<>();
+    String             after_;
+  }
+  
+  private static class PageSource implements PageReadAhead.IPageSource<Page>
+  {
+    private final String url_;
+
+    PageSource(String url)
+    {
+      url_ = url;
+    }
+
+    @Override
+    public Page fetchPage(String after, int itemCount)
+    {
+      try
+      {
+        HttpURLConnection connection = (HttpURLConnection) new URL(after == null ? url_ : url_ + "?after=" + after).openConnection();
+        
+        try(BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)))
+        {
+          Page   page = new Page();
+          String line = in.readLine();
+          
+          page.after_ = line.isEmpty() ? null : line;
+          
+          while((line = in.readLine()) != null)
+            page.items_.add(line);
+          
+          return page;
+        }
+      }
+      catch(IOException e)
+      {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public int getItemCount(Page page)
+    {
+      return page.items_.size();
+    }
+
+    @Override
+    public String getAfter(Page page)
+    {
+      return page.after_;
+    }
+  }
+
+  private static byte[] createPage(int page)
+  {
+    StringBuilder s = new StringBuilder();
+    
+    if(page + 1 < PAGE_COUNT)
+      s.append(page + 1);
+    
+    s.append('\n');
+    
+    for(int i=0 ; i<PAGE_SIZE ; i++)
+    {
+      for(int j=0 ; j<OBJECT_SIZE ; j++)
+        s.append((char)('a' + (j % 26)));
+      
+      s.append('\n');
+    }
+    
+    return s.toString().getBytes(StandardCharsets.UTF_8);
+  }
+}
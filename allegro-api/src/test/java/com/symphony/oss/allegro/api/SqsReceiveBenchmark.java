@@ -0,0 +1,179 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Measures the allocation and connection pool occupancy of reading SQS receive responses of
+ * 10 messages of 256KB each, comparing the previous implementation of AllegroSqsRequestBuilder.execute
+ * (copy through a 1KB buffer into a ByteArrayOutputStream, response never closed) with ResponseBodyReader
+ * and a closed response.
+ * 
+ * This is not a unit test, run it from the command line or an IDE.
+ *
+ */
+@SuppressWarnings({"javadoc", "restriction"})
+public class SqsReceiveBenchmark
+{
+  private static final int MESSAGE_COUNT = 10;
+  private static final int MESSAGE_SIZE  = 256 * 1024;
+  private static final int ITERATIONS    = 200;
+
+  public static void main(String[] args) throws IOException
+  {
+    byte[] response = createResponse();
+    
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    
+    server.createContext("/", (exchange) ->
+    {
+      try(InputStream in = exchange.getRequestBody())
+      {
+        while(in.read() != -1)
+          ;
+      }
+      
+      boolean chunked = exchange.getRequestURI().getQuery() != null;
+      
+      exchange.getResponseHeaders().add("Content-Type", "text/xml; charset=UTF-8");
+      exchange.sendResponseHeaders(200, chunked ? 0 : response.length);
+      
+      try(OutputStream out = exchange.getResponseBody())
+      {
+        out.write(response);
+      }
+    });
+    server.start();
+    
+    String url = "http://localhost:" + server.getAddress().getPort() + "/";
+    
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    
+    try(CloseableHttpClient httpClient = HttpClients.custom().setConnectionManager(connectionManager).build())
+    {
+      System.out.println(MESSAGE_COUNT + " x " + (MESSAGE_SIZE / 1024) + "KB messages, response " + response.length + " bytes");
+      
+      for(int round = 0 ; round < 2 ; round++)
+      {
+        run("previous", url, httpClient, connectionManager, false);
+        run("reader", url, httpClient, connectionManager, true);
+        run("previous chunked", url + "?chunked", httpClient, connectionManager, false);
+        run("reader chunked", url + "?chunked", httpClient, connectionManager, true);
+      }
+    }
+    finally
+    {
+      server.stop(0);
+    }
+  }
+
+  private static void run(String name, String url, CloseableHttpClient httpClient, PoolingHttpClientConnectionManager connectionManager,
+      boolean reader) throws IOException
+  {
+    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId       = Thread.currentThread().getId();
+    long startAllocated = threadBean.getThreadAllocatedBytes(threadId);
+    long start          = System.nanoTime();
+    int  maxLeased      = 0;
+    long length         = 0;
+    
+    for(int i=0 ; i<ITERATIONS ; i++)
+    {
+      String body = reader ? readWithReader(httpClient, url) : readPrevious(httpClient, url);
+      
+      length += body.length();
+      maxLeased = Math.max(maxLeased, connectionManager.getTotalStats().getLeased());
+    }
+    
+    long allocated = threadBean.getThreadAllocatedBytes(threadId) - startAllocated;
+    long micros    = (System.nanoTime() - start) / 1000;
+    
+    System.out.format("%-18s %8d us/request %8d KB allocated/request, max leased connections %d, leased now %d%n",
+        name, micros / ITERATIONS, allocated / ITERATIONS / 1024, maxLeased, connectionManager.getTotalStats().getLeased());
+    
+    if(length != (long)ITERATIONS * createResponse().length)
+      throw new IllegalStateException("Unexpected length " + length);
+  }
+
+  private static String readWithReader(CloseableHttpClient httpClient, String url) throws IOException
+  {
+    try(CloseableHttpResponse response = httpClient.execute(new HttpPost(url)))
+    {
+      return ResponseBodyReader.read(response.getEntity());
+    }
+  }
+
+  private static String readPrevious(CloseableHttpClient httpClient, String url) throws IOException
+  {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    CloseableHttpResponse response = httpClient.execute(new HttpPost(url));
+    InputStream in = response.getEntity().getContent();
+    byte[] buf = new byte[1024];
+    int read = 0;
+    try
+    {
+      while ((read = in.read(buf)) != -1)
+      {
+        buffer.write(buf, 0, read);
+      }
+    }
+    finally
+    {
+      in.close();
+    }
+    buffer.flush();
+    
+    return buffer.toString();
+  }
+
+  private static byte[] createResponse()
+  {
+    StringBuilder s = new StringBuilder("<ReceiveMessageResponse><ReceiveMessageResult>");
+    
+    for(int i=0 ; i<MESSAGE_COUNT ; i++)
+    {
+      s.append("<Message><MessageId>").append(i).append("</MessageId><ReceiptHandle>handle").append(i)
+        .append("</ReceiptHandle><Body>");
+      
+      for(int j=0 ; j<MESSAGE_SIZE ; j++)
+        s.append((char)('a' + (j % 26)));
+      
+      s.append("</Body></Message>");
+    }
+    
+    s.append("</ReceiveMessageResult></ReceiveMessageResponse>");
+    
+    return s.toString().getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,374 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.symphony.oss.commons.hash.Hash;
+import com.symphony.oss.commons.hash.HashProvider;
+import com.symphony.oss.commons.immutable.ImmutableByteArray;
+import com.symphony.oss.models.object.canon.IAbstractStoredApplicationObject;
+import com.symphony.oss.models.object.canon.facade.IApplicationObjectPayload;
+
+/**
+ * Tests of AbsoluteObjectCache.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestAbsoluteObjectCache
+{
+  private static final Hash HASH_1 = hash("object1");
+  private static final Hash HASH_2 = hash("object2");
+  private static final Hash HASH_3 = hash("object3");
+  
+  private static Hash hash(String name)
+  {
+    return HashProvider.getHashOf(name.getBytes(StandardCharsets.UTF_8));
+  }
+  
+  /**
+   * An entity whose serialized form is the given number of bytes.
+   */
+  private static <T> T newEntity(Class<T> type, int size)
+  {
+    ImmutableByteArray serialized = ImmutableByteArray.newInstance(new byte[size]);
+    
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) ->
+    {
+      switch(method.getName())
+      {
+        case "serialize": return serialized;
+        case "hashCode":  return System.identityHashCode(proxy);
+        case "equals":    return proxy == args[0];
+        case "toString":  return type.getSimpleName() + "(" + size + ")";
+        default:          return null;
+      }
+    }));
+  }
+  
+  private static IAbstractStoredApplicationObject newObject(int size)
+  {
+    return newEntity(IAbstractStoredApplicationObject.class, size);
+  }
+  
+  private static IApplicationObjectPayload newPayload(int size)
+  {
+    return newEntity(IApplicationObjectPayload.class, size);
+  }
+  
+  private static IAbstractStoredApplicationObject fail(Hash hash)
+  {
+    throw new IllegalStateException("Unexpected fetch of " + hash);
+  }
+  
+  @Test
+  public void testReadThrough()
+  {
+    AbsoluteObjectCache              cache  = new AbsoluteObjectCache(10, 1000, false);
+    IAbstractStoredApplicationObject object = newObject(10);
+    
+    assertSame(object, cache.get(HASH_1, (hash) -> object));
+    assertSame(object, cache.get(HASH_1, TestAbsoluteObjectCache::fail));
+    
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.size());
+    assertEquals(10, cache.getBytes());
+  }
+  
+  @Test
+  public void testFailedFetchNotCached()
+  {
+    AbsoluteObjectCache cache = new AbsoluteObjectCache(10, 1000, false);
+    
+    try
+    {
+      cache.get(HASH_1, TestAbsoluteObjectCache::fail);
+    }
+    catch(IllegalStateException e)
+    {
+      // expected
+    }
+    
+    assertEquals(0, cache.size());
+    
+    IAbstractStoredApplicationObject object = newObject(10);
+    
+    assertSame(object, cache.get(HASH_1, (hash) -> object));
+    assertEquals(2, cache.getMissCount());
+  }
+  
+  @Test
+  public void testEntryBoundEvictsLeastRecentlyUsed()
+  {
+    AbsoluteObjectCache              cache   = new AbsoluteObjectCache(2, 1000, false);
+    IAbstractStoredApplicationObject object1 = newObject(10);
+    IAbstractStoredApplicationObject object2 = newObject(10);
+    IAbstractStoredApplicationObject object3 = newObject(10);
+    
+    cache.put(HASH_1, object1);
+    cache.put(HASH_2, object2);
+    
+    // Using object1 makes object2 the least recently used.
+    assertSame(object1, cache.get(HASH_1, TestAbsoluteObjectCache::fail));
+    
+    cache.put(HASH_3, object3);
+    
+    assertEquals(2, cache.size());
+    assertEquals(20, cache.getBytes());
+    assertSame(object1, cache.get(HASH_1, TestAbsoluteObjectCache::fail));
+    assertSame(object3, cache.get(HASH_3, TestAbsoluteObjectCache::fail));
+    
+    IAbstractStoredApplicationObject reloaded = newObject(10);
+    
+    assertSame(reloaded, cache.get(HASH_2, (hash) -> reloaded));
+  }
+  
+  @Test
+  public void testByteBound()
+  {
+    AbsoluteObjectCache cache = new AbsoluteObjectCache(10, 100, false);
+    
+    cache.put(HASH_1, newObject(40));
+    cache.put(HASH_2, newObject(40));
+    
+    assertEquals(2, cache.size());
+    assertEquals(80, cache.getBytes());
+    
+    cache.put(HASH_3, newObject(40));
+    
+    assertEquals(2, cache.size());
+    assertEquals(80, cache.getBytes());
+    
+    // An object larger than the whole cache is not held, and does not evict anything.
+    cache.put(hash("large"), newObject(101));
+    
+    assertEquals(2, cache.size());
+    assertEquals(80, cache.getBytes());
+  }
+  
+  @Test
+  public void testZeroEntriesCachesNothing()
+  {
+    AbsoluteObjectCache cache = new AbsoluteObjectCache(0, 1000, true);
+    
+    cache.put(HASH_1, newObject(10));
+    cache.putPayload(HASH_1, newPayload(10));
+    
+    assertEquals(0, cache.size());
+    assertNull(cache.getPayload(HASH_1));
+  }
+  
+  @Test
+  public void testPayloads()
+  {
+    AbsoluteObjectCache       cache   = new AbsoluteObjectCache(10, 1000, true);
+    IApplicationObjectPayload payload = newPayload(20);
+    
+    // A payload is only held for a cached object.
+    cache.putPayload(HASH_1, payload);
+    assertNull(cache.getPayload(HASH_1));
+    
+    cache.put(HASH_1, newObject(10));
+    cache.putPayload(HASH_1, payload);
+    
+    assertSame(payload, cache.getPayload(HASH_1));
+    assertEquals(30, cache.getBytes());
+    
+    // The first payload is kept.
+    cache.putPayload(HASH_1, newPayload(20));
+    
+    assertSame(payload, cache.getPayload(HASH_1));
+    assertEquals(30, cache.getBytes());
+  }
+  
+  @Test
+  public void testPayloadCountsTowardsByteBound()
+  {
+    AbsoluteObjectCache cache = new AbsoluteObjectCache(10, 100, true);
+    
+    cache.put(HASH_1, newObject(30));
+    cache.put(HASH_2, newObject(30));
+    cache.putPayload(HASH_2, newPayload(50));
+    
+    assertEquals(1, cache.size());
+    assertEquals(80, cache.getBytes());
+    assertNull(cache.getPayload(HASH_1));
+  }
+  
+  @Test
+  public void testPayloadsNotCachedWhenDisabled()
+  {
+    AbsoluteObjectCache cache = new AbsoluteObjectCache(10, 1000, false);
+    
+    cache.put(HASH_1, newObject(10));
+    cache.putPayload(HASH_1, newPayload(10));
+    
+    assertNull(cache.getPayload(HASH_1));
+    assertEquals(10, cache.getBytes());
+  }
+  
+  @Test
+  public void testInvalidate()
+  {
+    AbsoluteObjectCache cache = new AbsoluteObjectCache(10, 1000, true);
+    
+    cache.put(HASH_1, newObject(10));
+    cache.putPayload(HASH_1, newPayload(20));
+    cache.put(HASH_2, newObject(10));
+    
+    cache.invalidate(HASH_1);
+    cache.invalidate(HASH_3);
+    
+    assertEquals(1, cache.size());
+    assertEquals(10, cache.getBytes());
+    assertNull(cache.getPayload(HASH_1));
+    
+    IAbstractStoredApplicationObject reloaded = newObject(10);
+    
+    assertSame(reloaded, cache.get(HASH_1, (hash) -> reloaded));
+  }
+  
+  @Test
+  public void testGetAllFetchesOnlyCacheMisses()
+  {
+    AbsoluteObjectCache              cache    = new AbsoluteObjectCache(10, 1000, false);
+    ExecutorService                  executor = Executors.newCachedThreadPool();
+    IAbstractStoredApplicationObject object1  = newObject(10);
+    IAbstractStoredApplicationObject object2  = newObject(10);
+    IAbstractStoredApplicationObject object3  = newObject(10);
+    Set<Hash>                        fetched  = Collections.synchronizedSet(new HashSet<>());
+    
+    try
+    {
+      cache.put(HASH_1, object1);
+      
+      List<AbsoluteFetchResult> results = cache.getAll(Arrays.asList(HASH_1, HASH_2, HASH_3), (hash) ->
+      {
+        fetched.add(hash);
+        
+        return hash.equals(HASH_2) ? object2 : object3;
+      }, new ConcurrentFetcher(executor), 4);
+      
+      assertEquals(new HashSet<>(Arrays.asList(HASH_2, HASH_3)), fetched);
+      assertEquals(3, results.size());
+      assertSame(object1, results.get(0).getObject());
+      assertSame(object2, results.get(1).getObject());
+      assertSame(object3, results.get(2).getObject());
+      assertEquals(1, cache.getHitCount());
+      assertEquals(2, cache.getMissCount());
+      assertEquals(3, cache.size());
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+  
+  @Test
+  public void testGetAllReturnsMissingObjectsAsErrors()
+  {
+    AbsoluteObjectCache              cache    = new AbsoluteObjectCache(10, 1000, false);
+    ExecutorService                  executor = Executors.newCachedThreadPool();
+    IAbstractStoredApplicationObject object1  = newObject(10);
+    
+    try
+    {
+      List<AbsoluteFetchResult> results = cache.getAll(Arrays.asList(HASH_1, HASH_2), (hash) ->
+      {
+        if(hash.equals(HASH_2))
+          return fail(hash);
+        
+        return object1;
+      }, new ConcurrentFetcher(executor), 4);
+      
+      assertEquals(2, results.size());
+      
+      assertTrue(results.get(0).isSuccess());
+      assertEquals(HASH_1, results.get(0).getAbsoluteHash());
+      assertSame(object1, results.get(0).getObject());
+      assertNull(results.get(0).getError());
+      
+      assertFalse(results.get(1).isSuccess());
+      assertEquals(HASH_2, results.get(1).getAbsoluteHash());
+      assertNull(results.get(1).getObject());
+      assertTrue(results.get(1).getError() instanceof IllegalStateException);
+      
+      // The failure is not cached.
+      assertEquals(1, cache.size());
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+  
+  @Test
+  public void testGetAllPreservesOrderAndFetchesDuplicatesOnce()
+  {
+    AbsoluteObjectCache cache    = new AbsoluteObjectCache(10, 1000, false);
+    ExecutorService     executor = Executors.newCachedThreadPool();
+    List<Hash>          hashes   = new ArrayList<>();
+    List<Hash>          fetched  = Collections.synchronizedList(new ArrayList<>());
+    
+    for(int i=0 ; i<20 ; i++)
+      hashes.add(hash("object" + (i % 7)));
+    
+    try
+    {
+      List<AbsoluteFetchResult> results = cache.getAll(hashes, (hash) ->
+      {
+        fetched.add(hash);
+        
+        return newObject(10);
+      }, new ConcurrentFetcher(executor), 4);
+      
+      assertEquals(7, fetched.size());
+      assertEquals(7, new HashSet<>(fetched).size());
+      assertEquals(hashes.size(), results.size());
+      
+      for(int i=0 ; i<hashes.size() ; i++)
+      {
+        assertEquals(hashes.get(i), results.get(i).getAbsoluteHash());
+        assertSame(results.get(i % 7).getObject(), results.get(i).getObject());
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+}
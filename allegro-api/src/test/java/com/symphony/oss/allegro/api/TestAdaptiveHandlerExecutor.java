@@ -0,0 +1,391 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests of AdaptiveHandlerExecutor.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestAdaptiveHandlerExecutor
+{
+  private static void await(CountDownLatch latch)
+  {
+    try
+    {
+      latch.await(10, TimeUnit.SECONDS);
+    }
+    catch(InterruptedException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+  
+  private static void sleep(long millis)
+  {
+    try
+    {
+      Thread.sleep(millis);
+    }
+    catch(InterruptedException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+  
+  private static void awaitState(Thread thread, Thread.State state) throws InterruptedException
+  {
+    long end = System.currentTimeMillis() + 10000;
+    
+    while(thread.getState() != state && System.currentTimeMillis() < end)
+      Thread.sleep(1);
+    
+    assertEquals(state, thread.getState());
+  }
+  
+  @Test
+  public void testLimitRisesForBlockedHandlers() throws InterruptedException
+  {
+    AdaptiveHandlerExecutor executor  = new AdaptiveHandlerExecutor("Test", 1, 8, null, HandlerQueuePolicy.Block);
+    AtomicInteger           running   = new AtomicInteger();
+    AtomicInteger           maxActive = new AtomicInteger();
+    CountDownLatch          done      = new CountDownLatch(400);
+    
+    try
+    {
+      assertEquals(1, executor.getParallelismLimit());
+      
+      // Handlers which wait, as for I/O, take the same time however many run at once.
+      for(int i=0 ; i<400 ; i++)
+        executor.execute(() ->
+        {
+          maxActive.accumulateAndGet(running.incrementAndGet(), Math::max);
+          sleep(5);
+          running.decrementAndGet();
+          done.countDown();
+        });
+      
+      assertTrue(done.await(30, TimeUnit.SECONDS));
+      assertTrue(maxActive.get() > 1);
+      assertTrue(maxActive.get() <= 8);
+      assertTrue(executor.getParallelismLimit() > 1);
+      assertTrue(executor.getParallelismLimit() <= 8);
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testLimitFallsWhenCapacityIsUnused() throws InterruptedException
+  {
+    AdaptiveHandlerExecutor executor = new AdaptiveHandlerExecutor("Test", 1, 8, null, HandlerQueuePolicy.Block);
+    CountDownLatch          done     = new CountDownLatch(400);
+    
+    try
+    {
+      for(int i=0 ; i<400 ; i++)
+        executor.execute(() ->
+        {
+          sleep(5);
+          done.countDown();
+        });
+      
+      assertTrue(done.await(30, TimeUnit.SECONDS));
+      
+      int raised = executor.getParallelismLimit();
+      
+      assertTrue(raised > 1);
+      
+      // One task at a time leaves most of the capacity unused, so the limit falls back towards the minimum.
+      long end = System.currentTimeMillis() + 30000;
+      
+      while(executor.getParallelismLimit() > 1 && System.currentTimeMillis() < end)
+      {
+        CountDownLatch ran = new CountDownLatch(1);
+        
+        executor.execute(ran::countDown);
+        
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+        Thread.sleep(1);
+      }
+      
+      assertEquals(1, executor.getParallelismLimit());
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testCallerRunsWhenQueueFull() throws InterruptedException
+  {
+    AdaptiveHandlerExecutor executor = new AdaptiveHandlerExecutor("Test", 1, 1, 1, HandlerQueuePolicy.CallerRuns);
+    CountDownLatch          release  = new CountDownLatch(1);
+    CountDownLatch          done     = new CountDownLatch(2);
+    AtomicReference<Thread> runner   = new AtomicReference<>();
+    
+    try
+    {
+      executor.execute(() ->
+      {
+        await(release);
+        done.countDown();
+      });
+      executor.execute(done::countDown);
+      
+      assertEquals(1, executor.getRunningCount());
+      assertEquals(1, executor.getQueueDepth());
+      
+      executor.execute(() -> runner.set(Thread.currentThread()));
+      
+      assertSame(Thread.currentThread(), runner.get());
+      assertEquals(1, executor.getQueueDepth());
+      
+      release.countDown();
+      
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testBlockWhenQueueFull() throws InterruptedException
+  {
+    AdaptiveHandlerExecutor executor = new AdaptiveHandlerExecutor("Test", 1, 1, 1, HandlerQueuePolicy.Block);
+    CountDownLatch          release  = new CountDownLatch(1);
+    CountDownLatch          done     = new CountDownLatch(3);
+    
+    try
+    {
+      executor.execute(() ->
+      {
+        await(release);
+        done.countDown();
+      });
+      executor.execute(done::countDown);
+      
+      Thread submitter = new Thread(() -> executor.execute(done::countDown));
+      
+      submitter.start();
+      awaitState(submitter, Thread.State.TIMED_WAITING);
+      
+      assertEquals(3, done.getCount());
+      assertEquals(1, executor.getQueueDepth());
+      
+      release.countDown();
+      submitter.join(10000);
+      
+      assertFalse(submitter.isAlive());
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testBlockedSubmitterRejectedOnShutdown() throws InterruptedException
+  {
+    AdaptiveHandlerExecutor           executor = new AdaptiveHandlerExecutor("Test", 1, 1, 1, HandlerQueuePolicy.Block);
+    CountDownLatch                    release  = new CountDownLatch(1);
+    AtomicInteger                     ran      = new AtomicInteger();
+    AtomicReference<RuntimeException> error    = new AtomicReference<>();
+    
+    try
+    {
+      executor.execute(() ->
+      {
+        await(release);
+        ran.incrementAndGet();
+      });
+      executor.execute(ran::incrementAndGet);
+      
+      Thread submitter = new Thread(() ->
+      {
+        try
+        {
+          executor.execute(ran::incrementAndGet);
+        }
+        catch(RuntimeException e)
+        {
+          error.set(e);
+        }
+      });
+      
+      submitter.start();
+      awaitState(submitter, Thread.State.TIMED_WAITING);
+      
+      executor.shutdown();
+      submitter.join(10000);
+      
+      assertFalse(submitter.isAlive());
+      assertTrue(error.get() instanceof RejectedExecutionException);
+      
+      release.countDown();
+      
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+      assertEquals(2, ran.get());
+    }
+    finally
+    {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testRejectedAfterShutdown()
+  {
+    AdaptiveHandlerExecutor executor = new AdaptiveHandlerExecutor("Test", 1, 4, null, HandlerQueuePolicy.CallerRuns);
+    
+    executor.shutdown();
+    
+    assertTrue(executor.isShutdown());
+    
+    try
+    {
+      executor.execute(() -> {});
+      fail("Expected RejectedExecutionException");
+    }
+    catch(RejectedExecutionException e)
+    {
+      // expected
+    }
+  }
+  
+  @Test
+  public void testIdleShutdownTerminates() throws InterruptedException
+  {
+    AdaptiveHandlerExecutor executor = new AdaptiveHandlerExecutor("Test", 1, 4, null, HandlerQueuePolicy.Block);
+    CountDownLatch          done     = new CountDownLatch(1);
+    
+    executor.execute(done::countDown);
+    
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    
+    executor.shutdown();
+    
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertTrue(executor.isTerminated());
+  }
+  
+  @Test
+  public void testShutdownRunsQueuedTasksThenTerminates() throws InterruptedException
+  {
+    AdaptiveHandlerExecutor executor = new AdaptiveHandlerExecutor("Test", 1, 1, null, HandlerQueuePolicy.Block);
+    CountDownLatch          release  = new CountDownLatch(1);
+    AtomicInteger           ran      = new AtomicInteger();
+    
+    try
+    {
+      executor.execute(() ->
+      {
+        await(release);
+        ran.incrementAndGet();
+      });
+      
+      for(int i=0 ; i<5 ; i++)
+        executor.execute(ran::incrementAndGet);
+      
+      executor.shutdown();
+      
+      assertFalse(executor.awaitTermination(50, TimeUnit.MILLISECONDS));
+      
+      release.countDown();
+      
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+      assertEquals(6, ran.get());
+    }
+    finally
+    {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testShutdownRacingExecute() throws InterruptedException
+  {
+    for(int round=0 ; round<50 ; round++)
+    {
+      AdaptiveHandlerExecutor executor = new AdaptiveHandlerExecutor("Test", 1, 4, null, HandlerQueuePolicy.Block);
+      AtomicInteger           accepted = new AtomicInteger();
+      AtomicInteger           ran      = new AtomicInteger();
+      CountDownLatch          start    = new CountDownLatch(1);
+      List<Thread>            threads  = new ArrayList<>();
+      
+      for(int t=0 ; t<4 ; t++)
+      {
+        Thread thread = new Thread(() ->
+        {
+          await(start);
+          
+          for(int i=0 ; i<100 ; i++)
+          {
+            try
+            {
+              executor.execute(ran::incrementAndGet);
+              accepted.incrementAndGet();
+            }
+            catch(RejectedExecutionException e)
+            {
+              return;
+            }
+          }
+        });
+        
+        threads.add(thread);
+        thread.start();
+      }
+      
+      start.countDown();
+      executor.shutdown();
+      
+      for(Thread thread : threads)
+        thread.join(10000);
+      
+      // Every task which was accepted runs before the executor terminates.
+      assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+      assertEquals(accepted.get(), ran.get());
+    }
+  }
+}
@@ -0,0 +1,296 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.symphony.oss.models.object.canon.IFeedsEndpoint;
+
+/**
+ * Tests of the background refresh of AllegroSqsFeedsContainer.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestAllegroSqsFeedsContainer
+{
+  private static final long TEN_MINUTES = TimeUnit.MINUTES.toMillis(10);
+  
+  /**
+   * A scheduler whose tasks are run only when the test asks.
+   */
+  static class ManualScheduler extends ScheduledThreadPoolExecutor
+  {
+    final List<Long>     delays_ = new ArrayList<>();
+    final List<Runnable> tasks_  = new LinkedList<>();
+    
+    ManualScheduler()
+    {
+      super(1);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit)
+    {
+      delays_.add(unit.toMillis(delay));
+      tasks_.add(command);
+      
+      return super.schedule(() -> {}, 1, TimeUnit.DAYS);
+    }
+    
+    void runNext()
+    {
+      tasks_.remove(0).run();
+    }
+  }
+  
+  /**
+   * Returns the given endpoints, or throws the given exceptions, in turn.
+   */
+  static class Fetcher implements Supplier<IFeedsEndpoint>
+  {
+    final List<Object> results_ = new LinkedList<>();
+    int                calls_;
+    
+    Fetcher then(String endpoint, long validMillis)
+    {
+      Instant expiry = Instant.now().plusMillis(validMillis);
+      
+      results_.add(Proxy.newProxyInstance(IFeedsEndpoint.class.getClassLoader(), new Class<?>[] { IFeedsEndpoint.class }, (proxy, method, args) ->
+      {
+        switch(method.getName())
+        {
+          case "getEndPoint":       return endpoint;
+          case "getDirectFetch":    return Boolean.TRUE;
+          case "getExpirationDate": return expiry;
+          case "hashCode":          return System.identityHashCode(proxy);
+          case "equals":            return proxy == args[0];
+          default:                  return endpoint;
+        }
+      }));
+      
+      return this;
+    }
+    
+    Fetcher thenFail()
+    {
+      results_.add(new IllegalStateException("Refresh failed"));
+      
+      return this;
+    }
+
+    @Override
+    public IFeedsEndpoint get()
+    {
+      calls_++;
+      
+      Object result = results_.remove(0);
+      
+      if(result instanceof RuntimeException)
+        throw (RuntimeException)result;
+      
+      return (IFeedsEndpoint)result;
+    }
+  }
+  
+  private static AllegroSqsFeedsContainer newContainer(Fetcher fetcher, ManualScheduler scheduler, long idleMillis)
+  {
+    return new AllegroSqsFeedsContainer(Collections.singletonList("feed"), null, fetcher, scheduler, idleMillis);
+  }
+  
+  private static void assertDelay(long expected, long actual)
+  {
+    assertTrue("Expected about " + expected + " but was " + actual, Math.abs(expected - actual) < 2000);
+  }
+  
+  @Test
+  public void testSnapshotSwap()
+  {
+    ManualScheduler scheduler = new ManualScheduler();
+    Fetcher         fetcher   = new Fetcher().then("endpoint1", TEN_MINUTES).then("endpoint2", TEN_MINUTES);
+    
+    try
+    {
+      AllegroSqsFeedsContainer container = newContainer(fetcher, scheduler, 60000);
+      
+      assertEquals("endpoint1", container.getEndpoint());
+      assertTrue(container.isDirect());
+      assertFalse(container.isExpired());
+      
+      // A current snapshot does not cause a fetch.
+      container.refresh();
+      assertEquals(1, fetcher.calls_);
+      
+      scheduler.runNext();
+      
+      assertEquals("endpoint2", container.getEndpoint());
+      assertEquals(2, fetcher.calls_);
+      assertEquals(1, scheduler.tasks_.size());
+    }
+    finally
+    {
+      scheduler.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testRefreshScheduledBeforeExpiry()
+  {
+    ManualScheduler scheduler = new ManualScheduler();
+    Fetcher         fetcher   = new Fetcher().then("endpoint1", TEN_MINUTES).then("endpoint2", 30000);
+    
+    try
+    {
+      newContainer(fetcher, scheduler, 60000);
+      
+      // The refresh is due the threshold and the lead time before expiry.
+      assertEquals(1, scheduler.delays_.size());
+      assertDelay(TEN_MINUTES - 60000, scheduler.delays_.get(0));
+      
+      // Records which expire sooner than that are refreshed after the minimum delay rather than immediately.
+      scheduler.runNext();
+      
+      assertEquals(2, scheduler.delays_.size());
+      assertEquals(AllegroSqsFeedsContainer.MIN_DELAY_MILLIS, (long)scheduler.delays_.get(1));
+    }
+    finally
+    {
+      scheduler.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testRetryAfterFailure()
+  {
+    ManualScheduler scheduler = new ManualScheduler();
+    Fetcher         fetcher   = new Fetcher().then("endpoint1", TEN_MINUTES).thenFail().then("endpoint2", TEN_MINUTES);
+    
+    try
+    {
+      AllegroSqsFeedsContainer container = newContainer(fetcher, scheduler, 60000);
+      
+      scheduler.runNext();
+      
+      // The current snapshot is kept and the refresh is retried.
+      assertEquals("endpoint1", container.getEndpoint());
+      assertEquals(AllegroSqsFeedsContainer.RETRY_DELAY_MILLIS, (long)scheduler.delays_.get(1));
+      
+      scheduler.runNext();
+      
+      assertEquals("endpoint2", container.getEndpoint());
+      assertEquals(3, fetcher.calls_);
+    }
+    finally
+    {
+      scheduler.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testExpiredSnapshotRefreshedInCaller()
+  {
+    ManualScheduler scheduler = new ManualScheduler();
+    Fetcher         fetcher   = new Fetcher().then("endpoint1", -1000).then("endpoint2", TEN_MINUTES);
+    
+    try
+    {
+      AllegroSqsFeedsContainer container = newContainer(fetcher, scheduler, 60000);
+      
+      assertTrue(container.isExpired());
+      
+      container.refresh();
+      
+      assertEquals("endpoint2", container.getEndpoint());
+      assertEquals(2, fetcher.calls_);
+    }
+    finally
+    {
+      scheduler.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testIdleContainerStopsRefreshing() throws InterruptedException
+  {
+    ManualScheduler scheduler = new ManualScheduler();
+    Fetcher         fetcher   = new Fetcher().then("endpoint1", TEN_MINUTES).then("endpoint2", TEN_MINUTES);
+    
+    try
+    {
+      AllegroSqsFeedsContainer container = newContainer(fetcher, scheduler, 10);
+      
+      Thread.sleep(50);
+      scheduler.runNext();
+      
+      // No fetch is made and nothing further is scheduled.
+      assertEquals(1, fetcher.calls_);
+      assertTrue(scheduler.tasks_.isEmpty());
+      
+      // The next use restarts background refresh.
+      container.refresh();
+      
+      assertEquals(1, scheduler.tasks_.size());
+      
+      scheduler.runNext();
+      
+      assertEquals("endpoint2", container.getEndpoint());
+    }
+    finally
+    {
+      scheduler.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testClosedContainerStopsRefreshing()
+  {
+    ManualScheduler scheduler = new ManualScheduler();
+    Fetcher         fetcher   = new Fetcher().then("endpoint1", TEN_MINUTES);
+    
+    try
+    {
+      AllegroSqsFeedsContainer container = newContainer(fetcher, scheduler, 60000);
+      
+      container.close();
+      scheduler.runNext();
+      container.refresh();
+      
+      assertEquals(1, fetcher.calls_);
+      assertTrue(scheduler.tasks_.isEmpty());
+    }
+    finally
+    {
+      scheduler.shutdownNow();
+    }
+  }
+}
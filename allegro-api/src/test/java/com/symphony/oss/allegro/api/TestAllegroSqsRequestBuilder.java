@@ -0,0 +1,98 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.symphony.oss.allegro.api.AllegroSqsRequestBuilder.BatchEntryFailure;
+
+@SuppressWarnings("javadoc")
+public class TestAllegroSqsRequestBuilder
+{
+  private static final List<String> RECEIPT_HANDLES = Arrays.asList("r1", "r2", "r3");
+  
+  @Test
+  public void testAllSucceeded()
+  {
+    String body = "<DeleteMessageBatchResponse><DeleteMessageBatchResult>"
+        + "<DeleteMessageBatchResultEntry><Id>1</Id></DeleteMessageBatchResultEntry>"
+        + "<DeleteMessageBatchResultEntry><Id>2</Id></DeleteMessageBatchResultEntry>"
+        + "<DeleteMessageBatchResultEntry><Id>3</Id></DeleteMessageBatchResultEntry>"
+        + "</DeleteMessageBatchResult></DeleteMessageBatchResponse>";
+    
+    assertTrue(AllegroSqsRequestBuilder.parseBatchFailures(body, RECEIPT_HANDLES).isEmpty());
+  }
+  
+  @Test
+  public void testFailedEntries()
+  {
+    String body = "<ChangeMessageVisibilityBatchResponse>\n"
+        + "  <ChangeMessageVisibilityBatchResult>\n"
+        + "    <ChangeMessageVisibilityBatchResultEntry><Id>1</Id></ChangeMessageVisibilityBatchResultEntry>\n"
+        + "    <BatchResultErrorEntry>\n"
+        + "      <Id>3</Id>\n"
+        + "      <Code>ReceiptHandleIsInvalid</Code>\n"
+        + "      <Message>The receipt handle has expired</Message>\n"
+        + "      <SenderFault>true</SenderFault>\n"
+        + "    </BatchResultErrorEntry>\n"
+        + "    <BatchResultErrorEntry>\n"
+        + "      <Id>2</Id>\n"
+        + "      <Code>InternalError</Code>\n"
+        + "      <SenderFault>false</SenderFault>\n"
+        + "    </BatchResultErrorEntry>\n"
+        + "  </ChangeMessageVisibilityBatchResult>\n"
+        + "</ChangeMessageVisibilityBatchResponse>";
+    
+    List<BatchEntryFailure> failures = AllegroSqsRequestBuilder.parseBatchFailures(body, RECEIPT_HANDLES);
+    
+    assertEquals(2, failures.size());
+    
+    assertEquals("r3", failures.get(0).getReceiptHandle());
+    assertEquals("ReceiptHandleIsInvalid", failures.get(0).getCode());
+    assertTrue(failures.get(0).isSenderFault());
+    
+    assertEquals("r2", failures.get(1).getReceiptHandle());
+    assertEquals("InternalError", failures.get(1).getCode());
+    assertFalse(failures.get(1).isSenderFault());
+  }
+  
+  @Test
+  public void testUnrecognisedEntriesIgnored()
+  {
+    String body = "<BatchResultErrorEntry><Id>4</Id><SenderFault>false</SenderFault></BatchResultErrorEntry>"
+        + "<BatchResultErrorEntry><Id>x</Id></BatchResultErrorEntry>"
+        + "<BatchResultErrorEntry><Code>InternalError</Code></BatchResultErrorEntry>"
+        + "<BatchResultErrorEntry><Id>1</Id></BatchResultErrorEntry>";
+    
+    List<BatchEntryFailure> failures = AllegroSqsRequestBuilder.parseBatchFailures(body, RECEIPT_HANDLES);
+    
+    assertEquals(1, failures.size());
+    assertEquals("r1", failures.get(0).getReceiptHandle());
+    assertNull(failures.get(0).getCode());
+    assertFalse(failures.get(0).isSenderFault());
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests of ConcurrentFetcher.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestConcurrentFetcher
+{
+  private static List<Integer> queries(int count)
+  {
+    List<Integer> queries = new ArrayList<>(count);
+    
+    for(int i=0 ; i<count ; i++)
+      queries.add(i);
+    
+    return queries;
+  }
+  
+  private static ThreadPoolExecutor newExecutor()
+  {
+    return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>());
+  }
+  
+  @Test
+  public void testSerialFetchIsInOrderOnCallingThread()
+  {
+    ThreadPoolExecutor executor = newExecutor();
+    
+    try
+    {
+      List<Integer> fetched = new ArrayList<>();
+      Set<Thread>   threads = new HashSet<>();
+      
+      new ConcurrentFetcher(executor).fetch(queries(20), 1, (query) ->
+      {
+        fetched.add(query);
+        threads.add(Thread.currentThread());
+      }, String::valueOf);
+      
+      assertEquals(queries(20), fetched);
+      assertEquals(Collections.singleton(Thread.currentThread()), threads);
+      assertEquals(0, executor.getTaskCount());
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+  
+  @Test
+  public void testParallelFetchFetchesEachQueryOnce()
+  {
+    ThreadPoolExecutor executor = newExecutor();
+    
+    try
+    {
+      List<Integer> fetched = Collections.synchronizedList(new ArrayList<>());
+      
+      new ConcurrentFetcher(executor).fetch(queries(100), 4, fetched::add, String::valueOf);
+      
+      List<Integer> sorted = new ArrayList<>(fetched);
+      
+      Collections.sort(sorted);
+      
+      assertEquals(queries(100), sorted);
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+  
+  @Test
+  public void testParallelismBound() throws InterruptedException
+  {
+    ThreadPoolExecutor executor = newExecutor();
+    
+    try
+    {
+      AtomicInteger  active    = new AtomicInteger();
+      AtomicInteger  maxActive = new AtomicInteger();
+      CountDownLatch allActive = new CountDownLatch(3);
+      Set<Thread>    threads   = Collections.synchronizedSet(new HashSet<>());
+      
+      new ConcurrentFetcher(executor).fetch(queries(30), 3, (query) ->
+      {
+        int count = active.incrementAndGet();
+        
+        maxActive.accumulateAndGet(count, Math::max);
+        threads.add(Thread.currentThread());
+        
+        // Hold the first fetches until the bound is reached, so that we know it can be.
+        allActive.countDown();
+        
+        try
+        {
+          allActive.await(5, TimeUnit.SECONDS);
+          Thread.sleep(1);
+        }
+        catch(InterruptedException e)
+        {
+          throw new IllegalStateException(e);
+        }
+        finally
+        {
+          active.decrementAndGet();
+        }
+      }, String::valueOf);
+      
+      assertEquals(3, maxActive.get());
+      assertEquals(3, threads.size());
+      assertTrue(threads.contains(Thread.currentThread()));
+      assertEquals(2, executor.getTaskCount());
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+  
+  @Test
+  public void testFewerQueriesThanParallelism()
+  {
+    ThreadPoolExecutor executor = newExecutor();
+    
+    try
+    {
+      List<Integer> fetched = Collections.synchronizedList(new ArrayList<>());
+      
+      new ConcurrentFetcher(executor).fetch(queries(2), 10, fetched::add, String::valueOf);
+      
+      assertEquals(2, fetched.size());
+      assertEquals(1, executor.getTaskCount());
+      
+      new ConcurrentFetcher(executor).fetch(queries(0), 10, fetched::add, String::valueOf);
+      
+      assertEquals(2, fetched.size());
+      assertEquals(1, executor.getTaskCount());
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+  
+  @Test
+  public void testFailureDoesNotStopOtherFetches()
+  {
+    ThreadPoolExecutor executor = newExecutor();
+    
+    try
+    {
+      List<Integer>    fetched = Collections.synchronizedList(new ArrayList<>());
+      RuntimeException failure = new IllegalStateException("Failed");
+      
+      try
+      {
+        new ConcurrentFetcher(executor).fetch(queries(20), 1, (query) ->
+        {
+          if(query == 5)
+            throw failure;
+          
+          fetched.add(query);
+        }, String::valueOf);
+        
+        fail("Expected exception");
+      }
+      catch(IllegalStateException e)
+      {
+        assertSame(failure, e);
+      }
+      
+      List<Integer> expected = queries(20);
+      
+      expected.remove(Integer.valueOf(5));
+      
+      assertEquals(expected, fetched);
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+  
+  @Test
+  public void testAllFailuresAreReported()
+  {
+    ThreadPoolExecutor executor = newExecutor();
+    
+    try
+    {
+      AtomicInteger fetched = new AtomicInteger();
+      
+      try
+      {
+        new ConcurrentFetcher(executor).fetch(queries(20), 4, (query) ->
+        {
+          fetched.incrementAndGet();
+          
+          if(query % 5 == 0)
+            throw new IllegalArgumentException("Failed " + query);
+        }, String::valueOf);
+        
+        fail("Expected exception");
+      }
+      catch(IllegalArgumentException e)
+      {
+        // The first failure is thrown, the others are attached to it.
+        assertEquals(3, e.getSuppressed().length);
+      }
+      
+      assertEquals(20, fetched.get());
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+}
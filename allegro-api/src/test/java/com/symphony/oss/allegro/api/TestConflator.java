@@ -0,0 +1,266 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import com.symphony.oss.commons.hash.Hash;
+import com.symphony.oss.commons.hash.HashProvider;
+
+/**
+ * Tests of Conflator.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestConflator
+{
+  private static final Hash    OBJECT_1 = HashProvider.getHashOf("object1".getBytes(StandardCharsets.UTF_8));
+  private static final Hash    OBJECT_2 = HashProvider.getHashOf("object2".getBytes(StandardCharsets.UTF_8));
+  private static final Instant CREATED  = Instant.parse("2021-01-01T00:00:00Z");
+  
+  private final List<String> dispatched_ = new CopyOnWriteArrayList<>();
+  private final List<String> superseded_ = new CopyOnWriteArrayList<>();
+  
+  class Message implements Conflator.IConflatable
+  {
+    private final String  name_;
+    private final Instant createdDate_;
+    
+    Message(String name, Instant createdDate)
+    {
+      name_        = name;
+      createdDate_ = createdDate;
+    }
+
+    @Override
+    public Instant getCreatedDate()
+    {
+      return createdDate_;
+    }
+
+    @Override
+    public String getMessageId()
+    {
+      return name_;
+    }
+
+    @Override
+    public void run()
+    {
+      dispatch();
+    }
+
+    @Override
+    public void extend()
+    {
+    }
+
+    @Override
+    public void dispatch()
+    {
+      dispatched_.add(name_);
+    }
+
+    @Override
+    public void supersede()
+    {
+      superseded_.add(name_);
+    }
+  }
+  
+  @Test
+  public void testNewerSupersedesHeld()
+  {
+    Conflator conflator = new Conflator(60000);
+    
+    try
+    {
+      conflator.offer(OBJECT_1, new Message("v1", CREATED));
+      conflator.offer(OBJECT_1, new Message("v2", CREATED.plusSeconds(1)));
+      conflator.offer(OBJECT_2, new Message("other", CREATED));
+      
+      assertEquals(Arrays.asList("v1"), superseded_);
+      assertEquals(0, dispatched_.size());
+      
+      conflator.flush();
+      
+      assertEquals(2, dispatched_.size());
+      assertTrue(dispatched_.containsAll(Arrays.asList("v2", "other")));
+      assertEquals(3, conflator.getOfferedCount());
+      assertEquals(1, conflator.getSupersededCount());
+    }
+    finally
+    {
+      conflator.close();
+    }
+  }
+  
+  @Test
+  public void testOlderArrivingLaterIsSuperseded()
+  {
+    Conflator conflator = new Conflator(60000);
+    
+    try
+    {
+      conflator.offer(OBJECT_1, new Message("v2", CREATED.plusSeconds(1)));
+      conflator.offer(OBJECT_1, new Message("v1", CREATED));
+      
+      assertEquals(Arrays.asList("v1"), superseded_);
+      
+      conflator.flush();
+      
+      assertEquals(Arrays.asList("v2"), dispatched_);
+    }
+    finally
+    {
+      conflator.close();
+    }
+  }
+  
+  @Test
+  public void testUnknownVersionsTakenInArrivalOrder()
+  {
+    Conflator conflator = new Conflator(60000);
+    
+    try
+    {
+      conflator.offer(OBJECT_1, new Message("first", CREATED.plusSeconds(1)));
+      conflator.offer(OBJECT_1, new Message("second", null));
+      
+      assertEquals(Arrays.asList("first"), superseded_);
+      
+      conflator.flush();
+      
+      assertEquals(Arrays.asList("second"), dispatched_);
+    }
+    finally
+    {
+      conflator.close();
+    }
+  }
+  
+  @Test
+  public void testReleasedAfterWindow() throws InterruptedException
+  {
+    Conflator conflator = new Conflator(50);
+    
+    try
+    {
+      conflator.offer(OBJECT_1, new Message("v1", CREATED));
+      
+      assertEquals(0, conflator.release().size());
+      
+      Thread.sleep(100);
+      
+      List<Conflator.IConflatable> released = conflator.release();
+      
+      // The conflator does not dispatch the message itself, the caller passes it to the handler path.
+      assertEquals(1, released.size());
+      assertEquals("v1", released.get(0).getMessageId());
+      assertEquals(0, dispatched_.size());
+      assertEquals(0, conflator.release().size());
+      
+      // The window has closed, so this is held for a new one.
+      conflator.offer(OBJECT_1, new Message("v2", CREATED.plusSeconds(1)));
+      
+      assertEquals(0, superseded_.size());
+    }
+    finally
+    {
+      conflator.close();
+    }
+    
+    assertEquals(Arrays.asList("v2"), dispatched_);
+  }
+  
+  @Test
+  public void testReleasedInWindowOrder() throws InterruptedException
+  {
+    Conflator conflator = new Conflator(50);
+    
+    try
+    {
+      conflator.offer(OBJECT_1, new Message("first", CREATED));
+      Thread.sleep(10);
+      conflator.offer(OBJECT_2, new Message("second", CREATED));
+      
+      // Superseding the held message does not extend its window or change its place.
+      conflator.offer(OBJECT_1, new Message("first-updated", CREATED.plusSeconds(1)));
+      
+      Thread.sleep(100);
+      
+      List<Conflator.IConflatable> released = conflator.release();
+      
+      assertEquals(2, released.size());
+      assertEquals("first-updated", released.get(0).getMessageId());
+      assertEquals("second", released.get(1).getMessageId());
+    }
+    finally
+    {
+      conflator.close();
+    }
+  }
+  
+  @Test
+  public void testWaitTime() throws InterruptedException
+  {
+    Conflator conflator = new Conflator(2500);
+    
+    try
+    {
+      assertEquals(20, conflator.getWaitTimeSeconds(20));
+      
+      conflator.offer(OBJECT_1, new Message("v1", CREATED));
+      
+      assertEquals(3, conflator.getWaitTimeSeconds(20));
+      assertEquals(1, conflator.getWaitTimeSeconds(1));
+    }
+    finally
+    {
+      conflator.close();
+    }
+    
+    assertEquals(20, conflator.getWaitTimeSeconds(20));
+  }
+  
+  @Test
+  public void testClose()
+  {
+    Conflator conflator = new Conflator(60000);
+    
+    conflator.offer(OBJECT_1, new Message("held", CREATED));
+    conflator.close();
+    
+    assertEquals(Arrays.asList("held"), dispatched_);
+    
+    conflator.offer(OBJECT_1, new Message("late", CREATED));
+    
+    assertEquals(Arrays.asList("held", "late"), dispatched_);
+    assertEquals(0, superseded_.size());
+  }
+}
@@ -19,12 +19,15 @@
 package com.symphony.oss.allegro.api;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
+import java.lang.reflect.Proxy;
 import java.util.LinkedList;
 import java.util.List;
 
 import org.junit.Test;
 
+import com.symphony.oss.commons.immutable.ImmutableByteArray;
 import com.symphony.oss.fugue.pipeline.FatalConsumerException;
 import com.symphony.oss.fugue.pipeline.IConsumer;
 import com.symphony.oss.fugue.pipeline.ISimpleRetryableConsumer;
@@ -35,6 +38,8 @@ import com.symphony.oss.models.allegro.canon.facade.IReceivedChatMessage;
 import com.symphony.oss.models.chat.canon.ILiveCurrentMessage;
 import com.symphony.oss.models.core.canon.facade.IApplicationRecord;
 import com.symphony.oss.models.core.canon.facade.IEncryptedApplicationRecord;
+import com.symphony.oss.models.crypto.canon.EncryptedData;
+import com.symphony.oss.models.object.canon.facade.IApplicationObjectHeader;
 import com.symphony.oss.models.object.canon.facade.IApplicationObjectPayload;
 import com.symphony.oss.models.object.canon.facade.IStoredApplicationObject;
 
@@ -112,6 +117,126 @@ public class TestConsumerManager
     }
   };
   
+  interface Header1 extends IApplicationObjectHeader {}
+  interface Header2 extends IApplicationObjectHeader {}
+  interface PayloadA extends IApplicationObjectPayload {}
+  
+  private static final EncryptedData ENCRYPTED_PAYLOAD = EncryptedData.newBuilder().build(ImmutableByteArray.newInstance(new byte[] {1}));
+  
+  private static <T> T newProxy(Class<T> type)
+  {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) ->
+    {
+      switch(method.getName())
+      {
+        case "hashCode": return System.identityHashCode(proxy);
+        case "equals":   return proxy == args[0];
+        case "toString": return type.getSimpleName();
+        default:         return null;
+      }
+    }));
+  }
+  
+  /**
+   * A stored object with the given header whose payload decrypts to the given payload.
+   */
+  private static IStoredApplicationObject newStoredObject(IApplicationObjectHeader header, IApplicationObjectPayload payload)
+  {
+    return (IStoredApplicationObject)Proxy.newProxyInstance(IStoredApplicationObject.class.getClassLoader(),
+        new Class<?>[] { IStoredApplicationObject.class, Decryptable.class }, (proxy, method, args) ->
+    {
+      switch(method.getName())
+      {
+        case "getHeader":           return header;
+        case "getEncryptedPayload": return ENCRYPTED_PAYLOAD;
+        case "getTestPayload":      return payload;
+        case "hashCode":            return System.identityHashCode(proxy);
+        case "equals":              return proxy == args[0];
+        case "toString":            return "StoredObject(" + header + ")";
+        default:                    return null;
+      }
+    });
+  }
+  
+  interface Decryptable
+  {
+    IApplicationObjectPayload getTestPayload();
+  }
+  
+  private static final IAllegroDecryptor PAYLOAD_OPENER = new IAllegroDecryptor()
+  {
+    @Override
+    public IReceivedChatMessage decrypt(ILiveCurrentMessage message)
+    {
+      throw new RuntimeException("Not implemented");
+    }
+
+    @Override
+    public IApplicationObjectPayload decryptObject(IStoredApplicationObject storedApplicationObject)
+    {
+      return ((Decryptable)storedApplicationObject).getTestPayload();
+    }
+
+    @Override
+    public IApplicationRecord decrypt(IEncryptedApplicationRecord encryptedApplicationRecord)
+    {
+      throw new RuntimeException("Not implemented");
+    }
+  };
+  
+  @Test
+  public void testHeaderTypeFiltersDispatch() throws RetryableConsumerException, FatalConsumerException
+  {
+    List<Object> header1Payloads = new LinkedList<>();
+    List<Object> header2Payloads = new LinkedList<>();
+    List<Object> defaultObjects  = new LinkedList<>();
+    
+    ConsumerManager consumerManager = new ConsumerManager.Builder()
+        .withConsumer(Header1.class, PayloadA.class, (ISimpleRetryableConsumer<PayloadA>)(payload, trace) -> header1Payloads.add(payload))
+        .withConsumer(Header2.class, IApplicationObjectPayload.class, (ISimpleRetryableConsumer<IApplicationObjectPayload>)(payload, trace) -> header2Payloads.add(payload))
+        .withDefaultConsumer((ISimpleRetryableConsumer<Object>)(item, trace) -> defaultObjects.add(item))
+        .build();
+    
+    PayloadA payload = newProxy(PayloadA.class);
+    
+    // The Header2 object is decrypted, because of the Header2 consumer, but the more specific PayloadA consumer must not see it.
+    consumerManager.consume(newStoredObject(newProxy(Header2.class), payload), NoOpTraceContext.INSTANCE, PAYLOAD_OPENER);
+    
+    assertEquals(0, header1Payloads.size());
+    assertEquals(1, header2Payloads.size());
+    assertSame(payload, header2Payloads.get(0));
+    
+    consumerManager.consume(newStoredObject(newProxy(Header1.class), payload), NoOpTraceContext.INSTANCE, PAYLOAD_OPENER);
+    
+    assertEquals(1, header1Payloads.size());
+    assertSame(payload, header1Payloads.get(0));
+    assertEquals(1, header2Payloads.size());
+    assertEquals(0, defaultObjects.size());
+    assertEquals(2, consumerManager.getDecryptCount());
+  }
+  
+  @Test
+  public void testUnmatchedHeaderGoesToDefault() throws RetryableConsumerException, FatalConsumerException
+  {
+    List<Object> header1Payloads = new LinkedList<>();
+    List<Object> defaultObjects  = new LinkedList<>();
+    
+    ConsumerManager consumerManager = new ConsumerManager.Builder()
+        .withConsumer(Header1.class, PayloadA.class, (ISimpleRetryableConsumer<PayloadA>)(payload, trace) -> header1Payloads.add(payload))
+        .withDefaultConsumer((ISimpleRetryableConsumer<Object>)(item, trace) -> defaultObjects.add(item))
+        .build();
+    
+    IStoredApplicationObject storedObject = newStoredObject(newProxy(Header2.class), newProxy(PayloadA.class));
+    
+    consumerManager.consume(storedObject, NoOpTraceContext.INSTANCE, PAYLOAD_OPENER);
+    
+    assertEquals(0, header1Payloads.size());
+    assertEquals(1, defaultObjects.size());
+    assertSame(storedObject, defaultObjects.get(0));
+    assertEquals(0, consumerManager.getDecryptCount());
+    assertEquals(1, consumerManager.getDecryptsAvoidedCount());
+  }
+  
   static class ConsumerManagerTester
   {
     ConsumerManager.Builder builder;
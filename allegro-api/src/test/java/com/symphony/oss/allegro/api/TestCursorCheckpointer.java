@@ -0,0 +1,156 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests of CursorCheckpointer and FileCursorCheckpointStore.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestCursorCheckpointer
+{
+  private static class Store implements ICursorCheckpointStore
+  {
+    final Map<String, String> checkpoints_ = new HashMap<>();
+    int                       saveCount_;
+    
+    @Override
+    public String load(String checkpointId)
+    {
+      return checkpoints_.get(checkpointId);
+    }
+
+    @Override
+    public void save(String checkpointId, String after)
+    {
+      saveCount_++;
+      checkpoints_.put(checkpointId, after);
+    }
+
+    @Override
+    public void clear(String checkpointId)
+    {
+      checkpoints_.remove(checkpointId);
+    }
+  }
+  
+  @Test
+  public void testResume()
+  {
+    Store store = new Store();
+    
+    assertEquals("start", new CursorCheckpointer(store, "q", 0).getResumeAfter("start"));
+    
+    store.checkpoints_.put("q", "saved");
+    
+    assertEquals("saved", new CursorCheckpointer(store, "q", 0).getResumeAfter("start"));
+  }
+  
+  @Test
+  public void testOutOfOrderCompletion()
+  {
+    Store                   store        = new Store();
+    CursorCheckpointer      checkpointer = new CursorCheckpointer(store, "q", 0);
+    CursorCheckpointer.Page page1        = checkpointer.pageStarted("a1", 2);
+    CursorCheckpointer.Page page2        = checkpointer.pageStarted("a2", 1);
+    
+    checkpointer.itemDone(page2);
+    checkpointer.itemDone(page1);
+    
+    // page1 is still in flight so neither page may be committed.
+    assertNull(store.load("q"));
+    
+    checkpointer.itemDone(page1);
+    
+    assertEquals("a2", store.load("q"));
+  }
+  
+  @Test
+  public void testInterval()
+  {
+    Store              store        = new Store();
+    CursorCheckpointer checkpointer = new CursorCheckpointer(store, "q", 60000);
+    
+    checkpointer.pageConsumed("a1");
+    checkpointer.pageConsumed("a2");
+    
+    assertEquals(0, store.saveCount_);
+    
+    checkpointer.finish();
+    
+    assertEquals(1, store.saveCount_);
+    assertEquals("a2", store.load("q"));
+  }
+  
+  @Test
+  public void testCompletionClears()
+  {
+    Store              store        = new Store();
+    CursorCheckpointer checkpointer = new CursorCheckpointer(store, "q", 0);
+    
+    checkpointer.pageConsumed("a1");
+    
+    assertEquals("a1", store.load("q"));
+    
+    checkpointer.pageConsumed(null);
+    checkpointer.finish();
+    
+    assertNull(store.load("q"));
+  }
+  
+  @Test
+  public void testFileStore() throws IOException
+  {
+    File directory = Files.createTempDirectory("checkpoints").toFile();
+    
+    try
+    {
+      FileCursorCheckpointStore store = new FileCursorCheckpointStore(directory);
+      
+      assertNull(store.load("partition/1"));
+      
+      store.save("partition/1", "cursor1");
+      store.save("partition/1", "cursor2");
+      
+      assertEquals("cursor2", new FileCursorCheckpointStore(directory).load("partition/1"));
+      
+      store.clear("partition/1");
+      
+      assertNull(store.load("partition/1"));
+    }
+    finally
+    {
+      for(File file : directory.listFiles())
+        file.delete();
+      
+      directory.delete();
+    }
+  }
+}
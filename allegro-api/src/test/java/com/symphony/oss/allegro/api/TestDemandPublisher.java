@@ -0,0 +1,235 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Tests of DemandPublisher against the Reactive Streams rules which matter for demand driven paging.
+ * 
+ * The full set of rules is verified by TestDemandPublisherTck.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestDemandPublisher
+{
+  private static class Fetcher implements DemandPublisher.IBatchFetcher<Integer>
+  {
+    final List<Integer> fetchSizes_ = new ArrayList<>();
+    final int           total_;
+    int                 next_;
+    int                 acked_;
+    int                 unacked_;
+    
+    Fetcher(int total)
+    {
+      total_ = total;
+    }
+
+    @Override
+    public List<Integer> fetch(int maxItems)
+    {
+      fetchSizes_.add(maxItems);
+      
+      List<Integer> batch = new ArrayList<>();
+      
+      while(batch.size() < maxItems && batch.size() < 5 && next_ < total_)
+        batch.add(next_++);
+      
+      return batch;
+    }
+
+    @Override
+    public boolean isExhausted()
+    {
+      return next_ >= total_;
+    }
+
+    @Override
+    public void batchDone(List<Integer> batch, int deliveredCount)
+    {
+      acked_   += deliveredCount;
+      unacked_ += batch.size() - deliveredCount;
+    }
+  }
+  
+  private static class TestSubscriber implements Subscriber<Integer>
+  {
+    final List<Integer> items_ = new ArrayList<>();
+    Subscription        subscription_;
+    Throwable           error_;
+    boolean             complete_;
+    
+    @Override
+    public void onSubscribe(Subscription subscription)
+    {
+      subscription_ = subscription;
+    }
+
+    @Override
+    public void onNext(Integer item)
+    {
+      items_.add(item);
+    }
+
+    @Override
+    public void onError(Throwable error)
+    {
+      error_ = error;
+    }
+
+    @Override
+    public void onComplete()
+    {
+      complete_ = true;
+    }
+  }
+  
+  private static TestSubscriber subscribe(Fetcher fetcher)
+  {
+    TestSubscriber subscriber = new TestSubscriber();
+    
+    new DemandPublisher<Integer>(() -> fetcher, Runnable::run).subscribe(subscriber);
+    
+    return subscriber;
+  }
+  
+  @Test
+  public void testNothingFetchedWithoutDemand()
+  {
+    Fetcher fetcher = new Fetcher(20);
+    
+    subscribe(fetcher);
+    
+    assertTrue(fetcher.fetchSizes_.isEmpty());
+  }
+  
+  @Test
+  public void testDemandLimitsFetchSize()
+  {
+    Fetcher        fetcher    = new Fetcher(20);
+    TestSubscriber subscriber = subscribe(fetcher);
+    
+    subscriber.subscription_.request(3);
+    
+    assertEquals(3, subscriber.items_.size());
+    assertEquals(1, fetcher.fetchSizes_.size());
+    assertEquals(3, (int)fetcher.fetchSizes_.get(0));
+    
+    subscriber.subscription_.request(1);
+    subscriber.subscription_.request(1);
+    
+    assertEquals(5, subscriber.items_.size());
+    assertEquals("[3, 1, 1]", fetcher.fetchSizes_.toString());
+    assertFalse(subscriber.complete_);
+  }
+  
+  @Test
+  public void testCompletes()
+  {
+    Fetcher        fetcher    = new Fetcher(12);
+    TestSubscriber subscriber = subscribe(fetcher);
+    
+    subscriber.subscription_.request(Long.MAX_VALUE);
+    
+    assertEquals(12, subscriber.items_.size());
+    assertEquals(12, fetcher.acked_);
+    assertTrue(subscriber.complete_);
+  }
+  
+  @Test
+  public void testCancelLeavesUndeliveredItemsUnacknowledged()
+  {
+    Fetcher        fetcher    = new Fetcher(20);
+    TestSubscriber subscriber = new TestSubscriber()
+    {
+      @Override
+      public void onNext(Integer item)
+      {
+        super.onNext(item);
+        
+        if(items_.size() == 2)
+          subscription_.cancel();
+      }
+    };
+    
+    new DemandPublisher<Integer>(() -> fetcher, Runnable::run).subscribe(subscriber);
+    subscriber.subscription_.request(10);
+    
+    assertEquals(2, subscriber.items_.size());
+    assertEquals(2, fetcher.acked_);
+    assertEquals(3, fetcher.unacked_);
+    
+    subscriber.subscription_.request(10);
+    
+    assertEquals(1, fetcher.fetchSizes_.size());
+    assertFalse(subscriber.complete_);
+  }
+  
+  @Test
+  public void testFailedAcknowledgementSignalsError()
+  {
+    IllegalStateException failure = new IllegalStateException("Ack failed");
+    Fetcher               fetcher = new Fetcher(20)
+    {
+      @Override
+      public void batchDone(List<Integer> batch, int deliveredCount)
+      {
+        throw failure;
+      }
+    };
+    TestSubscriber subscriber = subscribe(fetcher);
+    
+    subscriber.subscription_.request(10);
+    
+    assertEquals(5, subscriber.items_.size());
+    assertEquals(failure, subscriber.error_);
+    assertFalse(subscriber.complete_);
+    
+    subscriber.subscription_.request(10);
+    
+    assertEquals(5, subscriber.items_.size());
+    assertEquals(1, fetcher.fetchSizes_.size());
+  }
+  
+  @Test
+  public void testNonPositiveRequestSignalsError()
+  {
+    TestSubscriber subscriber = subscribe(new Fetcher(20));
+    
+    subscriber.subscription_.request(0);
+    
+    assertTrue(subscriber.error_ instanceof IllegalArgumentException);
+  }
+  
+  @Test(expected=NullPointerException.class)
+  public void testNullSubscriber()
+  {
+    new DemandPublisher<Integer>(() -> new Fetcher(1), Runnable::run).subscribe(null);
+  }
+}
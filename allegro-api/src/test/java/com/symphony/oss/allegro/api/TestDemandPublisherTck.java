@@ -0,0 +1,98 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+
+import com.symphony.oss.commons.concurrent.NamedThreadFactory;
+
+/**
+ * Verification of DemandPublisher by the Reactive Streams TCK.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestDemandPublisherTck extends PublisherVerification<Long>
+{
+  private static final long     DEFAULT_TIMEOUT_MILLIS = 500;
+  private static final int      MAX_BATCH_SIZE         = 10;
+  
+  private final ExecutorService executor_              = Executors.newCachedThreadPool(new NamedThreadFactory("DemandPublisherTck", true));
+  
+  public TestDemandPublisherTck()
+  {
+    super(new TestEnvironment(DEFAULT_TIMEOUT_MILLIS));
+  }
+  
+  private static class Fetcher implements DemandPublisher.IBatchFetcher<Long>
+  {
+    private final long elements_;
+    private long       next_;
+    
+    Fetcher(long elements)
+    {
+      elements_ = elements;
+    }
+
+    @Override
+    public List<Long> fetch(int maxItems)
+    {
+      List<Long> batch = new ArrayList<>();
+      
+      while(batch.size() < maxItems && batch.size() < MAX_BATCH_SIZE && next_ < elements_)
+        batch.add(next_++);
+      
+      return batch;
+    }
+
+    @Override
+    public boolean isExhausted()
+    {
+      return next_ >= elements_;
+    }
+  }
+  
+  @AfterClass
+  public void shutdown()
+  {
+    executor_.shutdownNow();
+  }
+
+  @Override
+  public Publisher<Long> createPublisher(long elements)
+  {
+    return new DemandPublisher<Long>(() -> new Fetcher(elements), executor_);
+  }
+
+  @Override
+  public Publisher<Long> createFailedPublisher()
+  {
+    return new DemandPublisher<Long>(() ->
+    {
+      throw new IllegalStateException("Failed to start the scan");
+    }, executor_);
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.symphony.oss.commons.hash.Hash;
+import com.symphony.oss.commons.hash.HashProvider;
+
+@SuppressWarnings("javadoc")
+public class TestDuplicateFilter
+{
+  private static Hash hash(int i)
+  {
+    return HashProvider.getHashOf(("object" + i).getBytes(StandardCharsets.UTF_8));
+  }
+  
+  @Test
+  public void testDuplicate()
+  {
+    DuplicateFilter filter = new DuplicateFilter(100, 60000);
+    
+    assertFalse(filter.isDuplicate(hash(1)));
+    
+    filter.processed(hash(1));
+    
+    assertTrue(filter.isDuplicate(hash(1)));
+    assertFalse(filter.isDuplicate(hash(2)));
+    assertEquals(3, filter.getCheckCount());
+    assertEquals(1, filter.getDuplicateCount());
+  }
+  
+  @Test
+  public void testWindowExpiry() throws InterruptedException
+  {
+    DuplicateFilter filter = new DuplicateFilter(100, 50);
+    
+    filter.processed(hash(1));
+    
+    assertTrue(filter.isDuplicate(hash(1)));
+    
+    Thread.sleep(100);
+    
+    // Still in the Bloom filter, but the exact map says it has expired.
+    assertTrue(filter.mightContain(hash(1)));
+    assertFalse(filter.isDuplicate(hash(1)));
+  }
+  
+  @Test
+  public void testMaxEntriesEviction()
+  {
+    DuplicateFilter filter = new DuplicateFilter(3, 60000);
+    
+    for(int i=0 ; i<4 ; i++)
+      filter.processed(hash(i));
+    
+    assertFalse(filter.isDuplicate(hash(0)));
+    
+    for(int i=1 ; i<4 ; i++)
+      assertTrue(filter.isDuplicate(hash(i)));
+    
+    // Processing again moves an entry to the end of the eviction order.
+    filter.processed(hash(1));
+    filter.processed(hash(4));
+    
+    assertTrue(filter.isDuplicate(hash(1)));
+    assertFalse(filter.isDuplicate(hash(2)));
+    assertTrue(filter.isDuplicate(hash(3)));
+    assertTrue(filter.isDuplicate(hash(4)));
+  }
+  
+  @Test
+  public void testGenerationRotatedWhenFull()
+  {
+    DuplicateFilter filter = new DuplicateFilter(2, 60000);
+    
+    filter.processed(hash(0));
+    filter.processed(hash(1));
+    
+    // The first generation is full, this starts the second.
+    filter.processed(hash(2));
+    
+    assertTrue(filter.mightContain(hash(0)));
+    assertTrue(filter.mightContain(hash(1)));
+    assertTrue(filter.mightContain(hash(2)));
+    
+    filter.processed(hash(3));
+    
+    // This starts the third and the first is discarded.
+    filter.processed(hash(4));
+    
+    assertFalse(filter.mightContain(hash(0)));
+    assertFalse(filter.mightContain(hash(1)));
+    
+    for(int i=2 ; i<5 ; i++)
+      assertTrue(filter.mightContain(hash(i)));
+  }
+  
+  @Test
+  public void testGenerationRotatedEachWindow() throws InterruptedException
+  {
+    DuplicateFilter filter = new DuplicateFilter(1000, 50);
+    
+    filter.processed(hash(0));
+    
+    Thread.sleep(100);
+    filter.processed(hash(1));
+    
+    assertTrue(filter.mightContain(hash(0)));
+    
+    Thread.sleep(100);
+    filter.processed(hash(2));
+    
+    assertFalse(filter.mightContain(hash(0)));
+    assertTrue(filter.mightContain(hash(1)));
+    assertTrue(filter.isDuplicate(hash(2)));
+    assertFalse(filter.isDuplicate(hash(1)));
+  }
+  
+  @Test
+  public void testFiltersAreIndependentButShareCounters()
+  {
+    AtomicLong      checkCount     = new AtomicLong();
+    AtomicLong      duplicateCount = new AtomicLong();
+    DuplicateFilter feed1          = new DuplicateFilter(100, 60000, checkCount, duplicateCount);
+    DuplicateFilter feed2          = new DuplicateFilter(100, 60000, checkCount, duplicateCount);
+    
+    feed1.processed(hash(1));
+    
+    // The same object delivered on another feed is not a duplicate.
+    assertFalse(feed2.isDuplicate(hash(1)));
+    assertTrue(feed1.isDuplicate(hash(1)));
+    
+    assertEquals(2, checkCount.get());
+    assertEquals(1, duplicateCount.get());
+    assertEquals(2, feed2.getCheckCount());
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.symphony.oss.allegro.api.FeedAckBuffer.IFeedAckSender;
+import com.symphony.oss.allegro.api.FeedAckBuffer.PendingExtension;
+import com.symphony.oss.canon.runtime.exception.NotFoundException;
+
+@SuppressWarnings("javadoc")
+public class TestFeedAckBuffer
+{
+  private final FeedAckBuffer      buffer_   = new FeedAckBuffer("feedHash");
+  private final List<List<String>> requests_ = new ArrayList<>();
+  
+  /**
+   * A sender which records the acks in each request and fails with the given exception if the request carries any.
+   */
+  private IFeedAckSender<String> sender(RuntimeException failure)
+  {
+    return (deletes, extensions) ->
+    {
+      List<String> request = new ArrayList<>(deletes);
+      
+      for(PendingExtension extension : extensions)
+        request.add(extension.receiptHandle_ + "=" + extension.visibilityTimeout_);
+      
+      requests_.add(request);
+      
+      if(failure != null && !request.isEmpty())
+        throw failure;
+      
+      return "OK";
+    };
+  }
+  
+  @Test
+  public void testAcksSentWithRequest()
+  {
+    buffer_.addExtension("r1", 30);
+    buffer_.addExtension("r2", 30);
+    buffer_.addDelete("r1");
+    
+    assertTrue(buffer_.isFlushDue(true, 0));
+    assertEquals("OK", buffer_.send(sender(null)));
+    assertEquals(Arrays.asList(Arrays.asList("r1", "r2=30")), requests_);
+    assertFalse(buffer_.isFlushDue(true, 0));
+    
+    buffer_.send(sender(null));
+    
+    assertEquals(Collections.emptyList(), requests_.get(1));
+  }
+  
+  @Test
+  public void testNotFoundDropsAcks()
+  {
+    buffer_.addDelete("r1");
+    
+    // The pull goes through, without the acks.
+    assertEquals("OK", buffer_.send(sender(new NotFoundException("No such receipt handle"))));
+    assertEquals(Arrays.asList(Arrays.asList("r1"), Collections.emptyList()), requests_);
+    
+    // The next pull goes through too.
+    assertEquals("OK", buffer_.send(sender(new NotFoundException("No such receipt handle"))));
+    assertEquals(3, requests_.size());
+    assertEquals(Collections.emptyList(), requests_.get(2));
+  }
+  
+  @Test
+  public void testNotFoundWithoutAcksThrows()
+  {
+    try
+    {
+      buffer_.send((deletes, extensions) ->
+      {
+        throw new NotFoundException("No such feed");
+      });
+      fail("Expected NotFoundException");
+    }
+    catch(NotFoundException e)
+    {
+      // expected
+    }
+  }
+  
+  @Test
+  public void testFailedAcksRetriedUpToLimit()
+  {
+    buffer_.addDelete("r1");
+    
+    for(int i=0 ; i<FeedAckBuffer.MAX_ATTEMPTS ; i++)
+    {
+      try
+      {
+        buffer_.send(sender(new IllegalStateException("Service unavailable")));
+        fail("Expected IllegalStateException");
+      }
+      catch(IllegalStateException e)
+      {
+        // expected
+      }
+    }
+    
+    assertEquals(FeedAckBuffer.MAX_ATTEMPTS, requests_.size());
+    assertFalse(buffer_.isFlushDue(true, 0));
+    
+    assertEquals("OK", buffer_.send(sender(new IllegalStateException("Service unavailable"))));
+    assertEquals(Collections.emptyList(), requests_.get(FeedAckBuffer.MAX_ATTEMPTS));
+  }
+  
+  @Test
+  public void testFlush()
+  {
+    buffer_.flush(sender(null));
+    
+    assertEquals(0, requests_.size());
+    
+    buffer_.addDelete("r1");
+    
+    assertFalse(buffer_.isFlushDue(false, 60000));
+    
+    buffer_.flush(sender(new IllegalStateException("Service unavailable")));
+    buffer_.flush(sender(new NotFoundException("No such receipt handle")));
+    buffer_.flush(sender(null));
+    
+    assertEquals(Arrays.asList(Arrays.asList("r1"), Arrays.asList("r1")), requests_);
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestFeedsContainerCache
+{
+  static class TestContainer extends AllegroSqsFeedsContainer
+  {
+    boolean closed_;
+    
+    TestContainer()
+    {
+      super(Collections.emptyList(), null, null);
+    }
+
+    @Override
+    public void refresh()
+    {
+      // No Feed Read Records to fetch
+    }
+
+    @Override
+    void close()
+    {
+      closed_ = true;
+      super.close();
+    }
+  }
+  
+  private static Set<String> key(String ...feedHashes)
+  {
+    return new HashSet<>(Arrays.asList(feedHashes));
+  }
+  
+  @Test
+  public void testSameFeedsShareContainer()
+  {
+    try(FeedsContainerCache cache = new FeedsContainerCache(10, 60000))
+    {
+      TestContainer container = (TestContainer) cache.get(key("A", "B"), TestContainer::new);
+      
+      assertSame(container, cache.get(key("B", "A"), TestContainer::new));
+      assertNotSame(container, cache.get(key("A"), TestContainer::new));
+      assertEquals(2, cache.size());
+    }
+  }
+  
+  @Test
+  public void testLeastRecentlyUsedEvicted()
+  {
+    try(FeedsContainerCache cache = new FeedsContainerCache(2, 60000))
+    {
+      TestContainer a = (TestContainer) cache.get(key("A"), TestContainer::new);
+      TestContainer b = (TestContainer) cache.get(key("B"), TestContainer::new);
+      
+      assertSame(a, cache.get(key("A"), TestContainer::new));
+      
+      TestContainer c = (TestContainer) cache.get(key("C"), TestContainer::new);
+      
+      assertEquals(2, cache.size());
+      assertTrue(b.closed_);
+      assertFalse(a.closed_);
+      assertFalse(c.closed_);
+      assertNotSame(b, cache.get(key("B"), TestContainer::new));
+      assertTrue(a.closed_);
+    }
+  }
+  
+  @Test
+  public void testIdleEvicted() throws InterruptedException
+  {
+    try(FeedsContainerCache cache = new FeedsContainerCache(10, 50))
+    {
+      TestContainer a = (TestContainer) cache.get(key("A"), TestContainer::new);
+      
+      Thread.sleep(100);
+      
+      TestContainer b = (TestContainer) cache.get(key("B"), TestContainer::new);
+      
+      assertTrue(a.closed_);
+      assertFalse(b.closed_);
+      assertEquals(1, cache.size());
+    }
+  }
+  
+  @Test
+  public void testConcurrentCreationClosesLoser()
+  {
+    try(FeedsContainerCache cache = new FeedsContainerCache(10, 60000))
+    {
+      TestContainer[] winner = new TestContainer[1];
+      TestContainer[] loser  = new TestContainer[1];
+      
+      AllegroSqsFeedsContainer container = cache.get(key("A"), () ->
+      {
+        // Another thread creates the same container while this one is being created.
+        winner[0] = (TestContainer) cache.get(key("A"), TestContainer::new);
+        loser[0]  = new TestContainer();
+        
+        return loser[0];
+      });
+      
+      assertSame(winner[0], container);
+      assertFalse(winner[0].closed_);
+      assertTrue(loser[0].closed_);
+      assertEquals(1, cache.size());
+    }
+  }
+  
+  @Test
+  public void testCloseClosesAll()
+  {
+    FeedsContainerCache cache = new FeedsContainerCache(10, 60000);
+    TestContainer       a     = (TestContainer) cache.get(key("A"), TestContainer::new);
+    TestContainer       b     = (TestContainer) cache.get(key("B"), TestContainer::new);
+    
+    cache.close();
+    
+    assertTrue(a.closed_);
+    assertTrue(b.closed_);
+    assertEquals(0, cache.size());
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests of the bounded handler queue policies of AbstractAsyncQueryListManager.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestHandlerQueuePolicy
+{
+  private final CountDownLatch started_  = new CountDownLatch(1);
+  private final CountDownLatch released_ = new CountDownLatch(1);
+  
+  /**
+   * A single handler thread with a queue of one, so that a third task finds the queue full.
+   */
+  private ThreadPoolExecutor newExecutor(RejectedExecutionHandler policy)
+  {
+    return new ThreadPoolExecutor(1, 1, 10000L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(1), policy);
+  }
+  
+  private void fill(ThreadPoolExecutor executor) throws InterruptedException
+  {
+    executor.execute(() ->
+    {
+      started_.countDown();
+      
+      try
+      {
+        released_.await();
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    });
+    
+    assertTrue(started_.await(5, TimeUnit.SECONDS));
+    
+    executor.execute(() -> {});
+  }
+  
+  @Test
+  public void testCallerRunsWhenQueueFull() throws InterruptedException
+  {
+    ThreadPoolExecutor executor = newExecutor(new AbstractAsyncQueryListManager.CallerRunsPolicy());
+    
+    try
+    {
+      fill(executor);
+      
+      AtomicReference<Thread> ranOn = new AtomicReference<>();
+      
+      executor.execute(() -> ranOn.set(Thread.currentThread()));
+      
+      assertSame(Thread.currentThread(), ranOn.get());
+    }
+    finally
+    {
+      released_.countDown();
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testCallerRunsRejectsWhenShutdown() throws InterruptedException
+  {
+    ThreadPoolExecutor executor = newExecutor(new AbstractAsyncQueryListManager.CallerRunsPolicy());
+    
+    try
+    {
+      executor.shutdown();
+      
+      AtomicReference<Thread> ranOn = new AtomicReference<>();
+      
+      try
+      {
+        executor.execute(() -> ranOn.set(Thread.currentThread()));
+        fail("Expected RejectedExecutionException");
+      }
+      catch(RejectedExecutionException e)
+      {
+        // The task is not silently dropped, the submitter is told so it can account for it.
+      }
+      
+      assertNull(ranOn.get());
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testBlockingWaitsForSpace() throws InterruptedException
+  {
+    ThreadPoolExecutor executor = newExecutor(new AbstractAsyncQueryListManager.BlockingPolicy());
+    
+    try
+    {
+      fill(executor);
+      
+      CountDownLatch ran       = new CountDownLatch(1);
+      CountDownLatch submitted = new CountDownLatch(1);
+      Thread         submitter = new Thread(() ->
+      {
+        executor.execute(ran::countDown);
+        submitted.countDown();
+      });
+      
+      submitter.start();
+      
+      // The submitter is held until the handler frees space in the queue.
+      assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+      
+      released_.countDown();
+      
+      assertTrue(submitted.await(5, TimeUnit.SECONDS));
+      assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+    finally
+    {
+      released_.countDown();
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testBlockingRejectsWhenShutdown() throws InterruptedException
+  {
+    ThreadPoolExecutor executor = newExecutor(new AbstractAsyncQueryListManager.BlockingPolicy());
+    
+    try
+    {
+      fill(executor);
+      
+      AtomicReference<RejectedExecutionException> rejected  = new AtomicReference<>();
+      Thread                                       submitter = new Thread(() ->
+      {
+        try
+        {
+          executor.execute(() -> {});
+        }
+        catch(RejectedExecutionException e)
+        {
+          rejected.set(e);
+        }
+      });
+      
+      submitter.start();
+      Thread.sleep(200);
+      executor.shutdown();
+      submitter.join(5000);
+      
+      assertFalse(submitter.isAlive());
+      assertNotNull(rejected.get());
+    }
+    finally
+    {
+      released_.countDown();
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testBlockingRejectsWhenInterrupted() throws InterruptedException
+  {
+    ThreadPoolExecutor executor = newExecutor(new AbstractAsyncQueryListManager.BlockingPolicy());
+    
+    try
+    {
+      fill(executor);
+      
+      Thread.currentThread().interrupt();
+      
+      try
+      {
+        executor.execute(() -> {});
+        fail("Expected RejectedExecutionException");
+      }
+      catch(RejectedExecutionException e)
+      {
+        assertTrue(e.getCause() instanceof InterruptedException);
+      }
+      
+      assertTrue(Thread.interrupted());
+    }
+    finally
+    {
+      released_.countDown();
+      executor.shutdownNow();
+    }
+  }
+}
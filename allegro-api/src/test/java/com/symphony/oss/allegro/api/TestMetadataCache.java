@@ -0,0 +1,273 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.symphony.oss.canon.runtime.exception.NotFoundException;
+
+/**
+ * Tests of MetadataCache.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestMetadataCache
+{
+  private static final Executor DIRECT = (task) -> task.run();
+  
+  @Test
+  public void testCachedWithinTtl()
+  {
+    MetadataCache<String> cache = new MetadataCache<>(60000, 0, 10, DIRECT, new SingleFlight<>());
+    AtomicInteger         loads = new AtomicInteger();
+    
+    assertEquals(1, (int)cache.get("key", false, loads::incrementAndGet));
+    assertEquals(1, (int)cache.get("key", false, loads::incrementAndGet));
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.getHitCount());
+    
+    cache.invalidate("key");
+    
+    assertEquals(2, (int)cache.get("key", false, loads::incrementAndGet));
+  }
+  
+  @Test
+  public void testRefreshAhead()
+  {
+    // Every read is within the refresh ahead period, so each hit reloads in the background.
+    MetadataCache<String> cache = new MetadataCache<>(60000, 60000, 10, DIRECT, new SingleFlight<>());
+    AtomicInteger         loads = new AtomicInteger();
+    
+    assertEquals(1, (int)cache.get("key", false, loads::incrementAndGet));
+    
+    // The current value is returned and the reload replaces it.
+    assertEquals(1, (int)cache.get("key", false, loads::incrementAndGet));
+    assertEquals(2, (int)cache.get("key", false, loads::incrementAndGet));
+    assertEquals(2, cache.getRefreshCount());
+  }
+  
+  @Test
+  public void testNotFound()
+  {
+    MetadataCache<String> cache = new MetadataCache<>(60000, 0, 10, DIRECT, new SingleFlight<>());
+    AtomicInteger         loads = new AtomicInteger();
+    
+    for(int i=0 ; i<2 ; i++)
+    {
+      for(boolean cacheNotFound : new boolean[] {true, false})
+      {
+        try
+        {
+          cache.get("key" + cacheNotFound, cacheNotFound, () ->
+          {
+            loads.incrementAndGet();
+            throw new NotFoundException("No such thing");
+          });
+          fail("Expected NotFoundException");
+        }
+        catch(NotFoundException e)
+        {
+          // expected
+        }
+      }
+    }
+    
+    // The cached failure is only loaded once.
+    assertEquals(3, loads.get());
+  }
+  
+  @Test
+  public void testDisabled()
+  {
+    MetadataCache<String> cache = new MetadataCache<>(0, 0, 10, DIRECT, new SingleFlight<>());
+    AtomicInteger         loads = new AtomicInteger();
+    
+    cache.get("key", false, loads::incrementAndGet);
+    cache.get("key", false, loads::incrementAndGet);
+    
+    assertEquals(2, loads.get());
+  }
+  
+  @Test
+  public void testDisabledLoadsAreCoalesced() throws Exception
+  {
+    SingleFlight<String>  loads    = new SingleFlight<>();
+    MetadataCache<String> cache    = new MetadataCache<>(0, 0, 10, DIRECT, loads);
+    AtomicInteger         count    = new AtomicInteger();
+    CountDownLatch        started  = new CountDownLatch(1);
+    CountDownLatch        release  = new CountDownLatch(1);
+    ExecutorService       executor = Executors.newFixedThreadPool(2);
+    
+    try
+    {
+      Future<Integer> first = executor.submit(() -> cache.get("key", false, () ->
+      {
+        started.countDown();
+        await(release);
+        return count.incrementAndGet();
+      }));
+      
+      started.await();
+      
+      Future<Integer> second = executor.submit(() -> cache.get("key", false, count::incrementAndGet));
+      
+      while(loads.getCallCount() < 2)
+        Thread.sleep(1);
+      
+      release.countDown();
+      
+      assertEquals(1, (int)first.get(10, TimeUnit.SECONDS));
+      assertEquals(1, (int)second.get(10, TimeUnit.SECONDS));
+      assertEquals(1, count.get());
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testInvalidateOnlyAffectsKey() throws Exception
+  {
+    SingleFlight<String>  loads    = new SingleFlight<>();
+    MetadataCache<String> cache    = new MetadataCache<>(60000, 0, 10, DIRECT, loads);
+    CountDownLatch        started  = new CountDownLatch(1);
+    CountDownLatch        release  = new CountDownLatch(1);
+    ExecutorService       executor = Executors.newFixedThreadPool(2);
+    
+    try
+    {
+      Future<String> other = executor.submit(() -> loads.execute("other", () ->
+      {
+        started.countDown();
+        await(release);
+        return "other";
+      }));
+      
+      started.await();
+      cache.invalidate("key");
+      
+      // A read of another key which is in flight is still shared.
+      Future<String> joined = executor.submit(() -> loads.execute("other", () -> "unexpected"));
+      
+      while(loads.getCallCount() < 2)
+        Thread.sleep(1);
+      
+      release.countDown();
+      
+      assertEquals("other", other.get(10, TimeUnit.SECONDS));
+      assertEquals("other", joined.get(10, TimeUnit.SECONDS));
+      assertEquals(1, loads.getCoalescedCount());
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testInvalidateDoesNotDiscardLoadOfOtherKey() throws Exception
+  {
+    MetadataCache<String> cache    = new MetadataCache<>(60000, 0, 10, DIRECT, new SingleFlight<>());
+    AtomicInteger         loads    = new AtomicInteger();
+    CountDownLatch        started  = new CountDownLatch(1);
+    CountDownLatch        release  = new CountDownLatch(1);
+    ExecutorService       executor = Executors.newFixedThreadPool(1);
+    
+    try
+    {
+      Future<Integer> load = executor.submit(() -> cache.get("keyB", false, () ->
+      {
+        started.countDown();
+        await(release);
+        return loads.incrementAndGet();
+      }));
+      
+      started.await();
+      cache.invalidate("keyA");
+      release.countDown();
+      
+      assertEquals(1, (int)load.get(10, TimeUnit.SECONDS));
+      
+      // The load of keyB was cached despite the invalidation of keyA.
+      assertEquals(1, (int)cache.get("keyB", false, loads::incrementAndGet));
+      assertEquals(1, loads.get());
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testInvalidateDiscardsLoadInFlight() throws Exception
+  {
+    MetadataCache<String> cache    = new MetadataCache<>(60000, 0, 10, DIRECT, new SingleFlight<>());
+    AtomicInteger         loads    = new AtomicInteger();
+    CountDownLatch        started  = new CountDownLatch(1);
+    CountDownLatch        release  = new CountDownLatch(1);
+    ExecutorService       executor = Executors.newFixedThreadPool(1);
+    
+    try
+    {
+      Future<Integer> load = executor.submit(() -> cache.get("key", false, () ->
+      {
+        started.countDown();
+        await(release);
+        return loads.incrementAndGet();
+      }));
+      
+      started.await();
+      cache.invalidate("key");
+      release.countDown();
+      
+      assertEquals(1, (int)load.get(10, TimeUnit.SECONDS));
+      
+      // What was loaded before the invalidation may be stale, so it was not cached.
+      assertEquals(2, (int)cache.get("key", false, loads::incrementAndGet));
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+  
+  private static void await(CountDownLatch latch)
+  {
+    try
+    {
+      latch.await();
+    }
+    catch(InterruptedException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests of PageReadAhead.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestPageReadAhead
+{
+  /**
+   * A source of pages numbered from 0, each of which has the given number of items.
+   */
+  static class Source implements PageReadAhead.IPageSource<Integer>
+  {
+    final int              pageCount_;
+    final int              itemsPerPage_;
+    final int              failAt_;
+    final Throwable        failure_;
+    final AtomicInteger    fetchCount_ = new AtomicInteger();
+    volatile Thread        fetchThread_;
+    
+    Source(int pageCount, int itemsPerPage)
+    {
+      this(pageCount, itemsPerPage, -1, null);
+    }
+    
+    Source(int pageCount, int itemsPerPage, int failAt, Throwable failure)
+    {
+      pageCount_    = pageCount;
+      itemsPerPage_ = itemsPerPage;
+      failAt_       = failAt;
+      failure_      = failure;
+    }
+
+    @Override
+    public Integer fetchPage(String after, int itemCount)
+    {
+      int page = after == null ? 0 : Integer.parseInt(after);
+      
+      assertEquals(page * itemsPerPage_, itemCount);
+      
+      fetchThread_ = Thread.currentThread();
+      fetchCount_.incrementAndGet();
+      
+      if(page == failAt_)
+      {
+        if(failure_ instanceof Error)
+          throw (Error)failure_;
+        
+        throw (RuntimeException)failure_;
+      }
+      
+      return page;
+    }
+
+    @Override
+    public int getItemCount(Integer page)
+    {
+      return itemsPerPage_;
+    }
+
+    @Override
+    public String getAfter(Integer page)
+    {
+      return page + 1 < pageCount_ ? String.valueOf(page + 1) : null;
+    }
+  }
+  
+  private static void settle() throws InterruptedException
+  {
+    Thread.sleep(200);
+  }
+  
+  @Test
+  public void testPagesReturnedInOrder()
+  {
+    Source source = new Source(10, 3);
+    
+    try(PageReadAhead<Integer> pages = new PageReadAhead<>(source, null, 3, 100))
+    {
+      for(int i = 0; i < 10; i++)
+        assertEquals(Integer.valueOf(i), pages.next());
+      
+      assertNull(pages.next());
+      assertNull(pages.next());
+      assertEquals(10, source.fetchCount_.get());
+    }
+  }
+  
+  @Test
+  public void testZeroDepthFetchesInCaller()
+  {
+    Source source = new Source(3, 3);
+    
+    try(PageReadAhead<Integer> pages = new PageReadAhead<>(source, null, 0, 100))
+    {
+      assertEquals(0, source.fetchCount_.get());
+      assertEquals(Integer.valueOf(0), pages.next());
+      assertSame(Thread.currentThread(), source.fetchThread_);
+      assertEquals(1, source.fetchCount_.get());
+      assertEquals(Integer.valueOf(1), pages.next());
+      assertEquals(Integer.valueOf(2), pages.next());
+      assertNull(pages.next());
+      assertEquals(3, source.fetchCount_.get());
+    }
+  }
+  
+  @Test
+  public void testDepthLimit() throws InterruptedException
+  {
+    Source source = new Source(10, 1);
+    
+    try(PageReadAhead<Integer> pages = new PageReadAhead<>(source, null, 2, 100))
+    {
+      settle();
+      
+      // No page is fetched until there is space to buffer it.
+      assertEquals(2, source.fetchCount_.get());
+      
+      assertEquals(Integer.valueOf(0), pages.next());
+      settle();
+      
+      assertEquals(3, source.fetchCount_.get());
+    }
+  }
+  
+  @Test
+  public void testItemBudget() throws InterruptedException
+  {
+    Source source = new Source(10, 10);
+    
+    try(PageReadAhead<Integer> pages = new PageReadAhead<>(source, null, 5, 15))
+    {
+      settle();
+      
+      // The budget is exceeded by at most one page.
+      assertEquals(2, source.fetchCount_.get());
+      
+      assertEquals(Integer.valueOf(0), pages.next());
+      settle();
+      
+      assertEquals(3, source.fetchCount_.get());
+      
+      assertEquals(Integer.valueOf(1), pages.next());
+      settle();
+      
+      assertEquals(4, source.fetchCount_.get());
+    }
+  }
+  
+  @Test
+  public void testPageLargerThanBudget()
+  {
+    Source source = new Source(3, 50);
+    
+    try(PageReadAhead<Integer> pages = new PageReadAhead<>(source, null, 2, 10))
+    {
+      for(int i = 0; i < 3; i++)
+        assertEquals(Integer.valueOf(i), pages.next());
+      
+      assertNull(pages.next());
+    }
+  }
+  
+  @Test
+  public void testFailureAfterPrecedingPages()
+  {
+    IllegalStateException failure = new IllegalStateException("Fetch failed");
+    Source                source  = new Source(10, 1, 3, failure);
+    
+    try(PageReadAhead<Integer> pages = new PageReadAhead<>(source, null, 5, 100))
+    {
+      for(int i = 0; i < 3; i++)
+        assertEquals(Integer.valueOf(i), pages.next());
+      
+      try
+      {
+        pages.next();
+        fail("Expected failure");
+      }
+      catch(IllegalStateException e)
+      {
+        assertSame(failure, e);
+      }
+    }
+  }
+  
+  @Test
+  public void testErrorPropagated()
+  {
+    Error  failure = new Error("Fetch failed");
+    Source source  = new Source(10, 1, 1, failure);
+    
+    try(PageReadAhead<Integer> pages = new PageReadAhead<>(source, null, 5, 100))
+    {
+      assertEquals(Integer.valueOf(0), pages.next());
+      
+      try
+      {
+        pages.next();
+        fail("Expected failure");
+      }
+      catch(Error e)
+      {
+        assertSame(failure, e);
+      }
+    }
+  }
+  
+  @Test
+  public void testClose() throws InterruptedException
+  {
+    Source                 source = new Source(10, 1);
+    PageReadAhead<Integer> pages  = new PageReadAhead<>(source, null, 2, 100);
+    
+    settle();
+    assertEquals(Integer.valueOf(0), pages.next());
+    
+    pages.close();
+    settle();
+    
+    int fetched = source.fetchCount_.get();
+    
+    // Buffered pages are discarded and no more are fetched.
+    assertNull(pages.next());
+    settle();
+    assertEquals(fetched, source.fetchCount_.get());
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.junit.Test;
+
+/**
+ * Tests of PagedSpliterator.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestPagedSpliterator
+{
+  private final AtomicInteger opened_  = new AtomicInteger();
+  private final AtomicInteger fetched_ = new AtomicInteger();
+  
+  /**
+   * A source of pages numbered from 0, the size of each page is given, -1 for a page with no data.
+   */
+  class Source implements PageReadAhead.IPageSource<Integer>
+  {
+    private final int[] sizes_;
+    
+    Source(int... sizes)
+    {
+      sizes_ = sizes;
+    }
+
+    @Override
+    public Integer fetchPage(String after, int itemCount)
+    {
+      fetched_.incrementAndGet();
+      
+      return after == null ? 0 : Integer.parseInt(after);
+    }
+
+    @Override
+    public int getItemCount(Integer page)
+    {
+      return Math.max(0, sizes_[page]);
+    }
+
+    @Override
+    public String getAfter(Integer page)
+    {
+      return page + 1 < sizes_.length ? String.valueOf(page + 1) : null;
+    }
+    
+    List<String> getData(Integer page)
+    {
+      if(sizes_[page] < 0)
+        return null;
+      
+      List<String> data = new ArrayList<>();
+      
+      for(int i=0 ; i<sizes_[page] ; i++)
+        data.add(page + "." + i);
+      
+      return data;
+    }
+  }
+  
+  private PagedSpliterator<Integer, String> newSpliterator(Source source)
+  {
+    return new PagedSpliterator<>(() ->
+    {
+      opened_.incrementAndGet();
+      
+      return new PageReadAhead<>(source, null, 0, 1);
+    }, source::getData);
+  }
+  
+  @Test
+  public void testItemsInOrder()
+  {
+    List<String> items = StreamSupport.stream(newSpliterator(new Source(2, 2, 1)), false).collect(Collectors.toList());
+    
+    assertEquals(Arrays.asList("0.0", "0.1", "1.0", "1.1", "2.0"), items);
+    assertEquals(3, fetched_.get());
+  }
+  
+  @Test
+  public void testEmptyPagesSkipped()
+  {
+    List<String> items = StreamSupport.stream(newSpliterator(new Source(0, -1, 2, 0)), false).collect(Collectors.toList());
+    
+    assertEquals(Arrays.asList("2.0", "2.1"), items);
+    assertEquals(4, fetched_.get());
+  }
+  
+  @Test
+  public void testNothingFetchedUntilFirstItem()
+  {
+    PagedSpliterator<Integer, String> spliterator = newSpliterator(new Source(2, 2));
+    
+    assertEquals(0, opened_.get());
+    assertEquals(Long.MAX_VALUE, spliterator.estimateSize());
+    
+    List<String> items = new ArrayList<>();
+    
+    assertTrue(spliterator.tryAdvance(items::add));
+    assertEquals(1, opened_.get());
+    assertEquals(1, fetched_.get());
+    assertEquals(Collections.singletonList("0.0"), items);
+  }
+  
+  @Test
+  public void testEarlyTermination()
+  {
+    List<String> items = StreamSupport.stream(newSpliterator(new Source(3, 3, 3, 3)), false)
+        .limit(4)
+        .collect(Collectors.toList());
+    
+    assertEquals(Arrays.asList("0.0", "0.1", "0.2", "1.0"), items);
+    
+    // The pages after the one containing the last item consumed are never fetched.
+    assertEquals(2, fetched_.get());
+    
+    fetched_.set(0);
+    
+    assertTrue(StreamSupport.stream(newSpliterator(new Source(3, 3, 3, 3)), false).anyMatch("0.1"::equals));
+    assertEquals(1, fetched_.get());
+  }
+  
+  @Test
+  public void testExhausted()
+  {
+    PagedSpliterator<Integer, String> spliterator = newSpliterator(new Source(1));
+    
+    assertTrue(spliterator.tryAdvance((item) -> {}));
+    assertFalse(spliterator.tryAdvance((item) -> fail("Unexpected item " + item)));
+    assertEquals(0, spliterator.estimateSize());
+    
+    // No further fetch is made once the scan is exhausted.
+    assertFalse(spliterator.tryAdvance((item) -> fail("Unexpected item " + item)));
+    assertEquals(1, fetched_.get());
+  }
+  
+  @Test
+  public void testCannotSplit()
+  {
+    PagedSpliterator<Integer, String> spliterator = newSpliterator(new Source(2, 2));
+    
+    assertNull(spliterator.trySplit());
+    assertEquals(Spliterator.ORDERED | Spliterator.NONNULL, spliterator.characteristics());
+    assertFalse(spliterator.hasCharacteristics(Spliterator.SIZED));
+    assertEquals(0, fetched_.get());
+  }
+  
+  @Test
+  public void testSetOpenerAfterStart()
+  {
+    PagedSpliterator<Integer, String> spliterator = newSpliterator(new Source(2, 2));
+    
+    spliterator.setOpener(() -> new PageReadAhead<>(new Source(1), null, 0, 1));
+    
+    assertFalse(spliterator.isStarted());
+    assertTrue(spliterator.tryAdvance((item) -> {}));
+    assertTrue(spliterator.isStarted());
+    
+    try
+    {
+      spliterator.setOpener(() -> new PageReadAhead<>(new Source(1), null, 0, 1));
+      fail("Expected IllegalStateException");
+    }
+    catch(IllegalStateException e)
+    {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.symphony.oss.allegro.api.request.PartitionQuery;
+import com.symphony.oss.commons.hash.Hash;
+import com.symphony.oss.commons.hash.HashProvider;
+
+/**
+ * Tests of PartitionScanSegmenter.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestPartitionScanSegmenter
+{
+  private static final Hash PARTITION = HashProvider.getHashOf("partition".getBytes(StandardCharsets.UTF_8));
+  
+  private PartitionQuery query(String min, String max)
+  {
+    return new PartitionQuery.Builder()
+        .withHash(PARTITION)
+        .withSortKeyMinimum(min)
+        .withSortKeyMaximum(max)
+        .withPageLimit(100)
+        .build();
+  }
+  
+  private void assertSegment(PartitionQuery segment, String min, String max)
+  {
+    assertEquals(PARTITION, segment.getHash());
+    assertEquals(min, segment.getSortKeyMin());
+    assertEquals(max, segment.getSortKeyMax());
+    assertEquals(100, segment.getPageLimit().intValue());
+  }
+  
+  private void assertValid(List<String> splitPoints, String low, String high)
+  {
+    for(int i=0 ; i<splitPoints.size() ; i++)
+    {
+      assertTrue(splitPoints.get(i).compareTo(low) >= 0);
+      assertTrue(splitPoints.get(i).compareTo(high) < 0);
+      
+      if(i > 0)
+        assertTrue(splitPoints.get(i).compareTo(splitPoints.get(i - 1)) > 0);
+    }
+  }
+  
+  @Test
+  public void testSegmentBoundaries()
+  {
+    List<PartitionQuery> segments = PartitionScanSegmenter.segment(query(null, null), PARTITION, Arrays.asList("b", "d"));
+    
+    assertEquals(3, segments.size());
+    assertSegment(segments.get(0), null,  "b");
+    assertSegment(segments.get(1), "b\0", "d");
+    assertSegment(segments.get(2), "d\0", null);
+  }
+  
+  @Test
+  public void testSegmentIgnoresSplitPointsOutsideRange()
+  {
+    List<PartitionQuery> segments = PartitionScanSegmenter.segment(query("c", "f"), PARTITION, Arrays.asList("a", "d", "f", "g"));
+    
+    assertEquals(2, segments.size());
+    assertSegment(segments.get(0), "c",   "d");
+    assertSegment(segments.get(1), "d\0", "f");
+  }
+  
+  @Test
+  public void testSegmentWithoutSplitPoints()
+  {
+    List<PartitionQuery> segments = PartitionScanSegmenter.segment(query("c", "f"), PARTITION, Collections.emptyList());
+    
+    assertEquals(1, segments.size());
+    assertSegment(segments.get(0), "c", "f");
+  }
+  
+  @Test
+  public void testSuccessor()
+  {
+    String key = "key";
+    
+    assertTrue(PartitionScanSegmenter.successor(key).compareTo(key) > 0);
+    assertTrue(PartitionScanSegmenter.successor(key).compareTo(key + "\u0001") < 0);
+  }
+  
+  @Test
+  public void testInterpolateNumbers()
+  {
+    List<String> splitPoints = PartitionScanSegmenter.interpolate("000", "100", 4);
+    
+    assertEquals(Arrays.asList("028", "055", "082"), splitPoints);
+  }
+  
+  @Test
+  public void testInterpolateTimestamps()
+  {
+    String       low         = "2021-01-01T00:00:00Z";
+    String       high        = "2021-12-31T23:59:59Z";
+    List<String> splitPoints = PartitionScanSegmenter.interpolate(low, high, 4);
+    
+    assertEquals(3, splitPoints.size());
+    assertValid(splitPoints, low, high);
+    
+    // Separators are kept and each split point falls in the expected quarter of the year.
+    assertTrue(splitPoints.get(0).startsWith("2021-04-"));
+    assertTrue(splitPoints.get(1).startsWith("2021-07-"));
+    assertTrue(splitPoints.get(2).startsWith("2021-10-"));
+  }
+  
+  @Test
+  public void testInterpolateCloseBounds()
+  {
+    List<String> splitPoints = PartitionScanSegmenter.interpolate("a", "b", 10);
+    
+    assertTrue(splitPoints.size() < 9);
+    assertValid(splitPoints, "a", "b");
+  }
+  
+  @Test
+  public void testInterpolateNothingToSplit()
+  {
+    assertEquals(0, PartitionScanSegmenter.interpolate("a", "z", 1).size());
+    assertEquals(0, PartitionScanSegmenter.interpolate("z", "a", 4).size());
+    assertEquals(0, PartitionScanSegmenter.interpolate("a", "a", 4).size());
+  }
+}
@@ -0,0 +1,342 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.symphony.oss.allegro.api.request.PartitionQuery;
+import com.symphony.oss.commons.hash.Hash;
+import com.symphony.oss.commons.hash.HashProvider;
+import com.symphony.oss.models.object.canon.IPageOfStoredApplicationObject;
+import com.symphony.oss.models.object.canon.facade.IStoredApplicationObject;
+
+/**
+ * Tests of PartitionSpliterator.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestPartitionSpliterator
+{
+  private static final Hash PARTITION = HashProvider.getHashOf("partition".getBytes(StandardCharsets.UTF_8));
+  private static final int  PAGE_SIZE = 7;
+  
+  private final List<String> keys_ = new ArrayList<>();
+  
+  public TestPartitionSpliterator()
+  {
+    for(int i=0 ; i<100 ; i++)
+      keys_.add(String.format("k%02d", i));
+  }
+  
+  /**
+   * A partition holding the objects with the keys in keys_, each of which is a proxy whose toString() is its sort key.
+   */
+  class Scanner implements PartitionSpliterator.IPartitionScanner
+  {
+    final AtomicInteger boundaryFetches_ = new AtomicInteger();
+    final AtomicInteger readers_         = new AtomicInteger();
+    final AtomicInteger pages_           = new AtomicInteger();
+    
+    List<String> inRange(PartitionQuery query)
+    {
+      List<String> keys = new ArrayList<>();
+      
+      for(String key : keys_)
+      {
+        if((query.getSortKeyMin() == null || key.compareTo(query.getSortKeyMin()) >= 0) &&
+            (query.getSortKeyMax() == null || key.compareTo(query.getSortKeyMax()) <= 0) &&
+            (query.getSortKeyPrefix() == null || key.startsWith(query.getSortKeyPrefix())))
+          keys.add(key);
+      }
+      
+      if(Boolean.FALSE.equals(query.getScanForwards()))
+        Collections.reverse(keys);
+      
+      return keys;
+    }
+    
+    @Override
+    public PageReadAhead<IPageOfStoredApplicationObject> newPartitionPageReader(PartitionQuery query, Hash partitionHash)
+    {
+      List<String> keys = inRange(query);
+      
+      readers_.incrementAndGet();
+      
+      return new PageReadAhead<>(new PageReadAhead.IPageSource<IPageOfStoredApplicationObject>()
+      {
+        @Override
+        public IPageOfStoredApplicationObject fetchPage(String after, int itemCount)
+        {
+          int start = after == null ? 0 : Integer.parseInt(after);
+          int end   = Math.min(keys.size(), start + PAGE_SIZE);
+          
+          pages_.incrementAndGet();
+          
+          return page(keys.subList(start, end), end < keys.size() ? String.valueOf(end) : null);
+        }
+
+        @Override
+        public int getItemCount(IPageOfStoredApplicationObject page)
+        {
+          return page.getData().size();
+        }
+
+        @Override
+        public String getAfter(IPageOfStoredApplicationObject page)
+        {
+          return ((Page)Proxy.getInvocationHandler(page)).after_;
+        }
+      }, query.getAfter(), 0, 1);
+    }
+
+    @Override
+    public String fetchBoundarySortKey(PartitionQuery query, Hash partitionHash, boolean first)
+    {
+      boundaryFetches_.incrementAndGet();
+      
+      PartitionQuery forwards = new PartitionQuery.Builder()
+          .withSortKeyMinimum(query.getSortKeyMin())
+          .withSortKeyMaximum(query.getSortKeyMax())
+          .build();
+      List<String>   keys     = inRange(forwards);
+      
+      return keys.isEmpty() ? null : first ? keys.get(0) : keys.get(keys.size() - 1);
+    }
+  }
+  
+  static class Page implements java.lang.reflect.InvocationHandler
+  {
+    final ImmutableList<IStoredApplicationObject> data_;
+    final String                                  after_;
+    
+    Page(ImmutableList<IStoredApplicationObject> data, String after)
+    {
+      data_  = data;
+      after_ = after;
+    }
+
+    @Override
+    public Object invoke(Object proxy, java.lang.reflect.Method method, Object[] args)
+    {
+      switch(method.getName())
+      {
+        case "getData":   return data_;
+        case "hashCode":  return System.identityHashCode(proxy);
+        case "equals":    return proxy == args[0];
+        default:          return "page";
+      }
+    }
+  }
+  
+  private static IPageOfStoredApplicationObject page(List<String> keys, String after)
+  {
+    ImmutableList.Builder<IStoredApplicationObject> data = ImmutableList.builder();
+    
+    for(String key : keys)
+    {
+      data.add((IStoredApplicationObject)Proxy.newProxyInstance(IStoredApplicationObject.class.getClassLoader(),
+          new Class<?>[] { IStoredApplicationObject.class }, (proxy, method, args) ->
+      {
+        switch(method.getName())
+        {
+          case "hashCode":  return System.identityHashCode(proxy);
+          case "equals":    return proxy == args[0];
+          default:          return key;
+        }
+      }));
+    }
+    
+    return (IPageOfStoredApplicationObject)Proxy.newProxyInstance(IPageOfStoredApplicationObject.class.getClassLoader(),
+        new Class<?>[] { IPageOfStoredApplicationObject.class }, new Page(data.build(), after));
+  }
+  
+  private static PartitionQuery query(boolean scanForwards)
+  {
+    return new PartitionQuery.Builder()
+        .withHash(PARTITION)
+        .withScanForwards(scanForwards)
+        .build();
+  }
+  
+  private static List<String> drain(Spliterator<IStoredApplicationObject> spliterator)
+  {
+    List<String> keys = new ArrayList<>();
+    
+    spliterator.forEachRemaining((item) -> keys.add(item.toString()));
+    
+    return keys;
+  }
+  
+  @Test
+  public void testUnsplitScan()
+  {
+    Scanner scanner = new Scanner();
+    
+    assertEquals(keys_, drain(new PartitionSpliterator(scanner, query(true), PARTITION)));
+    assertEquals(0, scanner.boundaryFetches_.get());
+    assertEquals(1, scanner.readers_.get());
+  }
+  
+  @Test
+  public void testSplit()
+  {
+    Scanner              scanner     = new Scanner();
+    PartitionSpliterator spliterator = new PartitionSpliterator(scanner, query(true), PARTITION);
+    
+    Spliterator<IStoredApplicationObject> prefix = spliterator.trySplit();
+    
+    assertNotNull(prefix);
+    assertEquals(2, scanner.boundaryFetches_.get());
+    
+    // Nothing is fetched by splitting, other than the bounds.
+    assertEquals(0, scanner.readers_.get());
+    
+    // The size is unknown, so each split halves the estimate.
+    assertEquals(Long.MAX_VALUE / 2, spliterator.estimateSize());
+    assertEquals(Long.MAX_VALUE / 2, prefix.estimateSize());
+    assertEquals(Spliterator.ORDERED | Spliterator.NONNULL, prefix.characteristics());
+    
+    Spliterator<IStoredApplicationObject> prefix2 = spliterator.trySplit();
+    
+    assertNotNull(prefix2);
+    assertEquals(Long.MAX_VALUE / 4, spliterator.estimateSize());
+    
+    // The bounds of each part are known, so they are not fetched again.
+    assertEquals(2, scanner.boundaryFetches_.get());
+    
+    List<String> lower  = drain(prefix);
+    List<String> middle = drain(prefix2);
+    List<String> upper  = drain(spliterator);
+    
+    assertTrue(!lower.isEmpty() && !middle.isEmpty() && !upper.isEmpty());
+    
+    List<String> all = new ArrayList<>(lower);
+    
+    all.addAll(middle);
+    all.addAll(upper);
+    
+    assertEquals(keys_, all);
+    assertEquals(0, spliterator.estimateSize());
+  }
+  
+  @Test
+  public void testReverseSplitReturnsUpperRange()
+  {
+    Scanner              scanner     = new Scanner();
+    PartitionSpliterator spliterator = new PartitionSpliterator(scanner, query(false), PARTITION);
+    
+    Spliterator<IStoredApplicationObject> prefix = spliterator.trySplit();
+    
+    List<String> first  = drain(prefix);
+    List<String> second = drain(spliterator);
+    List<String> all    = new ArrayList<>(first);
+    
+    all.addAll(second);
+    
+    List<String> expected = new ArrayList<>(keys_);
+    
+    Collections.reverse(expected);
+    
+    assertEquals(expected, all);
+    assertTrue(first.get(0).compareTo(second.get(0)) > 0);
+  }
+  
+  @Test
+  public void testParallelStream()
+  {
+    Scanner scanner = new Scanner();
+    
+    List<String> keys = StreamSupport.stream(new PartitionSpliterator(scanner, query(true), PARTITION), true)
+        .map(Object::toString)
+        .collect(Collectors.toList());
+    
+    assertEquals(keys_, keys);
+    assertTrue(scanner.readers_.get() > 1);
+    
+    List<String> reversed = StreamSupport.stream(new PartitionSpliterator(new Scanner(), query(false), PARTITION), true)
+        .map(Object::toString)
+        .collect(Collectors.toList());
+    
+    List<String> expected = new ArrayList<>(keys_);
+    
+    Collections.reverse(expected);
+    
+    assertEquals(expected, reversed);
+  }
+  
+  @Test
+  public void testUnsplittableQueries()
+  {
+    Scanner scanner = new Scanner();
+    
+    assertNull(new PartitionSpliterator(scanner, new PartitionQuery.Builder().withHash(PARTITION).withSortKeyPrefix("k1").build(), PARTITION).trySplit());
+    assertNull(new PartitionSpliterator(scanner, new PartitionQuery.Builder().withHash(PARTITION).withAfter("k10").build(), PARTITION).trySplit());
+    assertNull(new PartitionSpliterator(scanner, new PartitionQuery.Builder().withHash(PARTITION).withMaxItems(10).build(), PARTITION).trySplit());
+    assertEquals(0, scanner.boundaryFetches_.get());
+    
+    keys_.clear();
+    
+    // An empty range has no bounds.
+    assertNull(new PartitionSpliterator(scanner, query(true), PARTITION).trySplit());
+    assertEquals(2, scanner.boundaryFetches_.get());
+  }
+  
+  @Test
+  public void testStartedSpliteratorCannotSplit()
+  {
+    Scanner              scanner     = new Scanner();
+    PartitionSpliterator spliterator = new PartitionSpliterator(scanner, query(true), PARTITION);
+    List<String>         first       = new ArrayList<>();
+    
+    assertTrue(spliterator.tryAdvance((item) -> first.add(item.toString())));
+    assertNull(spliterator.trySplit());
+    assertEquals(Collections.singletonList("k00"), first);
+    
+    // Only the first page has been fetched.
+    assertEquals(1, scanner.pages_.get());
+  }
+  
+  @Test
+  public void testEarlyTermination()
+  {
+    Scanner scanner = new Scanner();
+    
+    assertTrue(StreamSupport.stream(new PartitionSpliterator(scanner, query(true), PARTITION), false)
+        .anyMatch((item) -> item.toString().equals("k10")));
+    
+    // k10 is on the second page, no later page is fetched.
+    assertEquals(2, scanner.pages_.get());
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests of PartitionTailer.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestPartitionTailer
+{
+  /**
+   * A tailer which records each pause instead of waiting, and stops after a given number of them.
+   */
+  static class RecordingTailer extends PartitionTailer
+  {
+    final List<Long> pauses_ = new ArrayList<>();
+    final int        maxPauses_;
+    
+    RecordingTailer(long minPollMillis, long maxPollMillis, int maxPauses)
+    {
+      super(minPollMillis, maxPollMillis);
+      
+      maxPauses_ = maxPauses;
+    }
+
+    @Override
+    boolean pause(long millis)
+    {
+      if(pauses_.size() == maxPauses_)
+        return false;
+      
+      pauses_.add(millis);
+      
+      return true;
+    }
+  }
+  
+  /**
+   * A poller which returns the given results in turn, then finds nothing.
+   */
+  static class Poller implements PartitionTailer.IPoller
+  {
+    final Iterator<String> results_;
+    final List<String>     sortKeyMins_ = new ArrayList<>();
+    
+    Poller(String ...results)
+    {
+      results_ = Arrays.asList(results).iterator();
+    }
+
+    @Override
+    public String poll(String sortKeyMin)
+    {
+      sortKeyMins_.add(sortKeyMin);
+      
+      return results_.hasNext() ? results_.next() : null;
+    }
+  }
+  
+  @Test
+  public void testBackoffWhileIdle()
+  {
+    RecordingTailer tailer = new RecordingTailer(10, 80, 7);
+    Poller          poller = new Poller();
+    
+    tailer.tail(null, "k1", poller, () -> true);
+    
+    assertEquals(Arrays.asList(10L, 20L, 40L, 80L, 80L, 80L, 80L), tailer.pauses_);
+    assertEquals(7, tailer.getPollCount());
+    
+    // Every poll asks for objects after the last one read by the scan.
+    assertEquals(Collections.nCopies(7, PartitionScanSegmenter.successor("k1")), poller.sortKeyMins_);
+  }
+  
+  @Test
+  public void testBackoffResetsWhenObjectsArrive()
+  {
+    RecordingTailer tailer = new RecordingTailer(10, 1000, 7);
+    Poller          poller = new Poller(null, null, "k5", null, "k7", "k8");
+    
+    tailer.tail(null, "k1", poller, () -> true);
+    
+    assertEquals(Arrays.asList(10L, 20L, 40L, 10L, 20L, 10L, 10L), tailer.pauses_);
+    assertEquals(Arrays.asList(
+        PartitionScanSegmenter.successor("k1"),
+        PartitionScanSegmenter.successor("k1"),
+        PartitionScanSegmenter.successor("k1"),
+        PartitionScanSegmenter.successor("k5"),
+        PartitionScanSegmenter.successor("k5"),
+        PartitionScanSegmenter.successor("k7"),
+        PartitionScanSegmenter.successor("k8")
+        ), poller.sortKeyMins_);
+  }
+  
+  @Test
+  public void testEmptyScanPollsFromQueryMinimum()
+  {
+    RecordingTailer tailer = new RecordingTailer(10, 80, 3);
+    Poller          poller = new Poller(null, "k3");
+    
+    tailer.tail("k0", null, poller, () -> true);
+    
+    assertEquals(Arrays.asList("k0", "k0", PartitionScanSegmenter.successor("k3")), poller.sortKeyMins_);
+  }
+  
+  @Test
+  public void testStopsWithoutDemand()
+  {
+    RecordingTailer tailer = new RecordingTailer(10, 80, 100);
+    AtomicInteger   demand = new AtomicInteger(3);
+    
+    tailer.tail(null, null, new Poller(), () -> demand.getAndDecrement() > 0);
+    
+    assertEquals(3, tailer.getPollCount());
+  }
+  
+  @Test
+  public void testStopWhileTailing() throws InterruptedException
+  {
+    PartitionTailer tailer = new PartitionTailer(60000, 60000);
+    Poller          poller = new Poller();
+    Thread          thread = new Thread(() -> tailer.tail(null, "k1", poller, () -> true));
+    
+    try
+    {
+      thread.start();
+      
+      // Wait for the tailer to be paused before the first poll.
+      while(thread.getState() != Thread.State.TIMED_WAITING)
+        Thread.sleep(1);
+      
+      long start = System.currentTimeMillis();
+      
+      tailer.stop();
+      thread.join(5000);
+      
+      assertFalse(thread.isAlive());
+      assertTrue(System.currentTimeMillis() - start < 5000);
+      assertEquals(0, tailer.getPollCount());
+      assertEquals(Collections.emptyList(), poller.sortKeyMins_);
+    }
+    finally
+    {
+      thread.interrupt();
+    }
+  }
+  
+  @Test
+  public void testStopDuringPoll()
+  {
+    PartitionTailer tailer = new PartitionTailer(1, 1);
+    AtomicInteger   polls  = new AtomicInteger();
+    
+    // The tailer is stopped by the first poll, as the manager's stop() would be from another thread.
+    tailer.tail(null, null, (sortKeyMin) ->
+    {
+      polls.incrementAndGet();
+      tailer.stop();
+      return "k1";
+    }, () -> true);
+    
+    assertEquals(1, polls.get());
+    assertEquals(1, tailer.getPollCount());
+  }
+  
+  @Test
+  public void testInterruptStopsTailing() throws InterruptedException
+  {
+    PartitionTailer tailer = new PartitionTailer(60000, 60000);
+    Thread          thread = new Thread(() -> tailer.tail(null, null, new Poller(), () -> true));
+    
+    thread.start();
+    
+    while(thread.getState() != Thread.State.TIMED_WAITING)
+      Thread.sleep(1);
+    
+    thread.interrupt();
+    thread.join(5000);
+    
+    assertFalse(thread.isAlive());
+    assertEquals(0, tailer.getPollCount());
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests of SingleFlight.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestSingleFlight
+{
+  @Test
+  public void testConcurrentCallsShareOneRequest() throws Exception
+  {
+    SingleFlight<String> singleFlight = new SingleFlight<>();
+    AtomicInteger        requests     = new AtomicInteger();
+    CountDownLatch       started      = new CountDownLatch(1);
+    CountDownLatch       release      = new CountDownLatch(1);
+    ExecutorService      executor     = Executors.newFixedThreadPool(5);
+    
+    try
+    {
+      Future<Object> first = executor.submit(() -> singleFlight.execute("key", () ->
+      {
+        requests.incrementAndGet();
+        started.countDown();
+        await(release);
+        return new Object();
+      }));
+      
+      started.await();
+      
+      List<Future<Object>> others = new ArrayList<>();
+      
+      for(int i=0 ; i<4 ; i++)
+        others.add(executor.submit(() -> singleFlight.execute("key", () ->
+        {
+          requests.incrementAndGet();
+          return new Object();
+        })));
+      
+      while(singleFlight.getCallCount() < 5)
+        Thread.sleep(1);
+      
+      release.countDown();
+      
+      Object result = first.get(10, TimeUnit.SECONDS);
+      
+      for(Future<Object> other : others)
+        assertSame(result, other.get(10, TimeUnit.SECONDS));
+      
+      assertEquals(1, requests.get());
+      assertEquals(4, singleFlight.getCoalescedCount());
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testSequentialCallsAreNotCoalesced()
+  {
+    SingleFlight<String> singleFlight = new SingleFlight<>();
+    AtomicInteger        requests     = new AtomicInteger();
+    
+    singleFlight.execute("key", requests::incrementAndGet);
+    singleFlight.execute("key", requests::incrementAndGet);
+    
+    assertEquals(2, requests.get());
+    assertEquals(0, singleFlight.getCoalescedCount());
+  }
+  
+  @Test
+  public void testFailureIsShared() throws Exception
+  {
+    SingleFlight<String> singleFlight = new SingleFlight<>();
+    CountDownLatch       started      = new CountDownLatch(1);
+    CountDownLatch       release      = new CountDownLatch(1);
+    ExecutorService      executor     = Executors.newFixedThreadPool(2);
+    
+    try
+    {
+      Future<Object> first = executor.submit(() -> singleFlight.execute("key", () ->
+      {
+        started.countDown();
+        await(release);
+        throw new IllegalArgumentException("failed");
+      }));
+      
+      started.await();
+      
+      Future<Object> second = executor.submit(() -> singleFlight.execute("key", () -> "unexpected"));
+      
+      while(singleFlight.getCallCount() < 2)
+        Thread.sleep(1);
+      
+      release.countDown();
+      
+      for(Future<Object> future : Arrays.asList(first, second))
+      {
+        try
+        {
+          future.get(10, TimeUnit.SECONDS);
+          fail("Expected the shared failure");
+        }
+        catch(ExecutionException e)
+        {
+          assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+      }
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+  
+  @Test
+  public void testInvalidateKey() throws Exception
+  {
+    SingleFlight<String> singleFlight = new SingleFlight<>();
+    AtomicInteger        requests     = new AtomicInteger();
+    CountDownLatch       started      = new CountDownLatch(2);
+    CountDownLatch       release      = new CountDownLatch(1);
+    ExecutorService      executor     = Executors.newFixedThreadPool(4);
+    
+    try
+    {
+      List<Future<Object>> futures = new ArrayList<>();
+      
+      for(String key : Arrays.asList("key1", "key2"))
+        futures.add(executor.submit(() -> singleFlight.execute(key, () ->
+        {
+          requests.incrementAndGet();
+          started.countDown();
+          await(release);
+          return key;
+        })));
+      
+      started.await();
+      singleFlight.invalidate("key1");
+      
+      // The invalidated key makes a new request, the other key still joins the one in flight.
+      assertEquals("new", singleFlight.execute("key1", () ->
+      {
+        requests.incrementAndGet();
+        return "new";
+      }));
+      
+      futures.add(executor.submit(() -> singleFlight.execute("key2", () ->
+      {
+        requests.incrementAndGet();
+        return "unexpected";
+      })));
+      
+      while(singleFlight.getCallCount() < 4)
+        Thread.sleep(1);
+      
+      release.countDown();
+      
+      assertEquals("key1", futures.get(0).get(10, TimeUnit.SECONDS));
+      assertEquals("key2", futures.get(1).get(10, TimeUnit.SECONDS));
+      assertEquals("key2", futures.get(2).get(10, TimeUnit.SECONDS));
+      assertEquals(3, requests.get());
+      assertEquals(1, singleFlight.getCoalescedCount());
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+  }
+  
+  private static void await(CountDownLatch latch)
+  {
+    try
+    {
+      latch.await();
+    }
+    catch(InterruptedException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestSqsAckAccumulator
+{
+  class RecordingAccumulator extends SqsAckAccumulator
+  {
+    final List<List<String>> deleteBatches_    = new ArrayList<>();
+    final List<List<String>> extensionBatches_ = new ArrayList<>();
+    
+    // The number of times each receipt handle fails with a transient error before succeeding.
+    final Map<String, Integer> failures_ = new HashMap<>();
+    
+    RecordingAccumulator(ScheduledThreadPoolExecutor scheduler, long maxDelayMillis)
+    {
+      super(null, null, "feedHash", scheduler, maxDelayMillis);
+    }
+
+    @Override
+    synchronized List<String> sendDeletes(List<String> receiptHandles)
+    {
+      deleteBatches_.add(new ArrayList<>(receiptHandles));
+      notifyAll();
+      
+      List<String> failed = new ArrayList<>();
+      
+      for(String receiptHandle : receiptHandles)
+      {
+        if(fail(receiptHandle))
+          failed.add(receiptHandle);
+      }
+      
+      return failed;
+    }
+
+    @Override
+    synchronized List<Extension> sendExtensions(List<Extension> extensions)
+    {
+      List<String>    batch  = new ArrayList<>();
+      List<Extension> failed = new ArrayList<>();
+      
+      for(Extension extension : extensions)
+      {
+        batch.add(extension.receiptHandle_ + "=" + extension.visibilityTimeout_);
+        
+        if(fail(extension.receiptHandle_))
+          failed.add(extension);
+      }
+      
+      extensionBatches_.add(batch);
+      notifyAll();
+      
+      return failed;
+    }
+    
+    private boolean fail(String receiptHandle)
+    {
+      Integer count = failures_.get(receiptHandle);
+      
+      if(count == null || count == 0)
+        return false;
+      
+      failures_.put(receiptHandle, count - 1);
+      
+      return true;
+    }
+  }
+  
+  @Test
+  public void testFullBatchSentImmediately()
+  {
+    RecordingAccumulator accumulator = new RecordingAccumulator(null, 0);
+    
+    for(int i=0 ; i<SqsAckAccumulator.MAX_BATCH_SIZE + 1 ; i++)
+      accumulator.delete("r" + i);
+    
+    assertEquals(1, accumulator.deleteBatches_.size());
+    assertEquals(SqsAckAccumulator.MAX_BATCH_SIZE, accumulator.deleteBatches_.get(0).size());
+    assertEquals("r0", accumulator.deleteBatches_.get(0).get(0));
+    
+    accumulator.close();
+    
+    assertEquals(2, accumulator.deleteBatches_.size());
+    assertEquals(Arrays.asList("r10"), accumulator.deleteBatches_.get(1));
+    assertEquals(2, accumulator.getRequestCount());
+    assertEquals(SqsAckAccumulator.MAX_BATCH_SIZE + 1, accumulator.getEntryCount());
+    
+    accumulator.flush();
+    
+    assertEquals(2, accumulator.getRequestCount());
+  }
+  
+  @Test
+  public void testDeleteCancelsExtension()
+  {
+    RecordingAccumulator accumulator = new RecordingAccumulator(null, 0);
+    
+    accumulator.extend("r1", 30);
+    accumulator.extend("r2", 30);
+    accumulator.delete("r1");
+    accumulator.flush();
+    
+    assertEquals(Arrays.asList(Arrays.asList("r1")), accumulator.deleteBatches_);
+    assertEquals(Arrays.asList(Arrays.asList("r2=30")), accumulator.extensionBatches_);
+    assertEquals(2, accumulator.getRequestCount());
+  }
+  
+  @Test
+  public void testPartialBatchFlushedAfterDelay() throws InterruptedException
+  {
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+    
+    try
+    {
+      RecordingAccumulator accumulator = new RecordingAccumulator(scheduler, 50);
+      
+      accumulator.delete("r1");
+      accumulator.extend("r2", 30);
+      
+      long deadline = System.currentTimeMillis() + 5000;
+      
+      synchronized(accumulator)
+      {
+        while(accumulator.extensionBatches_.isEmpty() && System.currentTimeMillis() < deadline)
+          accumulator.wait(100);
+      }
+      
+      assertEquals(Arrays.asList(Arrays.asList("r1")), accumulator.deleteBatches_);
+      assertEquals(Arrays.asList(Arrays.asList("r2=30")), accumulator.extensionBatches_);
+      assertTrue(scheduler.getQueue().isEmpty());
+    }
+    finally
+    {
+      scheduler.shutdownNow();
+      scheduler.awaitTermination(1, TimeUnit.SECONDS);
+    }
+  }
+  
+  @Test
+  public void testTransientFailuresRetried()
+  {
+    RecordingAccumulator accumulator = new RecordingAccumulator(null, 0);
+    
+    accumulator.failures_.put("r2", 1);
+    accumulator.failures_.put("r4", 2);
+    
+    accumulator.delete("r1");
+    accumulator.delete("r2");
+    accumulator.extend("r3", 30);
+    accumulator.extend("r4", 60);
+    accumulator.flush();
+    
+    // Only the failed entries are resent, with their original visibility timeouts.
+    assertEquals(Arrays.asList(Arrays.asList("r1", "r2"), Arrays.asList("r2")), accumulator.deleteBatches_);
+    assertEquals(Arrays.asList(Arrays.asList("r3=30", "r4=60"), Arrays.asList("r4=60"), Arrays.asList("r4=60")),
+        accumulator.extensionBatches_);
+    assertEquals(5, accumulator.getRequestCount());
+    assertEquals(0, accumulator.getFailedCount());
+  }
+  
+  @Test
+  public void testRetriesAreBounded()
+  {
+    RecordingAccumulator accumulator = new RecordingAccumulator(null, 0);
+    
+    accumulator.failures_.put("r1", Integer.MAX_VALUE);
+    
+    accumulator.delete("r1");
+    accumulator.delete("r2");
+    accumulator.flush();
+    
+    assertEquals(SqsAckAccumulator.MAX_ATTEMPTS, accumulator.deleteBatches_.size());
+    assertEquals(Arrays.asList("r1"), accumulator.deleteBatches_.get(SqsAckAccumulator.MAX_ATTEMPTS - 1));
+    assertEquals(1, accumulator.getFailedCount());
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+@SuppressWarnings("javadoc")
+public class TestSqsPollController
+{
+  @Test
+  public void testGrowsWhileFull()
+  {
+    SqsPollController controller = new SqsPollController(1, 3, 10);
+    
+    assertEquals(1, controller.getPollerCount());
+    
+    for(int expected = 2 ; expected <= 3 ; expected++)
+    {
+      int pollers = controller.getPollerCount();
+      
+      controller.update(pollers, 10, pollers * 10, 1000);
+      
+      assertEquals(expected, controller.getPollerCount());
+    }
+    
+    // Capped at the maximum.
+    controller.update(3, 10, 30, 1000);
+    
+    assertEquals(3, controller.getPollerCount());
+  }
+  
+  @Test
+  public void testDoesNotGrowWithoutCapacity()
+  {
+    SqsPollController controller = new SqsPollController(1, 4, 10);
+    
+    // Full round, but the handlers could not take another poller's full batch.
+    controller.update(1, 10, 10, 19);
+    
+    assertEquals(1, controller.getPollerCount());
+    
+    // Full round of less than maximum batches.
+    controller.update(1, 5, 5, 1000);
+    
+    assertEquals(1, controller.getPollerCount());
+    
+    controller.update(1, 10, 10, 20);
+    
+    assertEquals(2, controller.getPollerCount());
+  }
+  
+  @Test
+  public void testShrinks()
+  {
+    SqsPollController controller = new SqsPollController(1, 8, 10);
+    
+    for(int i=0 ; i<7 ; i++)
+      controller.update(controller.getPollerCount(), 10, controller.getPollerCount() * 10, 1000);
+    
+    assertEquals(8, controller.getPollerCount());
+    
+    // Partly empty round halves.
+    controller.update(8, 10, 79, 1000);
+    
+    assertEquals(4, controller.getPollerCount());
+    
+    controller.update(4, 10, 1, 1000);
+    
+    assertEquals(2, controller.getPollerCount());
+    
+    controller.update(2, 10, 20, 1000);
+    controller.update(3, 10, 30, 1000);
+    
+    assertEquals(4, controller.getPollerCount());
+    
+    // Empty round drops to the minimum.
+    controller.update(4, 10, 0, 1000);
+    
+    assertEquals(1, controller.getPollerCount());
+  }
+  
+  @Test
+  public void testMinimum()
+  {
+    SqsPollController controller = new SqsPollController(2, 1, 10);
+    
+    assertEquals(2, controller.getPollerCount());
+    
+    controller.update(2, 10, 20, 1000);
+    
+    // The maximum is raised to the minimum.
+    assertEquals(2, controller.getPollerCount());
+    
+    controller.update(2, 10, 1, 1000);
+    
+    assertEquals(2, controller.getPollerCount());
+  }
+  
+  @Test
+  public void testBatchSize()
+  {
+    SqsPollController controller = new SqsPollController(1, 4, 10);
+    
+    assertEquals(10, controller.getBatchSize(1, 100));
+    assertEquals(10, controller.getBatchSize(2, 20));
+    assertEquals(5,  controller.getBatchSize(2, 11));
+    assertEquals(1,  controller.getBatchSize(4, 3));
+    assertEquals(1,  controller.getBatchSize(1, 0));
+  }
+}
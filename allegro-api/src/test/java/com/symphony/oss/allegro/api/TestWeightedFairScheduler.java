@@ -0,0 +1,351 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests of WeightedFairScheduler.
+ *
+ */
+@SuppressWarnings("javadoc")
+public class TestWeightedFairScheduler
+{
+  private static final long              EXTENSION_MILLIS = 60000;
+  
+  private final ScheduledExecutorService executor_        = Executors.newSingleThreadScheduledExecutor();
+  private final List<String>             ran_             = new CopyOnWriteArrayList<>();
+  private final CountDownLatch           gateStarted_     = new CountDownLatch(1);
+  private final CountDownLatch           gateReleased_    = new CountDownLatch(1);
+  private WeightedFairScheduler          scheduler_;
+  
+  class Task implements WeightedFairScheduler.IScheduledTask
+  {
+    private final String name_;
+    
+    Task(String name)
+    {
+      name_ = name;
+    }
+
+    @Override
+    public void run()
+    {
+      ran_.add(name_);
+    }
+
+    @Override
+    public void extend()
+    {
+    }
+  }
+  
+  class Gate implements WeightedFairScheduler.IScheduledTask
+  {
+    @Override
+    public void run()
+    {
+      gateStarted_.countDown();
+      
+      try
+      {
+        gateReleased_.await();
+      }
+      catch(InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public void extend()
+    {
+    }
+  }
+  
+  private void createScheduler(Map<String, Integer> weights, int capacity, HandlerQueuePolicy policy) throws InterruptedException
+  {
+    scheduler_ = new WeightedFairScheduler(weights, 1, executor_, EXTENSION_MILLIS, capacity, policy);
+    
+    // Occupy the only handler thread so that the order of the queued tasks can be observed.
+    scheduler_.submit("gate", new Gate());
+    assertTrue(gateStarted_.await(5, TimeUnit.SECONDS));
+  }
+  
+  private void drain()
+  {
+    // Stopping the scheduler runs all queued tasks before the worker threads exit.
+    gateReleased_.countDown();
+    scheduler_.stop(5000);
+  }
+  
+  private void close()
+  {
+    gateReleased_.countDown();
+    scheduler_.stop(5000);
+    executor_.shutdownNow();
+  }
+  
+  private int count(List<String> names, String prefix)
+  {
+    int count = 0;
+    
+    for(String name : names)
+      if(name.startsWith(prefix))
+        count++;
+    
+    return count;
+  }
+  
+  @Test
+  public void testLaneOrder() throws InterruptedException
+  {
+    createScheduler(Collections.emptyMap(), 100, HandlerQueuePolicy.Block);
+    
+    try
+    {
+      for(int i=0 ; i<5 ; i++)
+        scheduler_.submit("A", new Task("A" + i));
+      
+      drain();
+      
+      assertEquals(5, ran_.size());
+      
+      for(int i=0 ; i<5 ; i++)
+        assertEquals("A" + i, ran_.get(i));
+    }
+    finally
+    {
+      close();
+    }
+  }
+  
+  @Test
+  public void testWeightShare() throws InterruptedException
+  {
+    Map<String, Integer> weights = new HashMap<>();
+    
+    weights.put("A", 3);
+    weights.put("B", 1);
+    
+    createScheduler(weights, 100, HandlerQueuePolicy.Block);
+    
+    try
+    {
+      for(int i=0 ; i<12 ; i++)
+        scheduler_.submit("A", new Task("A" + i));
+      
+      for(int i=0 ; i<4 ; i++)
+        scheduler_.submit("B", new Task("B" + i));
+      
+      drain();
+      
+      assertEquals(16, ran_.size());
+      
+      List<String> first = new ArrayList<>(ran_.subList(0, 8));
+      
+      assertEquals(6, count(first, "A"));
+      assertEquals(2, count(first, "B"));
+      
+      List<String> lanes = new ArrayList<>();
+      
+      for(String name : ran_)
+        if(name.startsWith("B"))
+          lanes.add(name);
+      
+      assertEquals("[B0, B1, B2, B3]", lanes.toString());
+    }
+    finally
+    {
+      close();
+    }
+  }
+  
+  @Test
+  public void testIdleLaneDoesNotWaitForBacklog() throws InterruptedException
+  {
+    createScheduler(Collections.emptyMap(), 100, HandlerQueuePolicy.Block);
+    
+    try
+    {
+      for(int i=0 ; i<10 ; i++)
+        scheduler_.submit("A", new Task("A" + i));
+      
+      scheduler_.submit("B", new Task("B0"));
+      
+      drain();
+      
+      assertEquals(11, ran_.size());
+      assertTrue(ran_.indexOf("B0") <= 1);
+    }
+    finally
+    {
+      close();
+    }
+  }
+  
+  @Test
+  public void testFullQueueBlocks() throws InterruptedException
+  {
+    createScheduler(Collections.emptyMap(), 2, HandlerQueuePolicy.Block);
+    
+    try
+    {
+      scheduler_.submit("A", new Task("A0"));
+      scheduler_.submit("A", new Task("A1"));
+      
+      CountDownLatch submitted = new CountDownLatch(1);
+      Thread         submitter = new Thread(() ->
+      {
+        scheduler_.submit("A", new Task("A2"));
+        submitted.countDown();
+      });
+      
+      submitter.start();
+      
+      assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+      assertEquals(2, scheduler_.getQueueDepth());
+      
+      gateReleased_.countDown();
+      
+      assertTrue(submitted.await(5, TimeUnit.SECONDS));
+      
+      drain();
+      
+      assertEquals("[A0, A1, A2]", ran_.toString());
+    }
+    finally
+    {
+      close();
+    }
+  }
+  
+  @Test
+  public void testFullQueueCallerRuns() throws InterruptedException
+  {
+    createScheduler(Collections.emptyMap(), 1, HandlerQueuePolicy.CallerRuns);
+    
+    try
+    {
+      List<Thread> threads = new CopyOnWriteArrayList<>();
+      
+      scheduler_.submit("A", new Task("A0"));
+      scheduler_.submit("A", new Task("A1")
+      {
+        @Override
+        public void run()
+        {
+          threads.add(Thread.currentThread());
+          super.run();
+        }
+      });
+      
+      assertEquals(1, threads.size());
+      assertSame(Thread.currentThread(), threads.get(0));
+      assertEquals("[A1]", ran_.toString());
+      
+      drain();
+      
+      assertEquals("[A1, A0]", ran_.toString());
+    }
+    finally
+    {
+      close();
+    }
+  }
+  
+  @Test
+  public void testWorkerSurvivesFailedTask() throws InterruptedException
+  {
+    createScheduler(Collections.emptyMap(), 100, HandlerQueuePolicy.Block);
+    
+    try
+    {
+      scheduler_.submit("A", new Task("A0")
+      {
+        @Override
+        public void run()
+        {
+          throw new AssertionError("Task failed");
+        }
+      });
+      scheduler_.submit("A", new Task("A1"));
+      
+      drain();
+      
+      // The only worker thread ran the next task after the first threw an Error.
+      assertEquals("[A1]", ran_.toString());
+    }
+    finally
+    {
+      close();
+    }
+  }
+  
+  @Test
+  public void testStopReturnsDroppedTasks() throws InterruptedException
+  {
+    createScheduler(Collections.emptyMap(), 100, HandlerQueuePolicy.Block);
+    
+    try
+    {
+      Task a0 = new Task("A0");
+      Task a1 = new Task("A1");
+      Task b0 = new Task("B0");
+      
+      scheduler_.submit("A", a0);
+      scheduler_.submit("A", a1);
+      scheduler_.submit("B", b0);
+      
+      // The gate is still running, so nothing queued can run before the timeout.
+      List<WeightedFairScheduler.IScheduledTask> dropped = scheduler_.stop(100);
+      
+      assertEquals(3, dropped.size());
+      assertSame(a0, dropped.get(0));
+      assertSame(b0, dropped.get(1));
+      assertSame(a1, dropped.get(2));
+      assertEquals(0, scheduler_.getQueueDepth());
+      
+      gateReleased_.countDown();
+      Thread.sleep(100);
+      
+      assertEquals(0, ran_.size());
+    }
+    finally
+    {
+      close();
+    }
+  }
+}
@@ -19,12 +19,20 @@
 package com.symphony.oss.allegro2.api;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 
 import org.junit.Test;
 
 import com.symphony.oss.canon.runtime.ModelRegistry;
 import com.symphony.oss.models.allegro.canon.facade.IReceivedChatMessage;
+import com.symphony.oss.models.allegro.canon.facade.IReceivedSocialMessage;
 import com.symphony.oss.models.chat.canon.ILiveCurrentMessage;
+import com.symphony.oss.models.chat.canon.facade.ISocialMessage;
 import com.symphony.oss.models.core.canon.ApplicationPayload;
 import com.symphony.oss.models.core.canon.CoreModel;
 import com.symphony.oss.models.core.canon.IApplicationPayload;
@@ -165,8 +173,149 @@ public class TestAllegroConsumerManager
     assertEquals(Payload2.class, calledPayloadType_);
   }
   
+  @Test
+  public void testDecryptionAvoided()
+  {
+    IAllegro2Decryptor decryptor = new IAllegro2Decryptor()
+    {
+      @Override
+      public IReceivedChatMessage decrypt(ILiveCurrentMessage message)
+      {
+        return null;
+      }
+
+      @Override
+      public IApplicationRecord decrypt(IEncryptedApplicationRecord encryptedApplicationRecord)
+      {
+        return new TestApplicationRecord.Builder()
+            .withHeader(encryptedApplicationRecord.getHeader())
+            .withPayload(((TestEncryptedApplicationRecord)encryptedApplicationRecord).payload_)
+            .build();
+      }
+    };
+    
+    AllegroConsumerManager consumerManager = new AllegroConsumerManager.Builder(decryptor,
+          new ModelRegistry().withFactories(CoreModel.FACTORIES).withFactories(CryptoModel.FACTORIES))
+        .withConsumer(newConsumer(Header2.class, Payload1.class).holder())
+        .withConsumer(newConsumer(Header1.class, null).holder())
+      .build();
+    
+    consumerManager.accept(new TestEncryptedApplicationRecord.Builder()
+        .withHeader(new Header1())
+        .withPayload(new Payload1())
+        .build());
+
+    assertEquals(Header1.class, calledHeaderType_);
+    assertEquals(null, calledPayloadType_);
+    assertEquals(0, consumerManager.getDecryptCount());
+    assertEquals(1, consumerManager.getDecryptsAvoidedCount());
+    
+    consumerManager.accept(new TestEncryptedApplicationRecord.Builder()
+        .withHeader(new Header2())
+        .withPayload(new Payload1())
+        .build());
+
+    assertEquals(Header2.class, calledHeaderType_);
+    assertEquals(Payload1.class, calledPayloadType_);
+    assertEquals(1, consumerManager.getDecryptCount());
+    assertEquals(1, consumerManager.getDecryptsAvoidedCount());
+  }
+  
   
   
+  interface ITestSocialMessage extends IReceivedSocialMessage {}
+  
+  private final IReceivedSocialMessage decryptedMessage_ = TestLazyReceivedSocialMessage.newProxy(ITestSocialMessage.class, new HashMap<>());
+  
+  private AllegroConsumerManager.Builder newLazyConsumerManagerBuilder()
+  {
+    IAllegro2Decryptor decryptor = new IAllegro2Decryptor()
+    {
+      @Override
+      public IReceivedChatMessage decrypt(ILiveCurrentMessage message)
+      {
+        return decryptedMessage_;
+      }
+
+      @Override
+      public IReceivedChatMessage decryptLazily(ILiveCurrentMessage message, Runnable decryptListener)
+      {
+        return LazyReceivedSocialMessage.newInstance((ISocialMessage)message, null, () ->
+        {
+          decryptListener.run();
+          
+          return decryptedMessage_;
+        });
+      }
+
+      @Override
+      public IApplicationRecord decrypt(IEncryptedApplicationRecord encryptedApplicationRecord)
+      {
+        return null;
+      }
+    };
+    
+    return new AllegroConsumerManager.Builder(decryptor,
+        new ModelRegistry().withFactories(CoreModel.FACTORIES).withFactories(CryptoModel.FACTORIES));
+  }
+  
+  @Test
+  public void testLazyConsumer()
+  {
+    List<IReceivedSocialMessage> received = new LinkedList<>();
+    
+    AllegroConsumerManager consumerManager = newLazyConsumerManagerBuilder()
+        .withLazyConsumer(IReceivedSocialMessage.class, (ILiveCurrentMessageConsumer<IReceivedSocialMessage>)(lcmessage, message) -> received.add(message))
+        .build();
+    
+    consumerManager.accept(TestLazyReceivedSocialMessage.newSocialMessage("<p>Hello</p>", "Hello"));
+    
+    assertEquals(1, received.size());
+    assertTrue(LazyReceivedSocialMessage.isLazy(received.get(0)));
+    assertEquals(0, consumerManager.getDecryptCount());
+    
+    received.get(0).toString();
+    
+    assertEquals(1, consumerManager.getDecryptCount());
+  }
+  
+  @Test
+  public void testEagerConsumerOfLazyMessage()
+  {
+    List<IReceivedSocialMessage> lazyReceived = new LinkedList<>();
+    List<IReceivedSocialMessage> received = new LinkedList<>();
+    
+    AllegroConsumerManager consumerManager = newLazyConsumerManagerBuilder()
+        .withLazyConsumer(ITestSocialMessage.class, (ILiveCurrentMessageConsumer<ITestSocialMessage>)(lcmessage, message) -> lazyReceived.add(message))
+        .withConsumer(IReceivedSocialMessage.class, (ILiveCurrentMessageConsumer<IReceivedSocialMessage>)(lcmessage, message) -> received.add(message))
+        .build();
+    
+    consumerManager.accept(TestLazyReceivedSocialMessage.newSocialMessage("<p>Hello</p>", "Hello"));
+    
+    // The decrypted message selects the more specific lazy consumer.
+    assertEquals(0, received.size());
+    assertEquals(1, lazyReceived.size());
+    assertSame(decryptedMessage_, lazyReceived.get(0));
+    assertEquals(1, consumerManager.getDecryptCount());
+  }
+  
+  @Test
+  public void testNoConsumerOfLazyMessage()
+  {
+    List<IReceivedSocialMessage> received = new LinkedList<>();
+    
+    AllegroConsumerManager consumerManager = newLazyConsumerManagerBuilder()
+        .withLazyConsumer(ITestSocialMessage.class, (ILiveCurrentMessageConsumer<ITestSocialMessage>)(lcmessage, message) -> received.add(message))
+        .build();
+    
+    consumerManager.accept(TestLazyReceivedSocialMessage.newSocialMessage("<p>Hello</p>", "Hello"));
+    
+    // No consumer accepts the lazy message, but one accepts the decrypted message.
+    assertEquals(1, received.size());
+    assertSame(decryptedMessage_, received.get(0));
+    assertEquals(1, consumerManager.getDecryptCount());
+  }
+  
   class TestConsumer<H extends IApplicationPayload, P extends IApplicationPayload> implements IApplicationRecordConsumer<H, P>
   {
     private Class<H> headerType_;
@@ -0,0 +1,154 @@
+/*
+ *
+ *
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro2.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.symphony.oss.models.allegro.canon.facade.IReceivedSocialMessage;
+import com.symphony.oss.models.chat.canon.facade.ISocialMessage;
+import com.symphony.oss.models.core.canon.facade.ThreadId;
+
+@SuppressWarnings("javadoc")
+public class TestLazyReceivedSocialMessage
+{
+  private static final ThreadId THREAD_ID = ThreadId.newBuilder().build("dGhyZWFkSWQ");
+  
+  private final List<String>  decrypted_       = new LinkedList<>();
+  private final AtomicInteger decryptListener_ = new AtomicInteger();
+  private final AtomicInteger fullDecrypts_    = new AtomicInteger();
+  
+  static <T> T newProxy(Class<T> type, Map<String, Object> values)
+  {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) ->
+    {
+      switch(method.getName())
+      {
+        case "hashCode": return System.identityHashCode(proxy);
+        case "equals":   return proxy == args[0];
+        case "toString": return type.getSimpleName() + values;
+        default:         return values.get(method.getName());
+      }
+    }));
+  }
+  
+  static ISocialMessage newSocialMessage(String presentationML, String markDown)
+  {
+    Map<String, Object> values = new HashMap<>();
+    
+    values.put("getThreadId", THREAD_ID);
+    values.put("getPresentationML", "encrypted:" + presentationML);
+    values.put("getText", markDown == null ? null : "encrypted:" + markDown);
+    
+    return newProxy(ISocialMessage.class, values);
+  }
+  
+  private SocialMessageFields newFields(ISocialMessage message)
+  {
+    return new SocialMessageFields(message, (threadId, cipherText) ->
+    {
+      assertSame(THREAD_ID, threadId);
+      decrypted_.add(cipherText);
+      
+      return cipherText.substring("encrypted:".length());
+    }, null, decryptListener_::incrementAndGet);
+  }
+  
+  @Test
+  public void testFieldsDecryptedOnDemand()
+  {
+    SocialMessageFields fields = newFields(newSocialMessage("<p>Hello</p>", "Hello"));
+    
+    assertEquals(0, decrypted_.size());
+    assertEquals(0, decryptListener_.get());
+    
+    assertEquals("<p>Hello</p>", fields.getPresentationML());
+    assertEquals("<p>Hello</p>", fields.getPresentationML());
+    
+    assertEquals(1, decrypted_.size());
+    assertEquals(1, decryptListener_.get());
+    
+    assertEquals("Hello", fields.getMarkDown());
+    assertEquals("Hello", fields.getMarkDown());
+    
+    assertEquals(2, decrypted_.size());
+    assertEquals(1, decryptListener_.get());
+  }
+  
+  @Test
+  public void testEntityJsonDefault()
+  {
+    SocialMessageFields fields = newFields(newSocialMessage("<p>Hello</p>", "Hello"));
+    
+    assertEquals("{}", fields.getEntityJson());
+    assertEquals(0, decrypted_.size());
+    assertEquals(0, decryptListener_.get());
+  }
+  
+  private IReceivedSocialMessage newLazyMessage(ISocialMessage message, IReceivedSocialMessage full)
+  {
+    return LazyReceivedSocialMessage.newInstance(message, newFields(message), () ->
+    {
+      fullDecrypts_.incrementAndGet();
+      
+      return full;
+    });
+  }
+  
+  @Test
+  public void testLazyMessage()
+  {
+    ISocialMessage         message = newSocialMessage("<p>Hello</p>", "Hello");
+    IReceivedSocialMessage full    = newProxy(IReceivedSocialMessage.class, new HashMap<>());
+    IReceivedSocialMessage lazy    = newLazyMessage(message, full);
+    
+    assertTrue(LazyReceivedSocialMessage.isLazy(lazy));
+    assertFalse(LazyReceivedSocialMessage.isLazy(full));
+    assertFalse(LazyReceivedSocialMessage.isLazy(null));
+    
+    assertSame(message, lazy.getSocialMessage());
+    assertSame(THREAD_ID, lazy.getThreadId());
+    assertEquals(0, decryptListener_.get());
+    
+    assertEquals("<p>Hello</p>", lazy.getPresentationML());
+    assertEquals("Hello", lazy.getMarkDown());
+    assertEquals(1, decryptListener_.get());
+    assertEquals(0, fullDecrypts_.get());
+    
+    assertEquals(full.toString(), lazy.toString());
+    assertEquals(1, fullDecrypts_.get());
+    
+    assertSame(full, LazyReceivedSocialMessage.getDecrypted(lazy));
+    assertEquals(1, fullDecrypts_.get());
+    
+    assertTrue(lazy.equals(lazy));
+    assertFalse(lazy.equals(full));
+  }
+}
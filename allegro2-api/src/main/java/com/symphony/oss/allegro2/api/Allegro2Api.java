@@ -1186,79 +1186,56 @@ public class Allegro2Api implements IAllegro2Api
     return b.toString();
   }
 
-  private IReceivedSocialMessage decryptSocialMessage(ISocialMessage message)
+  @Override
+  public IReceivedChatMessage decryptLazily(ILiveCurrentMessage message, Runnable decryptListener)
   {
-    if(FORMAT_MESSAGEMLV2.equals(message.getFormat()))
+    if(message instanceof ISocialMessage)
     {
-      String presentationML       = cryptoClient_.decrypt(message.getThreadId(), message.getPresentationML());
-      String encryptedEntityJson  = message.getEntityJSON();
-      String entityJsonString;
-      
-      if(encryptedEntityJson == null)
-      {
-        entityJsonString = "{}";
-      }
-      else
-      {
-        entityJsonString = cryptoClient_.decrypt(message.getThreadId(), encryptedEntityJson);
-        
-        
-      }
+      ISocialMessage socialMessage = (ISocialMessage) message;
       
-      String text = null;
-      String markDown = null;
-      
-      if(message.getText() != null)
-      {
-        markDown = cryptoClient_.decrypt(message.getThreadId(), message.getText());
-      }
-      
-      MessageML messageML;
-      try
+      if(FORMAT_MESSAGEMLV2.equals(socialMessage.getFormat()))
       {
-        MessageMLContext context = new MessageMLContext(dataProvider_);
+        SocialMessageFields fields = new SocialMessageFields(socialMessage, cryptoClient_::decrypt, dataProvider_, decryptListener);
         
-        String version = null;
-        
-        context.parseMessageML(presentationML, entityJsonString, version);
-        
-        text = context.getText(false);
-        
-        if(markDown == null)
-          markDown = context.getMarkdown();
-        
-        messageML = context.getMessageML();
-      }
-      catch (InvalidInputException | ProcessingException | IOException e)
-      {
-        log_.error("Unable to decode text from messageML");
-        messageML = null;
+        return LazyReceivedSocialMessage.newInstance(socialMessage, fields, () -> buildSocialMessage(socialMessage, fields));
       }
       
-      if(markDown == null)
+      return LazyReceivedSocialMessage.newInstance(socialMessage, null, () ->
       {
-        // We are desperate now...
+        decryptListener.run();
         
-        markDown = presentationML.replaceAll("<[^>]*>", "");
-      }
-      
-      if(text == null)
-        text = markDown;
-      
-      ReceivedSocialMessage.Builder builder = new ReceivedSocialMessage.Builder()
-          .withMessageId(message.getMessageId())
-          .withThreadId(message.getThreadId())
-          .withPresentationML(presentationML)
-          .withText(text)
-          .withMarkDown(markDown)
-          .withEntityJson(new EntityJson(parseOneJsonObject(entityJsonString), modelRegistry_))
-          .withMessageML(messageML)
-          .withSocialMessage(message)
-          ;
-      
-      return builder
-        .build()
+        return decryptSocialMessage(socialMessage);
+      });
+    }
+    
+    decryptListener.run();
+    
+    return decrypt(message);
+  }
+  
+  private IReceivedSocialMessage buildSocialMessage(ISocialMessage message, SocialMessageFields fields)
+  {
+    ReceivedSocialMessage.Builder builder = new ReceivedSocialMessage.Builder()
+        .withMessageId(message.getMessageId())
+        .withThreadId(message.getThreadId())
+        .withPresentationML(fields.getPresentationML())
+        .withText(fields.getText())
+        .withMarkDown(fields.getMarkDown())
+        .withEntityJson(new EntityJson(parseOneJsonObject(fields.getEntityJson()), modelRegistry_))
+        .withMessageML(fields.getMessageML())
+        .withSocialMessage(message)
         ;
+    
+    return builder
+      .build()
+      ;
+  }
+
+  private IReceivedSocialMessage decryptSocialMessage(ISocialMessage message)
+  {
+    if(FORMAT_MESSAGEMLV2.equals(message.getFormat()))
+    {
+      return buildSocialMessage(message, new SocialMessageFields(message, cryptoClient_::decrypt, dataProvider_, () -> {}));
     }
     else
     {
@@ -21,7 +21,10 @@ package com.symphony.oss.allegro2.api;
 import java.io.StringReader;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +47,9 @@ import com.symphony.oss.models.core.canon.facade.IEncryptedApplicationRecord;
  * 
  * This class handles the routing of objects to the consumer with the closest type match to a received object.
  * 
+ * The (unencrypted) header of a received object is used to select the consumers which could receive it, and
+ * the payload is only decrypted if one of those consumers requires a payload type.
+ * 
  * @author Bruce Skingle
  *
  */
@@ -56,6 +62,11 @@ public class AllegroConsumerManager
   private final ImmutableList<ApplicationConsumerHolder<?, ?>> applicationConsumers_;
   private final ImmutableList<LiveCurrentConsumerHolder<?>>    liveCurrentConsumers_;
   private final IErrorConsumer                                 errorConsumer_;
+  private final boolean                                        liveCurrentPayloadRequired_;
+  private final boolean                                        lazyDecryption_;
+  private final Map<Class<?>, Boolean>                         payloadRequiredMap_   = new ConcurrentHashMap<>();
+  private final AtomicLong                                     decryptCount_         = new AtomicLong();
+  private final AtomicLong                                     decryptsAvoidedCount_ = new AtomicLong();
 
   protected AllegroConsumerManager(AbstractBuilder<?,?> builder)
   {
@@ -64,6 +75,21 @@ public class AllegroConsumerManager
     applicationConsumers_ = ImmutableList.copyOf(builder.applicationConsumers_);
     liveCurrentConsumers_ = ImmutableList.copyOf(builder.liveCurrentConsumers_);
     errorConsumer_        = builder.errorConsumer_;
+    
+    boolean liveCurrentPayloadRequired = false;
+    boolean lazyDecryption = false;
+    
+    for(LiveCurrentConsumerHolder<?> t : liveCurrentConsumers_)
+    {
+      if(t.payloadType_ != null)
+        liveCurrentPayloadRequired = true;
+      
+      if(t.lazyDecryption_)
+        lazyDecryption = true;
+    }
+    
+    liveCurrentPayloadRequired_ = liveCurrentPayloadRequired;
+    lazyDecryption_ = lazyDecryption;
   }
   
   /**
@@ -141,6 +167,27 @@ public class AllegroConsumerManager
       return self();
     }
     
+    /**
+     * Add the given ILiveCurrentMessageConsumer to this manager, the consumer will be passed a message whose
+     * fields are decrypted on first access, rather than before the consumer is called.
+     * 
+     * This is useful for consumers which only inspect some messages, or only some fields of each message.
+     * The payload type should be an interface type such as IReceivedSocialMessage, since the lazily
+     * decrypted message is not an instance of the generated implementation class.
+     * 
+     * @param <M>           The concrete type of the payload to be consumed.
+     * @param payloadType   The concrete type of the payload to be consumed.
+     * @param consumer      The consumer.
+     * 
+     * @return This (fluent method).
+     */
+    public <M extends IAbstractReceivedChatMessage> T withLazyConsumer(Class<M> payloadType, ILiveCurrentMessageConsumer<M> consumer)
+    {
+      liveCurrentConsumers_.add(new LiveCurrentConsumerHolder<M>(payloadType, consumer, true));
+      
+      return self();
+    }
+    
     T withConsumer(LiveCurrentConsumerHolder<?> holder)
     {
       liveCurrentConsumers_.add(holder);
@@ -193,6 +240,25 @@ public class AllegroConsumerManager
     }
   }
   
+  /**
+   * 
+   * @return The number of messages and objects which have been decrypted.
+   */
+  public long getDecryptCount()
+  {
+    return decryptCount_.get();
+  }
+  
+  /**
+   * 
+   * @return The number of messages and objects which were not decrypted because no consumer which could
+   * receive them requires a payload.
+   */
+  public long getDecryptsAvoidedCount()
+  {
+    return decryptsAvoidedCount_.get();
+  }
+  
   /**
    * Handle the given message or object.
    * 
@@ -232,11 +298,26 @@ public class AllegroConsumerManager
   {
     try
     {
-      if(allegroDecryptor_ != null)
+      if(allegroDecryptor_ != null && !liveCurrentPayloadRequired_)
+      {
+        decryptsAvoidedCount_.incrementAndGet();
+      }
+      else if(allegroDecryptor_ != null)
       {
         try
         {
-          IReceivedChatMessage chatMessage = allegroDecryptor_.decrypt(lcmessage);
+          IReceivedChatMessage chatMessage;
+          
+          if(lazyDecryption_)
+          {
+            // Only counted if the message is actually decrypted, which may be after it has been consumed.
+            chatMessage = allegroDecryptor_.decryptLazily(lcmessage, decryptCount_::incrementAndGet);
+          }
+          else
+          {
+            decryptCount_.incrementAndGet();
+            chatMessage = allegroDecryptor_.decrypt(lcmessage);
+          }
 
           if(chatMessage != null)
           {
@@ -260,6 +341,44 @@ public class AllegroConsumerManager
 
   @SuppressWarnings({ "unchecked", "rawtypes" })
   private void accept(ILiveCurrentMessage lcmessage, IReceivedChatMessage receivedMessage)
+  {
+    LiveCurrentConsumerHolder<?> bestConsumer = getBestConsumer(receivedMessage);
+    
+    if((bestConsumer == null || !bestConsumer.lazyDecryption_) && LazyReceivedSocialMessage.isLazy(receivedMessage))
+    {
+      // This consumer needs the fully decrypted message, or there is no consumer for the lazy message, and the
+      // concrete type of the decrypted message may select a different consumer.
+      try
+      {
+        receivedMessage = LazyReceivedSocialMessage.getDecrypted(receivedMessage);
+      }
+      catch(PermissionDeniedException e)
+      {
+        // can't decrypt
+        receivedMessage = null;
+      }
+      
+      bestConsumer = getBestConsumer(receivedMessage);
+    }
+    
+    if(bestConsumer == null)
+    {
+      errorConsumer_.accept(lcmessage, "No consumer for Application object " + lcmessage, null);
+    }
+    else
+    {
+      try
+      {
+        ((ILiveCurrentMessageConsumer)bestConsumer.consumer_).accept(lcmessage, receivedMessage);
+      }
+      catch(RuntimeException e)
+      {
+        errorConsumer_.accept(lcmessage, "Failed to process message", e);
+      }
+    }
+  }
+
+  private LiveCurrentConsumerHolder<?> getBestConsumer(IReceivedChatMessage receivedMessage)
   {
     Class<? extends IReceivedChatMessage> payloadType  = receivedMessage == null ? null : receivedMessage.getClass();
     
@@ -301,21 +420,7 @@ public class AllegroConsumerManager
       }
     }
     
-    if(bestConsumer == null)
-    {
-      errorConsumer_.accept(lcmessage, "No consumer for Application object " + lcmessage, null);
-    }
-    else
-    {
-      try
-      {
-        ((ILiveCurrentMessageConsumer)bestConsumer.consumer_).accept(lcmessage, receivedMessage);
-      }
-      catch(RuntimeException e)
-      {
-        errorConsumer_.accept(lcmessage, "Failed to process message", e);
-      }
-    }
+    return bestConsumer;
   }
   
   /**
@@ -327,10 +432,16 @@ public class AllegroConsumerManager
   {
     try
     {
-      if(allegroDecryptor_ != null && storedObject.getEncryptedPayload() != null)
+      if(allegroDecryptor_ != null && storedObject.getEncryptedPayload() != null && !isPayloadRequired(storedObject.getHeader()))
+      {
+        decryptsAvoidedCount_.incrementAndGet();
+      }
+      else if(allegroDecryptor_ != null && storedObject.getEncryptedPayload() != null)
       {
         try
         {
+          decryptCount_.incrementAndGet();
+          
           IApplicationRecord applicationRecord = allegroDecryptor_.decrypt(storedObject);
           
           if(applicationRecord != null)
@@ -353,6 +464,29 @@ public class AllegroConsumerManager
     }
   }
 
+  /*
+   * Return true if any consumer which matches the given header needs a payload, if not there is no point
+   * in decrypting the object because it can only be delivered to a consumer which takes no payload.
+   */
+  private boolean isPayloadRequired(IApplicationPayload header)
+  {
+    Class<?> headerType = header == null ? IApplicationPayload.class : header.getClass();
+    
+    return payloadRequiredMap_.computeIfAbsent(headerType, (type) ->
+    {
+      for(ApplicationConsumerHolder<?, ?> t : applicationConsumers_)
+      {
+        if(t.payloadType_ == null)
+          continue;
+        
+        if(header == null ? t.headerType_ == null : t.headerType_ != null && t.headerType_.isAssignableFrom(type))
+          return true;
+      }
+      
+      return false;
+    });
+  }
+
   @SuppressWarnings({ "unchecked", "rawtypes" })
   private void accept(IEncryptedApplicationRecord storedObject, IApplicationPayload header,
       IApplicationPayload payload)
@@ -462,10 +596,17 @@ class LiveCurrentConsumerHolder<M extends IAbstractReceivedChatMessage>
 {
   Class<M>                       payloadType_;
   ILiveCurrentMessageConsumer<M> consumer_;
+  boolean                        lazyDecryption_;
   
   LiveCurrentConsumerHolder(Class<M> payloadType, ILiveCurrentMessageConsumer<M> consumer)
+  {
+    this(payloadType, consumer, false);
+  }
+  
+  LiveCurrentConsumerHolder(Class<M> payloadType, ILiveCurrentMessageConsumer<M> consumer, boolean lazyDecryption)
   {
     payloadType_ = payloadType;
     consumer_ = consumer;
+    lazyDecryption_ = lazyDecryption;
   }
 }
@@ -44,7 +44,38 @@ public interface IAllegro2Decryptor
    * @return An IChatMessage representing the given message.
    */
   IReceivedChatMessage decrypt(ILiveCurrentMessage message);
-  
+
+  /**
+   * Create an IChatMessage from the given ILiveCurrentMessage, if the message
+   * is an ISocialMessage then each field of the message payload is decrypted on first access.
+   *
+   * @param message An ILiveCurrentMessage.
+   *
+   * @return An IChatMessage representing the given message.
+   */
+  default IReceivedChatMessage decryptLazily(ILiveCurrentMessage message)
+  {
+    return decryptLazily(message, () -> {});
+  }
+
+  /**
+   * Create an IChatMessage from the given ILiveCurrentMessage, if the message
+   * is an ISocialMessage then each field of the message payload is decrypted on first access.
+   *
+   * The default implementation decrypts eagerly.
+   *
+   * @param message         An ILiveCurrentMessage.
+   * @param decryptListener Called once, when the message payload is first decrypted, which may be never.
+   *
+   * @return An IChatMessage representing the given message.
+   */
+  default IReceivedChatMessage decryptLazily(ILiveCurrentMessage message, Runnable decryptListener)
+  {
+    decryptListener.run();
+    
+    return decrypt(message);
+  }
+
   /**
    * Deserialize and decrypt the given object.
    * 
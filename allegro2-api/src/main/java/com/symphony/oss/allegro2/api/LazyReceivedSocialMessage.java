@@ -0,0 +1,160 @@
+/*
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro2.api;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.function.Supplier;
+
+import com.symphony.oss.models.allegro.canon.facade.IReceivedSocialMessage;
+import com.symphony.oss.models.chat.canon.facade.ISocialMessage;
+
+/**
+ * A lazily decrypted IReceivedSocialMessage.
+ *
+ * The message and thread IDs and the underlying SocialMessage are returned without any decryption.
+ * For MessageMLV2 messages the PresentationML, MarkDown and text are decrypted (and parsed where
+ * necessary) individually on first access. Any other method causes the fully decrypted message to
+ * be built, once, and the call is delegated to it.
+ *
+ * The generated facade types cannot be populated one field at a time, so this is implemented as a
+ * dynamic proxy over the IReceivedSocialMessage interface.
+ *
+ */
+class LazyReceivedSocialMessage implements InvocationHandler
+{
+  private final ISocialMessage                   message_;
+  private final SocialMessageFields              fields_;
+  private final Supplier<IReceivedSocialMessage> decryptor_;
+
+  private IReceivedSocialMessage                 decrypted_;
+
+  private LazyReceivedSocialMessage(ISocialMessage message, SocialMessageFields fields, Supplier<IReceivedSocialMessage> decryptor)
+  {
+    message_   = message;
+    fields_    = fields;
+    decryptor_ = decryptor;
+  }
+
+  /**
+   * Create a lazily decrypted message.
+   *
+   * @param message   The encrypted message.
+   * @param fields    The memoised decrypted fields of the message, or null if the message is not MessageMLV2.
+   * @param decryptor A supplier of the fully decrypted message, called at most once.
+   *
+   * @return An IReceivedSocialMessage which decrypts on demand.
+   */
+  static IReceivedSocialMessage newInstance(ISocialMessage message, SocialMessageFields fields, Supplier<IReceivedSocialMessage> decryptor)
+  {
+    return (IReceivedSocialMessage) Proxy.newProxyInstance(IReceivedSocialMessage.class.getClassLoader(),
+        new Class<?>[] { IReceivedSocialMessage.class },
+        new LazyReceivedSocialMessage(message, fields, decryptor));
+  }
+
+  /**
+   *
+   * @param message An object which may be a lazily decrypted message.
+   *
+   * @return true iff the given object is a lazily decrypted message.
+   */
+  static boolean isLazy(Object message)
+  {
+    return message != null && Proxy.isProxyClass(message.getClass()) &&
+        Proxy.getInvocationHandler(message) instanceof LazyReceivedSocialMessage;
+  }
+
+  /**
+   *
+   * @param message A lazily decrypted message.
+   *
+   * @return The fully decrypted form of the given message.
+   */
+  static IReceivedSocialMessage getDecrypted(Object message)
+  {
+    return ((LazyReceivedSocialMessage)Proxy.getInvocationHandler(message)).getDecrypted();
+  }
+
+  private synchronized IReceivedSocialMessage getDecrypted()
+  {
+    if(decrypted_ == null)
+      decrypted_ = decryptor_.get();
+
+    return decrypted_;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+  {
+    if(args == null || args.length == 0)
+    {
+      switch(method.getName())
+      {
+        case "hashCode":
+          return System.identityHashCode(proxy);
+
+        case "getMessageId":
+          if(method.getReturnType().isInstance(message_.getMessageId()))
+            return message_.getMessageId();
+          break;
+
+        case "getThreadId":
+          if(method.getReturnType().isInstance(message_.getThreadId()))
+            return message_.getThreadId();
+          break;
+
+        case "getSocialMessage":
+          if(method.getReturnType().isInstance(message_))
+            return message_;
+          break;
+
+        case "getPresentationML":
+          if(fields_ != null && method.getReturnType() == String.class)
+            return fields_.getPresentationML();
+          break;
+
+        case "getMarkDown":
+          if(fields_ != null && method.getReturnType() == String.class)
+            return fields_.getMarkDown();
+          break;
+
+        case "getText":
+          if(fields_ != null && method.getReturnType() == String.class)
+            return fields_.getText();
+          break;
+
+        default:
+          break;
+      }
+    }
+    else if(args.length == 1 && "equals".equals(method.getName()))
+    {
+      return proxy == args[0];
+    }
+
+    try
+    {
+      return method.invoke(getDecrypted(), args);
+    }
+    catch(InvocationTargetException e)
+    {
+      throw e.getCause();
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2021 Symphony Communication Services, LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.symphony.oss.allegro2.api;
+
+import java.io.IOException;
+import java.util.function.BiFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.symphonyoss.symphony.messageml.MessageMLContext;
+import org.symphonyoss.symphony.messageml.elements.MessageML;
+import org.symphonyoss.symphony.messageml.exceptions.InvalidInputException;
+import org.symphonyoss.symphony.messageml.exceptions.ProcessingException;
+import org.symphonyoss.symphony.messageml.util.IDataProvider;
+
+import com.symphony.oss.models.chat.canon.facade.ISocialMessage;
+import com.symphony.oss.models.core.canon.facade.ThreadId;
+
+/**
+ * The decrypted fields of a MessageMLV2 SocialMessage.
+ *
+ * Each field is decrypted (and the MessageML parsed) on first access and memoised, so
+ * a caller which only needs the PresentationML does not pay for decrypting the markdown
+ * or parsing the message.
+ *
+ */
+class SocialMessageFields
+{
+  private static final Logger                        log_ = LoggerFactory.getLogger(SocialMessageFields.class);
+
+  private final ISocialMessage                       message_;
+  private final BiFunction<ThreadId, String, String> decryptor_;
+  private final IDataProvider                        dataProvider_;
+  private final Runnable                             decryptListener_;
+
+  private boolean                                    decrypted_;
+  private String                                     presentationML_;
+  private String                                     entityJson_;
+  private String                                     markDown_;
+  private boolean                                    markDownDecrypted_;
+  private String                                     parsedMarkDown_;
+  private String                                     text_;
+  private MessageML                                  messageML_;
+  private boolean                                    parsed_;
+
+  /**
+   * Constructor.
+   *
+   * @param message         The encrypted message.
+   * @param decryptor       Decrypts a field of the message, given the thread ID and cipher text.
+   * @param dataProvider    The data provider for MessageML parsing.
+   * @param decryptListener Called once, when the first field of the message is decrypted.
+   */
+  SocialMessageFields(ISocialMessage message, BiFunction<ThreadId, String, String> decryptor, IDataProvider dataProvider,
+      Runnable decryptListener)
+  {
+    message_         = message;
+    decryptor_       = decryptor;
+    dataProvider_    = dataProvider;
+    decryptListener_ = decryptListener;
+  }
+
+  private String decrypt(String cipherText)
+  {
+    if(!decrypted_)
+    {
+      decrypted_ = true;
+      decryptListener_.run();
+    }
+
+    return decryptor_.apply(message_.getThreadId(), cipherText);
+  }
+
+  synchronized String getPresentationML()
+  {
+    if(presentationML_ == null)
+      presentationML_ = decrypt(message_.getPresentationML());
+
+    return presentationML_;
+  }
+
+  synchronized String getEntityJson()
+  {
+    if(entityJson_ == null)
+    {
+      String encryptedEntityJson  = message_.getEntityJSON();
+
+      if(encryptedEntityJson == null)
+        entityJson_ = "{}";
+      else
+        entityJson_ = decrypt(encryptedEntityJson);
+    }
+
+    return entityJson_;
+  }
+
+  synchronized String getMarkDown()
+  {
+    if(!markDownDecrypted_)
+    {
+      if(message_.getText() != null)
+        markDown_ = decrypt(message_.getText());
+
+      markDownDecrypted_ = true;
+    }
+
+    if(markDown_ == null)
+    {
+      parse();
+
+      markDown_ = parsedMarkDown_;
+
+      if(markDown_ == null)
+      {
+        // We are desperate now...
+
+        markDown_ = getPresentationML().replaceAll("<[^>]*>", "");
+      }
+    }
+
+    return markDown_;
+  }
+
+  synchronized String getText()
+  {
+    parse();
+
+    if(text_ == null)
+      text_ = getMarkDown();
+
+    return text_;
+  }
+
+  synchronized MessageML getMessageML()
+  {
+    parse();
+
+    return messageML_;
+  }
+
+  private void parse()
+  {
+    if(parsed_)
+      return;
+
+    parsed_ = true;
+
+    try
+    {
+      MessageMLContext context = new MessageMLContext(dataProvider_);
+
+      String version = null;
+
+      context.parseMessageML(getPresentationML(), getEntityJson(), version);
+
+      text_ = context.getText(false);
+
+      parsedMarkDown_ = context.getMarkdown();
+
+      messageML_ = context.getMessageML();
+    }
+    catch (InvalidInputException | ProcessingException | IOException e)
+    {
+      log_.error("Unable to decode text from messageML");
+      messageML_ = null;
+    }
+  }
+}